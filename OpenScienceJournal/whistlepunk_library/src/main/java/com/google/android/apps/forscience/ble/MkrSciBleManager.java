@@ -12,7 +12,7 @@ import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
-import java.nio.ByteBuffer;
+import androidx.annotation.VisibleForTesting;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -53,6 +53,22 @@ public class MkrSciBleManager {
   private static final double MAX_VALUE = 2000000000D;
   private static final double MIN_VALUE = -2000000000D;
 
+  private static final Map<UUID, ValueType> VALUE_TYPES = new HashMap<>();
+
+  static {
+    VALUE_TYPES.put(UUID.fromString(INPUT_1_UUID), ValueType.UINT16);
+    VALUE_TYPES.put(UUID.fromString(INPUT_2_UUID), ValueType.UINT16);
+    VALUE_TYPES.put(UUID.fromString(INPUT_3_UUID), ValueType.UINT16);
+    VALUE_TYPES.put(UUID.fromString(VOLTAGE_UUID), ValueType.SFLOAT);
+    VALUE_TYPES.put(UUID.fromString(CURRENT_UUID), ValueType.SFLOAT);
+    VALUE_TYPES.put(UUID.fromString(RESISTANCE_UUID), ValueType.SFLOAT);
+    VALUE_TYPES.put(UUID.fromString(ACCELEROMETER_UUID), ValueType.SFLOAT_ARR);
+    VALUE_TYPES.put(UUID.fromString(GYROSCOPE_UUID), ValueType.SFLOAT_ARR);
+    VALUE_TYPES.put(UUID.fromString(MAGNETOMETER_UUID), ValueType.SFLOAT_ARR);
+  }
+
+  // Only runs the delayed disconnect after the last unsubscribe, so it can stay on the main looper.
+  // Notifications never pass through it: they go from the GATT binder thread to the listeners.
   private static final Handler handler = new Handler(Looper.getMainLooper());
 
   // device bt address > gatt handler
@@ -102,7 +118,13 @@ public class MkrSciBleManager {
     private static final UUID NOTIFICATION_DESCRIPTOR =
         UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
 
-    private final Map<String, List<Listener>> listenersMap = new HashMap<>();
+    // Keyed by UUID rather than string, so that notifications can be matched without formatting
+    // their UUID.
+    private final Map<UUID, List<Listener>> listenersMap = new HashMap<>();
+
+    // The values last delivered for each characteristic, reused for its next notification.
+    // Guarded by listenersMap.
+    private final Map<UUID, double[]> valueBuffers = new HashMap<>();
 
     private BluetoothGatt gatt;
 
@@ -124,11 +146,12 @@ public class MkrSciBleManager {
 
     private void subscribe(String characteristicUuid, Listener listener) {
       boolean subscribe = false;
+      UUID key = UUID.fromString(characteristicUuid);
       synchronized (listenersMap) {
-        List<Listener> listeners = listenersMap.get(characteristicUuid);
+        List<Listener> listeners = listenersMap.get(key);
         if (listeners == null) {
           listeners = new ArrayList<>();
-          listenersMap.put(characteristicUuid, listeners);
+          listenersMap.put(key, listeners);
           subscribe = true;
         }
         listeners.add(listener);
@@ -152,12 +175,14 @@ public class MkrSciBleManager {
 
     private void unsubscribe(String characteristicUuid, Listener listener) {
       boolean unsubscribe = false;
+      UUID key = UUID.fromString(characteristicUuid);
       synchronized (listenersMap) {
-        List<Listener> listeners = listenersMap.get(characteristicUuid);
+        List<Listener> listeners = listenersMap.get(key);
         if (listeners != null) {
           listeners.remove(listener);
           if (listeners.size() == 0) {
-            listenersMap.remove(characteristicUuid);
+            listenersMap.remove(key);
+            valueBuffers.remove(key);
             unsubscribe = true;
           }
         }
@@ -256,17 +281,7 @@ public class MkrSciBleManager {
       if (VERSION_UUID.equals(uuid) && firmwareVersion == -1) {
         final byte[] value = characteristic.getValue();
         if (value.length == 4) {
-          final ByteBuffer buffer = ByteBuffer.allocate(8);
-          buffer.put((byte) 0);
-          buffer.put((byte) 0);
-          buffer.put((byte) 0);
-          buffer.put((byte) 0);
-          buffer.put(value[3]);
-          buffer.put(value[2]);
-          buffer.put(value[1]);
-          buffer.put(value[0]);
-          buffer.position(0);
-          firmwareVersion = buffer.getLong();
+          firmwareVersion = getUint32(value, 0);
           // delivering to listener(s)
           synchronized (listenersMap) {
             for (List<Listener> listeners : listenersMap.values()) {
@@ -292,125 +307,105 @@ public class MkrSciBleManager {
     @Override
     public void onCharacteristicChanged(
         BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-      final String uuid = characteristic.getUuid().toString();
-      final ValueType type;
-      switch (uuid) {
-        case INPUT_1_UUID:
-        case INPUT_2_UUID:
-        case INPUT_3_UUID:
-          type = ValueType.UINT16;
-          break;
-        case VOLTAGE_UUID:
-        case CURRENT_UUID:
-        case RESISTANCE_UUID:
-          type = ValueType.SFLOAT;
-          break;
-        case ACCELEROMETER_UUID:
-        case GYROSCOPE_UUID:
-        case MAGNETOMETER_UUID:
-          type = ValueType.SFLOAT_ARR;
-          break;
-        default:
-          type = null;
+      final UUID uuid = characteristic.getUuid();
+      final ValueType type = VALUE_TYPES.get(uuid);
+      if (type == null) {
+        return;
       }
-      if (type != null) {
-        final double[] values = parse(type, characteristic.getValue());
-        if (values != null) {
-          // filter to avoid too large values blocking the UI
-          for (int i = 0; i < values.length; i++) {
-            if (values[i] > MAX_VALUE) {
-              values[i] = MAX_VALUE;
-            } else if (values[i] < MIN_VALUE) {
-              values[i] = MIN_VALUE;
-            }
-          }
-          // delivering to listener(s)
-          synchronized (listenersMap) {
-            List<Listener> listeners = listenersMap.get(uuid);
-            if (listeners != null) {
-              for (Listener l : listeners) {
-                l.onValuesUpdated(values);
-              }
-            }
+      final byte[] value = characteristic.getValue();
+      final int count = getValueCount(type, value.length);
+      if (count < 0) {
+        return;
+      }
+      synchronized (listenersMap) {
+        List<Listener> listeners = listenersMap.get(uuid);
+        if (listeners == null || listeners.isEmpty()) {
+          return;
+        }
+        double[] values = valueBuffers.get(uuid);
+        if (values == null || values.length != count) {
+          values = new double[count];
+          valueBuffers.put(uuid, values);
+        }
+        parse(type, value, values);
+        // filter to avoid too large values blocking the UI
+        for (int i = 0; i < count; i++) {
+          if (values[i] > MAX_VALUE) {
+            values[i] = MAX_VALUE;
+          } else if (values[i] < MIN_VALUE) {
+            values[i] = MIN_VALUE;
           }
         }
+        // delivering to listener(s)
+        for (Listener l : listeners) {
+          l.onValuesUpdated(values);
+        }
       }
     }
   }
 
-  private static double[] parse(ValueType valueType, byte[] value) {
-    if (ValueType.UINT8.equals(valueType)) {
-      if (value.length < 1) {
-        return null;
-      }
-      final ByteBuffer buffer = ByteBuffer.allocate(4);
-      buffer.put((byte) 0);
-      buffer.put((byte) 0);
-      buffer.put((byte) 0);
-      buffer.put(value[0]);
-      buffer.position(0);
-      return new double[] {buffer.getInt()};
-    }
-    if (ValueType.UINT16.equals(valueType)) {
-      if (value.length < 2) {
-        return null;
-      }
-      final ByteBuffer buffer = ByteBuffer.allocate(4);
-      buffer.put((byte) 0);
-      buffer.put((byte) 0);
-      buffer.put(value[1]);
-      buffer.put(value[0]);
-      buffer.position(0);
-      return new double[] {buffer.getInt()};
-    }
-    if (ValueType.UINT32.equals(valueType)) {
-      if (value.length < 4) {
-        return null;
-      }
-      final ByteBuffer buffer = ByteBuffer.allocate(8);
-      buffer.put((byte) 0);
-      buffer.put((byte) 0);
-      buffer.put((byte) 0);
-      buffer.put((byte) 0);
-      buffer.put(value[3]);
-      buffer.put(value[2]);
-      buffer.put(value[1]);
-      buffer.put(value[0]);
-      buffer.position(0);
-      return new double[] {buffer.getLong()};
-    }
-    if (ValueType.SFLOAT.equals(valueType)) {
-      if (value.length < 4) {
-        return null;
-      }
-      final ByteBuffer buffer = ByteBuffer.allocate(4);
-      buffer.put(value[3]);
-      buffer.put(value[2]);
-      buffer.put(value[1]);
-      buffer.put(value[0]);
-      buffer.position(0);
-      return new double[] {buffer.getFloat()};
+  /**
+   * @return how many values {@link #parse} decodes from a characteristic value of {@code
+   *     byteCount} bytes, or -1 if that is too short to hold a value of the given type.
+   */
+  @VisibleForTesting
+  static int getValueCount(ValueType valueType, int byteCount) {
+    switch (valueType) {
+      case UINT8:
+        return byteCount < 1 ? -1 : 1;
+      case UINT16:
+        return byteCount < 2 ? -1 : 1;
+      case UINT32:
+      case SFLOAT:
+        return byteCount < 4 ? -1 : 1;
+      case SFLOAT_ARR:
+        return byteCount / 4;
+      default:
+        return -1;
     }
-    if (ValueType.SFLOAT_ARR.equals(valueType)) {
-      final int size = value.length / 4;
-      final double[] array = new double[size];
-      final ByteBuffer buffer = ByteBuffer.allocate(4);
-      for (int i = 0; i < size; i++) {
-        final int offset = 4 * i;
-        buffer.position(0);
-        buffer.put(value[3 + offset]);
-        buffer.put(value[2 + offset]);
-        buffer.put(value[1 + offset]);
-        buffer.put(value[offset]);
-        buffer.position(0);
-        array[i] = buffer.getFloat();
-      }
-      return array;
+  }
+
+  /**
+   * Decodes a little-endian characteristic value into {@code out}, which must have room for {@link
+   * #getValueCount} values.
+   */
+  @VisibleForTesting
+  static void parse(ValueType valueType, byte[] value, double[] out) {
+    switch (valueType) {
+      case UINT8:
+        out[0] = value[0] & 0xFF;
+        break;
+      case UINT16:
+        out[0] = (value[0] & 0xFF) | (value[1] & 0xFF) << 8;
+        break;
+      case UINT32:
+        out[0] = getUint32(value, 0);
+        break;
+      case SFLOAT:
+        out[0] = Float.intBitsToFloat(getInt32(value, 0));
+        break;
+      case SFLOAT_ARR:
+        final int size = value.length / 4;
+        for (int i = 0; i < size; i++) {
+          out[i] = Float.intBitsToFloat(getInt32(value, 4 * i));
+        }
+        break;
     }
-    return null;
   }
 
-  private enum ValueType {
+  private static int getInt32(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF)
+        | (bytes[offset + 1] & 0xFF) << 8
+        | (bytes[offset + 2] & 0xFF) << 16
+        | (bytes[offset + 3] & 0xFF) << 24;
+  }
+
+  private static long getUint32(byte[] bytes, int offset) {
+    return getInt32(bytes, offset) & 0xFFFFFFFFL;
+  }
+
+  @VisibleForTesting
+  enum ValueType {
     UINT8,
     UINT16,
     UINT32,
@@ -425,6 +420,10 @@ public class MkrSciBleManager {
   public interface Listener {
     void onFirmwareVersion(long firmwareVersion);
 
+    /**
+     * @param values the decoded values. The array is reused for the characteristic's next
+     *     notification, so copy it if the values are needed after this call returns.
+     */
     void onValuesUpdated(double[] values);
   }
 }
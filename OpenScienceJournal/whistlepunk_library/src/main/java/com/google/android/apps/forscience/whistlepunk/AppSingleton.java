@@ -32,7 +32,11 @@ import com.google.android.apps.forscience.whistlepunk.filemetadata.Label;
 import com.google.android.apps.forscience.whistlepunk.filemetadata.LocalSyncManager;
 import com.google.android.apps.forscience.whistlepunk.metadata.SimpleMetaDataManager;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorEnvironment;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ColumnarSensorDatabase;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarWriteBuffer;
+import com.google.android.apps.forscience.whistlepunk.sensordb.SensorDatabase;
 import com.google.android.apps.forscience.whistlepunk.sensordb.SensorDatabaseImpl;
+import com.google.android.apps.forscience.whistlepunk.sensors.HandlerScheduler;
 import com.google.android.apps.forscience.whistlepunk.sensors.VelocitySensor;
 import com.google.common.base.Optional;
 import io.reactivex.Maybe;
@@ -41,6 +45,7 @@ import io.reactivex.Observer;
 import io.reactivex.Single;
 import io.reactivex.subjects.BehaviorSubject;
 import io.reactivex.subjects.PublishSubject;
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executor;
@@ -48,6 +53,7 @@ import java.util.concurrent.Executors;
 
 public class AppSingleton {
   private static final String SENSOR_DATABASE_NAME = "sensors.db";
+  private static final String SENSOR_DATA_DIRECTORY = "sensor_data";
   private static final String TAG = "AppSingleton";
   private static AppSingleton instance;
   private final Context applicationContext;
@@ -57,6 +63,8 @@ public class AppSingleton {
       new HashMap<>();
 
   private static Executor uiThreadExecutor = null;
+  private static Executor uiFrameExecutor = null;
+  private static HandlerScheduler sensorIngestScheduler = null;
   private final Map<AppAccount, SensorAppearanceProviderImpl> sensorAppearanceProviders =
       new HashMap<>();
   private final Clock currentTimeClock = new CurrentTimeClock();
@@ -100,6 +108,11 @@ public class AppSingleton {
         public Single<BleClient> getConnectedBleClient() {
           return AppSingleton.this.getConnectedBleClient();
         }
+
+        @Override
+        public HandlerScheduler getIngestScheduler() {
+          return getSensorIngestScheduler();
+        }
       };
   private DeletedLabel deletedLabel;
   private boolean mostRecentOpenWasImport = false;
@@ -126,6 +139,28 @@ public class AppSingleton {
     return uiThreadExecutor;
   }
 
+  /**
+   * Returns the scheduler that sensors use to poll and process their data off the UI thread. All of
+   * it runs on one shared background thread.
+   */
+  public static synchronized HandlerScheduler getSensorIngestScheduler() {
+    if (sensorIngestScheduler == null) {
+      sensorIngestScheduler = HandlerScheduler.onNewThread("SensorIngest");
+    }
+    return sensorIngestScheduler;
+  }
+
+  /**
+   * Returns an executor that runs tasks on the main thread once per display frame. Prefer this to
+   * {@link #getUiThreadExecutor()} for work that arrives faster than the screen can show it.
+   */
+  public static Executor getUiFrameExecutor() {
+    if (uiFrameExecutor == null) {
+      uiFrameExecutor = new FrameExecutor();
+    }
+    return uiFrameExecutor;
+  }
+
   public static AppSingleton getInstance(Context context) {
     if (instance == null) {
       instance = new AppSingleton(context);
@@ -149,19 +184,33 @@ public class AppSingleton {
           new DataControllerImpl(
               applicationContext,
               appAccount,
-              new SensorDatabaseImpl(applicationContext, appAccount, SENSOR_DATABASE_NAME),
+              createSensorDatabase(appAccount),
               getUiThreadExecutor(),
               Executors.newSingleThreadExecutor(),
               Executors.newSingleThreadExecutor(),
               new SimpleMetaDataManager(applicationContext, appAccount),
               getDefaultClock(),
               getExternalSensorProviders(),
-              getSensorConnector());
+              getSensorConnector(),
+              ScalarWriteBuffer.groupCommit(getDefaultClock()),
+              // Only used to hand timed drains over to the sensor data thread.
+              getSensorIngestScheduler());
       dataControllers.put(appAccount, dataController);
     }
     return dataController;
   }
 
+  private SensorDatabase createSensorDatabase(AppAccount appAccount) {
+    SensorDatabaseImpl sqliteDatabase =
+        new SensorDatabaseImpl(applicationContext, appAccount, SENSOR_DATABASE_NAME);
+    if (Flags.useColumnarSensorStorage()) {
+      // Migrates and then deletes the SQLite database on first use.
+      return new ColumnarSensorDatabase(
+          new File(appAccount.getFilesDir(), SENSOR_DATA_DIRECTORY), sqliteDatabase);
+    }
+    return sqliteDatabase;
+  }
+
   public SensorAppearanceProvider getSensorAppearanceProvider(AppAccount appAccount) {
     SensorAppearanceProviderImpl sensorAppearanceProvider =
         sensorAppearanceProviders.get(appAccount);
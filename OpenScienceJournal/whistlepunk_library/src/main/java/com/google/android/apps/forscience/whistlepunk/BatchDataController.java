@@ -17,17 +17,38 @@
 package com.google.android.apps.forscience.whistlepunk;
 
 import com.google.android.apps.forscience.javalib.FailureListener;
+import com.google.android.apps.forscience.javalib.MaybeConsumer;
+import com.google.android.apps.forscience.javalib.Success;
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Collects readings into a {@link ScalarReadingBatch} and hands each full batch to the wrapped
+ * controller in one call. Batches come back through {@link ScalarReadingBatch#release} once they
+ * have been written, so a long import reuses the same few batches instead of allocating per row.
+ *
+ * <p>Once {@code MAX_BATCHES_IN_FLIGHT} batches are waiting to be written, adding readings blocks
+ * until one comes back, so an import can't get arbitrarily far ahead of the database.
+ */
 public class BatchDataController implements RecordingDataController, Closeable {
+  private static final int MAX_BATCH_SIZE = 10000;
+  private static final int MAX_BATCHES_IN_FLIGHT = 3;
+  // If the wrapped controller is slow to release batches, allocate another rather than stall.
+  private static final long MAX_BATCH_WAIT_MILLIS = 5000;
+
   private RecordingDataController dataController;
-  private List<BatchInsertScalarReading> readings = new ArrayList<>();
+  // Batches are released on the data thread, and reused on the thread adding readings.
+  private final BlockingQueue<ScalarReadingBatch> spareBatches = new LinkedBlockingQueue<>();
+  private int batchesCreated = 0;
+  private ScalarReadingBatch batch;
 
   public BatchDataController(RecordingDataController dataController) {
     this.dataController = dataController;
+    batch = obtainBatch();
   }
 
   public void addScalarReading(
@@ -36,10 +57,9 @@ public class BatchDataController implements RecordingDataController, Closeable {
       final int resolutionTier,
       long timestampMillis,
       double value) {
-    readings.add(
-        new BatchInsertScalarReading(trialId, sensorId, resolutionTier, timestampMillis, value));
+    batch.add(trialId, sensorId, resolutionTier, timestampMillis, value);
 
-    if (readings.size() > 10000) {
+    if (batch.size() >= MAX_BATCH_SIZE) {
       flushScalarReadings();
     }
   }
@@ -49,9 +69,40 @@ public class BatchDataController implements RecordingDataController, Closeable {
     dataController.addScalarReadings(readings);
   }
 
-  public void flushScalarReadings() {
+  @Override
+  public void addScalarReadings(ScalarReadingBatch readings) {
     dataController.addScalarReadings(readings);
-    readings = new ArrayList<>();
+  }
+
+  @Override
+  public void flushScalarReadings() {
+    if (batch.size() == 0) {
+      return;
+    }
+    dataController.addScalarReadings(batch);
+    batch = obtainBatch();
+  }
+
+  @Override
+  public void flushScalarReadings(MaybeConsumer<Success> onFlushed) {
+    flushScalarReadings();
+    dataController.flushScalarReadings(onFlushed);
+  }
+
+  private ScalarReadingBatch obtainBatch() {
+    ScalarReadingBatch spare = spareBatches.poll();
+    if (spare == null && batchesCreated >= MAX_BATCHES_IN_FLIGHT) {
+      try {
+        spare = spareBatches.poll(MAX_BATCH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (spare != null) {
+      return spare;
+    }
+    batchesCreated++;
+    return new ScalarReadingBatch(MAX_BATCH_SIZE, spareBatches::add);
   }
 
   /**
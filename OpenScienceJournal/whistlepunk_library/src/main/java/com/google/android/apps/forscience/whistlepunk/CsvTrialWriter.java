@@ -0,0 +1,246 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import androidx.annotation.VisibleForTesting;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the readings of a trial as CSV, with a timestamp column followed by one column per sensor
+ * and one row per timestamp. Readings must be added in timestamp order.
+ *
+ * <p>Rows are assembled in arrays indexed by column and formatted straight into a large character
+ * buffer, so that writing a row doesn't allocate, and the underlying writer is only written to when
+ * the buffer is full.
+ */
+class CsvTrialWriter implements Closeable {
+  @VisibleForTesting static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  // Values smaller than this with at most MAX_DECIMALS decimal places are formatted directly.
+  // Anything else falls back to Double.toString.
+  private static final double MAX_DIRECT_VALUE = 1e9;
+  private static final int MAX_DECIMALS = 9;
+  private static final long MAX_EXACT_LONG = 1L << 53;
+
+  private final Writer out;
+  private final String[] sensorIds;
+  private final boolean relativeTime;
+  private final char[] buffer;
+  private final char[] scratch = new char[24];
+  private int position = 0;
+
+  private final double[] values;
+  private final boolean[] hasValue;
+  private int lastColumn = 0;
+  private long rowTimestamp;
+  private boolean rowStarted = false;
+  private long firstTimestamp = -1;
+
+  CsvTrialWriter(Writer out, String[] sensorIds, boolean relativeTime) {
+    this(out, sensorIds, relativeTime, DEFAULT_BUFFER_SIZE);
+  }
+
+  @VisibleForTesting
+  CsvTrialWriter(Writer out, String[] sensorIds, boolean relativeTime, int bufferSize) {
+    this.out = out;
+    this.sensorIds = sensorIds;
+    this.relativeTime = relativeTime;
+    buffer = new char[bufferSize];
+    values = new double[sensorIds.length];
+    hasValue = new boolean[sensorIds.length];
+  }
+
+  /** Writes the row of column names. */
+  void writeHeader() throws IOException {
+    append(relativeTime ? "relative_time" : "timestamp");
+    for (String sensorId : sensorIds) {
+      append(',');
+      append(sensorId.replace(",", "_"));
+    }
+    append('\n');
+  }
+
+  /**
+   * Adds a reading to the row for its timestamp, first writing out the previous row if the reading
+   * starts a new one. Readings from sensors that aren't being written are ignored.
+   */
+  void addReading(long timestamp, String sensorId, double value) throws IOException {
+    if (rowStarted && timestamp != rowTimestamp) {
+      finishRow();
+    }
+    if (!rowStarted) {
+      rowStarted = true;
+      rowTimestamp = timestamp;
+      if (firstTimestamp == -1) {
+        firstTimestamp = timestamp;
+      }
+    }
+    int column = getColumn(sensorId);
+    if (column >= 0) {
+      values[column] = value;
+      hasValue[column] = true;
+    }
+  }
+
+  /** Writes out the current row, if there is one. */
+  void finishRow() throws IOException {
+    if (!rowStarted) {
+      return;
+    }
+    appendLong(relativeTime ? rowTimestamp - firstTimestamp : rowTimestamp);
+    for (int column = 0; column < values.length; column++) {
+      append(',');
+      if (hasValue[column]) {
+        appendDouble(values[column]);
+        hasValue[column] = false;
+      }
+    }
+    append('\n');
+    rowStarted = false;
+  }
+
+  /** Writes out the current row and anything still buffered, and closes the underlying writer. */
+  @Override
+  public void close() throws IOException {
+    try {
+      finishRow();
+      flushBuffer();
+    } finally {
+      out.close();
+    }
+  }
+
+  private int getColumn(String sensorId) {
+    // Readings usually come from the same sensor as the last one, or the next one along.
+    int length = sensorIds.length;
+    for (int i = 0; i < length; i++) {
+      int column = (lastColumn + i) % length;
+      if (sensorIds[column].equals(sensorId)) {
+        lastColumn = column;
+        return column;
+      }
+    }
+    return -1;
+  }
+
+  @VisibleForTesting
+  void appendDouble(double value) throws IOException {
+    if (value == 0) {
+      append("0.0");
+      return;
+    }
+    if (Math.abs(value) < MAX_DIRECT_VALUE) {
+      // Find the fewest decimal places that represent the value exactly. Since the scaled value
+      // and the power of ten are both exact doubles, the division is correctly rounded, and so the
+      // decimal written parses back to exactly the same double.
+      long scale = 1;
+      for (int decimals = 0; decimals <= MAX_DECIMALS; decimals++, scale *= 10) {
+        long scaled = Math.round(value * scale);
+        if (Math.abs(scaled) <= MAX_EXACT_LONG && scaled / (double) scale == value) {
+          appendDecimal(scaled, decimals);
+          return;
+        }
+      }
+    }
+    append(Double.toString(value));
+  }
+
+  /** Appends scaled / 10^decimals, always with at least one decimal place like Double.toString. */
+  private void appendDecimal(long scaled, int decimals) throws IOException {
+    long magnitude = Math.abs(scaled);
+    int start = scratch.length;
+    if (decimals == 0) {
+      scratch[--start] = '0';
+      scratch[--start] = '.';
+    }
+    for (int i = 0; i < decimals; i++) {
+      scratch[--start] = (char) ('0' + magnitude % 10);
+      magnitude /= 10;
+    }
+    if (decimals > 0) {
+      scratch[--start] = '.';
+    }
+    start = appendDigits(magnitude, start);
+    if (scaled < 0) {
+      scratch[--start] = '-';
+    }
+    append(scratch, start, scratch.length - start);
+  }
+
+  private void appendLong(long value) throws IOException {
+    if (value == Long.MIN_VALUE) {
+      append(Long.toString(value));
+      return;
+    }
+    int start = appendDigits(Math.abs(value), scratch.length);
+    if (value < 0) {
+      scratch[--start] = '-';
+    }
+    append(scratch, start, scratch.length - start);
+  }
+
+  /** Writes the digits of a non-negative number into scratch, ending before end. */
+  private int appendDigits(long magnitude, int end) {
+    int start = end;
+    do {
+      scratch[--start] = (char) ('0' + magnitude % 10);
+      magnitude /= 10;
+    } while (magnitude > 0);
+    return start;
+  }
+
+  private void append(char c) throws IOException {
+    if (position == buffer.length) {
+      flushBuffer();
+    }
+    buffer[position++] = c;
+  }
+
+  private void append(String s) throws IOException {
+    int length = s.length();
+    if (position + length > buffer.length) {
+      flushBuffer();
+      if (length > buffer.length) {
+        out.write(s);
+        return;
+      }
+    }
+    s.getChars(0, length, buffer, position);
+    position += length;
+  }
+
+  private void append(char[] chars, int offset, int length) throws IOException {
+    if (position + length > buffer.length) {
+      flushBuffer();
+      if (length > buffer.length) {
+        out.write(chars, offset, length);
+        return;
+      }
+    }
+    System.arraycopy(chars, offset, buffer, position, length);
+    position += length;
+  }
+
+  private void flushBuffer() throws IOException {
+    if (position > 0) {
+      out.write(buffer, 0, position);
+      position = 0;
+    }
+  }
+}
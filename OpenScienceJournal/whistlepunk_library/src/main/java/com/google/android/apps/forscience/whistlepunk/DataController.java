@@ -31,6 +31,7 @@ import com.google.android.apps.forscience.whistlepunk.metadata.ExternalSensorSpe
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingChunkConsumer;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
 import io.reactivex.Observable;
@@ -53,6 +54,21 @@ public interface DataController {
       int maxRecords,
       MaybeConsumer<ScalarReadingList> onSuccess);
 
+  /**
+   * Loads all of a sensor's readings in the time range in one pass on the sensor data thread, and
+   * hands them to {@code onChunk} on the UI thread in order, in chunks of up to {@code chunkSize}
+   * readings. Once {@code onChunk} returns false no more chunks are delivered, and the load stops
+   * early. {@code onSuccess} is called after the last chunk.
+   */
+  void getScalarReadingChunks(
+      String trialId,
+      String databaseTag,
+      int resolutionTier,
+      TimeRange timeRange,
+      int chunkSize,
+      ScalarReadingChunkConsumer onChunk,
+      MaybeConsumer<Success> onSuccess);
+
   // TODO: refactor to remove the interface inconsistency here.
 
   /** Unlike all other DataController methods, this one calls onSuccess on the background thread. */
@@ -60,9 +76,24 @@ public interface DataController {
       GoosciExperiment.Experiment experiment,
       final MaybeConsumer<GoosciScalarSensorData.ScalarSensorData> onSuccess);
 
+  /**
+   * Writes the serialized {@link GoosciScalarSensorData.ScalarSensorData} for {@code experiment}
+   * to {@code file} without building it in memory. Like {@link
+   * #getScalarReadingProtosInBackground}, calls onSuccess on the background thread.
+   */
+  void writeScalarReadingProtosInBackground(
+      GoosciExperiment.Experiment experiment, File file, MaybeConsumer<File> onSuccess);
+
   Observable<ScalarReading> createScalarObservable(
       String trialId, String[] sensorIds, TimeRange timeRange, final int resolutionTier);
 
+  /**
+   * Like {@link #createScalarObservable}, but emits the readings in batches of primitive columns
+   * rather than as one object per reading.
+   */
+  Observable<ScalarReadingBatch> createScalarBatchObservable(
+      String trialId, String[] sensorIds, TimeRange timeRange, int resolutionTier);
+
   void deleteTrialData(Trial trial, MaybeConsumer<Success> onSuccess);
 
   void createExperiment(MaybeConsumer<Experiment> onSuccess);
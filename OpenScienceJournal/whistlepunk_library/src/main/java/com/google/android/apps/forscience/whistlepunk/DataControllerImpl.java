@@ -20,10 +20,13 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.net.Uri;
 import android.util.Log;
+import androidx.annotation.Nullable;
 import com.google.android.apps.forscience.javalib.Consumer;
+import com.google.android.apps.forscience.javalib.Delay;
 import com.google.android.apps.forscience.javalib.FailureListener;
 import com.google.android.apps.forscience.javalib.MaybeConsumer;
 import com.google.android.apps.forscience.javalib.MaybeConsumers;
+import com.google.android.apps.forscience.javalib.Scheduler;
 import com.google.android.apps.forscience.javalib.Success;
 import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
 import com.google.android.apps.forscience.whistlepunk.api.scalarinput.InputDeviceSpec;
@@ -40,25 +43,33 @@ import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataDump;
 import com.google.android.apps.forscience.whistlepunk.metadata.MetaDataManager;
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartTileCache;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensorDumpReader;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingChunkConsumer;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarWriteBuffer;
 import com.google.android.apps.forscience.whistlepunk.sensordb.SensorDatabase;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Range;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.schedulers.Schedulers;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DataControllerImpl implements DataController, RecordingDataController {
   private static final String TAG = "DataControllerImpl";
@@ -75,6 +86,14 @@ public class DataControllerImpl implements DataController, RecordingDataControll
   private long prevLabelTimestamp = 0;
   private Map<String, WeakReference<Experiment>> cachedExperiments = new HashMap<>();
   private ConnectableSensor.Connector connector;
+  private final ScalarWriteBuffer writeBuffer;
+  @Nullable private final Scheduler drainScheduler;
+  private final Runnable drainWriteBuffer = this::drainWriteBuffer;
+  private final Runnable flushWriteBuffer = this::flushWriteBuffer;
+  private final Runnable timedDrainWriteBuffer = () -> sensorDataThread.execute(drainWriteBuffer);
+  // A write that failed since the last flush that reports failures. Only touched on
+  // sensorDataThread.
+  @Nullable private Exception unreportedWriteFailure;
 
   public DataControllerImpl(
       Context context,
@@ -87,6 +106,41 @@ public class DataControllerImpl implements DataController, RecordingDataControll
       Clock clock,
       Map<String, SensorProvider> providerMap,
       ConnectableSensor.Connector connector) {
+    this(
+        context,
+        appAccount,
+        sensorDatabase,
+        uiThread,
+        metaDataThread,
+        sensorDataThread,
+        metaDataManager,
+        clock,
+        providerMap,
+        connector,
+        ScalarWriteBuffer.writeThrough(clock),
+        null);
+  }
+
+  /**
+   * @param writeBuffer buffers readings from {@link #addScalarReading} until they are written to
+   *     {@code sensorDatabase} on {@code sensorDataThread}.
+   * @param drainScheduler schedules a drain of {@code writeBuffer} once its readings have waited
+   *     long enough, in case no more arrive. May be null for a write-through buffer, which never
+   *     holds readings back.
+   */
+  public DataControllerImpl(
+      Context context,
+      AppAccount appAccount,
+      SensorDatabase sensorDatabase,
+      Executor uiThread,
+      Executor metaDataThread,
+      Executor sensorDataThread,
+      MetaDataManager metaDataManager,
+      Clock clock,
+      Map<String, SensorProvider> providerMap,
+      ConnectableSensor.Connector connector,
+      ScalarWriteBuffer writeBuffer,
+      @Nullable Scheduler drainScheduler) {
     this.context = context;
     this.appAccount = appAccount;
     this.sensorDatabase = sensorDatabase;
@@ -97,6 +151,8 @@ public class DataControllerImpl implements DataController, RecordingDataControll
     this.clock = clock;
     this.providerMap = providerMap;
     this.connector = connector;
+    this.writeBuffer = writeBuffer;
+    this.drainScheduler = drainScheduler;
   }
 
   public void replaceSensorInExperiment(
@@ -149,9 +205,11 @@ public class DataControllerImpl implements DataController, RecordingDataControll
             return;
           }
           TimeRange times = TimeRange.oldest(Range.closed(firstTimestamp, lastTimestamp));
+          drainWriteBuffer();
           for (String tag : trial.getSensorIds()) {
             sensorDatabase.deleteScalarReadings(trial.getTrialId(), tag, times);
           }
+          ChartTileCache.getInstance().invalidate(trial.getTrialId());
         });
   }
 
@@ -162,8 +220,10 @@ public class DataControllerImpl implements DataController, RecordingDataControll
           @Override
           public void run() {
             try {
+              drainWriteBuffer();
               sensorDatabase.addScalarReadings(readings);
             } catch (final Exception e) {
+              unreportedWriteFailure = e;
               uiThread.execute(
                   new Runnable() {
                     @Override
@@ -176,6 +236,22 @@ public class DataControllerImpl implements DataController, RecordingDataControll
         });
   }
 
+  @Override
+  public void addScalarReadings(ScalarReadingBatch readings) {
+    sensorDataThread.execute(
+        () -> {
+          try {
+            drainWriteBuffer();
+            sensorDatabase.addScalarReadings(readings);
+          } catch (final Exception e) {
+            unreportedWriteFailure = e;
+            uiThread.execute(() -> notifyFailureListener("batchImport", e));
+          } finally {
+            readings.release();
+          }
+        });
+  }
+
   @Override
   public void addScalarReading(
       final String trialId,
@@ -183,26 +259,93 @@ public class DataControllerImpl implements DataController, RecordingDataControll
       final int resolutionTier,
       final long timestampMillis,
       final double value) {
+    if (writeBuffer.add(trialId, sensorId, resolutionTier, timestampMillis, value)) {
+      sensorDataThread.execute(drainWriteBuffer);
+    } else if (drainScheduler != null && writeBuffer.claimTimedDrain()) {
+      // The sensor may stall before the buffer asks for a drain, so don't wait on it forever.
+      drainScheduler.schedule(
+          Delay.millis(writeBuffer.getMaxLatencyMillis()), timedDrainWriteBuffer);
+    }
+  }
+
+  @Override
+  public void flushScalarReadings() {
+    // Keeps producers from scheduling drains of their own until this one runs.
+    writeBuffer.requestFlush();
+    // Posted even if nothing is buffered, because earlier drains may have left readings that the
+    // database only keeps in memory until it is flushed.
+    sensorDataThread.execute(flushWriteBuffer);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Reports a failure if any write failed since the last call to this method, which may include
+   * writes from other callers.
+   */
+  @Override
+  public void flushScalarReadings(MaybeConsumer<Success> onFlushed) {
+    writeBuffer.requestFlush();
     sensorDataThread.execute(
-        new Runnable() {
-          @Override
-          public void run() {
-            try {
-              sensorDatabase.addScalarReading(
-                  trialId, sensorId, resolutionTier, timestampMillis, value);
-            } catch (final Exception e) {
-              uiThread.execute(
-                  new Runnable() {
-                    @Override
-                    public void run() {
-                      notifyFailureListener(sensorId, e);
-                    }
-                  });
-            }
+        () -> {
+          flushWriteBuffer();
+          Exception failure = unreportedWriteFailure;
+          unreportedWriteFailure = null;
+          if (failure == null) {
+            onFlushed.success(Success.SUCCESS);
+          } else {
+            onFlushed.fail(new IOException("Could not write sensor data", failure));
           }
         });
   }
 
+  /** Writes any buffered readings and makes them durable. Must be called on sensorDataThread. */
+  private void flushWriteBuffer() {
+    drainWriteBuffer();
+    try {
+      sensorDatabase.flush();
+    } catch (Exception e) {
+      unreportedWriteFailure = e;
+      // Any sensor could have had readings in the lost writes.
+      uiThread.execute(
+          () -> {
+            for (FailureListener listener : new ArrayList<>(sensorFailureListeners.values())) {
+              listener.fail(e);
+            }
+          });
+    }
+  }
+
+  /**
+   * Writes any buffered readings. Must be called on sensorDataThread, including before any read,
+   * so that reads always see earlier writes.
+   */
+  private void drainWriteBuffer() {
+    writeBuffer.drainTo(
+        sensorDatabase,
+        (sensorId, e) -> {
+          unreportedWriteFailure = e;
+          uiThread.execute(() -> notifyFailureListener(sensorId, e));
+        });
+  }
+
+  /**
+   * Drains the write buffer on sensorDataThread and waits for it, so that a read from another
+   * thread sees all earlier writes. Must not be called on sensorDataThread.
+   */
+  private void awaitWriteBufferDrained() throws IOException {
+    FutureTask<Void> drained = new FutureTask<>(drainWriteBuffer, null);
+    sensorDataThread.execute(drained);
+    try {
+      drained.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing sensor data", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not write sensor data", e.getCause());
+    }
+  }
+
   private void notifyFailureListener(String sensorId, Exception e) {
     FailureListener listener = sensorFailureListeners.get(sensorId);
     if (listener != null) {
@@ -225,12 +368,49 @@ public class DataControllerImpl implements DataController, RecordingDataControll
         new Callable<ScalarReadingList>() {
           @Override
           public ScalarReadingList call() throws Exception {
+            drainWriteBuffer();
             return sensorDatabase.getScalarReadings(
                 trialId, databaseTag, timeRange, resolutionTier, maxRecords);
           }
         });
   }
 
+  @Override
+  public void getScalarReadingChunks(
+      final String trialId,
+      final String databaseTag,
+      final int resolutionTier,
+      final TimeRange timeRange,
+      final int chunkSize,
+      final ScalarReadingChunkConsumer onChunk,
+      final MaybeConsumer<Success> onSuccess) {
+    Preconditions.checkNotNull(databaseTag);
+    // Set on the UI thread once onChunk turns chunks down, and checked on the data thread.
+    AtomicBoolean stopped = new AtomicBoolean(false);
+    background(
+        sensorDataThread,
+        onSuccess,
+        () -> {
+          drainWriteBuffer();
+          sensorDatabase.readScalarReadingChunks(
+              trialId,
+              databaseTag,
+              timeRange,
+              resolutionTier,
+              chunkSize,
+              chunk -> {
+                uiThread.execute(
+                    () -> {
+                      if (!stopped.get() && !onChunk.take(chunk)) {
+                        stopped.set(true);
+                      }
+                    });
+                return !stopped.get();
+              });
+          return Success.SUCCESS;
+        });
+  }
+
   @Override
   public void getScalarReadingProtosInBackground(
       GoosciExperiment.Experiment experiment,
@@ -238,18 +418,51 @@ public class DataControllerImpl implements DataController, RecordingDataControll
     Preconditions.checkNotNull(experiment);
     sensorDataThread.execute(
         () -> {
+          drainWriteBuffer();
           onSuccess.success(sensorDatabase.getScalarReadingProtos(experiment));
         });
   }
 
+  @Override
+  public void writeScalarReadingProtosInBackground(
+      GoosciExperiment.Experiment experiment, File file, MaybeConsumer<File> onSuccess) {
+    Preconditions.checkNotNull(experiment);
+    sensorDataThread.execute(
+        () -> {
+          drainWriteBuffer();
+          try (FileOutputStream stream = new FileOutputStream(file)) {
+            sensorDatabase.writeScalarReadingProtos(experiment, null, stream);
+          } catch (Exception e) {
+            onSuccess.fail(e);
+            return;
+          }
+          onSuccess.success(file);
+        });
+  }
+
   @Override
   public Observable<ScalarReading> createScalarObservable(
       final String trialId,
       final String[] sensorIds,
       final TimeRange timeRange,
       final int resolutionTier) {
-    return sensorDatabase
-        .createScalarObservable(trialId, sensorIds, timeRange, resolutionTier)
+    // Drain on the data thread before querying, so the query sees all earlier writes.
+    return Completable.fromRunnable(drainWriteBuffer)
+        .subscribeOn(Schedulers.from(sensorDataThread))
+        .andThen(
+            sensorDatabase.createScalarObservable(trialId, sensorIds, timeRange, resolutionTier))
+        .observeOn(Schedulers.from(sensorDataThread));
+  }
+
+  @Override
+  public Observable<ScalarReadingBatch> createScalarBatchObservable(
+      String trialId, String[] sensorIds, TimeRange timeRange, int resolutionTier) {
+    // Drain on the data thread before querying, so the query sees all earlier writes.
+    return Completable.fromRunnable(drainWriteBuffer)
+        .subscribeOn(Schedulers.from(sensorDataThread))
+        .andThen(
+            sensorDatabase.createScalarBatchObservable(
+                trialId, sensorIds, timeRange, resolutionTier))
         .observeOn(Schedulers.from(sensorDataThread));
   }
 
@@ -952,6 +1165,7 @@ public class DataControllerImpl implements DataController, RecordingDataControll
       metaDataManager.moveExperimentToAnotherAccount(experiment, targetAccount);
 
       // Move scalar sensor data.
+      awaitWriteBufferDrained();
       List<ScalarSensorDataDump> scalarSensorData =
           sensorDatabase.getScalarReadingProtosAsList(experiment.getExperimentProto());
       ScalarSensorDumpReader scalarSensorDumpReader =
@@ -985,18 +1199,17 @@ public class DataControllerImpl implements DataController, RecordingDataControll
                     new Callable<File>() {
                       @Override
                       public File call() throws Exception {
-                        GoosciScalarSensorData.ScalarSensorData proto =
-                            sensorDatabase.getScalarReadingProtosForTrial(
-                                experiment.getExperimentProto(), trialId);
                         File sensorProtoFile =
                             new File(
                                 FileMetadataUtil.getInstance()
                                     .getExperimentDirectory(
                                         appAccount, experiment.getExperimentId()),
                                 FileMetadataUtil.getInstance().getTrialProtoFileName(trialId));
+                        awaitWriteBufferDrained();
                         try (FileOutputStream sensorStream =
                             new FileOutputStream(sensorProtoFile)) {
-                          proto.writeTo(sensorStream);
+                          sensorDatabase.writeScalarReadingProtos(
+                              experiment.getExperimentProto(), trialId, sensorStream);
                           return sensorProtoFile;
                         } catch (IOException ioException) {
                           return null;
@@ -36,12 +36,12 @@ import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.FileProvider;
-import androidx.collection.ArrayMap;
 import android.util.Log;
 import com.google.android.apps.forscience.javalib.MaybeConsumer;
 import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
@@ -52,7 +52,6 @@ import com.google.android.apps.forscience.whistlepunk.filemetadata.Label;
 import com.google.android.apps.forscience.whistlepunk.filemetadata.Trial;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciLabel;
 import com.google.android.apps.forscience.whistlepunk.project.experiment.UpdateExperimentFragment;
-import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.common.base.Strings;
@@ -391,7 +390,7 @@ public class ExportService extends Service {
     // Start observing sensor data from here, while grouping them into timestamp equal rows.
     // Then write the rows out.
     Range<Long> range = Range.closed(trial.getFirstTimestamp(), trial.getLastTimestamp());
-    dc.createScalarObservable(trialId, sensorIds, TimeRange.oldest(range), 0 /* resolution
+    dc.createScalarBatchObservable(trialId, sensorIds, TimeRange.oldest(range), 0 /* resolution
         tier */)
         .doOnComplete(() -> stopSelf(startId))
         .observeOn(Schedulers.io())
@@ -885,19 +884,20 @@ public class ExportService extends Service {
     }
   }
 
-  private class TrialDataWriter implements Observer<ScalarReading> {
+  private class TrialDataWriter implements Observer<ScalarReadingBatch> {
+    // Progress is reported at most this often, and only when the percentage has changed.
+    private static final long PROGRESS_INTERVAL_MS = 100;
 
     private final long firstTimeStamp;
     private final long lastTimeStamp;
-    private long currentTimestamp = -1;
-    private long firstTimeStampWritten = -1;
 
-    private ArrayMap<String, Double> currentRow = new ArrayMap<>();
-    private OutputStreamWriter outputStreamWriter;
+    private CsvTrialWriter csvWriter;
     private final String fileName;
     private final boolean relativeTime;
     private final String[] sensorIds;
     private final String trialId;
+    private int lastProgress = 0;
+    private long lastProgressTimeMs = 0;
 
     public TrialDataWriter(
         String trialId,
@@ -937,42 +937,43 @@ public class ExportService extends Service {
         return;
       }
 
-      outputStreamWriter = new OutputStreamWriter(fs);
+      csvWriter = new CsvTrialWriter(new OutputStreamWriter(fs), sensorIds, relativeTime);
       try {
-        outputStreamWriter.write(relativeTime ? "relative_time" : "timestamp");
-        // Loop through sensor IDs and output them here as column names.
-        for (int index = 0, length = sensorIds.length; index < length; ++index) {
-          outputStreamWriter.write(",");
-          outputStreamWriter.write(sensorIds[index].replace(",", "_"));
-        }
-        outputStreamWriter.write("\n");
+        csvWriter.writeHeader();
       } catch (IOException e) {
         onError(e);
         return;
       }
+      lastProgressTimeMs = SystemClock.elapsedRealtime();
       updateProgress(new ExportProgress(trialId, ExportProgress.EXPORTING, 0));
     }
 
     @Override
-    public void onNext(ScalarReading scalarReading) {
-      // Check if we have a different timestamp than the current row.
-      if (scalarReading.getCollectedTimeMillis() != currentTimestamp) {
-        if (currentRow != null && currentTimestamp != -1) {
-          writeRow();
-        }
-        currentRow.clear();
+    public void onNext(ScalarReadingBatch batch) {
+      if (csvWriter == null || batch.size() == 0) {
+        // Writing already failed, or there is nothing to write.
+        return;
       }
-      // If not, just add to current row.
-      currentRow.put(scalarReading.getSensorTag(), scalarReading.getValue());
-      if (currentTimestamp == -1) {
-        firstTimeStampWritten = scalarReading.getCollectedTimeMillis();
+      try {
+        for (int i = 0; i < batch.size(); i++) {
+          csvWriter.addReading(
+              batch.getTimestampMillis(i), batch.getSensorId(i), batch.getValue(i));
+        }
+      } catch (IOException e) {
+        onError(e);
+        return;
       }
-      currentTimestamp = scalarReading.getCollectedTimeMillis();
+      long timestamp = batch.getTimestampMillis(batch.size() - 1);
       int progress =
-          (int)
-              (((currentTimestamp - firstTimeStamp) / (double) (lastTimeStamp - firstTimeStamp))
-                  * 100);
-      updateProgress(new ExportProgress(trialId, ExportProgress.EXPORTING, progress));
+          (int) (((timestamp - firstTimeStamp) / (double) (lastTimeStamp - firstTimeStamp)) * 100);
+      if (progress != lastProgress) {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastProgressTimeMs >= PROGRESS_INTERVAL_MS) {
+          lastProgress = progress;
+          lastProgressTimeMs = now;
+          updateProgress(new ExportProgress(trialId, ExportProgress.EXPORTING, progress));
+        }
+      }
     }
 
     @Override
@@ -984,51 +985,31 @@ public class ExportService extends Service {
 
     @Override
     public void onComplete() {
-      // Write the last row if necessary.
-      if (!currentRow.isEmpty()) {
-        writeRow();
+      if (csvWriter == null) {
+        // Writing already failed.
+        return;
       }
-
-      // End writing stream.
-      closeStreamIfNecessary();
-      updateProgress(ExportProgress.getComplete(trialId, getFileUri(fileName)));
-    }
-
-    private void writeRow() {
-      // If so, if current row, then write it out (the old one)!
+      // Write the last row and end writing stream.
       try {
-        if (outputStreamWriter == null) {
-          onError(new IllegalStateException("Output stream closed."));
-        }
-        outputStreamWriter.write(getTimestampString(currentTimestamp));
-        for (int index = 0, length = sensorIds.length; index < length; ++index) {
-          String value = "";
-          if (currentRow.containsKey(sensorIds[index])) {
-            value = Double.toString(currentRow.get(sensorIds[index]));
-          }
-          outputStreamWriter.write(",");
-          outputStreamWriter.write(value);
-        }
-        outputStreamWriter.write("\n");
+        csvWriter.close();
       } catch (IOException e) {
+        Log.e(TAG, "File close failed: " + e.toString());
         onError(e);
+        return;
+      } finally {
+        csvWriter = null;
       }
-    }
-
-    private String getTimestampString(long time) {
-      return Long.toString(relativeTime ? time - firstTimeStampWritten : time);
+      updateProgress(ExportProgress.getComplete(trialId, getFileUri(fileName)));
     }
 
     private void closeStreamIfNecessary() {
-      if (outputStreamWriter != null) {
+      if (csvWriter != null) {
         try {
-          outputStreamWriter.close();
+          csvWriter.close();
         } catch (IOException e) {
           Log.e(TAG, "File close failed: " + e.toString());
-          onError(e);
-          return;
         } finally {
-          outputStreamWriter = null;
+          csvWriter = null;
         }
       }
     }
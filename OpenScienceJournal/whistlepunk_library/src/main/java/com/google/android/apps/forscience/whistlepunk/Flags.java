@@ -30,6 +30,7 @@ public class Flags {
   private static boolean showTestingOptions = false;
   private static boolean showDrawOption = false;
   private static boolean showVelocityTrackerOption = false;
+  private static boolean useColumnarSensorStorage = false;
 
   private Flags() {} // uninstantiable
 
@@ -45,6 +46,10 @@ public class Flags {
     showTestingOptions = show;
   }
 
+  public static void setUseColumnarSensorStorage(boolean use) {
+    useColumnarSensorStorage = use;
+  }
+
   public static boolean showTestingOptions() {
     return showTestingOptions;
   }
@@ -56,4 +61,8 @@ public class Flags {
   public static boolean showVelocityTrackerOption() {
     return showVelocityTrackerOption;
   }
+
+  public static boolean useColumnarSensorStorage() {
+    return useColumnarSensorStorage;
+  }
 }
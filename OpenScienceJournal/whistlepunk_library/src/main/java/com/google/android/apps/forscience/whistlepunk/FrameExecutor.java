@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks on the main thread at the start of the next display frame, so that everything posted
+ * during one frame is handled together just before it is drawn.
+ *
+ * <p>Choreographer does not deliver frames while nothing is on screen, so a plain handler message
+ * is also posted as a fallback, to make sure that tasks still run (more slowly) in the background.
+ */
+public class FrameExecutor implements Executor, Choreographer.FrameCallback {
+  private static final long FALLBACK_DELAY_MILLIS = 100;
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final Runnable postFrameCallback = this::postFrameCallback;
+  private final Runnable fallback = this::runTasks;
+
+  @Override
+  public void execute(Runnable command) {
+    tasks.add(command);
+    if (scheduled.compareAndSet(false, true)) {
+      if (Looper.myLooper() == Looper.getMainLooper()) {
+        postFrameCallback();
+      } else {
+        // Choreographer is per-thread, so it has to be reached from the main thread.
+        handler.post(postFrameCallback);
+      }
+    }
+  }
+
+  @Override
+  public void doFrame(long frameTimeNanos) {
+    runTasks();
+  }
+
+  private void postFrameCallback() {
+    Choreographer.getInstance().postFrameCallback(this);
+    handler.postDelayed(fallback, FALLBACK_DELAY_MILLIS);
+  }
+
+  private void runTasks() {
+    handler.removeCallbacks(fallback);
+    Choreographer.getInstance().removeFrameCallback(this);
+    // Clear the flag first, so that a task posted while these run is never left without a frame.
+    scheduled.set(false);
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      task.run();
+    }
+  }
+}
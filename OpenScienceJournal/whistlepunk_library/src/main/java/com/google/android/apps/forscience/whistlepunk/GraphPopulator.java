@@ -17,21 +17,19 @@
 package com.google.android.apps.forscience.whistlepunk;
 
 import androidx.annotation.NonNull;
-import androidx.core.util.Pair;
 import com.google.android.apps.forscience.javalib.FailureListener;
 import com.google.android.apps.forscience.javalib.FallibleConsumer;
 import com.google.android.apps.forscience.javalib.MaybeConsumers;
-import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
+import com.google.android.apps.forscience.javalib.Success;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
-import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.Range;
-import java.util.List;
 
 // TODO(saff): port tests from Weather
 public class GraphPopulator {
-  // How many datapoints do we grab from the database at one time?
-  private static final int MAX_DATAPOINTS_PER_SENSOR_LOAD = 100;
+  // How many datapoints do we add to the graph at one time?
+  private static final int DATAPOINTS_PER_CHUNK = 500;
 
   private Range<Long> requestedTimes = null;
   private ObservationDisplay observationDisplay;
@@ -71,6 +69,10 @@ public class GraphPopulator {
    * If the graphStatus shows that there are still values that need to be fetched to fill the
    * currently-displayed graph, this method will begin fetching them.
    *
+   * <p>Each missing range is read in a single pass on the data thread and added to the display a
+   * chunk at a time as it arrives. Loading stops once {@link GraphStatus#graphIsStillValid()}
+   * returns false.
+   *
    * <p>Call only on the UI thread.
    */
   public void requestObservations(
@@ -86,75 +88,51 @@ public class GraphPopulator {
     final TimeRange r = getRequestRange(graphStatus);
     if (r == null) {
       observationDisplay.onFinish(requestId);
-    } else {
-      requestInFlight = true;
-      dataController.getScalarReadings(
-          trialId,
-          sensorId,
-          resolutionTier,
-          r,
-          MAX_DATAPOINTS_PER_SENSOR_LOAD,
-          MaybeConsumers.chainFailure(
-              failureListener,
-              new FallibleConsumer<ScalarReadingList>() {
-                @Override
-                public void take(ScalarReadingList observations) {
-                  requestInFlight = false;
-                  if (graphStatus.graphIsStillValid()) {
-                    final Pair<Range<Long>, Range<Double>> received =
-                        addObservationsToDisplay(observations);
-                    if (received.first != null) {
-                      observationDisplay.addRange(observations, received.second, requestId);
-                    }
-                    addToRequestedTimes(getEffectiveAddedRange(r, received.first));
-                    requestObservations(
-                        graphStatus,
-                        dataController,
-                        failureListener,
-                        resolutionTier,
-                        trialId,
-                        sensorId);
-                  }
-                }
-
-                public void addToRequestedTimes(Range<Long> effectiveAdded) {
-                  requestedTimes = Ranges.span(requestedTimes, effectiveAdded);
+      return;
+    }
+    requestInFlight = true;
+    dataController.getScalarReadingChunks(
+        trialId,
+        sensorId,
+        resolutionTier,
+        r,
+        DATAPOINTS_PER_CHUNK,
+        chunk -> {
+          if (!graphStatus.graphIsStillValid()) {
+            return false;
+          }
+          Range<Double> valueRange = getValueRange(chunk);
+          if (valueRange != null) {
+            observationDisplay.addRange(chunk, valueRange, requestId);
+          }
+          return true;
+        },
+        MaybeConsumers.chainFailure(
+            failureListener,
+            new FallibleConsumer<Success>() {
+              @Override
+              public void take(Success success) {
+                requestInFlight = false;
+                if (graphStatus.graphIsStillValid()) {
+                  requestedTimes = Ranges.span(requestedTimes, r.getTimes());
+                  // Pick up anything the graph has grown to show in the meantime.
+                  requestObservations(
+                      graphStatus,
+                      dataController,
+                      failureListener,
+                      resolutionTier,
+                      trialId,
+                      sensorId);
                 }
+              }
+            }));
+  }
 
-                public Pair<Range<Long>, Range<Double>> addObservationsToDisplay(
-                    ScalarReadingList observations) {
-                  List<ScalarReading> points = ScalarReading.slurp(observations);
-                  long xMin = Long.MAX_VALUE;
-                  long xMax = Long.MIN_VALUE;
-                  double yMin = Double.MAX_VALUE;
-                  double yMax = Double.MIN_VALUE;
-                  Range<Long> timeRange = null;
-                  Range<Double> valueRange = null;
-                  for (ScalarReading point : points) {
-                    if (point.getCollectedTimeMillis() < xMin) {
-                      xMin = point.getCollectedTimeMillis();
-                    }
-                    if (point.getCollectedTimeMillis() > xMax) {
-                      xMax = point.getCollectedTimeMillis();
-                    }
-                    if (point.getValue() < yMin) {
-                      yMin = point.getValue();
-                    }
-                    if (point.getValue() > yMax) {
-                      yMax = point.getValue();
-                    }
-                  }
-                  if (xMin <= xMax) {
-                    timeRange = Range.closed(xMin, xMax);
-                  }
-                  if (yMin <= yMax) {
-                    valueRange = Range.closed(yMin, yMax);
-                  }
-                  return new Pair<>(timeRange, valueRange);
-                }
-              }));
-    }
-    return;
+  /** Returns the range of values in the readings, or null if there aren't any. */
+  private static Range<Double> getValueRange(ScalarReadingList readings) {
+    ValueRangeFinder finder = new ValueRangeFinder();
+    readings.deliver(finder);
+    return finder.min <= finder.max ? Range.closed(finder.min, finder.max) : null;
   }
 
   private TimeRange getRequestRange(GraphStatus graphStatus) {
@@ -180,21 +158,6 @@ public class GraphPopulator {
     }
   }
 
-  private Range<Long> getEffectiveAddedRange(TimeRange requested, Range<Long> returned) {
-    if (returned == null) {
-      return requested.getTimes().canonical(DiscreteDomain.longs());
-    }
-
-    switch (requested.getOrder()) {
-      case NEWEST_FIRST:
-        return Range.closed(returned.lowerEndpoint(), requested.getTimes().upperEndpoint());
-      case OLDEST_FIRST:
-        return Range.closed(requested.getTimes().lowerEndpoint(), returned.upperEndpoint());
-      default:
-        throw new IllegalArgumentException("Unexpected value for enum: " + requested.getOrder());
-    }
-  }
-
   public long getRequestId() {
     return requestId;
   }
@@ -212,4 +175,20 @@ public class GraphPopulator {
 
     void onFinish(long requestId);
   }
+
+  private static class ValueRangeFinder implements StreamConsumer {
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+
+    @Override
+    public boolean addData(long timestampMillis, double value) {
+      if (value < min) {
+        min = value;
+      }
+      if (value > max) {
+        max = value;
+      }
+      return true;
+    }
+  }
 }
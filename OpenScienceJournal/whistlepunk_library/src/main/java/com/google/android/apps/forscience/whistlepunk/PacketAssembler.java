@@ -18,12 +18,9 @@ package com.google.android.apps.forscience.whistlepunk;
 
 import androidx.annotation.VisibleForTesting;
 import android.util.Log;
-import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor;
-import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor.Data;
-import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor.Pin;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
 import com.google.protobuf.InvalidProtocolBufferException;
-import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 
 public class PacketAssembler {
   private static final String TAG = "PacketAssembler";
@@ -31,7 +28,10 @@ public class PacketAssembler {
   private final Clock defaultClock;
   private final Listener listener;
 
-  private final ByteArrayOutputStream packetStream = new ByteArrayOutputStream();
+  // The message assembled so far, reused for each message.
+  private byte[] packetBuffer = new byte[64];
+  private int packetLength = 0;
+  private final SensorDataReader sensorData = new SensorDataReader();
 
   private long timeSkew = -1;
 
@@ -60,13 +60,11 @@ public class PacketAssembler {
   }
 
   private void parse() {
-    byte[] bs = packetStream.toByteArray();
-    packetStream.reset();
-
-    GoosciSensor.SensorData sensorData;
+    int length = packetLength;
+    packetLength = 0;
 
     try {
-      sensorData = GoosciSensor.SensorData.parseFrom(bs);
+      sensorData.read(packetBuffer, 0, length);
     } catch (InvalidProtocolBufferException e) {
       raiseError(e.getLocalizedMessage());
       if (Log.isLoggable(TAG, Log.DEBUG)) {
@@ -83,21 +81,21 @@ public class PacketAssembler {
       return;
     }
 
-    Data sensorValue = sensorData.getData();
-    Pin sensorPin = sensorValue.getPin();
+    int pin = sensorData.getPinCase();
+    int value = sensorData.getValueCase();
 
     double data;
 
-    if (sensorPin.hasAnalogPin() && sensorValue.hasAnalogValue()) {
-      data = (double) sensorValue.getAnalogValue().getValue();
-    } else if (sensorPin.hasDigitalPin() && sensorValue.hasDigitalValue()) {
+    if (pin == SensorDataReader.PIN_ANALOG && value == SensorDataReader.VALUE_ANALOG) {
+      data = (double) sensorData.getAnalogValue();
+    } else if (pin == SensorDataReader.PIN_DIGITAL && value == SensorDataReader.VALUE_DIGITAL) {
       // TODO: Better support boolean values
-      data = booleanToDigital(sensorValue.getDigitalValue().getValue());
-    } else if (sensorPin.hasVirtualPin() && sensorValue.hasFloatValue()) {
-      data = (double) sensorValue.getFloatValue().getValue();
-    } else if (sensorPin.hasVirtualPin() && sensorValue.hasIntValue()) {
-      data = (double) sensorValue.getIntValue().getValue();
-    } else if (sensorPin.hasVirtualPin()) {
+      data = booleanToDigital(sensorData.getDigitalValue());
+    } else if (pin == SensorDataReader.PIN_VIRTUAL && value == SensorDataReader.VALUE_FLOAT) {
+      data = (double) sensorData.getFloatValue();
+    } else if (pin == SensorDataReader.PIN_VIRTUAL && value == SensorDataReader.VALUE_INT) {
+      data = (double) sensorData.getIntValue();
+    } else if (pin == SensorDataReader.PIN_VIRTUAL) {
       // TODO: We support string messages in the proto but
       // there is no good way to convert to any value.
       raiseError("Unable to read data from external sensor");
@@ -128,7 +126,12 @@ public class PacketAssembler {
     int length = (int) packet[0];
     boolean isLast = packet[1] == 1;
 
-    packetStream.write(packet, 2, length);
+    if (packetLength + length > packetBuffer.length) {
+      packetBuffer =
+          Arrays.copyOf(packetBuffer, Math.max(packetBuffer.length * 2, packetLength + length));
+    }
+    System.arraycopy(packet, 2, packetBuffer, packetLength, length);
+    packetLength += length;
 
     if (isLast) {
       parse();
@@ -49,10 +49,12 @@ import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSnapshotVal
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSnapshotValue.SnapshotLabelValue.SensorSnapshot;
 import com.google.android.apps.forscience.whistlepunk.metadata.TriggerHelper;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorBatchObserver;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorChoice;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorEnvironment;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorObserver;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorRecorder;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorSampleBuffer;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
 import com.google.android.apps.forscience.whistlepunk.sensors.SystemScheduler;
@@ -251,22 +253,49 @@ public class RecorderControllerImpl implements RecorderController {
       String serviceObserverId =
           registry.putListeners(
               sensorId,
-              (timestamp, data) -> {
-                if (!ScalarSensor.hasValue(data)) {
-                  return;
-                }
-                double value = ScalarSensor.getValue(data);
+              new SensorBatchObserver() {
+                @Override
+                public void onNewData(long timestamp, Data data) {
+                  if (!ScalarSensor.hasValue(data)) {
+                    return;
+                  }
+                  double value = ScalarSensor.getValue(data);
 
-                // Remember latest value
-                latestValues.get(sensorId).onNext(new ScalarReading(timestamp, value, sensorId));
+                  // Remember latest value
+                  latestValues.get(sensorId).onNext(new ScalarReading(timestamp, value, sensorId));
+                  fireTriggers(timestamp, value);
+                }
 
-                // Fire triggers.
-                for (SensorTrigger trigger : activeTriggers) {
-                  if (!isRecording() && trigger.shouldTriggerOnlyWhenRecording()) {
-                    continue;
+                @Override
+                public void onNewBatch(SensorSampleBuffer.Batch batch) {
+                  // Every sample can fire a trigger, but only the newest one is remembered.
+                  int latest = -1;
+                  for (int i = 0; i < batch.size(); i++) {
+                    Data data = batch.getData(i);
+                    if (ScalarSensor.hasValue(data)) {
+                      fireTriggers(batch.getTimestamp(i), ScalarSensor.getValue(data));
+                      latest = i;
+                    }
+                  }
+                  if (latest >= 0) {
+                    latestValues
+                        .get(sensorId)
+                        .onNext(
+                            new ScalarReading(
+                                batch.getTimestamp(latest),
+                                ScalarSensor.getValue(batch.getData(latest)),
+                                sensorId));
                   }
-                  if (trigger.isTriggered(value)) {
-                    fireSensorTrigger(trigger, timestamp, sensorRegistry);
+                }
+
+                private void fireTriggers(long timestamp, double value) {
+                  for (SensorTrigger trigger : activeTriggers) {
+                    if (!isRecording() && trigger.shouldTriggerOnlyWhenRecording()) {
+                      continue;
+                    }
+                    if (trigger.isTriggered(value)) {
+                      fireSensorTrigger(trigger, timestamp, sensorRegistry);
+                    }
                   }
                 }
               },
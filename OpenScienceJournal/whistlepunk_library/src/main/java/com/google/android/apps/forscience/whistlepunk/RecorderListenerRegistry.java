@@ -16,7 +16,9 @@
 
 package com.google.android.apps.forscience.whistlepunk;
 
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorBatchObserver;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorObserver;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorSampleBuffer;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
@@ -139,16 +141,23 @@ public class RecorderListenerRegistry implements SensorStatusListener {
 
   /**
    * Returns a new SensorObserver that routes new data to the currently-active UI listener, if any,
-   * for the given sensor.
+   * for the given sensor. Batches are passed on whole to listeners that accept them.
    */
   public SensorObserver makeObserverForRecorder(final String sensorId) {
-    return new SensorObserver() {
+    return new SensorBatchObserver() {
       @Override
       public void onNewData(long timestamp, Data bundle) {
         for (ListenerSet set : listeners.get(sensorId)) {
           set.observer.onNewData(timestamp, bundle);
         }
       }
+
+      @Override
+      public void onNewBatch(SensorSampleBuffer.Batch batch) {
+        for (ListenerSet set : listeners.get(sensorId)) {
+          batch.deliverTo(set.observer);
+        }
+      }
     };
   }
 }
@@ -17,6 +17,8 @@
 package com.google.android.apps.forscience.whistlepunk;
 
 import com.google.android.apps.forscience.javalib.FailureListener;
+import com.google.android.apps.forscience.javalib.MaybeConsumer;
+import com.google.android.apps.forscience.javalib.Success;
 import java.util.List;
 
 /** Data interface for sensor recorders */
@@ -36,6 +38,25 @@ public interface RecordingDataController {
   /** Add all of the scalar readings in the list. */
   void addScalarReadings(List<BatchInsertScalarReading> readings);
 
+  /**
+   * Add all of the scalar readings in the batch. The caller must not touch the batch afterwards;
+   * the controller calls {@link ScalarReadingBatch#release} once it has been written.
+   */
+  void addScalarReadings(ScalarReadingBatch readings);
+
+  /**
+   * Readings passed to {@link #addScalarReading} may be buffered and written in groups. Call this
+   * when a recording stops to make sure everything buffered so far gets written.
+   */
+  void flushScalarReadings();
+
+  /**
+   * Like {@link #flushScalarReadings}, and then tells {@code onFlushed}, on the thread that writes
+   * readings, once everything added before this call has been written and made durable, or that
+   * some of it could not be.
+   */
+  void flushScalarReadings(MaybeConsumer<Success> onFlushed);
+
   /**
    * If an error is encountered storing data or stats for {@code sensorId}, notify {@code listener}
    */
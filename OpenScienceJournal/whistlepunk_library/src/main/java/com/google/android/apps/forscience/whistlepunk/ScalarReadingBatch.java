@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reusable batch of scalar readings, stored as parallel primitive columns rather than one {@link
+ * BatchInsertScalarReading} per row. Trial and sensor ids are interned, so adding a row never
+ * allocates once the columns have grown to fit the batch.
+ *
+ * <p>Whoever writes a batch calls {@link #release} when done with it, which clears the rows and
+ * hands the batch back to its {@link Recycler} (if any) so that the columns can be filled again.
+ */
+public class ScalarReadingBatch {
+  /** Receives batches that have been released, for reuse. */
+  public interface Recycler {
+    void recycle(ScalarReadingBatch batch);
+  }
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  // Interned ids are dropped on clear once there are this many, so that a batch reused across
+  // many trials doesn't hold on to all of their ids.
+  private static final int MAX_RETAINED_IDS = 64;
+
+  private final Recycler recycler;
+
+  private final List<String> ids = new ArrayList<>();
+  private final Map<String, Integer> idIndexes = new HashMap<>();
+
+  private int[] trialIds;
+  private int[] sensorIds;
+  private int[] tiers;
+  private long[] timestamps;
+  private double[] values;
+  private int size = 0;
+
+  public ScalarReadingBatch() {
+    this(INITIAL_CAPACITY, null);
+  }
+
+  public ScalarReadingBatch(int initialCapacity, Recycler recycler) {
+    this.recycler = recycler;
+    int capacity = Math.max(1, initialCapacity);
+    trialIds = new int[capacity];
+    sensorIds = new int[capacity];
+    tiers = new int[capacity];
+    timestamps = new long[capacity];
+    values = new double[capacity];
+  }
+
+  public void add(
+      String trialId, String sensorId, int resolutionTier, long timestampMillis, double value) {
+    if (size == timestamps.length) {
+      grow();
+    }
+    trialIds[size] = intern(trialId);
+    sensorIds[size] = intern(sensorId);
+    tiers[size] = resolutionTier;
+    timestamps[size] = timestampMillis;
+    values[size] = value;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public String getTrialId(int index) {
+    return ids.get(trialIds[index]);
+  }
+
+  public String getSensorId(int index) {
+    return ids.get(sensorIds[index]);
+  }
+
+  public int getResolutionTier(int index) {
+    return tiers[index];
+  }
+
+  public long getTimestampMillis(int index) {
+    return timestamps[index];
+  }
+
+  public double getValue(int index) {
+    return values[index];
+  }
+
+  /** Removes all rows, keeping the columns for reuse. */
+  public void clear() {
+    size = 0;
+    if (ids.size() > MAX_RETAINED_IDS) {
+      ids.clear();
+      idIndexes.clear();
+    }
+  }
+
+  /** Clears this batch and returns it to its recycler. Call once the batch has been written. */
+  public void release() {
+    clear();
+    if (recycler != null) {
+      recycler.recycle(this);
+    }
+  }
+
+  private void grow() {
+    int capacity = timestamps.length * 2;
+    int[] newTrialIds = new int[capacity];
+    int[] newSensorIds = new int[capacity];
+    int[] newTiers = new int[capacity];
+    long[] newTimestamps = new long[capacity];
+    double[] newValues = new double[capacity];
+    System.arraycopy(trialIds, 0, newTrialIds, 0, size);
+    System.arraycopy(sensorIds, 0, newSensorIds, 0, size);
+    System.arraycopy(tiers, 0, newTiers, 0, size);
+    System.arraycopy(timestamps, 0, newTimestamps, 0, size);
+    System.arraycopy(values, 0, newValues, 0, size);
+    trialIds = newTrialIds;
+    sensorIds = newSensorIds;
+    tiers = newTiers;
+    timestamps = newTimestamps;
+    values = newValues;
+  }
+
+  private int intern(String id) {
+    Integer index = idIndexes.get(id);
+    if (index == null) {
+      index = ids.size();
+      ids.add(id);
+      idIndexes.put(id, index);
+    }
+    return index;
+  }
+}
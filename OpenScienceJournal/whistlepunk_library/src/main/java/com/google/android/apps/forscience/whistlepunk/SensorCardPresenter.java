@@ -47,9 +47,11 @@ import com.google.android.apps.forscience.whistlepunk.sensorapi.DataViewOptions;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.NewOptionsStorage;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.OptionsListener;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ReadableSensorOptions;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorBatchObserver;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorChoice;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorObserver;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorPresenter;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorSampleBuffer;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamStat;
 import com.google.android.apps.forscience.whistlepunk.sensors.AccelerometerSensor;
@@ -251,6 +253,20 @@ public class SensorCardPresenter {
       return;
     }
     sensorPresenter.onNewData(timestamp, bundle);
+    updateMeter(timestamp, bundle);
+  }
+
+  public void onNewBatch(SensorSampleBuffer.Batch batch) {
+    if (sensorPresenter == null) {
+      return;
+    }
+    sensorPresenter.onNewBatch(batch);
+    // The meter can only show one value per frame anyway.
+    int last = batch.size() - 1;
+    updateMeter(batch.getTimestamp(last), batch.getData(last));
+  }
+
+  private void updateMeter(long timestamp, SensorObserver.Data bundle) {
     boolean iconTimeHasElapsed = timestamp > lastUpdatedIconTimestamp + MAX_ICON_UPDATE_TIME_MS;
     textTimeHasElapsed = timestamp > lastUpdatedTextTimestamp + MAX_TEXT_UPDATE_TIME_MS;
     if (!textTimeHasElapsed && !iconTimeHasElapsed) {
@@ -397,11 +413,16 @@ public class SensorCardPresenter {
         recorderController.startObserving(
             currentSource.getId(),
             triggers,
-            new SensorObserver() {
+            new SensorBatchObserver() {
               @Override
               public void onNewData(long timestamp, Data value) {
                 SensorCardPresenter.this.onNewData(timestamp, value);
               }
+
+              @Override
+              public void onNewBatch(SensorSampleBuffer.Batch batch) {
+                SensorCardPresenter.this.onNewBatch(batch);
+              }
             },
             getSensorStatusListener(),
             AbstractReadableSensorOptions.makeTransportable(nonNullOptions),
@@ -0,0 +1,334 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Reads the fields of a {@link GoosciSensor.SensorData} that {@link PacketAssembler} needs
+ * straight from the wire format, without building any message objects. A reader holds the fields
+ * of the last message it read, and can be reused for any number of messages.
+ *
+ * <p>Like {@code SensorData.parseFrom}, reading fails on malformed input or missing required
+ * fields; unknown fields are skipped.
+ */
+class SensorDataReader {
+  static final int PIN_NOT_SET = 0;
+  static final int PIN_ANALOG = 1;
+  static final int PIN_DIGITAL = 2;
+  static final int PIN_VIRTUAL = 3;
+
+  static final int VALUE_NOT_SET = 0;
+  static final int VALUE_ANALOG = 1;
+  static final int VALUE_DIGITAL = 2;
+  static final int VALUE_FLOAT = 3;
+  static final int VALUE_INT = 4;
+  static final int VALUE_STRING = 5;
+
+  private static final int WIRETYPE_VARINT = 0;
+  private static final int WIRETYPE_FIXED64 = 1;
+  private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+  private static final int WIRETYPE_FIXED32 = 5;
+
+  // SensorData
+  private static final int TIMESTAMP_KEY_TAG = 1 << 3 | WIRETYPE_VARINT;
+  private static final int ERROR_TAG = 10 << 3 | WIRETYPE_LENGTH_DELIMITED;
+  private static final int DATA_TAG = 11 << 3 | WIRETYPE_LENGTH_DELIMITED;
+
+  // Data
+  private static final int PIN_TAG = 1 << 3 | WIRETYPE_LENGTH_DELIMITED;
+  private static final int ANALOG_VALUE_TAG = 10 << 3 | WIRETYPE_LENGTH_DELIMITED;
+  private static final int DIGITAL_VALUE_TAG = 11 << 3 | WIRETYPE_LENGTH_DELIMITED;
+  private static final int FLOAT_VALUE_TAG = 12 << 3 | WIRETYPE_LENGTH_DELIMITED;
+  private static final int INT_VALUE_TAG = 13 << 3 | WIRETYPE_LENGTH_DELIMITED;
+  private static final int STRING_VALUE_TAG = 14 << 3 | WIRETYPE_LENGTH_DELIMITED;
+
+  // Pin
+  private static final int ANALOG_PIN_TAG = 10 << 3 | WIRETYPE_LENGTH_DELIMITED;
+  private static final int DIGITAL_PIN_TAG = 11 << 3 | WIRETYPE_LENGTH_DELIMITED;
+  private static final int VIRTUAL_PIN_TAG = 12 << 3 | WIRETYPE_LENGTH_DELIMITED;
+
+  private byte[] buffer;
+  private int position;
+  // The single field of the last value or pin message read.
+  private long fieldValue;
+
+  private boolean hasTimestampKey;
+  private int timestampKey;
+  private boolean hasData;
+  private boolean hasPin;
+  private int pinCase;
+  private boolean pinInitialized;
+  private int valueCase;
+  private boolean valueInitialized;
+  private long value;
+
+  /** Reads the message in {@code length} bytes of {@code bytes}, starting at {@code offset}. */
+  void read(byte[] bytes, int offset, int length) throws InvalidProtocolBufferException {
+    buffer = bytes;
+    position = offset;
+    hasTimestampKey = false;
+    hasData = false;
+    hasPin = false;
+    pinCase = PIN_NOT_SET;
+    valueCase = VALUE_NOT_SET;
+    try {
+      readSensorData(offset + length);
+    } finally {
+      buffer = null;
+    }
+    if (!hasTimestampKey) {
+      throw missingField("timestamp_key");
+    }
+    if (hasData) {
+      if (!hasPin) {
+        throw missingField("data.pin");
+      }
+      if (pinCase != PIN_NOT_SET && !pinInitialized) {
+        throw missingField("data.pin.pin");
+      }
+      if (valueCase != VALUE_NOT_SET && !valueInitialized) {
+        throw missingField("data.value");
+      }
+    }
+  }
+
+  long getTimestampKey() {
+    return timestampKey;
+  }
+
+  boolean hasData() {
+    return hasData;
+  }
+
+  /** @return which pin the data is from, one of the PIN_ constants. */
+  int getPinCase() {
+    return pinCase;
+  }
+
+  /** @return which kind of value the data holds, one of the VALUE_ constants. */
+  int getValueCase() {
+    return valueCase;
+  }
+
+  int getAnalogValue() {
+    return (int) value;
+  }
+
+  boolean getDigitalValue() {
+    return value != 0;
+  }
+
+  float getFloatValue() {
+    return Float.intBitsToFloat((int) value);
+  }
+
+  int getIntValue() {
+    return (int) value;
+  }
+
+  private void readSensorData(int end) throws InvalidProtocolBufferException {
+    while (position < end) {
+      int tag = readTag(end);
+      switch (tag) {
+        case TIMESTAMP_KEY_TAG:
+          timestampKey = (int) readVarint(end);
+          hasTimestampKey = true;
+          break;
+        case ERROR_TAG:
+          hasData = false;
+          if (!readSingleField(readLimit(end), WIRETYPE_LENGTH_DELIMITED)) {
+            throw missingField("error.error");
+          }
+          break;
+        case DATA_TAG:
+          hasData = true;
+          readData(readLimit(end));
+          break;
+        default:
+          skipField(tag, end);
+      }
+    }
+  }
+
+  private void readData(int end) throws InvalidProtocolBufferException {
+    while (position < end) {
+      int tag = readTag(end);
+      switch (tag) {
+        case PIN_TAG:
+          hasPin = true;
+          readPin(readLimit(end));
+          break;
+        case ANALOG_VALUE_TAG:
+          readValue(end, VALUE_ANALOG, WIRETYPE_VARINT);
+          break;
+        case DIGITAL_VALUE_TAG:
+          readValue(end, VALUE_DIGITAL, WIRETYPE_VARINT);
+          break;
+        case FLOAT_VALUE_TAG:
+          readValue(end, VALUE_FLOAT, WIRETYPE_FIXED32);
+          break;
+        case INT_VALUE_TAG:
+          readValue(end, VALUE_INT, WIRETYPE_VARINT);
+          break;
+        case STRING_VALUE_TAG:
+          readValue(end, VALUE_STRING, WIRETYPE_LENGTH_DELIMITED);
+          break;
+        default:
+          skipField(tag, end);
+      }
+    }
+  }
+
+  private void readValue(int end, int newValueCase, int wireType)
+      throws InvalidProtocolBufferException {
+    valueCase = newValueCase;
+    valueInitialized = readSingleField(readLimit(end), wireType);
+    value = fieldValue;
+  }
+
+  private void readPin(int end) throws InvalidProtocolBufferException {
+    while (position < end) {
+      int tag = readTag(end);
+      switch (tag) {
+        case ANALOG_PIN_TAG:
+          pinCase = PIN_ANALOG;
+          pinInitialized = readSingleField(readLimit(end), WIRETYPE_VARINT);
+          break;
+        case DIGITAL_PIN_TAG:
+          pinCase = PIN_DIGITAL;
+          pinInitialized = readSingleField(readLimit(end), WIRETYPE_VARINT);
+          break;
+        case VIRTUAL_PIN_TAG:
+          pinCase = PIN_VIRTUAL;
+          pinInitialized = readSingleField(readLimit(end), WIRETYPE_VARINT);
+          break;
+        default:
+          skipField(tag, end);
+      }
+    }
+  }
+
+  /**
+   * Reads a message whose only known field is field 1, of the given wire type, into {@link
+   * #fieldValue}. Length-delimited fields are skipped.
+   *
+   * @return whether field 1 was present.
+   */
+  private boolean readSingleField(int end, int wireType) throws InvalidProtocolBufferException {
+    boolean found = false;
+    fieldValue = 0;
+    while (position < end) {
+      int tag = readTag(end);
+      if (tag == (1 << 3 | wireType)) {
+        found = true;
+        if (wireType == WIRETYPE_VARINT) {
+          fieldValue = readVarint(end);
+        } else if (wireType == WIRETYPE_FIXED32) {
+          fieldValue = readFixed32(end);
+        } else {
+          skipField(tag, end);
+        }
+      } else {
+        skipField(tag, end);
+      }
+    }
+    return found;
+  }
+
+  private int readTag(int end) throws InvalidProtocolBufferException {
+    long tag = readVarint(end);
+    if (tag >>> 3 == 0 || tag > Integer.MAX_VALUE) {
+      throw new InvalidProtocolBufferException("Protocol message contained an invalid tag (zero).");
+    }
+    return (int) tag;
+  }
+
+  /** Reads the length of an embedded message, and returns the position at which it ends. */
+  private int readLimit(int end) throws InvalidProtocolBufferException {
+    long length = readVarint(end);
+    if (length < 0 || length > end - position) {
+      throw truncated();
+    }
+    return position + (int) length;
+  }
+
+  private void skipField(int tag, int end) throws InvalidProtocolBufferException {
+    switch (tag & 7) {
+      case WIRETYPE_VARINT:
+        readVarint(end);
+        break;
+      case WIRETYPE_FIXED64:
+        skip(8, end);
+        break;
+      case WIRETYPE_LENGTH_DELIMITED:
+        position = readLimit(end);
+        break;
+      case WIRETYPE_FIXED32:
+        skip(4, end);
+        break;
+      default:
+        // Groups are not used by any of these messages.
+        throw new InvalidProtocolBufferException("Protocol message tag had invalid wire type.");
+    }
+  }
+
+  private void skip(int count, int end) throws InvalidProtocolBufferException {
+    if (count > end - position) {
+      throw truncated();
+    }
+    position += count;
+  }
+
+  private long readVarint(int end) throws InvalidProtocolBufferException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (position >= end) {
+        throw truncated();
+      }
+      byte b = buffer[position++];
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new InvalidProtocolBufferException("CodedInputStream encountered a malformed varint.");
+  }
+
+  private long readFixed32(int end) throws InvalidProtocolBufferException {
+    if (end - position < 4) {
+      throw truncated();
+    }
+    int result =
+        (buffer[position] & 0xFF)
+            | (buffer[position + 1] & 0xFF) << 8
+            | (buffer[position + 2] & 0xFF) << 16
+            | (buffer[position + 3] & 0xFF) << 24;
+    position += 4;
+    return result;
+  }
+
+  private static InvalidProtocolBufferException truncated() {
+    return new InvalidProtocolBufferException(
+        "While parsing a protocol message, the input ended unexpectedly in the middle of a field.");
+  }
+
+  private static InvalidProtocolBufferException missingField(String name) {
+    return new InvalidProtocolBufferException("Message missing required fields: " + name);
+  }
+}
@@ -49,6 +49,7 @@ public class ScalarInputDiscoverer implements SensorDiscoverer {
   private final ScalarInputStringSource stringSource;
   private final Executor uiThreadExecutor;
   private final Scheduler scheduler;
+  private final Scheduler sensorScheduler;
   private final long scanTimeoutMillis;
   private UsageTracker usageTracker;
   private ScanListener scanListener;
@@ -61,6 +62,7 @@ public class ScalarInputDiscoverer implements SensorDiscoverer {
         defaultStringSource(context),
         AppSingleton.getUiThreadExecutor(),
         new SystemScheduler(),
+        AppSingleton.getSensorIngestScheduler(),
         DEFAULT_SCAN_TIMEOUT_MILLIS,
         usageTracker);
   }
@@ -87,10 +89,33 @@ public class ScalarInputDiscoverer implements SensorDiscoverer {
       Scheduler scheduler,
       long scanTimeoutMillis,
       UsageTracker usageTracker) {
+    this(
+        serviceFinder,
+        stringSource,
+        uiThreadExecutor,
+        scheduler,
+        scheduler,
+        scanTimeoutMillis,
+        usageTracker);
+  }
+
+  /**
+   * @param scheduler runs discovery timeouts, which report to the UI.
+   * @param sensorScheduler runs the refreshes and connection timeouts of the sensors found.
+   */
+  private ScalarInputDiscoverer(
+      Consumer<AppDiscoveryCallbacks> serviceFinder,
+      ScalarInputStringSource stringSource,
+      Executor uiThreadExecutor,
+      Scheduler scheduler,
+      Scheduler sensorScheduler,
+      long scanTimeoutMillis,
+      UsageTracker usageTracker) {
     this.serviceFinder = serviceFinder;
     this.stringSource = stringSource;
     this.uiThreadExecutor = uiThreadExecutor;
     this.scheduler = scheduler;
+    this.sensorScheduler = sensorScheduler;
     this.scanTimeoutMillis = scanTimeoutMillis;
     this.usageTracker = usageTracker;
     if (usageTracker == null) {
@@ -102,7 +127,7 @@ public class ScalarInputDiscoverer implements SensorDiscoverer {
 
   @Override
   public SensorProvider getProvider() {
-    return new ScalarInputProvider(serviceFinder, stringSource, uiThreadExecutor, scheduler);
+    return new ScalarInputProvider(serviceFinder, stringSource, uiThreadExecutor, sensorScheduler);
   }
 
   @Override
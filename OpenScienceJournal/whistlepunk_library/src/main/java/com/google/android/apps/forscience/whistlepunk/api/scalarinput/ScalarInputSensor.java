@@ -39,7 +39,8 @@ class ScalarInputSensor extends ScalarSensor {
   private final Scheduler scheduler;
   private Consumer<AppDiscoveryCallbacks> serviceFinder;
   private ScalarInputStringSource stringSource;
-  private int mostRecentStatus = -1;
+  // Written on the main thread, read wherever data arrives.
+  private volatile int mostRecentStatus = -1;
 
   // TODO: find a way to reduce parameters?
   public ScalarInputSensor(
@@ -84,17 +85,41 @@ class ScalarInputSensor extends ScalarSensor {
           this.consumer = consumer;
         }
 
+        // Data comes in on binder threads, and refreshes on the scheduler's thread; both feed the
+        // same consumer, so they take turns.
         @Override
-        public void onNewData(long timestamp, double data) {
+        public synchronized void onNewData(long timestamp, double data) {
           if (connector == null) {
             // We're disconnected, nothing to do here.
             return;
           }
           latestData = data;
+          rescheduleRefresh();
+          this.consumer.addData(timestamp, data);
+          onDataArrived();
+        }
+
+        @Override
+        public synchronized void onNewDataBatch(long[] timestamps, double[] values, int count) {
+          count = Math.min(count, Math.min(timestamps.length, values.length));
+          if (connector == null || count <= 0) {
+            return;
+          }
+          // The refresh only needs to be pushed back once, past the end of the batch.
+          latestData = values[count - 1];
+          rescheduleRefresh();
+          for (int i = 0; i < count; i++) {
+            this.consumer.addData(timestamps[i], values[i]);
+          }
+          onDataArrived();
+        }
+
+        private void rescheduleRefresh() {
           scheduler.unschedule(refreshRunnable);
           scheduler.schedule(Delay.millis(MINIMUM_REFRESH_RATE_MILLIS), refreshRunnable);
-          this.consumer.addData(timestamp, data);
+        }
 
+        private void onDataArrived() {
           // Some sensors may forget to set to connected, but if we're getting data,
           //   we're probably connected.  (This actually happened in a version of the
           //   Vernier implementation.)
@@ -45,26 +45,35 @@ public class AudioAnalyzer {
   }
 
   public Double detectFundamentalFrequency(short[] samples) {
+    return detectFundamentalFrequency(samples, 0, samples.length);
+  }
+
+  /**
+   * Determines the fundamental frequency of the {@code length} samples starting at {@code offset},
+   * or returns null if there isn't one.
+   */
+  public Double detectFundamentalFrequency(short[] samples, int offset, int length) {
     peaks.clear();
     mapOfFundamentalFrequencies.clear();
 
     // Don't bother trying to determine the frequency if the buffer is half (or
     // more) filled with zeros or if the volume is too low to hear.
     int countZeros = 0;
-    for (short s : samples) {
-      if (s == 0) {
+    for (int i = offset; i < offset + length; i++) {
+      if (samples[i] == 0) {
         countZeros++;
       }
     }
-    if (countZeros >= samples.length / 2) {
+    if (countZeros >= length / 2) {
       return null;
     }
-    double uncalibratedDecibels = SoundUtils.calculateUncalibratedDecibels(samples, samples.length);
+    double uncalibratedDecibels =
+        SoundUtils.calculateUncalibratedDecibels(samples, offset, length);
     if (uncalibratedDecibels < MINIMUM_NOISE_LEVEL) {
       return null;
     }
 
-    fftAnalyzer.findPeaks(samples, peaks);
+    fftAnalyzer.findPeaks(samples, offset, length, peaks);
     // At this point, peaks is sorted by FFT value, in descending order.
     if (peaks.isEmpty()) {
       return null;
@@ -73,7 +82,8 @@ public class AudioAnalyzer {
     // Use Goertzel analyzer to more accurately determine the frequency of each peak.
     for (Peak peak : peaks) {
       double frequency =
-          goertzelAnalyzer.findFrequencyWithHighestPower(samples, peak.getFrequencyEstimate());
+          goertzelAnalyzer.findFrequencyWithHighestPower(
+              samples, offset, length, peak.getFrequencyEstimate());
       peak.setFrequency(frequency);
     }
 
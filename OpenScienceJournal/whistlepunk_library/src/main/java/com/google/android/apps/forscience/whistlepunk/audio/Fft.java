@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.audio;
+
+/**
+ * Computes FFTs (Fast Fourier Transforms) of one fixed power-of-two size. The twiddle factors and
+ * bit-reversal permutation are computed once, in the constructor, instead of on every transform.
+ *
+ * <p>Instances hold scratch space and are not thread safe.
+ */
+class Fft {
+  private final int size;
+  // cos(2 * PI * k / size) and sin(2 * PI * k / size), for k from 0 to size / 2.
+  private final double[] cos;
+  private final double[] sin;
+  // The bit reversal of each index, in log2(size) bits.
+  private final int[] bitReversed;
+  // Scratch space for transformReal.
+  private final double[] packedReal;
+  private final double[] packedImaginary;
+
+  Fft(int size) {
+    if (size < 2 || Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("FFT size must be a power of 2: " + size);
+    }
+    this.size = size;
+    int half = size / 2;
+    cos = new double[half + 1];
+    sin = new double[half + 1];
+    for (int k = 0; k <= half; k++) {
+      double angle = 2 * Math.PI * k / size;
+      cos[k] = Math.cos(angle);
+      sin[k] = Math.sin(angle);
+    }
+    bitReversed = new int[size];
+    int shift = 1 + Integer.numberOfLeadingZeros(size);
+    for (int i = 0; i < size; i++) {
+      bitReversed[i] = Integer.reverse(i) >>> shift;
+    }
+    packedReal = new double[half];
+    packedImaginary = new double[half];
+  }
+
+  int getSize() {
+    return size;
+  }
+
+  /**
+   * Transforms the complex numbers (real[i] + imaginary[i] * i) in place. Both arrays must hold at
+   * least {@link #getSize} values.
+   */
+  void transform(double[] real, double[] imaginary) {
+    transform(real, imaginary, size);
+  }
+
+  /**
+   * Transforms {@link #getSize} real samples from {@code input}, writing the first {@code size / 2
+   * + 1} frequency bins to {@code real} and {@code imaginary}. The remaining bins of a real input's
+   * transform are the complex conjugates of these, so they are not computed.
+   *
+   * <p>The samples are packed into a complex transform of half the size (even samples as real
+   * parts, odd samples as imaginary parts), which is then split into the full transform. This does
+   * about half the work of a complex transform with the imaginary parts set to zero.
+   */
+  void transformReal(double[] input, double[] real, double[] imaginary) {
+    int half = size / 2;
+    for (int k = 0; k < half; k++) {
+      packedReal[k] = input[2 * k];
+      packedImaginary[k] = input[2 * k + 1];
+    }
+    transform(packedReal, packedImaginary, half);
+
+    for (int k = 0; k <= half; k++) {
+      // Z[k] and Z[half - k], where Z[half] is Z[0].
+      int index = k == half ? 0 : k;
+      int mirror = k == 0 ? 0 : half - k;
+      double zReal = packedReal[index];
+      double zImaginary = packedImaginary[index];
+      double mirrorReal = packedReal[mirror];
+      double mirrorImaginary = packedImaginary[mirror];
+
+      // The transforms of the even and odd samples.
+      double evenReal = (zReal + mirrorReal) / 2;
+      double evenImaginary = (zImaginary - mirrorImaginary) / 2;
+      double oddReal = (zImaginary + mirrorImaginary) / 2;
+      double oddImaginary = (mirrorReal - zReal) / 2;
+
+      // X[k] = even + odd * e^(-2 * PI * i * k / size)
+      double wReal = cos[k];
+      double wImaginary = -sin[k];
+      real[k] = evenReal + oddReal * wReal - oddImaginary * wImaginary;
+      imaginary[k] = evenImaginary + oddReal * wImaginary + oddImaginary * wReal;
+    }
+  }
+
+  // Non-recursive Cooley-Tukey FFT of the first n values, where n divides size.
+  private void transform(double[] real, double[] imaginary, int n) {
+    // Reversing i * stride in log2(size) bits is the same as reversing i in log2(n) bits.
+    int stride = size / n;
+    for (int i = 0; i < n; i++) {
+      int j = bitReversed[i * stride];
+      if (j > i) {
+        double temp = real[j];
+        real[j] = real[i];
+        real[i] = temp;
+        temp = imaginary[j];
+        imaginary[j] = imaginary[i];
+        imaginary[i] = temp;
+      }
+    }
+
+    // Butterfly updates.
+    for (int l = 2; l <= n; l += l) {
+      int lHalf = l / 2;
+      // The k-th twiddle factor for this stage is e^(-2 * PI * i * k / l).
+      int twiddleStep = size / l;
+      for (int k = 0; k < lHalf; k++) {
+        double wA = cos[k * twiddleStep];
+        double wB = -sin[k * twiddleStep];
+        for (int index2 = k; index2 < n; index2 += l) {
+          int index1 = index2 + lHalf;
+          double xA = real[index1];
+          double xB = imaginary[index1];
+
+          // Multiply complex numbers.
+          // tao = x * w
+          double taoA = xA * wA - xB * wB;
+          double taoB = xA * wB + xB * wA;
+
+          real[index1] = real[index2] - taoA;
+          imaginary[index1] = imaginary[index2] - taoB;
+          real[index2] = real[index2] + taoA;
+          imaginary[index2] = imaginary[index2] + taoB;
+        }
+      }
+    }
+  }
+}
@@ -26,9 +26,11 @@ class GoertzelAnalyzer {
 
   /**
    * Applies a series of Goertzel filters to frequencies near the given frequency estimate, and
-   * returns the frequency with the highest power
+   * returns the frequency with the highest power. Only the {@code length} samples starting at
+   * {@code offset} are used.
    */
-  double findFrequencyWithHighestPower(short[] samples, double frequencyEstimate) {
+  double findFrequencyWithHighestPower(
+      short[] samples, int offset, int length, double frequencyEstimate) {
     // Choose accuracy based on frequency estimate. Lower frequencies need to be more
     // accurate than higher frequencies.
     double accuracy;
@@ -46,9 +48,9 @@ class GoertzelAnalyzer {
     // loFrequency is lower than hiFrequency, but the order of powerAtLoFrequency and
     // powerAtHiFrequency is not relevant.
     double loFrequency = frequencyEstimate - 10;
-    double powerAtLoFrequency = calculatePower(samples, loFrequency);
+    double powerAtLoFrequency = calculatePower(samples, offset, length, loFrequency);
     double hiFrequency = frequencyEstimate + 10;
-    double powerAtHiFrequency = calculatePower(samples, hiFrequency);
+    double powerAtHiFrequency = calculatePower(samples, offset, length, hiFrequency);
 
     do {
       // greatestPower is greater than secondGreatestPower, but the order of
@@ -75,7 +77,7 @@ class GoertzelAnalyzer {
       for (double frequency = loFrequency + interval;
           frequency < hiFrequency;
           frequency += interval) {
-        double power = calculatePower(samples, frequency);
+        double power = calculatePower(samples, offset, length, frequency);
         // Keep track of the greatest power as greatestPower and the second greatest
         // power as secondGreatestPower.
         if (power > greatestPower) {
@@ -125,14 +127,15 @@ class GoertzelAnalyzer {
   }
 
   /** Calculates the power at the given target frequency. */
-  private double calculatePower(short[] samples, double targetFrequency) {
+  private double calculatePower(
+      short[] samples, int offset, int length, double targetFrequency) {
     double normalizedFrequency = targetFrequency / sampleRateInHz;
     double coeff = 2 * Math.cos(2 * Math.PI * normalizedFrequency);
     double sPrev1 = 0;
     double sPrev2 = 0;
 
-    for (short sample : samples) {
-      double s = sample + coeff * sPrev1 - sPrev2;
+    for (int i = offset; i < offset + length; i++) {
+      double s = samples[i] + coeff * sPrev1 - sPrev2;
       sPrev2 = sPrev1;
       sPrev1 = s;
     }
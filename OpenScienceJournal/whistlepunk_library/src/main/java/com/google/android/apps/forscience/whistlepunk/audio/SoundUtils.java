@@ -66,9 +66,13 @@ public class SoundUtils {
   }
 
   public static double calculateUncalibratedDecibels(short[] samples, int length) {
+    return calculateUncalibratedDecibels(samples, 0, length);
+  }
+
+  public static double calculateUncalibratedDecibels(short[] samples, int offset, int length) {
     double totalSquared = 0;
 
-    for (int i = 0; i < length; i++) {
+    for (int i = offset; i < offset + length; i++) {
       short soundbits = samples[i];
       totalSquared += soundbits * soundbits;
     }
@@ -0,0 +1,84 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.audio;
+
+import static com.google.android.apps.forscience.whistlepunk.audio.AudioAnalyzer.BUFFER_SIZE;
+
+/**
+ * Runs an {@link AudioAnalyzer} over overlapping windows of a stream of samples. Each window is
+ * the latest {@link AudioAnalyzer#BUFFER_SIZE} samples, and a new window is analyzed every {@code
+ * hopSize} samples, so a smaller hop gives more frequent (but more expensive) updates.
+ *
+ * <p>Samples are kept in a circular buffer that is written twice, once in each half, so that the
+ * latest window is always a contiguous range of the buffer and can be analyzed in place.
+ */
+public class StreamingAudioAnalyzer {
+  /** Receives the result of analyzing each window. */
+  public interface FrequencyListener {
+    /** Called with the fundamental frequency of a window, or null if there isn't one. */
+    void onFrequencyDetected(Double frequency);
+  }
+
+  public static final int DEFAULT_HOP_SIZE = BUFFER_SIZE / 4;
+
+  private final AudioAnalyzer audioAnalyzer;
+  private final int hopSize;
+  // Sample i of the stream is stored at both (i % BUFFER_SIZE) and (i % BUFFER_SIZE) + BUFFER_SIZE.
+  private final short[] samples = new short[BUFFER_SIZE * 2];
+  private int writeIndex = 0;
+  private int samplesUntilAnalysis = BUFFER_SIZE;
+
+  public StreamingAudioAnalyzer(int sampleRateInHz, int hopSize) {
+    if (hopSize < 1 || hopSize > BUFFER_SIZE) {
+      throw new IllegalArgumentException("Hop size must be between 1 and " + BUFFER_SIZE);
+    }
+    audioAnalyzer = new AudioAnalyzer(sampleRateInHz);
+    this.hopSize = hopSize;
+  }
+
+  /**
+   * Adds samples to the stream, calling {@code listener} once for each window completed by them.
+   */
+  public void addSamples(short[] newSamples, FrequencyListener listener) {
+    int offset = 0;
+    while (offset < newSamples.length) {
+      // Copy up to the end of the circular buffer or the next analysis, whichever is first.
+      int length =
+          Math.min(
+              newSamples.length - offset,
+              Math.min(BUFFER_SIZE - writeIndex, samplesUntilAnalysis));
+      System.arraycopy(newSamples, offset, samples, writeIndex, length);
+      System.arraycopy(newSamples, offset, samples, writeIndex + BUFFER_SIZE, length);
+      offset += length;
+      writeIndex = (writeIndex + length) % BUFFER_SIZE;
+      samplesUntilAnalysis -= length;
+
+      if (samplesUntilAnalysis == 0) {
+        // The latest BUFFER_SIZE samples start at writeIndex.
+        listener.onFrequencyDetected(
+            audioAnalyzer.detectFundamentalFrequency(samples, writeIndex, BUFFER_SIZE));
+        samplesUntilAnalysis = hopSize;
+      }
+    }
+  }
+
+  /** Discards all samples, so that the next window is only analyzed once it is full again. */
+  public void reset() {
+    writeIndex = 0;
+    samplesUntilAnalysis = BUFFER_SIZE;
+  }
+}
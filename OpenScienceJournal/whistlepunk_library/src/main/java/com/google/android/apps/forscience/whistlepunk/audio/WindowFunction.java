@@ -0,0 +1,58 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.audio;
+
+/** Window functions that can be applied to samples before an FFT, to reduce spectral leakage. */
+enum WindowFunction {
+  /** Leaves the samples unchanged. */
+  RECTANGULAR {
+    @Override
+    double coefficient(int index, int size) {
+      return 1.0;
+    }
+  },
+  HANN {
+    @Override
+    double coefficient(int index, int size) {
+      return 0.5 - 0.5 * Math.cos(2 * Math.PI * index / (size - 1));
+    }
+  },
+  HAMMING {
+    @Override
+    double coefficient(int index, int size) {
+      return 0.54 - 0.46 * Math.cos(2 * Math.PI * index / (size - 1));
+    }
+  },
+  BLACKMAN {
+    @Override
+    double coefficient(int index, int size) {
+      double angle = 2 * Math.PI * index / (size - 1);
+      return 0.42 - 0.5 * Math.cos(angle) + 0.08 * Math.cos(2 * angle);
+    }
+  };
+
+  abstract double coefficient(int index, int size);
+
+  /** Returns the coefficients to multiply {@code size} samples by. */
+  double[] createCoefficients(int size) {
+    double[] coefficients = new double[size];
+    for (int i = 0; i < size; i++) {
+      coefficients[i] = coefficient(i, size);
+    }
+    return coefficients;
+  }
+}
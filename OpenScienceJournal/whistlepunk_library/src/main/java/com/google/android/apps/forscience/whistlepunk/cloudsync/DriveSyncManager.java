@@ -2,6 +2,8 @@ package com.google.android.apps.forscience.whistlepunk.cloudsync;
 
 import android.content.Context;
 import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.apps.forscience.javalib.MaybeConsumers;
 import com.google.android.apps.forscience.whistlepunk.AppSingleton;
 import com.google.android.apps.forscience.whistlepunk.DataController;
 import com.google.android.apps.forscience.whistlepunk.PictureUtils;
@@ -21,18 +23,18 @@ import com.google.android.apps.forscience.whistlepunk.filemetadata.LocalSyncMana
 import com.google.android.apps.forscience.whistlepunk.filemetadata.Trial;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciLabel;
-import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensorDumpReader;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -52,7 +54,9 @@ public class DriveSyncManager implements CloudSyncManager {
   private final AppAccount appAccount;
   private final DataController dc;
   private final RecordingDataController rdc;
-  private boolean sjFolderExists = false;
+  private final ExperimentSyncEngine syncEngine = new ExperimentSyncEngine();
+  // Read and written by the sync engine's worker threads.
+  private volatile boolean sjFolderExists = false;
   // State-holders for kicking off a second sync if one is requested during an active sync.
   private boolean syncAgain = false;
   private String lastLogMessage = "";
@@ -68,7 +72,8 @@ public class DriveSyncManager implements CloudSyncManager {
     this(
         appAccount,
         dc,
-        driveSupplier.get().init(transport, jsonFactory, appAccount, applicationContext),
+        new RetryingDriveApi(
+            driveSupplier.get().init(transport, jsonFactory, appAccount, applicationContext)),
         rdc);
   }
 
@@ -158,7 +163,6 @@ public class DriveSyncManager implements CloudSyncManager {
       ExperimentLibraryManager experimentLibraryManager,
       LocalSyncManager localSyncManager)
       throws IOException {
-    Map<String, FileSyncCollection> fileSyncCollectionMap = new HashMap<>();
     if (!appAccount.isSignedIn()) {
       AppSingleton.getInstance(context).setSyncServiceBusy(false);
       return;
@@ -190,100 +194,46 @@ public class DriveSyncManager implements CloudSyncManager {
 
     String sjDirectoryId = getSJDirectoryId(experimentLibraryManager);
     experimentLibraryManager.setFolderId(sjDirectoryId);
-    List<ExperimentOverviewPojo> overviews = dc.blockingGetExperimentOverviews(true);
-    for (String id : experimentLibraryManager.getKnownExperiments()) {
-      // For each experiment that we know about (past or current)
-      ExperimentOverviewPojo matching = null;
-      for (ExperimentOverviewPojo overview : overviews) {
-        // For each experiment that is currently not-deleted
-        if (id.equals(overview.getExperimentId())) {
-          // Find if the known experiment currently exists locally
-          matching = overview;
-        }
-      }
-      if (experimentLibraryManager.isDeleted(id)) {
-        // If the known experiment has been marked deleted
-        if (matching != null) {
-          // If it exists locally, delete it.
-          if (Log.isLoggable(TAG, Log.INFO)) {
-            Log.i(TAG, "Deleting locally: Marked deleted in library");
-          }
-          deleteExperiment(id);
-          deleteExperimentRemotely(context, experimentLibraryManager, id, sjDirectoryId);
-        }
-        if (localSyncManager.getDirty(id)) {
-          if (Log.isLoggable(TAG, Log.INFO)) {
-            Log.i(TAG, "Deleting locally: Marked deleted and dirty in library");
-          }
-          deleteExperimentRemotely(context, experimentLibraryManager, id, sjDirectoryId);
-          localSyncManager.setDirty(id, false);
-        }
-      } else {
-        String remoteFileId = experimentLibraryManager.getFileId(id);
-        long remoteDriveExperimentVersion = -1;
-        if (remoteFileId != null && driveExperimentVersions.get(remoteFileId) != null) {
-          remoteDriveExperimentVersion = driveExperimentVersions.get(remoteFileId);
-        }
-        // Else the experiment hasn't been deleted
-        if (matching == null) {
-          // And it doesn't exist locally, so add it, if it exists remotely!
-          if (Strings.isNullOrEmpty(remoteFileId)) {
-            // This happens if the ExperimentLibrary file doesn't have a file ID yet. For example
-            // see bug 123845261, where an iOS device and an Android device have both been offline
-            // and both come online and attempt to sync at the same time. One device could update
-            // the experiment library file and before it finished uploading all the individual
-            // experiments, the other device downloads the experiment library file.
-            // TODO(b/135479937): Reconcile experiments in drive.
-            // For now, track this to find out how often this happens in the wild.
-            WhistlePunkApplication.getUsageTracker(context)
-                .trackEvent(
-                    TrackerConstants.CATEGORY_SYNC,
-                    TrackerConstants.ACTION_MISSING_REMOTE_FILE_ID,
-                    null,
-                    0);
-            continue;
-          } else if (!driveApi.getFileExists(remoteFileId)) {
-            if (Log.isLoggable(TAG, Log.INFO)) {
-              Log.i(TAG, "Marking deleted: package not found and local not found");
-            }
-            experimentLibraryManager.setDeleted(id, true);
-          } else {
-            Experiment newExperiment =
-                Experiment.newExperiment(
-                    context,
-                    appAccount,
-                    experimentLibraryManager,
-                    experimentLibraryManager.getModified(id),
-                    id,
-                    0,
-                    experimentLibraryManager.getModified(id));
-            fileSyncCollectionMap.put(
-                id,
-                syncNewRemoteExperimentProtoFileInBackgroundThread(
-                    context, id, experimentLibraryManager, localSyncManager, dc, newExperiment));
-          }
-        } else {
-          // It does exist locally. Let's sync it!
-          try {
-            fileSyncCollectionMap.put(id, syncExperimentProtoFileInBackgroundThread(
+    // Index the experiments that currently exist locally, instead of searching them for each known
+    // experiment.
+    Set<String> localExperimentIds = new HashSet<>();
+    for (ExperimentOverviewPojo overview : dc.blockingGetExperimentOverviews(true)) {
+      localExperimentIds.add(overview.getExperimentId());
+    }
+    syncEngine.syncExperiments(
+        experimentLibraryManager.getKnownExperiments(),
+        new ExperimentSyncEngine.ExperimentSyncer() {
+          @Override
+          public FileSyncCollection syncMetadata(String experimentId) throws IOException {
+            return syncKnownExperimentInBackgroundThread(
                 context,
-                id,
-                remoteDriveExperimentVersion,
+                experimentId,
+                localExperimentIds.contains(experimentId),
+                driveExperimentVersions,
+                sjDirectoryId,
                 experimentLibraryManager,
-                localSyncManager));
-          } catch (IOException ioe) {
-            Log.e(TAG, "IOException", ioe);
+                localSyncManager);
           }
-        }
-      }
-      AppSingleton.getInstance(context).notifyNewExperimentSynced();
-    }
 
-    transferFileSyncCollections(context, experimentLibraryManager, fileSyncCollectionMap);
+          @Override
+          public void transferFiles(String experimentId, FileSyncCollection files) {
+            transferFileSyncCollection(
+                context, experimentLibraryManager, localSyncManager, experimentId, files);
+          }
+        },
+        (experimentId, syncedCount, totalCount) -> {
+          if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Synced " + syncedCount + " of " + totalCount + " experiments");
+          }
+          AppSingleton.getInstance(context).notifyNewExperimentSynced();
+        });
+
     AppSingleton.getInstance(context).notifyNewExperimentSynced();
-    // Now upload the library back to Drive
+    // Now upload the library back to Drive, once all of the changes to it are in the file.
+    experimentLibraryManager.flush();
     remoteLibraryVersion = uploadExperimentLibraryToDrive();
     localSyncManager.setLastSyncedLibraryVersion(remoteLibraryVersion);
+    localSyncManager.flush();
     AppSingleton.getInstance(context).setSyncServiceBusy(false);
     sjFolderExists = false;
     // If a sync was requested while we were busy, start another sync.
@@ -294,6 +244,93 @@ public class DriveSyncManager implements CloudSyncManager {
     cleanUpDrive(context, experimentLibraryManager, localSyncManager, sjDirectoryId);
   }
 
+  /**
+   * Syncs one experiment that we know about (past or current), returning the files to transfer
+   * for it. Called on one of the sync engine's worker threads.
+   */
+  private FileSyncCollection syncKnownExperimentInBackgroundThread(
+      Context context,
+      String id,
+      boolean existsLocally,
+      Map<String, Long> driveExperimentVersions,
+      String sjDirectoryId,
+      ExperimentLibraryManager experimentLibraryManager,
+      LocalSyncManager localSyncManager)
+      throws IOException {
+    if (experimentLibraryManager.isDeleted(id)) {
+      // If the known experiment has been marked deleted
+      if (existsLocally) {
+        // If it exists locally, delete it.
+        if (Log.isLoggable(TAG, Log.INFO)) {
+          Log.i(TAG, "Deleting locally: Marked deleted in library");
+        }
+        deleteExperiment(id);
+        deleteExperimentRemotely(context, experimentLibraryManager, id, sjDirectoryId);
+      }
+      if (localSyncManager.getDirty(id)) {
+        if (Log.isLoggable(TAG, Log.INFO)) {
+          Log.i(TAG, "Deleting locally: Marked deleted and dirty in library");
+        }
+        deleteExperimentRemotely(context, experimentLibraryManager, id, sjDirectoryId);
+        localSyncManager.setDirty(id, false);
+      }
+      return null;
+    }
+
+    // Else the experiment hasn't been deleted
+    String remoteFileId = experimentLibraryManager.getFileId(id);
+    long remoteDriveExperimentVersion = -1;
+    if (remoteFileId != null && driveExperimentVersions.get(remoteFileId) != null) {
+      remoteDriveExperimentVersion = driveExperimentVersions.get(remoteFileId);
+    }
+    if (!existsLocally) {
+      // And it doesn't exist locally, so add it, if it exists remotely!
+      if (Strings.isNullOrEmpty(remoteFileId)) {
+        // This happens if the ExperimentLibrary file doesn't have a file ID yet. For example
+        // see bug 123845261, where an iOS device and an Android device have both been offline
+        // and both come online and attempt to sync at the same time. One device could update
+        // the experiment library file and before it finished uploading all the individual
+        // experiments, the other device downloads the experiment library file.
+        // TODO(b/135479937): Reconcile experiments in drive.
+        // For now, track this to find out how often this happens in the wild.
+        WhistlePunkApplication.getUsageTracker(context)
+            .trackEvent(
+                TrackerConstants.CATEGORY_SYNC,
+                TrackerConstants.ACTION_MISSING_REMOTE_FILE_ID,
+                null,
+                0);
+        return null;
+      } else if (!driveApi.getFileExists(remoteFileId)) {
+        if (Log.isLoggable(TAG, Log.INFO)) {
+          Log.i(TAG, "Marking deleted: package not found and local not found");
+        }
+        experimentLibraryManager.setDeleted(id, true);
+        return null;
+      } else {
+        Experiment newExperiment =
+            Experiment.newExperiment(
+                context,
+                appAccount,
+                experimentLibraryManager,
+                experimentLibraryManager.getModified(id),
+                id,
+                0,
+                experimentLibraryManager.getModified(id));
+        return syncNewRemoteExperimentProtoFileInBackgroundThread(
+            context, id, experimentLibraryManager, localSyncManager, dc, newExperiment);
+      }
+    }
+
+    // It does exist locally. Let's sync it!
+    try {
+      return syncExperimentProtoFileInBackgroundThread(
+          context, id, remoteDriveExperimentVersion, experimentLibraryManager, localSyncManager);
+    } catch (IOException ioe) {
+      Log.e(TAG, "IOException", ioe);
+      return null;
+    }
+  }
+
   private long uploadExperimentLibraryToDrive() throws IOException {
     synchronized (appAccount.getLockForExperimentLibraryFile()) {
       java.io.File libraryFile = getLocalLibraryFile();
@@ -310,8 +347,15 @@ public class DriveSyncManager implements CloudSyncManager {
     }
   }
 
-  private java.io.File downloadFileInBackgroundThread(
-      String experimentId, String fileName, ExperimentLibraryManager elm)
+  /**
+   * Downloads a file into the experiment directory, unless the local copy is the one that was last
+   * synced with the experiment's package.
+   *
+   * @return the local file.
+   */
+  @VisibleForTesting
+  java.io.File downloadFileInBackgroundThread(
+      String experimentId, String fileName, ExperimentLibraryManager elm, LocalSyncManager lsm)
       throws IOException {
     if (!appAccount.isSignedIn()) {
       return null;
@@ -323,11 +367,22 @@ public class DriveSyncManager implements CloudSyncManager {
     String packageId = elm.getFileId(experimentId);
     java.io.File localExperimentDirectory =
         FileMetadataUtil.getInstance().getExperimentDirectory(appAccount, experimentId);
-    return driveApi.downloadExperimentAsset(packageId, localExperimentDirectory, fileName);
+    java.io.File localFile = new java.io.File(localExperimentDirectory, fileName);
+    if (isSynced(experimentId, packageId, fileName, localFile, lsm)) {
+      return localFile;
+    }
+    localFile = driveApi.downloadExperimentAsset(packageId, localExperimentDirectory, fileName);
+    recordSyncedHash(experimentId, packageId, fileName, localFile, lsm);
+    return localFile;
   }
 
-  private void uploadFileInBackgroundThread(
-      String experimentId, String fileName, ExperimentLibraryManager elm)
+  /**
+   * Uploads a file from the experiment directory, unless it hasn't changed since it was last
+   * synced with the experiment's package.
+   */
+  @VisibleForTesting
+  void uploadFileInBackgroundThread(
+      String experimentId, String fileName, ExperimentLibraryManager elm, LocalSyncManager lsm)
       throws IOException {
     if (!appAccount.isSignedIn()) {
       return;
@@ -336,56 +391,90 @@ public class DriveSyncManager implements CloudSyncManager {
     java.io.File localExperimentDirectory =
         FileMetadataUtil.getInstance().getExperimentDirectory(appAccount, experimentId);
     java.io.File localFile = new java.io.File(localExperimentDirectory, fileName);
+    if (isSynced(experimentId, packageId, fileName, localFile, lsm)) {
+      return;
+    }
     driveApi.uploadFile(localFile, packageId);
+    recordSyncedHash(experimentId, packageId, fileName, localFile, lsm);
   }
 
-  private void downloadTrialInBackgroundThread(
-      String experimentId, String trialId, ExperimentLibraryManager elm)
+  @VisibleForTesting
+  void downloadTrialInBackgroundThread(
+      String experimentId, String trialId, ExperimentLibraryManager elm, LocalSyncManager lsm)
       throws IOException {
     if (!appAccount.isSignedIn()) {
       return;
     }
-    java.io.File localFile =
-        downloadFileInBackgroundThread(
-            experimentId, FileMetadataUtil.getInstance().getTrialProtoFileName(trialId), elm);
+    String fileName = FileMetadataUtil.getInstance().getTrialProtoFileName(trialId);
+    String packageId = elm.getFileId(experimentId);
+    java.io.File localExperimentDirectory =
+        FileMetadataUtil.getInstance().getExperimentDirectory(appAccount, experimentId);
+    java.io.File localFile = new java.io.File(localExperimentDirectory, fileName);
+    if (isSynced(experimentId, packageId, fileName, localFile, lsm)) {
+      // The trial data was already imported from this file.
+      return;
+    }
+    localFile = driveApi.downloadExperimentAsset(packageId, localExperimentDirectory, fileName);
+    String hash = FileMetadataUtil.getInstance().hashFile(localFile);
+    if (hash != null && hash.equals(lsm.getSyncedFileHash(experimentId, packageId, fileName))) {
+      // The file was replaced with identical contents, so there is nothing new to import.
+      return;
+    }
     ScalarSensorDumpReader dumpReader = new ScalarSensorDumpReader(rdc);
     HashMap<String, String> trialIdMap = new HashMap<>();
     trialIdMap.put(trialId, trialId);
 
-    GoosciScalarSensorData.ScalarSensorData dataProto = null;
     if (localFile.canRead()) {
-      try (FileInputStream fis = new FileInputStream(localFile)) {
-        dataProto = GoosciScalarSensorData.ScalarSensorData.parseFrom(fis);
+      try {
+        dumpReader.readData(localFile, trialIdMap);
+        // readData only queues the readings, so wait until the data thread has written them.
+        MaybeConsumers.buildCompleteable(mc -> rdc.flushScalarReadings(mc)).blockingAwait();
       } catch (Exception e) {
         Log.e(TAG, "Exception reading trial data file", e);
+        return;
+      }
+      // Only record the hash once the data is imported, so that a failed import is retried.
+      if (hash != null) {
+        lsm.setSyncedFileHash(experimentId, packageId, fileName, hash);
       }
     }
-
-    if (dataProto == null) {
-      dataProto = GoosciScalarSensorData.ScalarSensorData.getDefaultInstance();
-    }
-
-    dumpReader.readData(dataProto, trialIdMap);
   }
 
   private void uploadTrialInBackgroundThread(
-      Context context, String experimentId, String trialId, ExperimentLibraryManager elm)
+      Context context,
+      String experimentId,
+      String trialId,
+      ExperimentLibraryManager elm,
+      LocalSyncManager lsm)
       throws IOException {
     if (!appAccount.isSignedIn()) {
       return;
     }
-    java.io.File localFile =
-        RxDataController.writeTrialProtoToFile(dc, experimentId, trialId).blockingGet();
     try {
+      // Get the remote Drive "Science Journal" folder.
+      String sjDirectoryId = getSJDirectoryId(elm);
+      // Get the Drive embedded package ID and metadata for the Experiment
+      String packageId = getExperimentPackageId(context, elm, experimentId, sjDirectoryId);
+      String fileName = FileMetadataUtil.getInstance().getTrialProtoFileName(trialId);
+      java.io.File existingFile =
+          new java.io.File(
+              FileMetadataUtil.getInstance().getExperimentDirectory(appAccount, experimentId),
+              fileName);
+      // Recorded trial data doesn't change, so if the file written for the last sync is still
+      // there, don't read the whole trial out of the database again.
+      if (isSynced(experimentId, packageId, fileName, existingFile, lsm)) {
+        return;
+      }
+      java.io.File localFile =
+          RxDataController.writeTrialProtoToFile(dc, experimentId, trialId).blockingGet();
       if (localFile == null) {
         throw new IOException("Trial not found");
-      } else {
-        // Get the remote Drive "Science Journal" folder.
-        String sjDirectoryId = getSJDirectoryId(elm);
-        // Get the Drive embedded package ID and metadata for the Experiment
-        String packageId = getExperimentPackageId(context, elm, experimentId, sjDirectoryId);
-        driveApi.uploadFile(localFile, packageId);
       }
+      if (isSynced(experimentId, packageId, fileName, localFile, lsm)) {
+        return;
+      }
+      driveApi.uploadFile(localFile, packageId);
+      recordSyncedHash(experimentId, packageId, fileName, localFile, lsm);
     } catch (IOException ioe) {
       if (Log.isLoggable(TAG, Log.ERROR)) {
         Log.e(TAG, "File write failed", ioe);
@@ -393,6 +482,33 @@ public class DriveSyncManager implements CloudSyncManager {
     }
   }
 
+  /**
+   * Returns whether the local file has the same contents as when it was last uploaded to or
+   * downloaded from the package.
+   */
+  private boolean isSynced(
+      String experimentId,
+      String packageId,
+      String fileName,
+      java.io.File localFile,
+      LocalSyncManager lsm) {
+    String syncedHash = lsm.getSyncedFileHash(experimentId, packageId, fileName);
+    return syncedHash != null
+        && syncedHash.equals(FileMetadataUtil.getInstance().hashFile(localFile));
+  }
+
+  private void recordSyncedHash(
+      String experimentId,
+      String packageId,
+      String fileName,
+      java.io.File localFile,
+      LocalSyncManager lsm) {
+    String hash = FileMetadataUtil.getInstance().hashFile(localFile);
+    if (hash != null) {
+      lsm.setSyncedFileHash(experimentId, packageId, fileName, hash);
+    }
+  }
+
   private GoosciExperimentLibrary.ExperimentLibrary downloadExperimentLibraryFile()
       throws IOException {
     String fileId = driveApi.getRemoteExperimentLibraryFileId();
@@ -506,14 +622,15 @@ public class DriveSyncManager implements CloudSyncManager {
       localSyncManager.setServerArchived(experimentId, elm.isArchived(experimentId));
       insertExperimentProto(experimentId, packageId, localSyncManager, localExperiment.getTitle());
       for (Trial t : localExperiment.getTrials()) {
-        uploadTrialInBackgroundThread(context, experimentId, t.getTrialId(), elm);
+        uploadTrialInBackgroundThread(
+            context, experimentId, t.getTrialId(), elm, localSyncManager);
         for (Label l : t.getLabels()) {
-          uploadLabelIfNecessary(l, experimentId, elm);
+          uploadLabelIfNecessary(l, experimentId, elm, localSyncManager);
         }
       }
 
       for (Label l : localExperiment.getLabels()) {
-        uploadLabelIfNecessary(l, experimentId, elm);
+        uploadLabelIfNecessary(l, experimentId, elm, localSyncManager);
       }
 
     } else {
@@ -576,13 +693,15 @@ public class DriveSyncManager implements CloudSyncManager {
                 experimentId,
                 FileMetadataUtil.getInstance()
                     .getRelativePathInExperiment(experimentId, overviewImage),
-                elm);
+                elm,
+                localSyncManager);
           } else {
             downloadFileInBackgroundThread(
                 experimentId,
                 FileMetadataUtil.getInstance()
                     .getRelativePathInExperiment(experimentId, overviewImage),
-                elm);
+                elm,
+                localSyncManager);
           }
           return sync;
         } catch (IOException ioe) {
@@ -647,14 +766,14 @@ public class DriveSyncManager implements CloudSyncManager {
         .blockingAwait();
 
     for (Trial t : localExperiment.getTrials()) {
-      downloadTrialInBackgroundThread(experimentId, t.getTrialId(), elm);
+      downloadTrialInBackgroundThread(experimentId, t.getTrialId(), elm, localSyncManager);
       for (Label l : t.getLabels()) {
-        downloadLabelIfNecessary(l, experimentId, elm);
+        downloadLabelIfNecessary(l, experimentId, elm, localSyncManager);
       }
     }
 
     for (Label l : localExperiment.getLabels()) {
-      downloadLabelIfNecessary(l, experimentId, elm);
+      downloadLabelIfNecessary(l, experimentId, elm, localSyncManager);
     }
 
     try {
@@ -672,12 +791,14 @@ public class DriveSyncManager implements CloudSyncManager {
         uploadFileInBackgroundThread(
             experimentId,
             FileMetadataUtil.getInstance().getRelativePathInExperiment(experimentId, overviewImage),
-            elm);
+            elm,
+            localSyncManager);
       } else {
         downloadFileInBackgroundThread(
             experimentId,
             FileMetadataUtil.getInstance().getRelativePathInExperiment(experimentId, overviewImage),
-            elm);
+            elm,
+            localSyncManager);
       }
     } catch (IOException ioe) {
       Log.e(TAG, "IOException", ioe);
@@ -689,10 +810,11 @@ public class DriveSyncManager implements CloudSyncManager {
   }
 
   private void uploadLabelIfNecessary(
-      Label l, String experimentId, ExperimentLibraryManager elm) {
+      Label l, String experimentId, ExperimentLibraryManager elm, LocalSyncManager lsm) {
     if (l.getType() == GoosciLabel.Label.ValueType.PICTURE) {
       try {
-        uploadFileInBackgroundThread(experimentId, l.getPictureLabelValue().getFilePath(), elm);
+        uploadFileInBackgroundThread(
+            experimentId, l.getPictureLabelValue().getFilePath(), elm, lsm);
       } catch (IOException ioe) {
         if (Log.isLoggable(TAG, Log.ERROR)) {
           Log.e(TAG, "IOException", ioe);
@@ -702,10 +824,11 @@ public class DriveSyncManager implements CloudSyncManager {
   }
 
   private void downloadLabelIfNecessary(
-      Label l, String experimentId, ExperimentLibraryManager elm) {
+      Label l, String experimentId, ExperimentLibraryManager elm, LocalSyncManager lsm) {
     if (l.getType() == GoosciLabel.Label.ValueType.PICTURE) {
       try {
-        downloadFileInBackgroundThread(experimentId, l.getPictureLabelValue().getFilePath(), elm);
+        downloadFileInBackgroundThread(
+            experimentId, l.getPictureLabelValue().getFilePath(), elm, lsm);
       } catch (IOException ioe) {
         if (Log.isLoggable(TAG, Log.ERROR)) {
           Log.e(TAG, "IOException", ioe);
@@ -835,47 +958,48 @@ public class DriveSyncManager implements CloudSyncManager {
     }
   }
 
-  private void transferFileSyncCollections(Context context, ExperimentLibraryManager elm,
-      Map<String, FileSyncCollection> collectionMap) {
-    for (String experimentId : collectionMap.keySet()) {
-      FileSyncCollection sync = collectionMap.get(experimentId);
-      for (String download : sync.getImageDownloads()) {
-        try {
-          downloadFileInBackgroundThread(experimentId, download, elm);
-        } catch (IOException ioe) {
-          if (Log.isLoggable(TAG, Log.ERROR)) {
-            Log.e(TAG, "IOException", ioe);
-          }
+  private void transferFileSyncCollection(
+      Context context,
+      ExperimentLibraryManager elm,
+      LocalSyncManager lsm,
+      String experimentId,
+      FileSyncCollection sync) {
+    for (String download : sync.getImageDownloads()) {
+      try {
+        downloadFileInBackgroundThread(experimentId, download, elm, lsm);
+      } catch (IOException ioe) {
+        if (Log.isLoggable(TAG, Log.ERROR)) {
+          Log.e(TAG, "IOException", ioe);
         }
       }
+    }
 
-      for (String upload : sync.getImageUploads()) {
-        try {
-          uploadFileInBackgroundThread(experimentId, upload, elm);
-        } catch (IOException ioe) {
-          if (Log.isLoggable(TAG, Log.ERROR)) {
-            Log.e(TAG, "IOException", ioe);
-          }
+    for (String upload : sync.getImageUploads()) {
+      try {
+        uploadFileInBackgroundThread(experimentId, upload, elm, lsm);
+      } catch (IOException ioe) {
+        if (Log.isLoggable(TAG, Log.ERROR)) {
+          Log.e(TAG, "IOException", ioe);
         }
       }
+    }
 
-      for (String download : sync.getTrialDownloads()) {
-        try {
-          downloadTrialInBackgroundThread(experimentId, download, elm);
-        } catch (IOException ioe) {
-          if (Log.isLoggable(TAG, Log.ERROR)) {
-            Log.e(TAG, "IOException", ioe);
-          }
+    for (String download : sync.getTrialDownloads()) {
+      try {
+        downloadTrialInBackgroundThread(experimentId, download, elm, lsm);
+      } catch (IOException ioe) {
+        if (Log.isLoggable(TAG, Log.ERROR)) {
+          Log.e(TAG, "IOException", ioe);
         }
       }
+    }
 
-      for (String upload : sync.getTrialUploads()) {
-        try {
-          uploadTrialInBackgroundThread(context, experimentId, upload, elm);
-        } catch (IOException ioe) {
-          if (Log.isLoggable(TAG, Log.ERROR)) {
-            Log.e(TAG, "IOException", ioe);
-          }
+    for (String upload : sync.getTrialUploads()) {
+      try {
+        uploadTrialInBackgroundThread(context, experimentId, upload, elm, lsm);
+      } catch (IOException ioe) {
+        if (Log.isLoggable(TAG, Log.ERROR)) {
+          Log.e(TAG, "IOException", ioe);
         }
       }
     }
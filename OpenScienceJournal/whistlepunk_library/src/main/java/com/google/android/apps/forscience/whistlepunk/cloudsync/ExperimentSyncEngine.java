@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.cloudsync;
+
+import android.util.Log;
+import com.google.android.apps.forscience.whistlepunk.filemetadata.FileSyncCollection;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Syncs many experiments at once on a bounded pool of worker threads. Each experiment's metadata
+ * is synced and then its files are transferred, in that order and on the same worker, but
+ * different experiments are synced in parallel. So one experiment's files can be transferring
+ * while the next experiment's metadata is being synced, and most of the time spent waiting on
+ * Drive overlaps.
+ */
+class ExperimentSyncEngine {
+  private static final String TAG = "ExperimentSyncEngine";
+  static final int DEFAULT_THREAD_COUNT = 4;
+  private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+
+  /** Syncs a single experiment. Called on a worker thread. */
+  interface ExperimentSyncer {
+    /**
+     * Syncs the experiment's metadata.
+     *
+     * @return the files to transfer afterwards, or null if there are none.
+     */
+    FileSyncCollection syncMetadata(String experimentId) throws IOException;
+
+    /** Transfers the files returned by {@link #syncMetadata}. */
+    void transferFiles(String experimentId, FileSyncCollection files);
+  }
+
+  /** Is told about each experiment as it finishes syncing, on the thread that started the sync. */
+  interface ProgressListener {
+    void onExperimentSynced(String experimentId, int syncedCount, int totalCount);
+  }
+
+  private final ThreadPoolExecutor executor;
+
+  ExperimentSyncEngine() {
+    this(DEFAULT_THREAD_COUNT);
+  }
+
+  ExperimentSyncEngine(int threadCount) {
+    AtomicInteger threadNumber = new AtomicInteger();
+    executor =
+        new ThreadPoolExecutor(
+            threadCount,
+            threadCount,
+            IDLE_THREAD_TIMEOUT_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> new Thread(runnable, TAG + "-" + threadNumber.incrementAndGet()));
+    // Don't keep threads around between syncs.
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Syncs each of the experiments, returning once they have all finished. If syncing the metadata
+   * of any of them fails, the others are still synced, and then the first failure is thrown.
+   */
+  void syncExperiments(
+      Collection<String> experimentIds, ExperimentSyncer syncer, ProgressListener listener)
+      throws IOException {
+    CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+    for (String experimentId : experimentIds) {
+      completionService.submit(
+          () -> {
+            FileSyncCollection files = syncer.syncMetadata(experimentId);
+            if (files != null) {
+              syncer.transferFiles(experimentId, files);
+            }
+            return experimentId;
+          });
+    }
+
+    IOException firstFailure = null;
+    int total = experimentIds.size();
+    for (int synced = 1; synced <= total; synced++) {
+      try {
+        String experimentId = completionService.take().get();
+        listener.onExperimentSynced(experimentId, synced, total);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          if (Log.isLoggable(TAG, Log.ERROR)) {
+            Log.e(TAG, "Experiment sync failed", cause);
+          }
+          if (firstFailure == null) {
+            firstFailure = (IOException) cause;
+          }
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else {
+          throw new RuntimeException(cause);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while syncing experiments", e);
+      }
+    }
+    if (firstFailure != null) {
+      throw firstFailure;
+    }
+  }
+}
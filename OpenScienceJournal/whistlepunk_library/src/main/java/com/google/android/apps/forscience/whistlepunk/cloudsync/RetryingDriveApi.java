@@ -0,0 +1,282 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.cloudsync;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
+import com.google.android.apps.forscience.whistlepunk.data.GoosciExperimentLibrary;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A DriveApi that retries calls to another DriveApi when they fail in a way that is likely to be
+ * temporary: Drive rate limiting the requests (with a 429, or a 403 whose reason is a rate limit),
+ * a server error, or a timeout. It waits longer before each retry, with some randomness so that
+ * parallel requests don't all retry at once.
+ *
+ * <p>Calls that create a new file on Drive are only retried if Drive rate limited them, since a
+ * server error or timeout may have happened after the file was created.
+ */
+class RetryingDriveApi implements DriveApi {
+  private static final String TAG = "RetryingDriveApi";
+  private static final int MAX_ATTEMPTS = 4;
+  private static final long INITIAL_BACKOFF_MS = 500;
+  private static final int STATUS_FORBIDDEN = 403;
+  private static final int STATUS_TOO_MANY_REQUESTS = 429;
+  private static final int STATUS_SERVER_ERROR = 500;
+
+  /** Waits between attempts. Replaced in tests to avoid actually waiting. */
+  interface Sleeper {
+    void sleep(long millis) throws InterruptedException;
+  }
+
+  private interface DriveCall<T> {
+    T call() throws IOException;
+  }
+
+  private final DriveApi delegate;
+  private final int maxAttempts;
+  private final long initialBackoffMs;
+  private final Sleeper sleeper;
+  private final Random random = new Random();
+
+  RetryingDriveApi(DriveApi delegate) {
+    this(delegate, MAX_ATTEMPTS, INITIAL_BACKOFF_MS, Thread::sleep);
+  }
+
+  @VisibleForTesting
+  RetryingDriveApi(DriveApi delegate, int maxAttempts, long initialBackoffMs, Sleeper sleeper) {
+    this.delegate = delegate;
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMs = initialBackoffMs;
+    this.sleeper = sleeper;
+  }
+
+  @Override
+  public DriveApi init(
+      HttpTransport transport,
+      JsonFactory jsonFactory,
+      AppAccount appAccount,
+      Context applicationContext) {
+    delegate.init(transport, jsonFactory, appAccount, applicationContext);
+    return this;
+  }
+
+  @Override
+  public GoosciExperimentLibrary.ExperimentLibrary downloadExperimentLibraryFile(String fileId)
+      throws IOException {
+    return retry(() -> delegate.downloadExperimentLibraryFile(fileId), true);
+  }
+
+  @Override
+  public GoosciExperiment.Experiment downloadExperimentProtoFile(String fileId)
+      throws IOException {
+    return retry(() -> delegate.downloadExperimentProtoFile(fileId), true);
+  }
+
+  @Override
+  public String getRemoteExperimentLibraryFileId() throws IOException {
+    return retry(delegate::getRemoteExperimentLibraryFileId, true);
+  }
+
+  @Override
+  public void insertExperimentLibraryFile(File libraryFile) throws IOException {
+    retry(
+        () -> {
+          delegate.insertExperimentLibraryFile(libraryFile);
+          return null;
+        },
+        false);
+  }
+
+  @Override
+  public void updateExperimentLibraryFile(File libraryFile, String fileId) throws IOException {
+    retry(
+        () -> {
+          delegate.updateExperimentLibraryFile(libraryFile, fileId);
+          return null;
+        },
+        true);
+  }
+
+  @Override
+  public File downloadExperimentAsset(String packageId, File experimentDirectory, String fileName)
+      throws IOException {
+    return retry(
+        () -> delegate.downloadExperimentAsset(packageId, experimentDirectory, fileName), true);
+  }
+
+  @Override
+  public String getExperimentPackageId(Context context, String directoryId) throws IOException {
+    return retry(() -> delegate.getExperimentPackageId(context, directoryId), false);
+  }
+
+  @Override
+  public boolean getFileExists(String fileId) throws IOException {
+    return retry(() -> delegate.getFileExists(fileId), true);
+  }
+
+  @Override
+  public Map<String, Long> getAllDriveExperimentVersions() throws IOException {
+    return retry(delegate::getAllDriveExperimentVersions, true);
+  }
+
+  @Override
+  public DriveFile getExperimentProtoMetadata(String packageId) throws IOException {
+    return retry(() -> delegate.getExperimentProtoMetadata(packageId), true);
+  }
+
+  @Override
+  public long insertExperimentProto(File localFile, String packageId, String experimentTitle)
+      throws IOException {
+    return retry(
+        () -> delegate.insertExperimentProto(localFile, packageId, experimentTitle), false);
+  }
+
+  @Override
+  public long updateExperimentProto(
+      File localFile,
+      DriveFile serverExperimentProtoMetadata,
+      String packageId,
+      String experimentTitle)
+      throws IOException {
+    return retry(
+        () ->
+            delegate.updateExperimentProto(
+                localFile, serverExperimentProtoMetadata, packageId, experimentTitle),
+        true);
+  }
+
+  @Override
+  public String createNewSJFolder() throws IOException {
+    return retry(delegate::createNewSJFolder, false);
+  }
+
+  @Override
+  public void trashFileById(String fileId) throws IOException {
+    retry(
+        () -> {
+          delegate.trashFileById(fileId);
+          return null;
+        },
+        true);
+  }
+
+  @Override
+  public void uploadFile(File localFile, String packageId) throws IOException {
+    // This updates the file if it is already in the package, so it is safe to repeat.
+    retry(
+        () -> {
+          delegate.uploadFile(localFile, packageId);
+          return null;
+        },
+        true);
+  }
+
+  @Override
+  public int getPackageVersion(String packageId) throws IOException {
+    return retry(() -> delegate.getPackageVersion(packageId), true);
+  }
+
+  @Override
+  public long getFileVersion(String fileId) throws IOException {
+    return retry(() -> delegate.getFileVersion(fileId), true);
+  }
+
+  @Override
+  public boolean sjFolderExists() throws IOException {
+    return delegate.sjFolderExists();
+  }
+
+  @Override
+  public int countSJExperiments() throws IOException {
+    return delegate.countSJExperiments();
+  }
+
+  /**
+   * Makes the call, retrying it if it fails temporarily.
+   *
+   * @param repeatable whether the call can safely be made again if it may already have succeeded.
+   */
+  private <T> T retry(DriveCall<T> call, boolean repeatable) throws IOException {
+    long backoffMs = initialBackoffMs;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return call.call();
+      } catch (IOException e) {
+        if (attempt >= maxAttempts || !shouldRetry(e, repeatable)) {
+          throw e;
+        }
+        if (Log.isLoggable(TAG, Log.INFO)) {
+          Log.i(TAG, "Retrying Drive call after attempt " + attempt + " failed", e);
+        }
+        try {
+          // Wait between half and one and a half times the backoff.
+          sleeper.sleep(backoffMs / 2 + (long) (random.nextDouble() * backoffMs));
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+        backoffMs *= 2;
+      }
+    }
+  }
+
+  @VisibleForTesting
+  static boolean shouldRetry(IOException e, boolean repeatable) {
+    if (e instanceof HttpResponseException) {
+      int status = ((HttpResponseException) e).getStatusCode();
+      return isRateLimited((HttpResponseException) e)
+          || (repeatable && status >= STATUS_SERVER_ERROR);
+    }
+    return repeatable && e instanceof SocketTimeoutException;
+  }
+
+  private static boolean isRateLimited(HttpResponseException e) {
+    int status = e.getStatusCode();
+    if (status == STATUS_TOO_MANY_REQUESTS) {
+      return true;
+    }
+    // Drive reports most rate limits as a 403, which otherwise means the request isn't allowed.
+    if (status != STATUS_FORBIDDEN || !(e instanceof GoogleJsonResponseException)) {
+      return false;
+    }
+    GoogleJsonError details = ((GoogleJsonResponseException) e).getDetails();
+    if (details == null || details.getErrors() == null) {
+      return false;
+    }
+    for (GoogleJsonError.ErrorInfo error : details.getErrors()) {
+      String reason = error.getReason();
+      if ("rateLimitExceeded".equals(reason) || "userRateLimitExceeded".equals(reason)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.filemetadata;
+
+import androidx.annotation.VisibleForTesting;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces writes of some state to a file. Callers change the state and then call {@link
+ * #markDirty}, and the latest state is written on a background thread once the delay after the
+ * first unwritten change has passed, however many changes were made in the meantime.
+ *
+ * <p>All DebouncedWriters share one background thread by default, so that writes never run
+ * concurrently with each other or spawn a thread per write.
+ */
+class DebouncedWriter {
+  private static ScheduledExecutorService sharedExecutor;
+
+  private final Runnable write;
+  private final long delayMs;
+  private final ScheduledExecutorService executor;
+  // Held while writing, so that a flush and a scheduled write can't write out of order.
+  private final Object writeLock = new Object();
+
+  // Guarded by this.
+  private boolean dirty = false;
+  private boolean writeScheduled = false;
+
+  /**
+   * @param write Writes the current state. It is called on the background thread, or on the thread
+   *     calling {@link #flush}, and must take a consistent snapshot of the state itself.
+   * @param delayMs How long to wait after the first unwritten change before writing.
+   */
+  DebouncedWriter(Runnable write, long delayMs) {
+    this(write, delayMs, getSharedExecutor());
+  }
+
+  @VisibleForTesting
+  DebouncedWriter(Runnable write, long delayMs, ScheduledExecutorService executor) {
+    this.write = write;
+    this.delayMs = delayMs;
+    this.executor = executor;
+  }
+
+  private static synchronized ScheduledExecutorService getSharedExecutor() {
+    if (sharedExecutor == null) {
+      sharedExecutor =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "DebouncedWriter");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    return sharedExecutor;
+  }
+
+  /** Notes that the state has changed, and schedules a write if one isn't already scheduled. */
+  synchronized void markDirty() {
+    dirty = true;
+    if (!writeScheduled) {
+      writeScheduled = true;
+      executor.schedule(this::onDeadline, delayMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Writes the state on the calling thread if it has changed since it was last written, instead of
+   * waiting for the scheduled write. Call this before anything reads the file directly, and before
+   * the process might go away.
+   */
+  void flush() {
+    synchronized (writeLock) {
+      synchronized (this) {
+        if (!dirty) {
+          return;
+        }
+        dirty = false;
+      }
+      // Changes made during the write mark the state dirty again, and are written next time.
+      write.run();
+    }
+  }
+
+  @VisibleForTesting
+  synchronized boolean isDirty() {
+    return dirty;
+  }
+
+  private void onDeadline() {
+    synchronized (this) {
+      writeScheduled = false;
+    }
+    flush();
+  }
+}
@@ -55,16 +55,35 @@ import java.util.Set;
  */
 // TODO: Get the ExperimentOverview photo path from labels and trials at load and change.
 public class Experiment extends LabelListHolder {
-
   private static final String TAG = "Experiment";
   public static final String EXPERIMENTS = "experiments/";
 
+  /** A proto built by getExperimentProto, along with the part of it built from scratch. */
+  private static class BuiltProto {
+    final GoosciExperiment.Experiment header;
+    final GoosciExperiment.Experiment proto;
+
+    BuiltProto(GoosciExperiment.Experiment header, GoosciExperiment.Experiment proto) {
+      this.header = header;
+      this.proto = proto;
+    }
+  }
+
   private ExperimentOverviewPojo experimentOverview;
   private List<SensorLayoutPojo> sensorLayouts;
   private List<ExperimentSensor> experimentSensors;
   private List<SensorTrigger> sensorTriggers;
   private List<Trial> trials;
+  // Trials and labels are only built from these protos when they are first needed, because most
+  // loaded experiments are only looked at briefly. Null once the list has been built.
+  // getExperimentProto reads these on the write thread while the UI thread builds the lists, so
+  // they are volatile, and are only cleared after the built list has been stored: anyone who reads
+  // null here then sees the built list.
+  private volatile List<GoosciTrial.Trial> unbuiltTrials;
+  private volatile List<GoosciLabel.Label> unbuiltLabels;
   private final List<Change> changes;
+  // The last proto built by getExperimentProto.
+  private BuiltProto builtProto;
   private String title;
   private String description;
   private FileVersion.Builder fileVersion;
@@ -124,14 +143,8 @@ public class Experiment extends LabelListHolder {
   private Experiment(
       GoosciExperiment.Experiment experimentProto, ExperimentOverviewPojo experimentOverview) {
 
-    labels = new ArrayList<>();
-    for (GoosciLabel.Label labelProto : experimentProto.getLabelsList()) {
-      labels.add(Label.fromLabel(labelProto));
-    }
-    trials = new ArrayList<>();
-    for (GoosciTrial.Trial trial : experimentProto.getTrialsList()) {
-      trials.add(Trial.fromTrial(trial));
-    }
+    unbuiltLabels = experimentProto.getLabelsList();
+    unbuiltTrials = experimentProto.getTrialsList();
     sensorTriggers = new ArrayList<>();
     for (GoosciSensorTrigger.SensorTrigger proto : experimentProto.getSensorTriggersList()) {
       sensorTriggers.add(SensorTrigger.fromProto(proto));
@@ -184,53 +197,101 @@ public class Experiment extends LabelListHolder {
    */
   public GoosciExperiment.Experiment getExperimentProto() {
     // All local fields that represent experiment state must be merged back into the proto here.
-    GoosciExperiment.Experiment.Builder proto = GoosciExperiment.Experiment.newBuilder();
+    // Everything but the trials, labels and changes goes in the header, which is small enough to
+    // rebuild every time.
+    GoosciExperiment.Experiment.Builder header = GoosciExperiment.Experiment.newBuilder();
     if (sensorLayouts != null) {
       for (SensorLayoutPojo pojo : sensorLayouts) {
-        proto.addSensorLayouts(pojo.toProto());
+        header.addSensorLayouts(pojo.toProto());
       }
     }
 
     if (experimentSensors != null) {
-      proto.addAllExperimentSensors(experimentSensors);
+      header.addAllExperimentSensors(experimentSensors);
     }
 
     if (sensorTriggers != null) {
       for (SensorTrigger trigger : sensorTriggers) {
-        proto.addSensorTriggers(trigger.getTriggerProto());
+        header.addSensorTriggers(trigger.getTriggerProto());
       }
     }
 
-    if (trials != null) {
-      for (Trial trial : trials) {
-        proto.addTrials(trial.getTrialProto());
-      }
+    // Relative to the experiment.
+    header.setImagePath(getPathRelativeToExperiment(imagePath));
+    if (title != null) {
+      header.setTitle(title);
+    }
+    if (description != null) {
+      header.setDescription(description);
+    }
+    header.setTotalTrials(totalTrials);
+    header.setFileVersion(fileVersion.build());
+    header.setCreationTimeMs(creationTimeMs);
+    header.setVersion(fileVersion.getVersion());
+    header.setMinorVersion(fileVersion.getMinorVersion());
+    GoosciExperiment.Experiment headerProto = header.build();
+
+    // Trials and labels cache their own protos until they change, and changes are never modified,
+    // so if all of these are the same objects as last time the last proto can be reused.
+    List<GoosciTrial.Trial> trialProtos = getTrialProtos();
+    List<GoosciLabel.Label> labelProtos = getLabelProtos();
+    List<GoosciExperiment.Change> changeProtos = new ArrayList<>(changes.size());
+    for (Change change : changes) {
+      changeProtos.add(change.getChangeProto());
     }
+    BuiltProto previous = builtProto;
+    if (previous != null
+        && headerProto.equals(previous.header)
+        && sameElements(trialProtos, previous.proto.getTrialsList())
+        && sameElements(labelProtos, previous.proto.getLabelsList())
+        && sameElements(changeProtos, previous.proto.getChangesList())) {
+      return previous.proto;
+    }
+    GoosciExperiment.Experiment proto =
+        headerProto.toBuilder()
+            .addAllTrials(trialProtos)
+            .addAllLabels(labelProtos)
+            .addAllChanges(changeProtos)
+            .build();
+    builtProto = new BuiltProto(headerProto, proto);
+    return proto;
+  }
+
+  private List<GoosciTrial.Trial> getTrialProtos() {
+    List<GoosciTrial.Trial> unbuilt = unbuiltTrials;
+    if (unbuilt != null) {
+      return unbuilt;
+    }
+    List<GoosciTrial.Trial> result = new ArrayList<>(trials.size());
+    for (Trial trial : trials) {
+      result.add(trial.getTrialProto());
+    }
+    return result;
+  }
 
-    if (labels != null) {
-      for (Label label : labels) {
-        proto.addLabels(label.getLabelProto());
-      }
+  private List<GoosciLabel.Label> getLabelProtos() {
+    List<GoosciLabel.Label> unbuilt = unbuiltLabels;
+    if (unbuilt != null) {
+      return unbuilt;
     }
-    if (changes != null) {
-      for (Change change : changes) {
-        proto.addChanges(change.getChangeProto());
-      }
+    List<GoosciLabel.Label> result = new ArrayList<>(labels.size());
+    for (Label label : labels) {
+      result.add(label.getLabelProto());
     }
-    // Relative to the experiment.
-    proto.setImagePath(getPathRelativeToExperiment(imagePath));
-    if (title != null) {
-      proto.setTitle(title);
+    return result;
+  }
+
+  // Whether the lists hold the same objects, in the same order.
+  private static <T> boolean sameElements(List<T> a, List<T> b) {
+    if (a.size() != b.size()) {
+      return false;
     }
-    if (description != null) {
-      proto.setDescription(description);
+    for (int i = 0; i < a.size(); i++) {
+      if (a.get(i) != b.get(i)) {
+        return false;
+      }
     }
-    proto.setTotalTrials(totalTrials);
-    proto.setFileVersion(fileVersion.build());
-    proto.setCreationTimeMs(creationTimeMs);
-    proto.setVersion(fileVersion.getVersion());
-    proto.setMinorVersion(fileVersion.getMinorVersion());
-    return proto.build();
+    return true;
   }
 
   public ExperimentOverviewPojo getExperimentOverview() {
@@ -385,13 +446,52 @@ public class Experiment extends LabelListHolder {
     setLabels(labels);
   }
 
+  @Override
+  protected void setLabels(List<Label> labels) {
+    super.setLabels(labels);
+    unbuiltLabels = null;
+  }
+
+  @Override
+  public int getLabelCount() {
+    List<GoosciLabel.Label> unbuilt = unbuiltLabels;
+    return unbuilt != null ? unbuilt.size() : labels.size();
+  }
+
+  @Override
+  List<Label> getLabelList() {
+    List<GoosciLabel.Label> unbuilt = unbuiltLabels;
+    if (unbuilt != null) {
+      List<Label> built = new ArrayList<>(unbuilt.size());
+      for (GoosciLabel.Label labelProto : unbuilt) {
+        built.add(Label.fromLabel(labelProto));
+      }
+      labels = built;
+      unbuiltLabels = null;
+    }
+    return labels;
+  }
+
+  private List<Trial> getTrialList() {
+    List<GoosciTrial.Trial> unbuilt = unbuiltTrials;
+    if (unbuilt != null) {
+      List<Trial> built = new ArrayList<>(unbuilt.size());
+      for (GoosciTrial.Trial trialProto : unbuilt) {
+        built.add(Trial.fromTrial(trialProto));
+      }
+      trials = built;
+      unbuiltTrials = null;
+    }
+    return trials;
+  }
+
   /**
    * Gets the current list of trials in this experiment. Objects in this list should not be modified
    * and expect that state to be saved, instead editing of trials should happen using updateTrial,
    * addTrial, deleteTrial.
    */
   public List<Trial> getTrials() {
-    return trials;
+    return getTrialList();
   }
 
   /**
@@ -404,7 +504,7 @@ public class Experiment extends LabelListHolder {
       return getTrials();
     }
     List<Trial> result = new ArrayList<>();
-    for (Trial trial : trials) {
+    for (Trial trial : getTrialList()) {
       if (!includeInvalid && !trial.isValid()) {
         // Invalid trial, don't add it.
       } else if (!includeArchived && trial.isArchived()) {
@@ -422,7 +522,7 @@ public class Experiment extends LabelListHolder {
    * Only call this method from a background thread, for example, when syncing or exporting.
    */
   public void cleanTrials(Context context, AppAccount appAccount) {
-    List<Trial> allTrials = new ArrayList<>(trials);
+    List<Trial> allTrials = new ArrayList<>(getTrialList());
     for (Trial trial : allTrials) {
       if (!trial.isValid()) {
         deleteTrialWithoutRecordingChange(trial, context, appAccount);
@@ -432,7 +532,7 @@ public class Experiment extends LabelListHolder {
 
   @VisibleForTesting
   public void cleanTrialsOnlyForTesting() {
-    List<Trial> allTrials = new ArrayList<>(trials);
+    List<Trial> allTrials = new ArrayList<>(getTrialList());
     for (Trial trial : allTrials) {
       if (!trial.isValid()) {
         deleteTrialOnlyForTesting(trial);
@@ -446,6 +546,7 @@ public class Experiment extends LabelListHolder {
    */
   public void setTrials(List<Trial> trials) {
     this.trials = Preconditions.checkNotNull(trials);
+    unbuiltTrials = null;
     experimentOverview.setTrialCount(this.trials.size());
     totalTrials = this.trials.size();
 
@@ -464,7 +565,8 @@ public class Experiment extends LabelListHolder {
    * @return The number of trials in this experiment.
    */
   public int getTrialCount() {
-    return trials.size();
+    List<GoosciTrial.Trial> unbuilt = unbuiltTrials;
+    return unbuilt != null ? unbuilt.size() : trials.size();
   }
 
   /**
@@ -472,7 +574,7 @@ public class Experiment extends LabelListHolder {
    * experiment.
    */
   public Trial getTrial(String trialId) {
-    for (Trial trial : trials) {
+    for (Trial trial : getTrialList()) {
       if (TextUtils.equals(trial.getTrialId(), trialId)) {
         return trial;
       }
@@ -482,6 +584,7 @@ public class Experiment extends LabelListHolder {
 
   /** Updates a trial without writing a change. Used for merging. */
   private void updateTrialWithoutRecordingChange(Trial trial) {
+    List<Trial> trials = getTrialList();
     for (int i = 0; i < trials.size(); i++) {
       Trial next = trials.get(i);
       if (TextUtils.equals(trial.getTrialId(), next.getTrialId())) {
@@ -500,6 +603,7 @@ public class Experiment extends LabelListHolder {
    * @param trial
    */
   public void updateTrial(Trial trial) {
+    List<Trial> trials = getTrialList();
     for (int i = 0; i < trials.size(); i++) {
       Trial next = trials.get(i);
       if (TextUtils.equals(trial.getTrialId(), next.getTrialId())) {
@@ -519,8 +623,8 @@ public class Experiment extends LabelListHolder {
    * @param change
    */
   public void addTrial(Trial trial, Change change) {
-    trials.add(trial);
-    trialCount = trials.size();
+    getTrialList().add(trial);
+    trialCount = getTrialList().size();
     trial.setTrialNumberInExperiment(++totalTrials);
     sortTrials();
     addChange(change);
@@ -532,8 +636,8 @@ public class Experiment extends LabelListHolder {
 
   /** Adds a new trial to the experiment without recording the change. Used for merges. */
   private void addTrialwithoutRecordingChange(Trial trial) {
-    trials.add(trial);
-    trialCount = trials.size();
+    getTrialList().add(trial);
+    trialCount = getTrialList().size();
     trial.setTrialNumberInExperiment(++totalTrials);
     sortTrials();
   }
@@ -543,8 +647,8 @@ public class Experiment extends LabelListHolder {
   public void deleteTrialWithoutRecordingChange(
       Trial trial, Context context, AppAccount appAccount) {
     trial.deleteContents(context, appAccount, getExperimentId());
-    trials.remove(trial);
-    trialCount = trials.size();
+    getTrialList().remove(trial);
+    trialCount = getTrialList().size();
   }
 
   /** Removes a trial from the experiment. */
@@ -559,8 +663,8 @@ public class Experiment extends LabelListHolder {
 
   public void deleteTrial(Trial trial, Change change, Context context, AppAccount appAccount) {
     trial.deleteContents(context, appAccount, getExperimentId());
-    trials.remove(trial);
-    trialCount = trials.size();
+    getTrialList().remove(trial);
+    trialCount = getTrialList().size();
     addChange(change);
   }
 
@@ -576,13 +680,13 @@ public class Experiment extends LabelListHolder {
 
   @VisibleForTesting
   public void deleteTrialOnlyForTesting(Trial trial) {
-    trials.remove(trial);
-    trialCount = trials.size();
+    getTrialList().remove(trial);
+    trialCount = getTrialList().size();
     addChange(Change.newDeleteTypeChange(ElementType.TRIAL, trial.getTrialId()));
   }
 
   private void sortTrials() {
-    Collections.sort(trials, Trial.COMPARATOR_BY_TIMESTAMP);
+    Collections.sort(getTrialList(), Trial.COMPARATOR_BY_TIMESTAMP);
   }
 
   public List<SensorLayoutPojo> getSensorLayouts() {
@@ -720,8 +824,8 @@ public class Experiment extends LabelListHolder {
         imagePath, getPathRelativeToExperiment(label.getPictureLabelValue().getFilePath()))) {
       // This is the picture label which is used as the cover photo for this experiment.
       // Try to find another, oldest first.
-      for (int i = labels.size() - 1; i >= 0; i--) {
-        Label other = labels.get(i);
+      for (int i = getLabelList().size() - 1; i >= 0; i--) {
+        Label other = getLabelList().get(i);
         if (!TextUtils.equals(other.getLabelId(), label.getLabelId())
             && other.getType() == ValueType.PICTURE) {
           // Should be relative to Experiment.
@@ -760,12 +864,12 @@ public class Experiment extends LabelListHolder {
    * @return the label that corresponds to the Id, or null.
    */
   public Label getLabel(String labelId) {
-    for (Label label : labels) {
+    for (Label label : getLabelList()) {
       if (label.getLabelId().equals(labelId)) {
         return label;
       }
     }
-    for (Trial trial : trials) {
+    for (Trial trial : getTrialList()) {
       for (Label label : trial.getLabels()) {
         if (label.getLabelId().equals(labelId)) {
           return label;
@@ -783,12 +887,12 @@ public class Experiment extends LabelListHolder {
    * @return the id of the trial that contains the label, or null.
    */
   public String getTrialIdForLabel(String labelId) {
-    for (Label label : labels) {
+    for (Label label : getLabelList()) {
       if (label.getLabelId().equals(labelId)) {
         return null;
       }
     }
-    for (Trial trial : trials) {
+    for (Trial trial : getTrialList()) {
       for (Label label : trial.getLabels()) {
         if (label.getLabelId().equals(labelId)) {
           return trial.getTrialId();
@@ -818,10 +922,9 @@ public class Experiment extends LabelListHolder {
     if (overwrite) {
       changes.clear();
       changes.addAll(externalExperiment.changes);
-      trials.clear();
-      trials.addAll(externalExperiment.trials);
-      labels.clear();
-      labels.addAll(externalExperiment.labels);
+      trials = new ArrayList<>(externalExperiment.getTrialList());
+      unbuiltTrials = null;
+      setLabels(new ArrayList<>(externalExperiment.getLabelList()));
       title = externalExperiment.title;
       description = externalExperiment.description;
       // Relative to Experiment.
@@ -31,13 +31,19 @@ import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.Version;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
- * This reads and writes experiments to disk. It caches the last used experiment to avoid extra file
- * operations. This class should be constructed and used from a background thread because it does
- * file operations.
+ * This reads and writes experiments to disk. It caches the active experiment and a few other
+ * recently used experiments to avoid extra file operations, so that switching back and forth
+ * between experiments doesn't re-read them. Changed experiments are written together, soon after
+ * they change, whether or not they are still active. This class should be constructed and used
+ * from a background thread because it does file operations.
  */
 class ExperimentCache {
   private static final String TAG = "ExperimentCache";
@@ -60,6 +66,13 @@ class ExperimentCache {
   // Write the experiment file no more than once per every WRITE_DELAY_MS.
   private static final long WRITE_DELAY_MS = 1000;
 
+  // The most experiments to keep in memory, other than the active one.
+  private static final int MAX_CACHED_EXPERIMENTS = 4;
+
+  // The most bytes of experiment files to keep in memory, other than the active one. This only
+  // approximates the memory used, but grows with it.
+  private static final long MAX_CACHED_EXPERIMENT_BYTES = 2 * 1024 * 1024;
+
   public interface FailureListener {
     // TODO: What's helpful to pass back here? Maybe info about the type of error?
     // When writing an experiment failed
@@ -84,9 +97,28 @@ class ExperimentCache {
   private final ExecutorService backgroundWriteThread;
   private final Runnable writeRunnable;
 
+  /** A recently used experiment that isn't the active one. */
+  private static class CachedExperiment {
+    final Experiment experiment;
+    final long fileSize;
+    boolean needsWrite;
+
+    CachedExperiment(Experiment experiment, long fileSize, boolean needsWrite) {
+      this.experiment = experiment;
+      this.fileSize = fileSize;
+      this.needsWrite = needsWrite;
+    }
+  }
+
   private final Object activeExperimentLock = new Object();
   private Experiment activeExperiment;
   private boolean activeExperimentNeedsWrite;
+  private boolean writeScheduled;
+
+  // Experiments other than the active one by ID, least recently used first. These are all guarded
+  // by activeExperimentLock.
+  private final LinkedHashMap<String, CachedExperiment> cachedExperiments = new LinkedHashMap<>();
+  private long cachedExperimentsFileSize;
 
   public ExperimentCache(Context context, AppAccount appAccount, FailureListener failureListener) {
     this(context, appAccount, failureListener, true);
@@ -127,14 +159,15 @@ class ExperimentCache {
     writeRunnable =
         () -> {
           synchronized (activeExperimentLock) {
-            if (activeExperimentNeedsWrite) {
-              final Experiment experimentToWrite = activeExperiment;
-              if (experimentToWrite != null) {
-                backgroundWriteThread.execute(
-                    () -> {
+            writeScheduled = false;
+            final List<Experiment> experimentsToWrite = getExperimentsNeedingWrite();
+            if (!experimentsToWrite.isEmpty()) {
+              backgroundWriteThread.execute(
+                  () -> {
+                    for (Experiment experimentToWrite : experimentsToWrite) {
                       writeExperimentFile(experimentToWrite);
-                    });
-              }
+                    }
+                  });
             }
           }
         };
@@ -168,22 +201,20 @@ class ExperimentCache {
   /** Updates the given experiment. */
   void updateExperiment(Experiment experiment, boolean setDirty) {
     synchronized (activeExperimentLock) {
-      if (isDifferentFromActive(experiment.getExperimentOverview())) {
-        immediateWriteIfActiveChanging(experiment.getExperimentOverview());
-      }
+      cacheActiveIfChanging(experiment.getExperimentOverview());
       experimentLibraryManager.setModified(
           experiment.getExperimentId(), experiment.getLastUsedTime());
       localSyncManager.setDirty(experiment.getExperimentId(), setDirty);
-      activeExperiment = experiment;
+      setActiveExperiment(experiment);
       startWriteTimer();
     }
   }
 
   /**
-   * Updates the experiment overview of the active experiment if the active experiment has the same
-   * ID. This allows us to keep the experimentOverview fresh without doing extra writes to disk. If
-   * the active experiment is not the same ID as the experiment overview to update, no action needs
-   * to be taken.
+   * Updates the experiment overview of the cached experiment with the same ID, if there is one.
+   * This allows us to keep the experimentOverview fresh without doing extra writes to disk. If no
+   * cached experiment has the same ID as the experiment overview to update, no action needs to be
+   * taken.
    *
    * @param experimentOverview the updated experimentOverview to set on the cached experiment if
    *     they have the same ID.
@@ -191,27 +222,43 @@ class ExperimentCache {
   void onExperimentOverviewUpdated(ExperimentOverviewPojo experimentOverview) {
     synchronized (activeExperimentLock) {
       if (!isDifferentFromActive(experimentOverview)) {
-        activeExperiment.setLastUsedTime(experimentOverview.getLastUsedTimeMs());
-        activeExperiment.setArchived(context, appAccount, experimentOverview.isArchived());
-        activeExperiment.getExperimentOverview().setImagePath(experimentOverview.getImagePath());
+        updateFromOverview(activeExperiment, experimentOverview);
+      } else {
+        CachedExperiment cached = cachedExperiments.get(experimentOverview.getExperimentId());
+        if (cached != null) {
+          updateFromOverview(cached.experiment, experimentOverview);
+        }
       }
     }
   }
 
+  private void updateFromOverview(Experiment experiment, ExperimentOverviewPojo overview) {
+    experiment.setLastUsedTime(overview.getLastUsedTimeMs());
+    experiment.setArchived(context, appAccount, overview.isArchived());
+    experiment.getExperimentOverview().setImagePath(overview.getImagePath());
+  }
+
   /**
-   * Loads an active experiment from the disk if it is different from the currently cached active
-   * experiment, otherwise just returns the current cached experiment.
+   * Makes an experiment active and returns it. If it is different from the currently active
+   * experiment, it is taken from the other cached experiments or loaded from disk. Otherwise, this
+   * just returns the currently active experiment.
    *
    * @param localExperimentOverview The local ExperimentOverview of the experiment to load. This is
    *     used for lookup.
    */
   Experiment getExperiment(ExperimentOverviewPojo localExperimentOverview) {
     synchronized (activeExperimentLock) {
-      // Write only if the experiment ID is changing. If it's not changing, we just want to
-      // reload even if it was dirty.
       if (isDifferentFromActive(localExperimentOverview)) {
-        immediateWriteIfActiveChanging(localExperimentOverview);
-        loadActiveExperimentFromFile(localExperimentOverview);
+        cacheActiveIfChanging(localExperimentOverview);
+        CachedExperiment cached = uncache(localExperimentOverview.getExperimentId());
+        if (cached != null) {
+          // It may still be waiting to be written, in which case the write is already scheduled.
+          activeExperiment = cached.experiment;
+          activeExperimentNeedsWrite = cached.needsWrite;
+          updateFromOverview(activeExperiment, localExperimentOverview);
+        } else {
+          loadActiveExperimentFromFile(localExperimentOverview);
+        }
       }
       return activeExperiment;
     }
@@ -231,11 +278,12 @@ class ExperimentCache {
       return;
     }
     synchronized (activeExperimentLock) {
+      // Don't write it again after it's been deleted.
+      uncache(localExperimentId);
       if (activeExperiment != null
           && TextUtils.equals(
               activeExperiment.getExperimentOverview().getExperimentId(), localExperimentId)) {
         activeExperiment = null;
-        cancelWriteTimer();
         activeExperimentNeedsWrite = false;
         if (experimentLibraryManager.getExperiment(localExperimentId) != null) {
           experimentLibraryManager.setDeleted(localExperimentId, true);
@@ -261,12 +309,15 @@ class ExperimentCache {
     // This ExperimentCache is losing all experiments.
     synchronized (activeExperimentLock) {
       activeExperiment = null;
+      cachedExperiments.clear();
+      cachedExperimentsFileSize = 0;
     }
   }
 
   void beforeMovingExperimentToAnotherAccount(String localExperimentId) {
     // This ExperimentCache is losing the experiment.
     synchronized (activeExperimentLock) {
+      uncache(localExperimentId);
       if (activeExperiment != null
           && TextUtils.equals(
               activeExperiment.getExperimentOverview().getExperimentId(), localExperimentId)) {
@@ -282,11 +333,11 @@ class ExperimentCache {
    */
   private void setExistingActiveExperiment(Experiment experiment) {
     synchronized (activeExperimentLock) {
-      immediateWriteIfActiveChanging(experiment.getExperimentOverview());
+      cacheActiveIfChanging(experiment.getExperimentOverview());
 
-      // Then set the new experiment and set the dirty bit to true, resetting the write timer,
-      // so that we save it soon.
-      activeExperiment = experiment;
+      // Then set the new experiment and set the dirty bit to true, starting the write timer if
+      // needed, so that we save it soon.
+      setActiveExperiment(experiment);
       startWriteTimer();
     }
   }
@@ -321,24 +372,87 @@ class ExperimentCache {
   }
 
   /**
-   * Immediately writes the current active experiment to disk if it is different from the given
-   * parameter localExperimentId.
+   * Moves the current active experiment to the other cached experiments if it is different from
+   * the given experiment. If it still needs to be written, it will be written along with the next
+   * write of the active experiment.
    */
-  private void immediateWriteIfActiveChanging(ExperimentOverviewPojo localExperimentOverview) {
+  private void cacheActiveIfChanging(ExperimentOverviewPojo localExperimentOverview) {
     synchronized (activeExperimentLock) {
-      if (activeExperiment != null
-          && activeExperimentNeedsWrite
-          && isDifferentFromActive(localExperimentOverview)) {
-        // First write the old active experiment if the ID has changed.
-        // Then cancel the write timer on the old experiment. We will reset it below.
-        cancelWriteTimer();
-        writeActiveExperimentFile();
+      if (activeExperiment == null || !isDifferentFromActive(localExperimentOverview)) {
+        return;
+      }
+      String experimentId = activeExperiment.getExperimentId();
+      uncache(experimentId);
+      CachedExperiment cached =
+          new CachedExperiment(
+              activeExperiment,
+              getExperimentFile(experimentId).length(),
+              activeExperimentNeedsWrite);
+      cachedExperiments.put(experimentId, cached);
+      cachedExperimentsFileSize += cached.fileSize;
+      activeExperiment = null;
+      activeExperimentNeedsWrite = false;
+
+      // Evict the least recently used experiments, writing them first if they need it. Always keep
+      // the one just cached, even if it's bigger than the limit by itself.
+      Iterator<CachedExperiment> iterator = cachedExperiments.values().iterator();
+      while (cachedExperiments.size() > MAX_CACHED_EXPERIMENTS
+          || (cachedExperimentsFileSize > MAX_CACHED_EXPERIMENT_BYTES
+              && cachedExperiments.size() > 1)) {
+        CachedExperiment evicted = iterator.next();
+        iterator.remove();
+        cachedExperimentsFileSize -= evicted.fileSize;
+        if (evicted.needsWrite) {
+          writeExperimentFile(evicted.experiment);
+        }
       }
     }
   }
 
+  /** Removes the experiment with the given ID from the other cached experiments, if it's there. */
+  private CachedExperiment uncache(String experimentId) {
+    synchronized (activeExperimentLock) {
+      CachedExperiment cached = cachedExperiments.remove(experimentId);
+      if (cached != null) {
+        cachedExperimentsFileSize -= cached.fileSize;
+      }
+      return cached;
+    }
+  }
+
+  /**
+   * Sets the active experiment, replacing any other cached copy of it. The caller is responsible
+   * for moving the previous active experiment out of the way first.
+   */
+  private void setActiveExperiment(Experiment experiment) {
+    synchronized (activeExperimentLock) {
+      CachedExperiment cached = uncache(experiment.getExperimentId());
+      activeExperiment = experiment;
+      if (cached != null && cached.experiment == experiment && cached.needsWrite) {
+        activeExperimentNeedsWrite = true;
+      }
+    }
+  }
+
+  /** Returns the active and other cached experiments which have changes that aren't written. */
+  private List<Experiment> getExperimentsNeedingWrite() {
+    synchronized (activeExperimentLock) {
+      List<Experiment> experiments = new ArrayList<>();
+      if (activeExperimentNeedsWrite && activeExperiment != null) {
+        experiments.add(activeExperiment);
+      }
+      for (CachedExperiment cached : cachedExperiments.values()) {
+        if (cached.needsWrite) {
+          experiments.add(cached.experiment);
+        }
+      }
+      return experiments;
+    }
+  }
+
   private void cancelWriteTimer() {
     handler.removeCallbacks(writeRunnable);
+    writeScheduled = false;
   }
 
   private void startWriteTimer() {
@@ -357,7 +471,10 @@ class ExperimentCache {
 
       activeExperimentNeedsWrite = true;
 
-      if (enableAutoWrite) {
+      // Other cached experiments may already be waiting to be written, in which case this one
+      // will be written along with them.
+      if (enableAutoWrite && !writeScheduled) {
+        writeScheduled = true;
         handler.postDelayed(writeRunnable, WRITE_DELAY_MS);
       }
     }
@@ -370,12 +487,12 @@ class ExperimentCache {
     }
   }
 
-  /** Writes the active experiment to a file immediately, if needed. */
+  /** Writes the active and other cached experiments to files immediately, if needed. */
   void saveImmediately() {
     synchronized (activeExperimentLock) {
-      if (activeExperimentNeedsWrite) {
-        cancelWriteTimer();
-        writeActiveExperimentFile();
+      cancelWriteTimer();
+      for (Experiment experimentToWrite : getExperimentsNeedingWrite()) {
+        writeExperimentFile(experimentToWrite);
       }
     }
   }
@@ -389,13 +506,13 @@ class ExperimentCache {
   /** Writes the given experiment to a file. */
   @VisibleForTesting
   void writeExperimentFile(Experiment experimentToWrite) {
-    boolean writingActiveExperiment = (activeExperiment == experimentToWrite);
-    // If we are writing the active experiment, hold the activeExperimentLock until after we've set
-    // activeExperimentNeedsWrite to false. Otherwise, if startWriteTimer is called on another
-    // thread after we've got the proto from the experimentToWrite and before we set
-    // activeExperimentNeedsWrite to false, it will see that activeExperimentNeedsWrite is true and
-    // incorrectly decide that it doesn't need to start the timer.
-    synchronized (writingActiveExperiment ? activeExperimentLock : new Object()) {
+    boolean writingCachedExperiment = isCached(experimentToWrite);
+    // If we are writing a cached experiment, hold the activeExperimentLock until after we've
+    // cleared its dirty bit. Otherwise, if startWriteTimer is called on another thread after we've
+    // got the proto from the experimentToWrite and before we clear the dirty bit, it will see that
+    // activeExperimentNeedsWrite is true and incorrectly decide that it doesn't need to start the
+    // timer.
+    synchronized (writingCachedExperiment ? activeExperimentLock : new Object()) {
       GoosciExperiment.Experiment proto = experimentToWrite.getExperimentProto();
       if ((proto.getVersion() > VERSION)
           || (proto.getVersion() == VERSION && proto.getMinorVersion() > MINOR_VERSION)) {
@@ -408,13 +525,11 @@ class ExperimentCache {
       File experimentFile = getExperimentFile(experimentToWrite.getExperimentOverview());
       boolean success;
       synchronized (appAccount.getLockForExperimentProtoFile()) {
-        success =
-            experimentProtoFileHelper.writeToFile(
-                experimentFile, experimentToWrite.getExperimentProto(), getUsageTracker());
+        success = experimentProtoFileHelper.writeToFile(experimentFile, proto, getUsageTracker());
       }
       if (success) {
-        if (writingActiveExperiment) {
-          activeExperimentNeedsWrite = false;
+        if (writingCachedExperiment) {
+          onWritten(experimentToWrite);
         }
       } else {
         failureListener.onWriteFailed(experimentToWrite);
@@ -422,6 +537,27 @@ class ExperimentCache {
     }
   }
 
+  private boolean isCached(Experiment experiment) {
+    synchronized (activeExperimentLock) {
+      if (activeExperiment == experiment) {
+        return true;
+      }
+      CachedExperiment cached = cachedExperiments.get(experiment.getExperimentId());
+      return cached != null && cached.experiment == experiment;
+    }
+  }
+
+  private void onWritten(Experiment experiment) {
+    if (activeExperiment == experiment) {
+      activeExperimentNeedsWrite = false;
+    } else {
+      CachedExperiment cached = cachedExperiments.get(experiment.getExperimentId());
+      if (cached != null && cached.experiment == experiment) {
+        cached.needsWrite = false;
+      }
+    }
+  }
+
   private UsageTracker getUsageTracker() {
     return WhistlePunkApplication.getUsageTracker(context);
   }
@@ -439,6 +575,7 @@ class ExperimentCache {
       if (proto != null) {
         Experiment toLoad = Experiment.fromExperiment(proto, experimentOverview);
         upgradeExperimentVersionIfNeeded(toLoad);
+        uncache(toLoad.getExperimentId());
         activeExperiment = toLoad;
         localSyncManager.addExperiment(activeExperiment.getExperimentId());
         experimentLibraryManager.addExperiment(activeExperiment.getExperimentId());
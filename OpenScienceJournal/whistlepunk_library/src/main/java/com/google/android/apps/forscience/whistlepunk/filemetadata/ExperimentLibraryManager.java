@@ -29,17 +29,22 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 /**
  * Manages a Science Journal experiment library.
+ *
+ * <p>Changes are written to the ExperimentLibrary file in the background, at most once per
+ * WRITE_DELAY_MS. Call {@link #flush} to write them immediately.
  */
 public class ExperimentLibraryManager {
   private static final String TAG = "experimentLibrary";
+  private static final long WRITE_DELAY_MS = 500;
   private String folderId;
   private final Map<String, LibrarySyncExperiment> experiments = new HashMap<>();
+  // Whether the library has been read from the file or set, after which the file may be behind it.
+  private boolean loaded = false;
   private final AppAccount account;
+  private final DebouncedWriter writer;
 
   /** Constructor for an ExperimentLibraryManager that creates a new ExperimentLibrary. */
   public ExperimentLibraryManager(AppAccount account) {
@@ -53,6 +58,7 @@ public class ExperimentLibraryManager {
   @VisibleForTesting
   public ExperimentLibraryManager(ExperimentLibrary library, AppAccount account) {
     this.account = account;
+    writer = new DebouncedWriter(this::writeExperimentLibrary, WRITE_DELAY_MS);
     if (library != null) {
       setLibrary(library);
     }
@@ -63,7 +69,8 @@ public class ExperimentLibraryManager {
    *
    * @param library The library to manage.
    */
-  public void setLibrary(ExperimentLibrary library) {
+  public synchronized void setLibrary(ExperimentLibrary library) {
+    loaded = true;
     experiments.clear();
     if (library == null) {
       this.folderId = null;
@@ -89,7 +96,7 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment to find.
    * @return The SyncExperiment if found, or null.
    */
-  LibrarySyncExperiment getExperiment(String experimentId) {
+  synchronized LibrarySyncExperiment getExperiment(String experimentId) {
     populateExperimentLibraryManager();
     return experiments.get(experimentId);
   }
@@ -100,12 +107,12 @@ public class ExperimentLibraryManager {
    *
    * @param experimentId The experiment to find.
    */
-  public void addExperiment(String experimentId) {
+  public synchronized void addExperiment(String experimentId) {
     if (getExperiment(experimentId) != null) {
       return;
     }
     experiments.put(experimentId, new LibrarySyncExperiment(experimentId));
-    writeExperimentLibrary();
+    writer.markDirty();
   }
 
   /**
@@ -113,7 +120,7 @@ public class ExperimentLibraryManager {
    *
    * @param experiment The SyncEcperiment to add.
    */
-  void addExperiment(SyncExperiment experiment) {
+  synchronized void addExperiment(SyncExperiment experiment) {
     if (experiments.containsKey(experiment.getExperimentId())) {
       throw new IllegalArgumentException("Experiment already exists");
     }
@@ -128,7 +135,7 @@ public class ExperimentLibraryManager {
             experiment.getArchived());
     experiments.put(lse.getExperimentId(), lse);
 
-    writeExperimentLibrary();
+    writer.markDirty();
   }
 
   /**
@@ -173,11 +180,11 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment to update.
    * @param archived Whether or not the experiment is locally archived.
    */
-  public void setArchived(String experimentId, boolean archived) {
+  public synchronized void setArchived(String experimentId, boolean archived) {
     LibrarySyncExperiment lse = experiments.get(experimentId);
     if (lse != null) {
       lse.setArchived(archived);
-      writeExperimentLibrary();
+      writer.markDirty();
     }
   }
 
@@ -187,16 +194,16 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment to get state for.
    * @return Whether or not the experiment is locally archived.
    */
-  public boolean isArchived(String experimentId) {
+  public synchronized boolean isArchived(String experimentId) {
     return getExperiment(experimentId).isArchived();
   }
 
-  public void setAllDeleted(boolean deleted) {
+  public synchronized void setAllDeleted(boolean deleted) {
     populateExperimentLibraryManager();
     for (LibrarySyncExperiment experiment : experiments.values()) {
       experiment.setDeleted(deleted);
     }
-    writeExperimentLibrary();
+    writer.markDirty();
   }
 
   /**
@@ -205,11 +212,11 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment to update.
    * @param deleted Whether or not the experiment is locally deleted.
    */
-  public void setDeleted(String experimentId, boolean deleted) {
+  public synchronized void setDeleted(String experimentId, boolean deleted) {
     LibrarySyncExperiment lse = experiments.get(experimentId);
     if (lse != null) {
       lse.setDeleted(deleted);
-      writeExperimentLibrary();
+      writer.markDirty();
     }
   }
 
@@ -219,7 +226,7 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment to get state for.
    * @return Whether or not the experiment is locally deleted.
    */
-  public boolean isDeleted(String experimentId) {
+  public synchronized boolean isDeleted(String experimentId) {
     return getExperiment(experimentId).isDeleted();
   }
 
@@ -228,7 +235,7 @@ public class ExperimentLibraryManager {
    *
    * @param experimentId The experiment to update.
    */
-  public void setOpened(String experimentId) {
+  public synchronized void setOpened(String experimentId) {
     setOpened(experimentId, System.currentTimeMillis());
   }
 
@@ -238,11 +245,11 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment to update.
    * @param timeInMillis The time the experiment was last opened.
    */
-  public void setOpened(String experimentId, long timeInMillis) {
+  public synchronized void setOpened(String experimentId, long timeInMillis) {
     LibrarySyncExperiment lse = experiments.get(experimentId);
     if (lse != null) {
       lse.setLastOpened(timeInMillis);
-      writeExperimentLibrary();
+      writer.markDirty();
     }
   }
 
@@ -252,7 +259,7 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment get times from.
    * @return the last opened time for the experiment, in millis.
    */
-  public long getOpened(String experimentId) {
+  public synchronized long getOpened(String experimentId) {
     return getExperiment(experimentId).getLastOpened();
   }
 
@@ -261,7 +268,7 @@ public class ExperimentLibraryManager {
    *
    * @param experimentId The experiment to update.
    */
-  public void setModified(String experimentId) {
+  public synchronized void setModified(String experimentId) {
     setModified(experimentId, System.currentTimeMillis());
   }
 
@@ -271,11 +278,11 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment to update.
    * @param timeInMillis The time the experiment was last modified.
    */
-  public void setModified(String experimentId, long timeInMillis) {
+  public synchronized void setModified(String experimentId, long timeInMillis) {
     LibrarySyncExperiment lse = experiments.get(experimentId);
     if (lse != null) {
       lse.setLastModified(timeInMillis);
-      writeExperimentLibrary();
+      writer.markDirty();
     }
   }
 
@@ -285,7 +292,7 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment get times from.
    * @return the last modified time for the experiment, in millis.
    */
-  public long getModified(String experimentId) {
+  public synchronized long getModified(String experimentId) {
     return getExperiment(experimentId).getLastModified();
   }
 
@@ -295,11 +302,11 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment to update.
    * @param fileId The file id for the experiment.
    */
-  public void setFileId(String experimentId, String fileId) {
+  public synchronized void setFileId(String experimentId, String fileId) {
     LibrarySyncExperiment lse = experiments.get(experimentId);
     if (lse != null) {
       lse.setFileId(fileId);
-      writeExperimentLibrary();
+      writer.markDirty();
     }
   }
 
@@ -309,7 +316,7 @@ public class ExperimentLibraryManager {
    * @param experimentId The experiment get the file id from.
    * @return the file id for the experiment.
    */
-  public String getFileId(String experimentId) {
+  public synchronized String getFileId(String experimentId) {
     return getExperiment(experimentId).getFileId();
   }
 
@@ -318,7 +325,7 @@ public class ExperimentLibraryManager {
    *
    * @param library The experiment to merge from.
    */
-  public void merge(ExperimentLibrary library, LocalSyncManager syncManager) {
+  public synchronized void merge(ExperimentLibrary library, LocalSyncManager syncManager) {
     populateExperimentLibraryManager();
     if (!Strings.isNullOrEmpty(library.getFolderId())) {
       folderId = library.getFolderId();
@@ -333,35 +340,39 @@ public class ExperimentLibraryManager {
       }
       updateExperiment(experiment, serverArchived);
     }
-    writeExperimentLibrary();
+    writer.markDirty();
   }
 
-  public Set<String> getKnownExperiments() {
+  public synchronized Set<String> getKnownExperiments() {
     populateExperimentLibraryManager();
 
     // Returning a local copy of this set will defend against concurrent modification.
     return new HashSet<>(experiments.keySet());
   }
 
+  /**
+   * Writes any changes that haven't been written yet to the ExperimentLibrary file, on the calling
+   * thread. Call this before reading the file directly, for example to upload it.
+   */
+  public void flush() {
+    writer.flush();
+  }
+
   private void writeExperimentLibrary() {
-    Executor thread = Executors.newSingleThreadExecutor();
-    thread.execute(
-        new Runnable() {
-          @Override
-          public void run() {
-            synchronized (account.getLockForExperimentLibraryFile()) {
-              try {
-                FileMetadataUtil.getInstance().writeExperimentLibraryFile(generateProto(), account);
-              } catch (IOException ioe) {
-                // Would like to do something else here, but not sure what else there really is to
-                // do.
-                if (Log.isLoggable(TAG, Log.ERROR)) {
-                  Log.e(TAG, "ExperimentLibrary Write failed", ioe);
-                }
-              }
-            }
-          }
-        });
+    ExperimentLibrary library;
+    synchronized (this) {
+      library = generateProto();
+    }
+    synchronized (account.getLockForExperimentLibraryFile()) {
+      try {
+        FileMetadataUtil.getInstance().writeExperimentLibraryFile(library, account);
+      } catch (IOException ioe) {
+        // Would like to do something else here, but not sure what else there really is to do.
+        if (Log.isLoggable(TAG, Log.ERROR)) {
+          Log.e(TAG, "ExperimentLibrary Write failed", ioe);
+        }
+      }
+    }
   }
 
   private ExperimentLibrary generateProto() {
@@ -377,21 +388,21 @@ public class ExperimentLibraryManager {
   }
 
   // Reads the saved experiment library manager file from disk, if the Library has not already
-  // been set to a non-null value. This lets us move initialization of this object to the background
+  // been read or set. This lets us move initialization of this object to the background thread.
   // TODO(b/111649596) Test this
   private void populateExperimentLibraryManager() {
-    if (experiments.isEmpty()) {
+    if (!loaded) {
       setLibrary(FileMetadataUtil.getInstance().readExperimentLibraryFile(account));
     }
   }
 
-  public void setFolderId(String folderId) {
+  public synchronized void setFolderId(String folderId) {
     populateExperimentLibraryManager();
     this.folderId = folderId;
-    writeExperimentLibrary();
+    writer.markDirty();
   }
 
-  public String getFolderId() {
+  public synchronized String getFolderId() {
     populateExperimentLibraryManager();
     return folderId;
   }
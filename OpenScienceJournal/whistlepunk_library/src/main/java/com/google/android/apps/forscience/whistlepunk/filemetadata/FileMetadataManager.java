@@ -34,7 +34,6 @@ import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciLabel;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciLabel.Label.ValueType;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciPictureLabelValue;
-import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial;
 import com.google.android.apps.forscience.whistlepunk.metadata.Version;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensorDumpReader;
@@ -360,6 +359,8 @@ public class FileMetadataManager {
   public void saveImmediately() {
     activeExperimentCache.saveImmediately();
     userMetadataManager.saveImmediately();
+    localSyncManager.flush();
+    experimentLibraryManager.flush();
   }
 
   public void deleteExperiment(Experiment experiment) {
@@ -492,21 +493,17 @@ public class FileMetadataManager {
     File dataFile = new File(externalPath, "sensorData.proto");
 
     if (dataFile.exists()) {
-      LiteProtoFileHelper<GoosciScalarSensorData.ScalarSensorData> dataProtoFileHelper =
-          new LiteProtoFileHelper<>();
-      GoosciScalarSensorData.ScalarSensorData dataProto =
-          dataProtoFileHelper.readFromFile(
-              dataFile,
-              GoosciScalarSensorData.ScalarSensorData::parseFrom,
-              WhistlePunkApplication.getUsageTracker(context));
-
-      if (dataProto != null) {
-        ScalarSensorDumpReader dumpReader =
-            new ScalarSensorDumpReader(
-                AppSingleton.getInstance(context)
-                    .getSensorEnvironment()
-                    .getDataController(appAccount));
-        dumpReader.readData(dataProto, trialIdMap);
+      ScalarSensorDumpReader dumpReader =
+          new ScalarSensorDumpReader(
+              AppSingleton.getInstance(context)
+                  .getSensorEnvironment()
+                  .getDataController(appAccount));
+      try {
+        dumpReader.readData(dataFile, trialIdMap);
+      } catch (IOException e) {
+        if (Log.isLoggable(TAG, Log.ERROR)) {
+          Log.e(TAG, "Could not import sensor data", e);
+        }
       }
     }
 
@@ -33,7 +33,6 @@ import com.google.android.apps.forscience.whistlepunk.R;
 import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciExperimentLibrary.ExperimentLibrary;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciLocalSyncStatus;
-import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData;
 import com.google.android.apps.forscience.whistlepunk.metadata.Version;
 import io.reactivex.Single;
 import java.io.DataInputStream;
@@ -42,6 +41,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -59,6 +60,7 @@ public class FileMetadataUtil {
   private static final String USER_METADATA_FILE = "user_metadata.proto";
   public static final String DOT_PROTO = ".proto";
   private static final String RECORDING = "recording_";
+  private static final int HASH_BUFFER_SIZE = 64 * 1024;
 
   public static final FileMetadataUtil instance = new FileMetadataUtil();
 
@@ -173,19 +175,12 @@ public class FileMetadataUtil {
                     return;
                   }
 
-                  dc.getScalarReadingProtosInBackground(
+                  dc.writeScalarReadingProtosInBackground(
                       experiment.getExperimentProto(),
-                      new MaybeConsumer<GoosciScalarSensorData.ScalarSensorData>() {
+                      new File(sensorProtoFileName),
+                      new MaybeConsumer<File>() {
                         @Override
-                        public void success(GoosciScalarSensorData.ScalarSensorData sensorData) {
-                          try (FileOutputStream sensorStream =
-                              new FileOutputStream(sensorProtoFileName)) {
-                            sensorData.writeTo(sensorStream);
-                          } catch (IOException ioException) {
-                            s.onError(ioException);
-                            return;
-                          }
-
+                        public void success(File sensorProtoFile) {
                           try (FileOutputStream fos = new FileOutputStream(zipFile);
                               ZipOutputStream zos = new ZipOutputStream(fos); ) {
                             File experimentDirectory =
@@ -362,15 +357,10 @@ public class FileMetadataUtil {
     return fileVersion.getVersion() == 1 && fileVersion.getMinorVersion() == 2;
   }
 
-  private void writeProtoToFile(byte[] protoBytes, File file) throws IOException {
-    try (FileOutputStream fos = new FileOutputStream(file)) {
-      fos.write(protoBytes);
-    }
-  }
-
   public void writeExperimentLibraryFile(ExperimentLibrary library, AppAccount appAccount)
       throws IOException {
-    writeProtoToFile(library.toByteArray(), getExperimentLibraryFile(appAccount));
+    LiteProtoFileHelper.writeAtomically(
+        getExperimentLibraryFile(appAccount), library, /* keepBackup= */ false);
   }
 
   public ExperimentLibrary readExperimentLibraryFile(AppAccount appAccount) {
@@ -391,7 +381,8 @@ public class FileMetadataUtil {
 
   public void writeLocalSyncStatusFile(
       GoosciLocalSyncStatus.LocalSyncStatus status, AppAccount appAccount) throws IOException {
-    writeProtoToFile(status.toByteArray(), getLocalSyncStatusFile(appAccount));
+    LiteProtoFileHelper.writeAtomically(
+        getLocalSyncStatusFile(appAccount), status, /* keepBackup= */ false);
   }
 
   public GoosciLocalSyncStatus.LocalSyncStatus readLocalSyncStatusFile(AppAccount appAccount) {
@@ -412,6 +403,34 @@ public class FileMetadataUtil {
     return RECORDING + protoId + DOT_PROTO;
   }
 
+  /**
+   * Returns a hex SHA-256 hash of the contents of the file, or null if the file doesn't exist or
+   * can't be read. Used to tell whether a file has changed since it was last synced.
+   */
+  public String hashFile(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    try (FileInputStream in = new FileInputStream(file)) {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] buffer = new byte[HASH_BUFFER_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (IOException | NoSuchAlgorithmException e) {
+      if (Log.isLoggable(TAG, Log.ERROR)) {
+        Log.e(TAG, "Could not hash file " + file.getName(), e);
+      }
+      return null;
+    }
+  }
+
   public long getFreeSpaceInMb() {
     File path = Environment.getDataDirectory();
     StatFs stat = new StatFs(path.getPath());
@@ -47,6 +47,8 @@ public class Label implements Parcelable {
   private static final String TAG = "label";
 
   private GoosciLabel.Label.Builder labelBuilder = GoosciLabel.Label.newBuilder();
+  // The proto built from labelBuilder, or null if labelBuilder has changed since it was built.
+  private GoosciLabel.Label labelProto;
 
   /** Loads an existing label from a proto. */
   public static Label fromLabel(GoosciLabel.Label goosciLabel) {
@@ -89,6 +91,7 @@ public class Label implements Parcelable {
               .build();
       result.labelBuilder.setCaption(newCaption);
     }
+    result.labelProto = null;
     return result;
   }
 
@@ -121,6 +124,7 @@ public class Label implements Parcelable {
 
   private void initializeFromProto(GoosciLabel.Label goosciLabel) {
     labelBuilder = goosciLabel.toBuilder();
+    labelProto = goosciLabel;
   }
 
   @Override
@@ -154,7 +158,10 @@ public class Label implements Parcelable {
    * @return The label's underlying protocolbuffer.
    */
   public GoosciLabel.Label getLabelProto() {
-    return labelBuilder.build();
+    if (labelProto == null) {
+      labelProto = labelBuilder.build();
+    }
+    return labelProto;
   }
 
   public String getLabelId() {
@@ -167,6 +174,7 @@ public class Label implements Parcelable {
 
   public void setTimestamp(long timestampMs) {
     labelBuilder.setTimestampMs(timestampMs);
+    labelProto = null;
   }
 
   public long getCreationTimeMs() {
@@ -189,6 +197,7 @@ public class Label implements Parcelable {
     } else {
       labelBuilder.setCaption(caption);
     }
+    labelProto = null;
   }
 
   public ValueType getType() {
@@ -278,6 +287,7 @@ public class Label implements Parcelable {
    */
   public void setLabelProtoData(MessageLite data) {
     labelBuilder.setProtoData(data.toByteString());
+    labelProto = null;
   }
 
   /** Deletes any assets associated with this label */
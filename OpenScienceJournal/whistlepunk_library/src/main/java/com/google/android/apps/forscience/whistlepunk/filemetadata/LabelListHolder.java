@@ -32,7 +32,7 @@ public abstract class LabelListHolder {
   List<Label> labels;
 
   public int getLabelCount() {
-    return labels.size();
+    return getLabelList().size();
   }
 
   /**
@@ -41,7 +41,7 @@ public abstract class LabelListHolder {
    * happen using updateLabel, addTrialLabel, removeLabel.
    */
   public List<Label> getLabels() {
-    return new ArrayList<>(labels);
+    return new ArrayList<>(getLabelList());
   }
 
   /** Updates a label in the list. Maintains label sort order. */
@@ -64,6 +64,7 @@ public abstract class LabelListHolder {
   }
 
   void updateLabelWithoutSorting(Label label) {
+    List<Label> labels = getLabelList();
     for (int i = 0; i < labels.size(); i++) {
       Label next = labels.get(i);
       if (!TextUtils.equals(label.getLabelId(), next.getLabelId())) {
@@ -88,7 +89,7 @@ public abstract class LabelListHolder {
 
   /** Adds a label to the object's list of labels. The list will still be sorted by timestamp. */
   void addLabel(Label label) {
-    labels.add(label);
+    getLabelList().add(label);
     sortLabels();
     if (label.getType() == GoosciLabel.Label.ValueType.PICTURE) {
       onPictureLabelAdded(label);
@@ -116,6 +117,7 @@ public abstract class LabelListHolder {
    */
   Consumer<Context> deleteLabelAndReturnAssetDeleterWithoutRecordingChange(
       Experiment experiment, Label toDelete, AppAccount appAccount) {
+    List<Label> labels = getLabelList();
     for (Label label : labels) {
       if (TextUtils.equals(label.getLabelId(), toDelete.getLabelId())) {
         labels.remove(label);
@@ -134,6 +136,7 @@ public abstract class LabelListHolder {
    */
   public Consumer<Context> deleteLabelAndReturnAssetDeleter(
       Experiment experiment, Label toDelete, Change change, AppAccount appAccount) {
+    List<Label> labels = getLabelList();
     for (Label label : labels) {
       if (TextUtils.equals(label.getLabelId(), toDelete.getLabelId())) {
         labels.remove(label);
@@ -162,13 +165,18 @@ public abstract class LabelListHolder {
   }
 
   private void sortLabels() {
-    Collections.sort(labels, Label.COMPARATOR_BY_TIMESTAMP);
+    Collections.sort(getLabelList(), Label.COMPARATOR_BY_TIMESTAMP);
   }
 
   protected void setLabels(List<Label> labels) {
     this.labels = labels;
   }
 
+  /** Gets the list of labels to read or modify, which subclasses may build lazily. */
+  List<Label> getLabelList() {
+    return labels;
+  }
+
   protected abstract void onPictureLabelAdded(Label label);
 
   protected abstract void beforeDeletingPictureLabel(Label label);
@@ -17,22 +17,74 @@
 package com.google.android.apps.forscience.whistlepunk.filemetadata;
 
 import androidx.annotation.VisibleForTesting;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 import com.google.android.apps.forscience.whistlepunk.analytics.TrackerConstants;
 import com.google.android.apps.forscience.whistlepunk.analytics.UsageTracker;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.MessageLite;
 import io.reactivex.functions.Function;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 
-/** Helper to write Protocol Buffers written to and read them from files. */
+/**
+ * Helper to write Protocol Buffers written to and read them from files.
+ *
+ * <p>Protos are written to a temporary file next to the target, synced to disk and then renamed
+ * over the target, so that a crash or failure part way through a write leaves the previous version
+ * of the file in place. Optionally, the previous version is also copied to a ".bak" file first,
+ * which is read instead if the file itself can't be.
+ */
 // TODO: Check free storage space before writing anything?
 public class LiteProtoFileHelper<T extends MessageLite> {
   private static final String TAG = "LiteProtoFileHelper";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final String BACKUP_SUFFIX = ".bak";
+
+  private final boolean keepBackup;
+
+  public LiteProtoFileHelper() {
+    this(false);
+  }
+
+  /**
+   * @param keepBackup whether to keep the previous version of each file written, to be read if the
+   *     latest version can't be.
+   */
+  public LiteProtoFileHelper(boolean keepBackup) {
+    this.keepBackup = keepBackup;
+  }
 
   public T readFromFile(File file, Function<byte[], T> parseFrom, UsageTracker tracker) {
+    T result = readFromFileOrNull(file, parseFrom, tracker);
+    if (result == null && keepBackup) {
+      File backupFile = getBackupFile(file);
+      if (backupFile.exists()) {
+        result = readFromFileOrNull(backupFile, parseFrom, tracker);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Puts the backup of {@code file} back in its place if {@code file} is missing. Writes never
+   * leave the file missing, but older versions of the app moved it to the backup before moving the
+   * new version into place, so a file may still be missing if one of those stopped in between.
+   * Call this before checking whether the file exists.
+   */
+  public void restoreBackupIfMissing(File file) {
+    if (keepBackup && !file.exists()) {
+      File backupFile = getBackupFile(file);
+      if (backupFile.exists() && !backupFile.renameTo(file)) {
+        Log.e(TAG, "Could not restore " + backupFile);
+      }
+    }
+  }
+
+  private T readFromFileOrNull(File file, Function<byte[], T> parseFrom, UsageTracker tracker) {
     try (FileInputStream inputStream = new FileInputStream(file)) {
       byte[] bytes = new byte[(int) file.length()];
       inputStream.read(bytes);
@@ -65,44 +117,115 @@ public class LiteProtoFileHelper<T extends MessageLite> {
 
   @VisibleForTesting
   boolean writeToFile(File file, T protoToWrite, boolean failWritingForTest, UsageTracker tracker) {
-    // TODO(b/140145435): serialize the proto directly to the stream.
-
-    // Do this outside the file-writing blocks. If it fails it throws a RuntimeException
-    // which we don't want to have happen during reading or writing.
-    byte[] protoBytes = protoToWrite.toByteArray();
-
-    // Save what's in the file in case the write fails. This is a safety net because
-    // the FileOutputStream clears the file and we need a way to put the data back
-    // to how it was.
-    byte[] bytes = new byte[(int) file.length()];
-    try (FileInputStream inputStream = new FileInputStream(file)) {
-      inputStream.read(bytes);
+    try {
+      writeAtomically(file, protoToWrite, keepBackup, failWritingForTest);
+      return true;
     } catch (IOException ex) {
       logError(tracker, ex, TrackerConstants.ACTION_WRITE_FAILED);
       return false;
+    } catch (RuntimeException ex) {
+      // Serializing a bad proto throws a RuntimeException. The file is still untouched.
+      logError(tracker, ex, TrackerConstants.ACTION_WRITE_FAILED);
+      return false;
     }
+  }
 
-    // Now try to write.
-    try (FileOutputStream outputStream = new FileOutputStream(file)) {
-      if (failWritingForTest) {
-        throw new IOException("Failing for the test");
-      } else {
-        outputStream.write(protoBytes);
-        return true;
+  /**
+   * Replaces the contents of {@code file} with {@code proto}. Either the whole proto is written, or
+   * an IOException is thrown and the file is left as it was.
+   *
+   * @param keepBackup whether to keep the previous contents of the file as a ".bak" file.
+   */
+  public static void writeAtomically(File file, MessageLite proto, boolean keepBackup)
+      throws IOException {
+    writeAtomically(file, proto, keepBackup, false);
+  }
+
+  private static void writeAtomically(
+      File file, MessageLite proto, boolean keepBackup, boolean failWritingForTest)
+      throws IOException {
+    File tempFile = getTempFile(file);
+    boolean renamed = false;
+    try {
+      try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+        CodedOutputStream codedOutput = CodedOutputStream.newInstance(outputStream);
+        proto.writeTo(codedOutput);
+        codedOutput.flush();
+        if (failWritingForTest) {
+          throw new IOException("Failing for the test");
+        }
+        // Make sure the new contents are on disk before the rename makes them visible, or a crash
+        // could leave the file empty.
+        outputStream.getFD().sync();
+      }
+      if (keepBackup && file.exists()) {
+        // Copy rather than move the old version, so that the file is never missing.
+        backUp(file);
+      }
+      renamed = tempFile.renameTo(file);
+      if (!renamed) {
+        throw new IOException("Could not rename " + tempFile + " to " + file);
+      }
+      syncDirectory(file.getParentFile());
+    } finally {
+      if (!renamed) {
+        tempFile.delete();
       }
-    } catch (IOException ex) {
-      logError(tracker, ex, TrackerConstants.ACTION_WRITE_FAILED);
-      replaceContents(file, bytes, tracker);
-      return false;
     }
   }
 
-  private void replaceContents(File file, byte[] bytes, UsageTracker tracker) {
-    // If write failed, might be the proto's fault, try to write back what we had before.
-    try (FileOutputStream outputStream = new FileOutputStream(file)) {
-      outputStream.write(bytes);
+  /** Replaces the backup of {@code file} with a copy of it, in the same way as the file itself. */
+  private static void backUp(File file) throws IOException {
+    File backupFile = getBackupFile(file);
+    File tempBackupFile = getTempFile(backupFile);
+    boolean renamed = false;
+    try {
+      try (FileInputStream inputStream = new FileInputStream(file);
+          FileOutputStream outputStream = new FileOutputStream(tempBackupFile)) {
+        FileChannel input = inputStream.getChannel();
+        FileChannel output = outputStream.getChannel();
+        long size = input.size();
+        long position = 0;
+        while (position < size) {
+          position += input.transferTo(position, size - position, output);
+        }
+        outputStream.getFD().sync();
+      }
+      renamed = tempBackupFile.renameTo(backupFile);
+      if (!renamed) {
+        throw new IOException("Could not back up " + file);
+      }
+    } finally {
+      if (!renamed) {
+        tempBackupFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Syncs the entries of {@code directory} to disk, so that a rename within it survives a crash
+   * along with the contents of the renamed file.
+   */
+  private static void syncDirectory(File directory) {
+    if (directory == null) {
+      return;
+    }
+    try (ParcelFileDescriptor descriptor =
+        ParcelFileDescriptor.open(directory, ParcelFileDescriptor.MODE_READ_ONLY)) {
+      descriptor.getFileDescriptor().sync();
     } catch (IOException ex) {
-      logError(tracker, ex, TrackerConstants.ACTION_WRITE_FAILED);
+      // Not every file system can sync a directory. The rename still reaches the disk in time.
+      if (Log.isLoggable(TAG, Log.DEBUG)) {
+        Log.d(TAG, "Could not sync " + directory, ex);
+      }
     }
   }
+
+  private static File getTempFile(File file) {
+    return new File(file.getPath() + TEMP_SUFFIX);
+  }
+
+  private static File getBackupFile(File file) {
+    return new File(file.getPath() + BACKUP_SUFFIX);
+  }
 }
@@ -21,20 +21,29 @@ import android.util.Log;
 import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciLocalSyncStatus.ExperimentStatus;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciLocalSyncStatus.LocalSyncStatus;
+import com.google.android.apps.forscience.whistlepunk.data.GoosciLocalSyncStatus.SyncedFileHash;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Manages the Sync Status for Science Journal All changes should be made using the getters and
  * setters provided, rather than by getting the underlying protocol buffer and making changes to
  * that directly. Changes to the underlying proto outside this class may be overwritten and may not
  * be saved.
+ *
+ * <p>Changes are written to the LocalSyncStatus file in the background, at most once per
+ * WRITE_DELAY_MS. Call {@link #flush} to write them immediately.
  */
 public class LocalSyncManager {
   private static final String TAG = "localSyncManager";
+  private static final long WRITE_DELAY_MS = 500;
   private final HashMap<String, ExperimentSyncStatus> statusMap = new HashMap<>();
   private long lastSyncedLibraryVersion = -1L;
+  // Whether the status has been read from the file or set, after which the file may be behind it.
+  private boolean loaded = false;
   private final AppAccount account;
+  private final DebouncedWriter writer;
 
   /** Constructor for an LocalSyncManager that creates a new LocalSyncStatus proto. */
   public LocalSyncManager(AppAccount account) {
@@ -45,6 +54,7 @@ public class LocalSyncManager {
   @VisibleForTesting
   public LocalSyncManager(LocalSyncStatus localSyncStatus, AppAccount account) {
     this.account = account;
+    writer = new DebouncedWriter(this::writeLocalSyncStatus, WRITE_DELAY_MS);
     if (localSyncStatus != null) {
       setLocalSyncStatus(localSyncStatus);
     }
@@ -55,7 +65,8 @@ public class LocalSyncManager {
    *
    * @param localSyncStatus The KicalSyncStatus to manage.
    */
-  public void setLocalSyncStatus(LocalSyncStatus localSyncStatus) {
+  public synchronized void setLocalSyncStatus(LocalSyncStatus localSyncStatus) {
+    loaded = true;
     lastSyncedLibraryVersion = localSyncStatus.getLastSyncedLibraryVersion();
     statusMap.clear();
     for (ExperimentStatus status : localSyncStatus.getExperimentStatusList()) {
@@ -68,7 +79,7 @@ public class LocalSyncManager {
    *
    * @param experimentId The id of the experiment to manage.
    */
-  public boolean hasExperiment(String experimentId) {
+  public synchronized boolean hasExperiment(String experimentId) {
     populateLocalSyncManager();
     return getExperimentStatus(experimentId) != null;
   }
@@ -78,11 +89,11 @@ public class LocalSyncManager {
    *
    * @param experimentId The id of the experiment to manage.
    */
-  public void addExperiment(String experimentId) {
+  public synchronized void addExperiment(String experimentId) {
     populateLocalSyncManager();
     if (!statusMap.containsKey(experimentId)) {
       statusMap.put(experimentId, new ExperimentSyncStatus(experimentId));
-      writeLocalSyncStatus();
+      writer.markDirty();
     }
   }
 
@@ -103,14 +114,14 @@ public class LocalSyncManager {
    *
    * @param experimentId The id of the experiment to set status for.
    */
-  public void setDirty(String experimentId, boolean dirty) {
+  public synchronized void setDirty(String experimentId, boolean dirty) {
     ExperimentSyncStatus status = getExperimentStatus(experimentId);
     if (status != null) {
       status.setDirty(dirty);
       if (dirty) {
         lastSyncedLibraryVersion = 0L;
       }
-      writeLocalSyncStatus();
+      writer.markDirty();
     }
   }
 
@@ -121,7 +132,7 @@ public class LocalSyncManager {
    * @param experimentId The id of the experiment to get status for.
    * @return Whether or not the experiment has local changes.
    */
-  public boolean getDirty(String experimentId) {
+  public synchronized boolean getDirty(String experimentId) {
     ExperimentSyncStatus status = getExperimentStatus(experimentId);
     if (status == null) {
       return false;
@@ -135,11 +146,11 @@ public class LocalSyncManager {
    * @param experimentId The id of the experiment to set status for.
    * @param version The last version of the experiment synced to or from Drive.
    */
-  public void setLastSyncedVersion(String experimentId, long version) {
+  public synchronized void setLastSyncedVersion(String experimentId, long version) {
     ExperimentSyncStatus status = getExperimentStatus(experimentId);
     if (status != null) {
       status.setLastSyncedVersion(version);
-      writeLocalSyncStatus();
+      writer.markDirty();
     }
   }
 
@@ -149,7 +160,7 @@ public class LocalSyncManager {
    * @param experimentId The id of the experiment to get status for.
    * @return The last version of the experiment synced to or from Drive.
    */
-  public long getLastSyncedVersion(String experimentId) {
+  public synchronized long getLastSyncedVersion(String experimentId) {
     ExperimentSyncStatus status = getExperimentStatus(experimentId);
     if (status == null) {
       return -1L;
@@ -163,11 +174,11 @@ public class LocalSyncManager {
    * @param experimentId The id of the experiment to set status for.
    * @param archived Whether the server says the experiment is archived.
    */
-  public void setServerArchived(String experimentId, boolean archived) {
+  public synchronized void setServerArchived(String experimentId, boolean archived) {
     ExperimentSyncStatus status = getExperimentStatus(experimentId);
     if (status != null) {
       status.setServerArchived(archived);
-      writeLocalSyncStatus();
+      writer.markDirty();
     }
   }
 
@@ -177,7 +188,7 @@ public class LocalSyncManager {
    * @param experimentId The id of the experiment to get status for.
    * @return Whether the server says the experiment is archived.
    */
-  public boolean getServerArchived(String experimentId) {
+  public synchronized boolean getServerArchived(String experimentId) {
     ExperimentSyncStatus status = getExperimentStatus(experimentId);
     if (status == null) {
       return false;
@@ -191,11 +202,11 @@ public class LocalSyncManager {
    * @param experimentId The id of the experiment to get status for.
    * @param downloaded Whether the experiment is downloaded.
    */
-  public void setDownloaded(String experimentId, boolean downloaded) {
+  public synchronized void setDownloaded(String experimentId, boolean downloaded) {
     ExperimentSyncStatus status = getExperimentStatus(experimentId);
     if (status != null) {
       status.setDownloaded(downloaded);
-      writeLocalSyncStatus();
+      writer.markDirty();
     }
   }
 
@@ -205,7 +216,7 @@ public class LocalSyncManager {
    * @param experimentId The id of the experiment to get status for.
    * @return Whether the experiment is downloaded.
    */
-  public boolean getDownloaded(String experimentId) {
+  public synchronized boolean getDownloaded(String experimentId) {
     ExperimentSyncStatus status = getExperimentStatus(experimentId);
     if (status == null) {
       return true;
@@ -213,20 +224,68 @@ public class LocalSyncManager {
     return status.isDownloaded();
   }
 
-  public long getLastSyncedLibraryVersion() {
+  /**
+   * Gets the hash of a file in an experiment, as of the last time it was synced with a Drive
+   * package.
+   *
+   * @param experimentId The id of the experiment the file is in.
+   * @param packageId The Drive package the file is synced with.
+   * @param fileName The path of the file, relative to the experiment directory.
+   * @return The hash, or null if the file has not been synced with that package.
+   */
+  public synchronized String getSyncedFileHash(
+      String experimentId, String packageId, String fileName) {
+    ExperimentSyncStatus status = getExperimentStatus(experimentId);
+    if (status == null) {
+      return null;
+    }
+    return status.getSyncedFileHash(packageId, fileName);
+  }
+
+  /**
+   * Sets the hash of a file in an experiment that has just been uploaded to or downloaded from a
+   * Drive package.
+   *
+   * @param experimentId The id of the experiment the file is in.
+   * @param packageId The Drive package the file was synced with.
+   * @param fileName The path of the file, relative to the experiment directory.
+   * @param hash The hash of the file's contents, from {@link FileMetadataUtil#hashFile}.
+   */
+  public synchronized void setSyncedFileHash(
+      String experimentId, String packageId, String fileName, String hash) {
+    ExperimentSyncStatus status = getExperimentStatus(experimentId);
+    if (status != null) {
+      status.setSyncedFileHash(packageId, fileName, hash);
+      writer.markDirty();
+    }
+  }
+
+  public synchronized long getLastSyncedLibraryVersion() {
     populateLocalSyncManager();
     return lastSyncedLibraryVersion;
   }
 
-  public void setLastSyncedLibraryVersion(long version) {
+  public synchronized void setLastSyncedLibraryVersion(long version) {
     populateLocalSyncManager();
     this.lastSyncedLibraryVersion = version;
-    writeLocalSyncStatus();
+    writer.markDirty();
+  }
+
+  /**
+   * Writes any changes that haven't been written yet to the LocalSyncStatus file, on the calling
+   * thread.
+   */
+  public void flush() {
+    writer.flush();
   }
 
   private void writeLocalSyncStatus() {
+    LocalSyncStatus proto;
+    synchronized (this) {
+      proto = generateProto();
+    }
     try {
-      FileMetadataUtil.getInstance().writeLocalSyncStatusFile(generateProto(), account);
+      FileMetadataUtil.getInstance().writeLocalSyncStatusFile(proto, account);
     } catch (IOException ioe) {
       // Would like to do something else here, but not sure what else there really is to do.
       if (Log.isLoggable(TAG, Log.ERROR)) {
@@ -235,12 +294,11 @@ public class LocalSyncManager {
     }
   }
 
-  // Reads the saved local sync status file from disk, if the Library has not already
-  // been set to a non-null value. This lets us move initialization of this object to the background
-  // thread.
+  // Reads the saved local sync status file from disk, if the status has not already been read or
+  // set. This lets us move initialization of this object to the background thread.
   // TODO(b/111649596) Test this
   private void populateLocalSyncManager() {
-    if (statusMap.isEmpty()) {
+    if (!loaded) {
       LocalSyncStatus proto = FileMetadataUtil.getInstance().readLocalSyncStatusFile(account);
       setLocalSyncStatus(proto);
     }
@@ -264,6 +322,8 @@ class ExperimentSyncStatus {
   private long lastSyncedVersion = -1L;
   private boolean serverArchived = false;
   private boolean downloaded = false;
+  // The hashes of synced files, by file name.
+  private final Map<String, SyncedFileHash> syncedFileHashes = new HashMap<>();
 
   public ExperimentSyncStatus(String id) {
     experimentId = id;
@@ -275,6 +335,9 @@ class ExperimentSyncStatus {
     lastSyncedVersion = status.getLastSyncedVersion();
     serverArchived = status.getServerArchived();
     downloaded = status.getDownloaded();
+    for (SyncedFileHash fileHash : status.getSyncedFileHashList()) {
+      syncedFileHashes.put(fileHash.getFileName(), fileHash);
+    }
   }
 
   public String getExperimentId() {
@@ -317,6 +380,24 @@ class ExperimentSyncStatus {
     this.lastSyncedVersion = lastSyncedVersion;
   }
 
+  public String getSyncedFileHash(String packageId, String fileName) {
+    SyncedFileHash fileHash = syncedFileHashes.get(fileName);
+    if (fileHash == null || !fileHash.getPackageId().equals(packageId)) {
+      return null;
+    }
+    return fileHash.getHash();
+  }
+
+  public void setSyncedFileHash(String packageId, String fileName, String hash) {
+    syncedFileHashes.put(
+        fileName,
+        SyncedFileHash.newBuilder()
+            .setFileName(fileName)
+            .setPackageId(packageId)
+            .setHash(hash)
+            .build());
+  }
+
   public ExperimentStatus generateProto() {
     return ExperimentStatus.newBuilder()
         .setExperimentId(experimentId)
@@ -324,6 +405,7 @@ class ExperimentSyncStatus {
         .setLastSyncedVersion(lastSyncedVersion)
         .setServerArchived(serverArchived)
         .setDownloaded(downloaded)
+        .addAllSyncedFileHash(syncedFileHashes.values())
         .build();
   }
 }
@@ -78,6 +78,10 @@ public class Trial extends LabelListHolder {
   private Caption caption;
   private Map<String, TrialStats> trialStats = new HashMap<>();
   private OnLabelChangeListener onLabelChangeListener;
+  // The proto last built by getTrialProto, or null if a field of this trial has changed since.
+  // Labels and stats can be changed without going through a setter here, so they are compared to
+  // the ones in the proto before it is reused.
+  private GoosciTrial.Trial trialProto;
 
   /** Populates the Trial from an existing proto. */
   public static Trial fromTrial(GoosciTrial.Trial trial) {
@@ -189,6 +193,7 @@ public class Trial extends LabelListHolder {
 
   public void setRecordingEndTime(long recordingEndTime) {
     recordingRange = recordingRange.toBuilder().setEndMs(recordingEndTime).build();
+    trialProto = null;
   }
 
   public Range getOriginalRecordingRange() {
@@ -201,6 +206,7 @@ public class Trial extends LabelListHolder {
 
   public void setCropRange(Range cropRange) {
     this.cropRange = cropRange;
+    trialProto = null;
   }
 
   public List<String> getSensorIds() {
@@ -244,6 +250,7 @@ public class Trial extends LabelListHolder {
 
   public void setTitle(String title) {
     this.title = title;
+    trialProto = null;
   }
 
   public boolean isArchived() {
@@ -252,9 +259,14 @@ public class Trial extends LabelListHolder {
 
   public void setArchived(boolean isArchived) {
     this.archived = isArchived;
+    trialProto = null;
   }
 
   public GoosciTrial.Trial getTrialProto() {
+    GoosciTrial.Trial cached = trialProto;
+    if (cached != null && labelsAndStatsMatch(cached)) {
+      return cached;
+    }
     GoosciTrial.Trial.Builder trial =
         GoosciTrial.Trial.newBuilder()
             .setTrialId(trialId)
@@ -282,7 +294,28 @@ public class Trial extends LabelListHolder {
     trial.addAllSensorLayouts(layouts);
     trial.addAllSensorAppearances(sensorAppearances);
 
-    return trial.build();
+    trialProto = trial.build();
+    return trialProto;
+  }
+
+  // Whether the labels and stats are the same objects that were put in the given proto.
+  private boolean labelsAndStatsMatch(GoosciTrial.Trial proto) {
+    if (proto.getLabelsCount() != labels.size()
+        || proto.getTrialStatsCount() != trialStats.size()) {
+      return false;
+    }
+    for (int i = 0; i < labels.size(); i++) {
+      if (labels.get(i).getLabelProto() != proto.getLabels(i)) {
+        return false;
+      }
+    }
+    int i = 0;
+    for (TrialStats stats : trialStats.values()) {
+      if (stats.getSensorTrialStatsProto() != proto.getTrialStats(i++)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public GoosciTrial.Trial toProto() {
@@ -290,12 +323,15 @@ public class Trial extends LabelListHolder {
   }
 
   public List<SensorLayoutPojo> getSensorLayouts() {
+    // The layouts can be changed by the caller.
+    trialProto = null;
     return sensorLayouts;
   }
 
   @VisibleForTesting
   public void setSensorLayouts(List<SensorLayoutPojo> sensorLayouts) {
     this.sensorLayouts = sensorLayouts;
+    trialProto = null;
   }
 
   public boolean getAutoZoomEnabled() {
@@ -304,6 +340,7 @@ public class Trial extends LabelListHolder {
 
   public void setAutoZoomEnabled(boolean enableAutoZoom) {
     this.autoZoomEnabled = enableAutoZoom;
+    trialProto = null;
   }
 
   /** Gets the stats for a sensor. */
@@ -318,6 +355,7 @@ public class Trial extends LabelListHolder {
    */
   public void setStats(TrialStats newTrialStats) {
     trialStats.put(newTrialStats.getSensorId(), newTrialStats);
+    trialProto = null;
   }
 
   // The Trial ID cannot be set after it is created.
@@ -334,6 +372,7 @@ public class Trial extends LabelListHolder {
 
   public void setCaption(GoosciCaption.Caption caption) {
     this.caption = caption;
+    trialProto = null;
   }
 
   /**
@@ -432,6 +471,7 @@ public class Trial extends LabelListHolder {
 
   public void setTrialNumberInExperiment(int trialNumberInExperiment) {
     this.trialNumberInExperiment = trialNumberInExperiment;
+    trialProto = null;
   }
 
   public int getTrialNumberInExperiment() {
@@ -69,7 +69,9 @@ public class UserMetadataManager {
   public UserMetadataManager(
       Context context, AppAccount appAccount, FailureListener failureListener) {
     this.failureListener = failureListener;
-    overviewProtoFileHelper = new LiteProtoFileHelper<>();
+    // The user metadata lists every experiment, so keep the previous version in case the latest one
+    // can't be read.
+    overviewProtoFileHelper = new LiteProtoFileHelper<>(/* keepBackup= */ true);
     userMetadataFile = FileMetadataUtil.getInstance().getUserMetadataFile(appAccount);
     backgroundWriteThread = Executors.newSingleThreadExecutor();
     handler = new Handler();
@@ -307,6 +309,7 @@ public class UserMetadataManager {
    * expensive. Returns true if a new file was created.
    */
   private boolean createUserMetadataFileIfNeeded() {
+    overviewProtoFileHelper.restoreBackupIfMissing(userMetadataFile);
     if (!userMetadataFile.exists()) {
       // If the files aren't there yet, create them.
       try {
@@ -41,6 +41,12 @@ public class ZoomPresenter {
    */
   private static final double THRESHOLD_TO_CHANGE_ZOOM_LEVEL = 0.6;
 
+  /**
+   * Roughly how many tier-zero-spaced data points each tile of cached chart data should span. See
+   * {@link #getTileMillis(int)}.
+   */
+  private static final int DATAPOINTS_PER_TILE = 250;
+
   private static final String TAG = "ZoomPresenter";
 
   private final int idealNumberOfDisplayedDatapoints;
@@ -70,6 +76,37 @@ public class ZoomPresenter {
     return currentTier;
   }
 
+  /**
+   * Returns how many milliseconds a tile of cached chart data should span at the given tier, so
+   * that tiles hold a similar number of points whichever tier they are from, or 0 if the run
+   * doesn't have the stats needed to work this out or the tier doesn't exist.
+   */
+  public long getTileMillis(int tier) {
+    if (trialStats == null || !hasRequiredStats(trialStats)) {
+      return 0;
+    }
+    int tierCount =
+        (int) trialStats.getStatValue(GoosciTrial.SensorStat.StatType.ZOOM_PRESENTER_TIER_COUNT, 0);
+    if (tier < 0 || tier >= tierCount) {
+      return 0;
+    }
+    double meanMillisPerDataPoint =
+        trialStats.getStatValue(GoosciTrial.SensorStat.StatType.TOTAL_DURATION, 0)
+            / trialStats.getStatValue(GoosciTrial.SensorStat.StatType.NUM_DATA_POINTS, 1);
+    int zoomLevelBetweenTiers =
+        (int)
+            trialStats.getStatValue(
+                GoosciTrial.SensorStat.StatType.ZOOM_PRESENTER_ZOOM_LEVEL_BETWEEN_TIERS,
+                ScalarSensor.DEFAULT_ZOOM_LEVEL_BETWEEN_TIERS);
+    double tileMillis =
+        meanMillisPerDataPoint * Math.pow(zoomLevelBetweenTiers, tier) * DATAPOINTS_PER_TILE;
+    if (!(tileMillis >= 1)) {
+      // Covers NaN from a run with no data points.
+      return 0;
+    }
+    return (long) Math.min(tileMillis, Long.MAX_VALUE / 4);
+  }
+
   @VisibleForTesting
   public static int computeTier(
       int currentTier,
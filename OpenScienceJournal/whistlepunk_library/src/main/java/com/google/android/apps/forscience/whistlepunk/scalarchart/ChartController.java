@@ -200,9 +200,14 @@ public class ChartController {
 
   // Adds a single point to the end of the path. Assumes points are ordered as they arrive.
   public void addPoint(ChartData.DataPoint point) {
+    addPoint(point.getX(), point.getY());
+  }
+
+  // Adds a single point to the end of the path. Assumes points are ordered as they arrive.
+  public void addPoint(long x, double y) {
     // TODO: extract as a testable object
     if (resetTime != -1) {
-      if (point.getX() < resetTime) {
+      if (x < resetTime) {
         // straggling datapoint from before the reset, ignore
         return;
       } else {
@@ -217,14 +222,14 @@ public class ChartController {
       // TODO: Is it possible to call throwAwayBetween less frequently for performance?
       // no need to do so many binary searches in ChartData...
       // TODO: This throwAwayBetween is causing b/28614204.
-      long throwawayBefore = point.getX() - (KEEP_THIS_MANY_SCREENS * defaultGraphRange);
+      long throwawayBefore = x - (KEEP_THIS_MANY_SCREENS * defaultGraphRange);
       long throwawayAfter = chartOptions.getRenderedXMax() + defaultGraphRange;
       chartData.throwAwayBetween(throwawayAfter, throwawayBefore);
     }
 
-    chartData.addPoint(point);
+    chartData.addPoint(x, y);
     if (chartView != null && chartView.isDrawn()) {
-      chartView.addPointToEndOfPath(point);
+      chartView.addPointToEndOfPath(x, y);
     }
   }
 
@@ -236,9 +241,9 @@ public class ChartController {
     chartOptions.setPinnedToNow(false);
   }
 
-  private void addOrderedGroupOfPoints(List<ChartData.DataPoint> points, long requestId) {
+  private void addOrderedGroupOfPoints(ScalarReadingList observations, long requestId) {
     if (currentLoadIds.contains(requestId)) {
-      chartData.addOrderedGroupOfPoints(points);
+      chartData.addOrderedGroupOfPoints(observations);
     }
   }
 
@@ -319,7 +324,7 @@ public class ChartController {
   public void setXAxis(long xMin, long xMax) {
     chartOptions.setRenderedXRange(xMin, xMax);
     if (chartOptions.isPinnedToNow() && !chartData.isEmpty()) {
-      chartOptions.adjustYAxisStep(chartData.getPoints().get(chartData.getNumPoints() - 1));
+      chartOptions.adjustYAxisStep(chartData.getYAt(chartData.getNumPoints() - 1));
     }
     if (chartView != null) {
       chartView.onAxisLimitsAdjusted();
@@ -419,10 +424,9 @@ public class ChartController {
       return null;
     }
     int closestIndex = chartData.getClosestIndexToTimestamp(timestamp);
-    ChartData.DataPoint closestPoint = chartData.getPoints().get(closestIndex);
     // Check if we are above the aboveTimestamp.
-    if (closestPoint.getX() >= aboveTimestamp) {
-      return closestPoint;
+    if (chartData.getXAt(closestIndex) >= aboveTimestamp) {
+      return chartData.getPoints().get(closestIndex);
     }
     if (closestIndex + 1 < chartData.getNumPoints() - 1) {
       return chartData.getPoints().get(closestIndex + 1);
@@ -445,10 +449,9 @@ public class ChartController {
       return null;
     }
     int closestIndex = chartData.getClosestIndexToTimestamp(timestamp);
-    ChartData.DataPoint closestPoint = chartData.getPoints().get(closestIndex);
     // Check if we are above the aboveTimestamp.
-    if (closestPoint.getX() <= belowTimestamp) {
-      return closestPoint;
+    if (chartData.getXAt(closestIndex) <= belowTimestamp) {
+      return chartData.getPoints().get(closestIndex);
     }
     if (closestIndex - 1 >= 0) {
       return chartData.getPoints().get(closestIndex - 1);
@@ -618,49 +621,51 @@ public class ChartController {
     int currentTier = zp.updateTier(lastTimestamp - firstTimestamp);
 
     // Populate the initial graph
-    GraphPopulator graphPopulator =
-        new GraphPopulator(
-            new GraphPopulator.ObservationDisplay() {
-              @Override
-              public void addRange(
-                  ScalarReadingList observations, Range<Double> valueRange, long requestId) {
-                updateYRangeFromValueRange(valueRange);
-                addOrderedGroupOfPoints(observations.asDataPoints(), requestId);
-              }
+    GraphPopulator.ObservationDisplay display =
+        new GraphPopulator.ObservationDisplay() {
+          @Override
+          public void addRange(
+              ScalarReadingList observations, Range<Double> valueRange, long requestId) {
+            updateYRangeFromValueRange(valueRange);
+            addOrderedGroupOfPoints(observations, requestId);
+          }
 
-              @Override
-              public void onFinish(long requestId) {
-                status.setGraphLoadStatus(ChartLoadingStatus.GRAPH_LOAD_STATUS_IDLE);
-
-                if (!runId.equals(status.getRunId())
-                    || !sensorLayout.getSensorId().equals(status.getSensorId())
-                    || !currentLoadIds.contains(requestId)) {
-                  // The wrong run or the wrong sensor ID was loaded into this
-                  // chartController, or this is the wrong request ID.
-                  // Clear and try again with the updated run and sensor values from the holder.
-                  clearData();
-                  tryLoadingChartData(
-                      status.getRunId(),
-                      sensorLayout,
-                      dc,
-                      firstTimestamp,
-                      lastTimestamp,
-                      status,
-                      stats,
-                      fullChartLoadDataCallback,
-                      context);
-                } else {
-                  currentLoadIds.remove(requestId);
-                  callChartDataLoadedCallbacks(firstTimestamp, lastTimestamp);
-                  if (fullChartLoadDataCallback != null) {
-                    removeChartDataLoadedCallback(fullChartLoadDataCallback);
-                  }
-                  setShowProgress(false);
-                }
+          @Override
+          public void onFinish(long requestId) {
+            status.setGraphLoadStatus(ChartLoadingStatus.GRAPH_LOAD_STATUS_IDLE);
+
+            if (!runId.equals(status.getRunId())
+                || !sensorLayout.getSensorId().equals(status.getSensorId())
+                || !currentLoadIds.contains(requestId)) {
+              // The wrong run or the wrong sensor ID was loaded into this
+              // chartController, or this is the wrong request ID.
+              // Clear and try again with the updated run and sensor values from the holder.
+              clearData();
+              tryLoadingChartData(
+                  status.getRunId(),
+                  sensorLayout,
+                  dc,
+                  firstTimestamp,
+                  lastTimestamp,
+                  status,
+                  stats,
+                  fullChartLoadDataCallback,
+                  context);
+            } else {
+              currentLoadIds.remove(requestId);
+              callChartDataLoadedCallbacks(firstTimestamp, lastTimestamp);
+              if (fullChartLoadDataCallback != null) {
+                removeChartDataLoadedCallback(fullChartLoadDataCallback);
               }
-            },
-            uptimeClock);
+              setShowProgress(false);
+            }
+          }
+        };
 
+    if (loadFromTileCache(dc, runId, currentTier, firstTimestamp, lastTimestamp, display)) {
+      return;
+    }
+    GraphPopulator graphPopulator = new GraphPopulator(display, uptimeClock);
     currentLoadIds.add(graphPopulator.getRequestId());
     graphPopulator.requestObservations(
         GraphPopulator.constantGraphStatus(firstTimestamp, lastTimestamp),
@@ -807,32 +812,37 @@ public class ChartController {
       final long maxToLoad,
       final boolean chartHiddenForLoad) {
     int currentTier = zoomPresenter == null ? 0 : zoomPresenter.getCurrentTier();
-    GraphPopulator graphPopulator =
-        new GraphPopulator(
-            new GraphPopulator.ObservationDisplay() {
-              @Override
-              public void addRange(
-                  ScalarReadingList observations, Range<Double> valueRange, long requestId) {
-                updateYRangeFromValueRange(valueRange);
-                addOrderedGroupOfPoints(observations.asDataPoints(), requestId);
-              }
+    GraphPopulator.ObservationDisplay display =
+        new GraphPopulator.ObservationDisplay() {
+          @Override
+          public void addRange(
+              ScalarReadingList observations, Range<Double> valueRange, long requestId) {
+            updateYRangeFromValueRange(valueRange);
+            addOrderedGroupOfPoints(observations, requestId);
+          }
 
-              @Override
-              public void onFinish(long requestId) {
-                if (currentLoadIds.contains(requestId)) {
-                  currentLoadIds.remove(requestId);
-                }
-                if (currentLoadIds.size() == 0) {
-                  refreshLabels();
-                }
-                if (chartHiddenForLoad) {
-                  setShowProgress(false);
-                }
-                refreshChartView();
-                callChartDataLoadedCallbacks(minToLoad, maxToLoad);
-              }
-            },
-            uptimeClock);
+          @Override
+          public void onFinish(long requestId) {
+            if (currentLoadIds.contains(requestId)) {
+              currentLoadIds.remove(requestId);
+            }
+            if (currentLoadIds.size() == 0) {
+              refreshLabels();
+            }
+            if (chartHiddenForLoad) {
+              setShowProgress(false);
+            }
+            refreshChartView();
+            callChartDataLoadedCallbacks(minToLoad, maxToLoad);
+          }
+        };
+
+    // Cached readings are delivered straight away, so announce the load before starting it.
+    callChartDataStartLoadingCallbacks(chartHiddenForLoad);
+    if (loadFromTileCache(dataController, trialId, currentTier, minToLoad, maxToLoad, display)) {
+      return;
+    }
+    GraphPopulator graphPopulator = new GraphPopulator(display, uptimeClock);
     currentLoadIds.add(graphPopulator.getRequestId());
     graphPopulator.requestObservations(
         GraphPopulator.constantGraphStatus(minToLoad, maxToLoad),
@@ -841,8 +851,43 @@ public class ChartController {
         currentTier,
         trialId,
         sensorId);
+  }
 
-    callChartDataStartLoadingCallbacks(chartHiddenForLoad);
+  /**
+   * In run review, loads the readings through the shared {@link ChartTileCache}, so that zooming
+   * and panning back over them doesn't go back to the database.
+   *
+   * @return false if the readings need to be loaded directly instead.
+   */
+  private boolean loadFromTileCache(
+      DataController dataController,
+      String trialId,
+      int tier,
+      long minToLoad,
+      long maxToLoad,
+      GraphPopulator.ObservationDisplay display) {
+    if (chartOptions.getChartPlacementType() != ChartOptions.ChartPlacementType.TYPE_RUN_REVIEW
+        || zoomPresenter == null) {
+      return false;
+    }
+    long requestId = uptimeClock.getNow();
+    currentLoadIds.add(requestId);
+    if (!ChartTileCache.getInstance()
+        .load(
+            dataController,
+            trialId,
+            sensorId,
+            zoomPresenter,
+            tier,
+            minToLoad,
+            maxToLoad,
+            dataFailureListener,
+            display,
+            requestId)) {
+      currentLoadIds.remove(requestId);
+      return false;
+    }
+    return true;
   }
 
   public void addChartDataLoadedCallback(ChartDataLoadedCallback callback) {
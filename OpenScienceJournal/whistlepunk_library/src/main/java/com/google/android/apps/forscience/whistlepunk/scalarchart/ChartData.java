@@ -18,13 +18,24 @@ package com.google.android.apps.forscience.whistlepunk.scalarchart;
 
 import androidx.annotation.VisibleForTesting;
 import com.google.android.apps.forscience.whistlepunk.filemetadata.Label;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamStat;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 
+/**
+ * The points drawn by a chart, ordered by timestamp.
+ *
+ * <p>Points are stored as parallel primitive arrays used as a ring buffer, so that live data can
+ * be appended at the end and thrown away at the start without shifting or allocating once the
+ * buffer has grown to fit the visible window. {@link #getPoints} and the range methods return
+ * views onto the buffer; use {@link #getXAt} and {@link #getYAt} to read points without creating
+ * {@link DataPoint} objects.
+ */
 public class ChartData {
   public static class DataPoint {
 
@@ -63,7 +74,23 @@ public class ChartData {
   public static final long DEFAULT_THROWAWAY_TIME_THRESHOLD = 1000 * 60 * 2;
   private long throwawayDataTimeThreshold = DEFAULT_THROWAWAY_TIME_THRESHOLD;
 
-  private List<DataPoint> data = new ArrayList<>();
+  // Always a power of two, so that ring indexes can be masked.
+  private static final int INITIAL_CAPACITY = 64;
+
+  // Point i is at (head + i) & (xs.length - 1).
+  private long[] xs = new long[INITIAL_CAPACITY];
+  private double[] ys = new double[INITIAL_CAPACITY];
+  private int head = 0;
+  private int size = 0;
+  // Changes whenever points are changed other than by adding them to the end.
+  private int revision = 0;
+
+  // Reused to stage incoming groups of points before they are merged in.
+  private long[] stagedXs = new long[0];
+  private double[] stagedYs = new double[0];
+  private int stagedSize = 0;
+
+  private final List<DataPoint> points = new PointList();
 
   // The list of data points at which a label should be displayed.
   private List<DataPoint> labels = new ArrayList<>();
@@ -76,11 +103,12 @@ public class ChartData {
   // The stats for this list.
   private List<StreamStat> stats = new ArrayList<>();
 
-  private static final Comparator<? super DataPoint> DATA_POINT_COMPARATOR =
-      new Comparator<DataPoint>() {
+  private final StreamConsumer stagingConsumer =
+      new StreamConsumer() {
         @Override
-        public int compare(DataPoint lhs, DataPoint rhs) {
-          return Long.compare(lhs.getX(), rhs.getX());
+        public boolean addData(long timestampMillis, double value) {
+          stage(timestampMillis, value);
+          return true;
         }
       };
 
@@ -96,7 +124,13 @@ public class ChartData {
   // This assumes the data point occurs after all previous data points.
   // Order is not checked.
   public void addPoint(DataPoint point) {
-    data.add(point);
+    addPoint(point.getX(), point.getY());
+  }
+
+  // This assumes the data point occurs after all previous data points.
+  // Order is not checked.
+  public void addPoint(long x, double y) {
+    append(x, y);
     if (unaddedLabels.size() > 0) {
       // TODO to avoid extra work, only try again if new data might come in in the direction
       // of these labels...?
@@ -110,43 +144,107 @@ public class ChartData {
     }
   }
 
+  /**
+   * Returns a view of the points. Each call to {@code get} creates a new {@link DataPoint}; prefer
+   * {@link #getXAt} and {@link #getYAt} when iterating over many points.
+   */
   public List<DataPoint> getPoints() {
-    return data;
+    return points;
+  }
+
+  /**
+   * Returns a number that changes whenever points are removed, replaced, or added anywhere other
+   * than after the last point. Points added at the end leave it unchanged.
+   */
+  int getRevision() {
+    return revision;
+  }
+
+  /** Returns the timestamp of the point at {@code index}. */
+  public long getXAt(int index) {
+    return xs[slot(index)];
+  }
+
+  /** Returns the value of the point at {@code index}. */
+  public double getYAt(int index) {
+    return ys[slot(index)];
   }
 
   // This assumes the List<DataPoint> is ordered by timestamp.
   public void setPoints(List<DataPoint> data) {
-    this.data = data;
+    revision++;
+    head = 0;
+    size = 0;
+    ensureCapacity(data.size());
+    for (int i = 0; i < data.size(); i++) {
+      DataPoint point = data.get(i);
+      xs[i] = point.getX();
+      ys[i] = point.getY();
+    }
+    size = data.size();
   }
 
+  /**
+   * Adds a group of points, ordered by timestamp, that may overlap the points already here. The
+   * group is merged in rather than appended and re-sorted; points with equal timestamps keep the
+   * existing point first.
+   */
   public void addOrderedGroupOfPoints(List<DataPoint> points) {
     if (points == null || points.size() == 0) {
       return;
     }
-    data.addAll(points);
-    Collections.sort(data, DATA_POINT_COMPARATOR);
+    stagedSize = 0;
+    for (int i = 0; i < points.size(); i++) {
+      DataPoint point = points.get(i);
+      stage(point.getX(), point.getY());
+    }
+    mergeStaged();
+  }
+
+  /** Like {@link #addOrderedGroupOfPoints(List)}, without creating a DataPoint per reading. */
+  public void addOrderedGroupOfPoints(ScalarReadingList readings) {
+    if (readings == null || readings.size() == 0) {
+      return;
+    }
+    stagedSize = 0;
+    readings.deliver(stagingConsumer);
+    mergeStaged();
+  }
+
+  /**
+   * Returns the index of the first point to draw when drawing from {@code xMin}. This may be a few
+   * points before {@code xMin}, but never after it.
+   */
+  public int getRangeStartIndex(long xMin) {
+    return approximateBinarySearch(xMin, 0, true);
+  }
+
+  /**
+   * Returns one past the index of the last point to draw when drawing up to {@code xMax}, starting
+   * at {@code startIndex}. This may be a few points after {@code xMax}, but never before it.
+   */
+  public int getRangeEndIndex(long xMax, int startIndex) {
+    if (size == 0) {
+      return 0;
+    }
+    return Math.max(startIndex, approximateBinarySearch(xMax, startIndex, false) + 1);
   }
 
   public List<DataPoint> getPointsInRangeToEnd(long xMin) {
-    int startIndex = approximateBinarySearch(xMin, 0, true);
-    return data.subList(startIndex, data.size());
+    return points.subList(getRangeStartIndex(xMin), size);
   }
 
   public List<DataPoint> getPointsInRange(long xMin, long xMax) {
-    int startIndex = approximateBinarySearch(xMin, 0, true);
-    int endIndex = approximateBinarySearch(xMax, startIndex, false);
-    if (startIndex > endIndex) {
-      return Collections.emptyList();
-    }
-    return data.subList(startIndex, endIndex + 1);
+    int startIndex = getRangeStartIndex(xMin);
+    return points.subList(startIndex, getRangeEndIndex(xMax, startIndex));
   }
 
   public DataPoint getClosestDataPointToTimestamp(long timestamp) {
     int index = getClosestIndexToTimestamp(timestamp);
-    if (data.size() == 0) {
+    if (size == 0) {
       return null;
     }
-    return data.get(index);
+    return points.get(index);
   }
 
   // Searches for the closest index to a given timestamp, round up or down if the search
@@ -165,7 +263,7 @@ public class ChartData {
    */
   @VisibleForTesting
   int exactBinarySearch(long searchX, int startSearchIndex) {
-    return approximateBinarySearch(searchX, startSearchIndex, data.size() - 1, true, 0);
+    return approximateBinarySearch(searchX, startSearchIndex, size - 1, true, 0);
   }
 
   /**
@@ -180,7 +278,7 @@ public class ChartData {
    */
   private int approximateBinarySearch(long searchX, int startSearchIndex, boolean preferStart) {
     return approximateBinarySearch(
-        searchX, startSearchIndex, data.size() - 1, preferStart, DEFAULT_APPROX_RANGE);
+        searchX, startSearchIndex, size - 1, preferStart, DEFAULT_APPROX_RANGE);
   }
 
   /**
@@ -203,18 +301,18 @@ public class ChartData {
   @VisibleForTesting
   int approximateBinarySearch(
       long searchX, int startIndex, int endIndex, boolean preferStart, int searchRange) {
-    if (data.isEmpty()) {
+    if (size == 0) {
       return 0;
     }
 
     // See if we're already done (need to do this before calculating distances below, in case
     // searchX is so big or small we're in danger of overflow).
 
-    long startValue = data.get(startIndex).getX();
+    long startValue = getXAt(startIndex);
     if (searchX <= startValue) {
       return startIndex;
     }
-    long endValue = data.get(endIndex).getX();
+    long endValue = getXAt(endIndex);
     if (searchX >= endValue) {
       return endIndex;
     }
@@ -233,7 +331,7 @@ public class ChartData {
       }
     }
     int mid = (startIndex + endIndex) / 2;
-    long midX = data.get(mid).getX();
+    long midX = getXAt(mid);
     if (midX < searchX) {
       return approximateBinarySearch(searchX, mid, endIndex, preferStart, searchRange);
     } else if (midX > searchX) {
@@ -244,25 +342,27 @@ public class ChartData {
   }
 
   public int getNumPoints() {
-    return data.size();
+    return size;
   }
 
   public boolean isEmpty() {
-    return data.isEmpty();
+    return size == 0;
   }
 
   // Assume points are ordered
   public long getXMin() {
-    return data.get(0).getX();
+    return getXAt(0);
   }
 
   // Assume points are ordered
   public long getXMax() {
-    return data.get(data.size() - 1).getX();
+    return getXAt(size - 1);
   }
 
   public void clear() {
-    data.clear();
+    revision++;
+    head = 0;
+    size = 0;
     labels.clear();
     unaddedLabels.clear();
   }
@@ -286,18 +386,20 @@ public class ChartData {
   @VisibleForTesting
   boolean tryAddingLabel(Label label) {
     long timestamp = label.getTimeStamp();
-    if (data.isEmpty() || timestamp < getXMin() || timestamp > getXMax()) {
+    if (size == 0 || timestamp < getXMin() || timestamp > getXMax()) {
       return false;
     }
     int indexPrev = exactBinarySearch(timestamp, 0);
-    DataPoint start = data.get(indexPrev);
-    if (timestamp == start.getX()) {
-      labels.add(start);
+    long startX = getXAt(indexPrev);
+    double startY = getYAt(indexPrev);
+    if (timestamp == startX) {
+      labels.add(new DataPoint(startX, startY));
       return true;
-    } else if (indexPrev < data.size() - 2) {
-      DataPoint end = data.get(indexPrev + 1);
-      double weight = (timestamp - start.getX()) / (1.0 * end.getX() - start.getX());
-      labels.add(new DataPoint(timestamp, start.getY() * weight + end.getY() * (1 - weight)));
+    } else if (indexPrev < size - 2) {
+      long endX = getXAt(indexPrev + 1);
+      double endY = getYAt(indexPrev + 1);
+      double weight = (timestamp - startX) / (1.0 * endX - startX);
+      labels.add(new DataPoint(timestamp, startY * weight + endY * (1 - weight)));
       return true;
     }
     return false;
@@ -324,13 +426,13 @@ public class ChartData {
   }
 
   public void throwAwayBetween(long throwAwayMinX, long throwAwayMaxX) {
-    if (throwAwayMaxX <= throwAwayMinX) {
+    if (throwAwayMaxX <= throwAwayMinX || size == 0) {
       return;
     }
 
     // This should be the index to the right of max
-    int indexEnd = approximateBinarySearch(throwAwayMaxX, 0, data.size() - 1, false, 1);
-    int indexStart = approximateBinarySearch(throwAwayMinX, 0, data.size() - 1, false, 1);
+    int indexEnd = approximateBinarySearch(throwAwayMaxX, 0, size - 1, false, 1);
+    int indexStart = approximateBinarySearch(throwAwayMinX, 0, size - 1, false, 1);
 
     // Only throw away in bulk once we reach a threshold, so that all the work is not done on
     // every iteration. Make sure to also throw out very far away old data to avoid
@@ -338,11 +440,190 @@ public class ChartData {
     // we can just "return" here.
     if (indexEnd - indexStart < throwawayDataSizeThreshold
         && (indexStart >= 0
-            && indexEnd < data.size()
-            && data.get(indexEnd).getX() - data.get(indexStart).getX()
-                < throwawayDataTimeThreshold)) {
+            && indexEnd < size
+            && getXAt(indexEnd) - getXAt(indexStart) < throwawayDataTimeThreshold)) {
+      return;
+    }
+    removeRange(indexStart, indexEnd);
+  }
+
+  private int slot(int index) {
+    return (head + index) & (xs.length - 1);
+  }
+
+  private void append(long x, double y) {
+    ensureCapacity(size + 1);
+    int slot = slot(size);
+    xs[slot] = x;
+    ys[slot] = y;
+    size++;
+  }
+
+  private void insert(int index, long x, double y) {
+    if (index < size) {
+      revision++;
+    }
+    ensureCapacity(size + 1);
+    for (int i = size; i > index; i--) {
+      xs[slot(i)] = xs[slot(i - 1)];
+      ys[slot(i)] = ys[slot(i - 1)];
+    }
+    xs[slot(index)] = x;
+    ys[slot(index)] = y;
+    size++;
+  }
+
+  /**
+   * Removes points [fromIndex, toIndex). Trimming either end just moves the ring bounds; removing
+   * from the middle shifts whichever side is shorter.
+   */
+  private void removeRange(int fromIndex, int toIndex) {
+    int count = toIndex - fromIndex;
+    if (count <= 0) {
+      return;
+    }
+    revision++;
+    if (fromIndex < size - toIndex) {
+      for (int i = fromIndex - 1; i >= 0; i--) {
+        xs[slot(i + count)] = xs[slot(i)];
+        ys[slot(i + count)] = ys[slot(i)];
+      }
+      head = slot(count);
+    } else {
+      for (int i = toIndex; i < size; i++) {
+        xs[slot(i - count)] = xs[slot(i)];
+        ys[slot(i - count)] = ys[slot(i)];
+      }
+    }
+    size -= count;
+    if (size == 0) {
+      head = 0;
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= xs.length) {
+      return;
+    }
+    int newCapacity = xs.length;
+    while (newCapacity < capacity) {
+      newCapacity *= 2;
+    }
+    reallocate(newCapacity);
+  }
+
+  // Copies the points to new arrays, starting at index 0.
+  private void reallocate(int capacity) {
+    long[] newXs = new long[capacity];
+    double[] newYs = new double[capacity];
+    int firstPart = Math.min(size, xs.length - head);
+    System.arraycopy(xs, head, newXs, 0, firstPart);
+    System.arraycopy(ys, head, newYs, 0, firstPart);
+    System.arraycopy(xs, 0, newXs, firstPart, size - firstPart);
+    System.arraycopy(ys, 0, newYs, firstPart, size - firstPart);
+    xs = newXs;
+    ys = newYs;
+    head = 0;
+  }
+
+  private void stage(long x, double y) {
+    if (stagedSize == stagedXs.length) {
+      int capacity = Math.max(INITIAL_CAPACITY, stagedSize * 2);
+      long[] newXs = new long[capacity];
+      double[] newYs = new double[capacity];
+      System.arraycopy(stagedXs, 0, newXs, 0, stagedSize);
+      System.arraycopy(stagedYs, 0, newYs, 0, stagedSize);
+      stagedXs = newXs;
+      stagedYs = newYs;
+    }
+    stagedXs[stagedSize] = x;
+    stagedYs[stagedSize] = y;
+    stagedSize++;
+  }
+
+  private void mergeStaged() {
+    int count = stagedSize;
+    stagedSize = 0;
+    if (count == 0) {
+      return;
+    }
+    ensureCapacity(size + count);
+    if (size == 0 || stagedXs[0] >= getXMax()) {
+      // Loading further along: just append.
+      for (int i = 0; i < count; i++) {
+        xs[slot(size + i)] = stagedXs[i];
+        ys[slot(size + i)] = stagedYs[i];
+      }
+      size += count;
+      return;
+    }
+    revision++;
+    if (stagedXs[count - 1] < getXMin()) {
+      // Loading further back: move the head back and fill in before it.
+      head = slot(xs.length - count);
+      for (int i = 0; i < count; i++) {
+        xs[slot(i)] = stagedXs[i];
+        ys[slot(i)] = stagedYs[i];
+      }
+      size += count;
       return;
     }
-    data.subList(indexStart, indexEnd).clear();
+
+    // Overlapping: merge from the back, so that nothing is overwritten before it has been moved.
+    int existing = size - 1;
+    int staged = count - 1;
+    for (int i = size + count - 1; staged >= 0; i--) {
+      if (existing >= 0 && getXAt(existing) > stagedXs[staged]) {
+        xs[slot(i)] = getXAt(existing);
+        ys[slot(i)] = getYAt(existing);
+        existing--;
+      } else {
+        xs[slot(i)] = stagedXs[staged];
+        ys[slot(i)] = stagedYs[staged];
+        staged--;
+      }
+    }
+    size += count;
+  }
+
+  /** A live view of the points, as DataPoints. Supports adding and removing points. */
+  private class PointList extends AbstractList<DataPoint> implements RandomAccess {
+    @Override
+    public DataPoint get(int index) {
+      checkIndex(index, size);
+      return new DataPoint(getXAt(index), getYAt(index));
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void add(int index, DataPoint point) {
+      checkIndex(index, size + 1);
+      modCount++;
+      insert(index, point.getX(), point.getY());
+    }
+
+    @Override
+    public DataPoint remove(int index) {
+      DataPoint removed = get(index);
+      modCount++;
+      ChartData.this.removeRange(index, index + 1);
+      return removed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+      modCount++;
+      ChartData.this.removeRange(fromIndex, toIndex);
+    }
+
+    private void checkIndex(int index, int limit) {
+      if (index < 0 || index >= limit) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+    }
   }
 }
@@ -0,0 +1,245 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.scalarchart;
+
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ZoomRecorder;
+
+/**
+ * Reduces the points drawn by a {@link ChartView} to about two per pixel column: the lowest and
+ * highest point in each column, in timestamp order. This is the same min/max reduction that {@link
+ * ZoomRecorder} uses for stored zoom tiers, applied to whatever is on screen.
+ *
+ * <p>Columns are aligned to multiples of the column width in time, not to the edge of the view, so
+ * that when the view is panned at the same zoom level the columns still on screen hold the same
+ * points. Those columns are kept from the previous call instead of being recomputed, until the
+ * chart data changes other than by having points added at the end.
+ */
+class ChartDecimator {
+  /** Min and max points for a run of non-empty columns, ordered by column. */
+  private static class Columns {
+    long[] ids = new long[0];
+    long[] minXs = new long[0];
+    double[] minYs = new double[0];
+    long[] maxXs = new long[0];
+    double[] maxYs = new double[0];
+    int size = 0;
+
+    void add(long id, long minX, double minY, long maxX, double maxY) {
+      if (size == ids.length) {
+        int capacity = Math.max(64, size * 2);
+        ids = copyOf(ids, capacity, size);
+        minXs = copyOf(minXs, capacity, size);
+        minYs = copyOf(minYs, capacity, size);
+        maxXs = copyOf(maxXs, capacity, size);
+        maxYs = copyOf(maxYs, capacity, size);
+      }
+      ids[size] = id;
+      minXs[size] = minX;
+      minYs[size] = minY;
+      maxXs[size] = maxX;
+      maxYs[size] = maxY;
+      size++;
+    }
+
+    void addFrom(Columns other, int index) {
+      add(
+          other.ids[index],
+          other.minXs[index],
+          other.minYs[index],
+          other.maxXs[index],
+          other.maxYs[index]);
+    }
+  }
+
+  // Only decimate when there are more than this many points per column.
+  private static final int POINTS_PER_COLUMN = 2;
+
+  private Columns columns = new Columns();
+  private Columns previousColumns = new Columns();
+
+  // What the cached columns were computed from. Columns from firstColumn to lastColumn are
+  // complete, except that any at or after openColumn may still have points added to them.
+  private ChartData cachedData = null;
+  private int cachedRevision;
+  private long columnWidth;
+  private long firstColumn;
+  private long lastColumn;
+  private long openColumn;
+
+  private long[] xs = new long[0];
+  private double[] ys = new double[0];
+  private int size = 0;
+
+  /**
+   * Finds the points to draw for the points of {@code data} from {@code startIndex} (inclusive) to
+   * {@code endIndex} (exclusive), to fit {@code pixelColumns} columns between {@code xMin} and
+   * {@code xMax}. Read the results with {@link #getX} and {@link #getY}.
+   *
+   * @return the number of points to draw, which is at least one if the range is not empty.
+   */
+  int decimate(
+      ChartData data, int startIndex, int endIndex, long xMin, long xMax, int pixelColumns) {
+    size = 0;
+    if (startIndex >= endIndex) {
+      return 0;
+    }
+    if (pixelColumns <= 0
+        || xMax <= xMin
+        || endIndex - startIndex <= pixelColumns * POINTS_PER_COLUMN) {
+      for (int i = startIndex; i < endIndex; i++) {
+        add(data.getXAt(i), data.getYAt(i));
+      }
+      return size;
+    }
+
+    long width = Math.max(1, (xMax - xMin) / pixelColumns);
+    long first = floorDiv(data.getXAt(startIndex), width);
+    long last = floorDiv(data.getXAt(endIndex - 1), width);
+    // Widen the range to whole columns, so that every cached column is complete.
+    startIndex = lowerBound(data, first * width, 0, startIndex);
+    endIndex = lowerBound(data, (last + 1) * width, endIndex, data.getNumPoints());
+
+    Columns previous = columns;
+    columns = previousColumns;
+    previousColumns = previous;
+    columns.size = 0;
+
+    long reuseFirst = Math.max(first, firstColumn);
+    long reuseLast = Math.min(last, Math.min(lastColumn, openColumn - 1));
+    boolean canReuse =
+        data == cachedData
+            && data.getRevision() == cachedRevision
+            && width == columnWidth
+            && reuseFirst <= reuseLast;
+    if (canReuse) {
+      int reuseStart = lowerBound(data, reuseFirst * width, startIndex, endIndex);
+      int reuseEnd = lowerBound(data, (reuseLast + 1) * width, reuseStart, endIndex);
+      addColumns(data, startIndex, reuseStart, width);
+      for (int i = 0; i < previous.size; i++) {
+        if (previous.ids[i] >= reuseFirst && previous.ids[i] <= reuseLast) {
+          columns.addFrom(previous, i);
+        }
+      }
+      addColumns(data, reuseEnd, endIndex, width);
+    } else {
+      addColumns(data, startIndex, endIndex, width);
+    }
+
+    cachedData = data;
+    cachedRevision = data.getRevision();
+    columnWidth = width;
+    firstColumn = first;
+    lastColumn = last;
+    openColumn = floorDiv(data.getXMax(), width);
+
+    // Keep the real first and last points, so the path starts and ends where the data does.
+    add(data.getXAt(startIndex), data.getYAt(startIndex));
+    for (int i = 0; i < columns.size; i++) {
+      if (columns.minXs[i] <= columns.maxXs[i]) {
+        add(columns.minXs[i], columns.minYs[i]);
+        add(columns.maxXs[i], columns.maxYs[i]);
+      } else {
+        add(columns.maxXs[i], columns.maxYs[i]);
+        add(columns.minXs[i], columns.minYs[i]);
+      }
+    }
+    add(data.getXAt(endIndex - 1), data.getYAt(endIndex - 1));
+    return size;
+  }
+
+  long getX(int index) {
+    return xs[index];
+  }
+
+  double getY(int index) {
+    return ys[index];
+  }
+
+  // Adds the min and max of each column with points between startIndex and endIndex.
+  private void addColumns(ChartData data, int startIndex, int endIndex, long width) {
+    int i = startIndex;
+    while (i < endIndex) {
+      long column = floorDiv(data.getXAt(i), width);
+      long columnEnd = (column + 1) * width;
+      long minX = data.getXAt(i);
+      double minY = data.getYAt(i);
+      long maxX = minX;
+      double maxY = minY;
+      for (i++; i < endIndex && data.getXAt(i) < columnEnd; i++) {
+        double y = data.getYAt(i);
+        if (y > maxY) {
+          maxY = y;
+          maxX = data.getXAt(i);
+        }
+        if (y < minY) {
+          minY = y;
+          minX = data.getXAt(i);
+        }
+      }
+      columns.add(column, minX, minY, maxX, maxY);
+    }
+  }
+
+  // Adds a point to draw, unless it's the same as the last one.
+  private void add(long x, double y) {
+    if (size > 0 && xs[size - 1] == x && ys[size - 1] == y) {
+      return;
+    }
+    if (size == xs.length) {
+      int capacity = Math.max(64, size * 2);
+      xs = copyOf(xs, capacity, size);
+      ys = copyOf(ys, capacity, size);
+    }
+    xs[size] = x;
+    ys[size] = y;
+    size++;
+  }
+
+  // Returns the first index between start and end whose x is at least searchX.
+  private static int lowerBound(ChartData data, long searchX, int start, int end) {
+    while (start < end) {
+      int mid = (start + end) >>> 1;
+      if (data.getXAt(mid) < searchX) {
+        start = mid + 1;
+      } else {
+        end = mid;
+      }
+    }
+    return start;
+  }
+
+  // Math.floorDiv is not available on all supported API levels.
+  private static long floorDiv(long x, long y) {
+    long quotient = x / y;
+    if (x % y != 0 && x < 0) {
+      quotient--;
+    }
+    return quotient;
+  }
+
+  private static long[] copyOf(long[] array, int capacity, int size) {
+    long[] copy = new long[capacity];
+    System.arraycopy(array, 0, copy, 0, size);
+    return copy;
+  }
+
+  private static double[] copyOf(double[] array, int capacity, int size) {
+    double[] copy = new double[capacity];
+    System.arraycopy(array, 0, copy, 0, size);
+    return copy;
+  }
+}
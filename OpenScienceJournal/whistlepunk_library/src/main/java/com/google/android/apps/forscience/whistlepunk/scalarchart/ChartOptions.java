@@ -178,12 +178,12 @@ public class ChartOptions {
     return Math.max(10, (yMaxPoint - yMinPoint) * MAXIMUM_Y_SPREAD_FACTOR);
   }
 
-  public void adjustYAxisStep(ChartData.DataPoint latestPoint) {
-    if (latestPoint.getY() < yMinPoint) {
-      yMinPoint = latestPoint.getY();
+  public void adjustYAxisStep(double latestY) {
+    if (latestY < yMinPoint) {
+      yMinPoint = latestY;
     }
-    if (latestPoint.getY() > yMaxPoint) {
-      yMaxPoint = latestPoint.getY();
+    if (latestY > yMaxPoint) {
+      yMaxPoint = latestY;
     }
     double buffer = getYBuffer(yMinPoint, yMaxPoint);
     double idealYMax = yMaxPoint + buffer;
@@ -0,0 +1,422 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.scalarchart;
+
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+import androidx.collection.LruCache;
+import com.google.android.apps.forscience.javalib.FailureListener;
+import com.google.android.apps.forscience.javalib.MaybeConsumer;
+import com.google.android.apps.forscience.whistlepunk.DataController;
+import com.google.android.apps.forscience.whistlepunk.GraphPopulator;
+import com.google.android.apps.forscience.whistlepunk.review.ZoomPresenter;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
+import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Caches the scalar readings loaded for charts in run review, so that zooming and panning back over
+ * data that was already loaded doesn't go back to the database.
+ *
+ * <p>Readings are cached in tiles, each holding the readings of one sensor in one trial at one
+ * zoom tier over a fixed span of time. The span depends on the tier (see {@link
+ * ZoomPresenter#getTileMillis(int)}) so that tiles hold a similar number of points at every tier.
+ * The least recently used tiles are evicted once the cache holds more than a fixed number of
+ * points. Loading a range also prefetches the tiles on either side of it, the coarser tier over
+ * the whole range and the finer tier around its middle, so that the next pan or zoom is likely to
+ * be served from memory.
+ *
+ * <p>Tiles are shared by all the charts in the app. Call {@link #load} only on the UI thread;
+ * {@link #invalidate} may be called from any thread.
+ */
+public class ChartTileCache {
+  private static final String TAG = "ChartTileCache";
+
+  // At 16 bytes a point, this holds about 3MB of readings.
+  private static final int DEFAULT_MAX_POINTS = 200000;
+
+  private static ChartTileCache instance;
+
+  private final LruCache<TileKey, Tile> tiles;
+
+  // Tiles being loaded, with everything waiting for them. Only used on the UI thread.
+  private final Map<TileKey, List<TileCallback>> pending = new HashMap<>();
+
+  // Bumped by every invalidation, so that loads started before it aren't cached.
+  private int generation = 0;
+
+  public static synchronized ChartTileCache getInstance() {
+    if (instance == null) {
+      instance = new ChartTileCache(DEFAULT_MAX_POINTS);
+    }
+    return instance;
+  }
+
+  @VisibleForTesting
+  ChartTileCache(int maxPoints) {
+    tiles =
+        new LruCache<TileKey, Tile>(maxPoints) {
+          @Override
+          protected int sizeOf(TileKey key, Tile tile) {
+            // Count empty tiles too, so that there's a limit to how many of them are kept.
+            return tile.count + 1;
+          }
+        };
+  }
+
+  /**
+   * Delivers the readings of a sensor in the closed range [minTime, maxTime] to the display, as
+   * one ordered group of points per tile, then calls {@link
+   * GraphPopulator.ObservationDisplay#onFinish} once all of them have been delivered. Tiles that
+   * are already cached are delivered before this returns.
+   *
+   * @return false without loading anything if the zoom presenter can't size tiles for this tier,
+   *     in which case the caller should load the readings directly.
+   */
+  public boolean load(
+      DataController dataController,
+      String trialId,
+      String sensorId,
+      ZoomPresenter zoomPresenter,
+      int tier,
+      long minTime,
+      long maxTime,
+      FailureListener failureListener,
+      GraphPopulator.ObservationDisplay display,
+      long requestId) {
+    long tileMillis = zoomPresenter.getTileMillis(tier);
+    if (tileMillis <= 0 || minTime < 0) {
+      return false;
+    }
+    long firstBucket = minTime / tileMillis;
+    long lastBucket = Math.max(firstBucket, maxTime / tileMillis);
+
+    Request request =
+        new Request(
+            minTime, maxTime, failureListener, display, requestId, lastBucket - firstBucket + 1);
+    for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+      getTile(dataController, new TileKey(trialId, sensorId, tier, tileMillis, bucket), request);
+    }
+
+    // Prefetch whatever the next pan or zoom is likely to need.
+    if (firstBucket > 0) {
+      prefetch(dataController, new TileKey(trialId, sensorId, tier, tileMillis, firstBucket - 1));
+    }
+    prefetch(dataController, new TileKey(trialId, sensorId, tier, tileMillis, lastBucket + 1));
+    prefetchRange(dataController, trialId, sensorId, zoomPresenter, tier + 1, minTime, maxTime);
+    if (tier > 0) {
+      // Zooming in far enough to switch tiers narrows the range a lot, so only the finer tiles
+      // on either side of the middle are worth fetching.
+      long finerTileMillis = zoomPresenter.getTileMillis(tier - 1);
+      long middle = minTime + (maxTime - minTime) / 2;
+      prefetchRange(
+          dataController,
+          trialId,
+          sensorId,
+          zoomPresenter,
+          tier - 1,
+          middle - finerTileMillis / 2,
+          middle + finerTileMillis / 2);
+    }
+    return true;
+  }
+
+  /** Forgets every cached tile of the given trial, for when its readings change. */
+  public void invalidate(String trialId) {
+    synchronized (this) {
+      generation++;
+      for (TileKey key : tiles.snapshot().keySet()) {
+        if (key.trialId.equals(trialId)) {
+          tiles.remove(key);
+        }
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int getCachedTileCount() {
+    return tiles.snapshot().size();
+  }
+
+  private void prefetchRange(
+      DataController dataController,
+      String trialId,
+      String sensorId,
+      ZoomPresenter zoomPresenter,
+      int tier,
+      long minTime,
+      long maxTime) {
+    long tileMillis = zoomPresenter.getTileMillis(tier);
+    if (tileMillis <= 0 || minTime < 0) {
+      return;
+    }
+    for (long bucket = minTime / tileMillis; bucket <= maxTime / tileMillis; bucket++) {
+      prefetch(dataController, new TileKey(trialId, sensorId, tier, tileMillis, bucket));
+    }
+  }
+
+  private void prefetch(DataController dataController, TileKey key) {
+    getTile(dataController, key, null);
+  }
+
+  /** Delivers the tile to the callback, if there is one, loading it first if it isn't cached. */
+  private void getTile(DataController dataController, TileKey key, TileCallback callback) {
+    Tile tile = tiles.get(key);
+    if (tile != null) {
+      if (callback != null) {
+        callback.onTile(tile, null);
+      }
+      return;
+    }
+    List<TileCallback> waiting = pending.get(key);
+    if (waiting != null) {
+      if (callback != null) {
+        waiting.add(callback);
+      }
+      return;
+    }
+    waiting = new ArrayList<>();
+    if (callback != null) {
+      waiting.add(callback);
+    }
+    pending.put(key, waiting);
+
+    int loadGeneration;
+    synchronized (this) {
+      loadGeneration = generation;
+    }
+    long start = key.bucket * key.tileMillis;
+    dataController.getScalarReadings(
+        key.trialId,
+        key.sensorId,
+        key.tier,
+        TimeRange.oldest(Range.closedOpen(start, start + key.tileMillis)),
+        0,
+        new MaybeConsumer<ScalarReadingList>() {
+          @Override
+          public void success(ScalarReadingList readings) {
+            Tile loaded = new Tile(readings);
+            synchronized (ChartTileCache.this) {
+              if (loadGeneration == generation) {
+                tiles.put(key, loaded);
+              }
+            }
+            for (TileCallback waiter : pending.remove(key)) {
+              waiter.onTile(loaded, null);
+            }
+          }
+
+          @Override
+          public void fail(Exception e) {
+            List<TileCallback> waiters = pending.remove(key);
+            if (waiters.isEmpty() && Log.isLoggable(TAG, Log.DEBUG)) {
+              Log.d(TAG, "Failed to prefetch tile", e);
+            }
+            for (TileCallback waiter : waiters) {
+              waiter.onTile(null, e);
+            }
+          }
+        });
+  }
+
+  private interface TileCallback {
+    /** Called with the tile, or with null and the exception if it couldn't be loaded. */
+    void onTile(Tile tile, Exception e);
+  }
+
+  /** One call to {@link #load}, waiting for its tiles. */
+  private static class Request implements TileCallback {
+    private final long minTime;
+    private final long maxTime;
+    private final FailureListener failureListener;
+    private final GraphPopulator.ObservationDisplay display;
+    private final long requestId;
+    private long tilesRemaining;
+
+    Request(
+        long minTime,
+        long maxTime,
+        FailureListener failureListener,
+        GraphPopulator.ObservationDisplay display,
+        long requestId,
+        long tileCount) {
+      this.minTime = minTime;
+      this.maxTime = maxTime;
+      this.failureListener = failureListener;
+      this.display = display;
+      this.requestId = requestId;
+      tilesRemaining = tileCount;
+    }
+
+    @Override
+    public void onTile(Tile tile, Exception e) {
+      if (tile != null) {
+        TileSlice slice = tile.slice(minTime, maxTime);
+        Range<Double> valueRange = slice.getValueRange();
+        if (valueRange != null) {
+          display.addRange(slice, valueRange, requestId);
+        }
+      } else {
+        failureListener.fail(e);
+      }
+      if (--tilesRemaining == 0) {
+        display.onFinish(requestId);
+      }
+    }
+  }
+
+  private static class TileKey {
+    final String trialId;
+    final String sensorId;
+    final int tier;
+    // Part of the key, since the span of a tier's tiles can change if the trial's stats do.
+    final long tileMillis;
+    final long bucket;
+
+    TileKey(String trialId, String sensorId, int tier, long tileMillis, long bucket) {
+      this.trialId = trialId;
+      this.sensorId = sensorId;
+      this.tier = tier;
+      this.tileMillis = tileMillis;
+      this.bucket = bucket;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof TileKey)) {
+        return false;
+      }
+      TileKey other = (TileKey) o;
+      return tier == other.tier
+          && tileMillis == other.tileMillis
+          && bucket == other.bucket
+          && trialId.equals(other.trialId)
+          && sensorId.equals(other.sensorId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(trialId, sensorId, tier, tileMillis, bucket);
+    }
+  }
+
+  /** The readings of one tile, in timestamp order. */
+  private static class Tile {
+    private final long[] timestamps;
+    private final double[] values;
+    private int count = 0;
+
+    Tile(ScalarReadingList readings) {
+      timestamps = new long[readings.size()];
+      values = new double[readings.size()];
+      readings.deliver(
+          (timestampMillis, value) -> {
+            if (count == timestamps.length) {
+              return false;
+            }
+            timestamps[count] = timestampMillis;
+            values[count] = value;
+            count++;
+            return true;
+          });
+    }
+
+    TileSlice slice(long minTime, long maxTime) {
+      int start = Arrays.binarySearch(timestamps, 0, count, minTime);
+      start = start < 0 ? -start - 1 : firstIndexOf(start);
+      int end = Arrays.binarySearch(timestamps, start, count, maxTime);
+      end = end < 0 ? -end - 1 : lastIndexOf(end) + 1;
+      return new TileSlice(timestamps, values, start, end);
+    }
+
+    // Timestamps can repeat, so step to the first or last of a run of equal ones.
+    private int firstIndexOf(int index) {
+      while (index > 0 && timestamps[index - 1] == timestamps[index]) {
+        index--;
+      }
+      return index;
+    }
+
+    private int lastIndexOf(int index) {
+      while (index < count - 1 && timestamps[index + 1] == timestamps[index]) {
+        index++;
+      }
+      return index;
+    }
+  }
+
+  /** A view of part of a tile. */
+  private static class TileSlice implements ScalarReadingList {
+    private final long[] timestamps;
+    private final double[] values;
+    private final int start;
+    private final int end;
+
+    TileSlice(long[] timestamps, double[] values, int start, int end) {
+      this.timestamps = timestamps;
+      this.values = values;
+      this.start = start;
+      this.end = end;
+    }
+
+    /** Returns the range of the slice's values, or null if it doesn't have any. */
+    Range<Double> getValueRange() {
+      double min = Double.POSITIVE_INFINITY;
+      double max = Double.NEGATIVE_INFINITY;
+      for (int i = start; i < end; i++) {
+        if (values[i] < min) {
+          min = values[i];
+        }
+        if (values[i] > max) {
+          max = values[i];
+        }
+      }
+      return min <= max ? Range.closed(min, max) : null;
+    }
+
+    @Override
+    public void deliver(StreamConsumer c) {
+      for (int i = start; i < end; i++) {
+        c.addData(timestamps[i], values[i]);
+      }
+    }
+
+    @Override
+    public int size() {
+      return end - start;
+    }
+
+    @Override
+    public List<ChartData.DataPoint> asDataPoints() {
+      List<ChartData.DataPoint> result = new ArrayList<>();
+      for (int i = start; i < end; i++) {
+        result.add(new ChartData.DataPoint(timestamps[i], values[i]));
+      }
+      return result;
+    }
+  }
+}
@@ -101,6 +101,7 @@ public class ChartView extends View {
 
   private ChartOptions chartOptions;
   private ChartData chartData;
+  private final ChartDecimator decimator = new ChartDecimator();
 
   private float width = 1;
   private float height = 1;
@@ -634,29 +635,36 @@ public class ChartView extends View {
     // Just get the points in the range that we want to render, instead of all the points.
     // Adds some buffer to the load in case of scrolling, if those data points are available.
     updatePathCalcs();
-    List<ChartData.DataPoint> points;
+    int startIndex = chartData.getRangeStartIndex(chartOptions.getRenderedXMin() - BUFFER_MS);
+    int endIndex;
     if (optimizePinnedToEnd) {
       // This is a slightly more efficient call, so use it when possible.
-      points = chartData.getPointsInRangeToEnd(chartOptions.getRenderedXMin() - BUFFER_MS);
+      endIndex = numPoints;
     } else {
-      points =
-          chartData.getPointsInRange(
-              chartOptions.getRenderedXMin() - BUFFER_MS,
-              chartOptions.getRenderedXMax() + BUFFER_MS);
+      endIndex =
+          chartData.getRangeEndIndex(chartOptions.getRenderedXMax() + BUFFER_MS, startIndex);
     }
-    int numPlottedPoints = points.size();
-    if (numPlottedPoints == 0) {
+    // Dense ranges are reduced to the min and max points in each pixel column.
+    int numPathPoints =
+        decimator.decimate(
+            chartData,
+            startIndex,
+            endIndex,
+            xMinForPathCalcs,
+            xMaxForPathCalcs,
+            (int) chartWidth);
+    if (numPathPoints == 0) {
       return;
     }
-    path.moveTo(getPathX(points.get(0).getX()), getPathY(points.get(0).getY()));
-    for (int i = 1; i < numPlottedPoints; i++) {
-      path.lineTo(getPathX(points.get(i).getX()), getPathY(points.get(i).getY()));
+    path.moveTo(getPathX(decimator.getX(0)), getPathY(decimator.getY(0)));
+    for (int i = 1; i < numPathPoints; i++) {
+      path.lineTo(getPathX(decimator.getX(i)), getPathY(decimator.getY(i)));
     }
     hasPath = true;
 
     // Only update these when the path is redrawn. They track how much data the path covers.
-    xMinInPath = points.get(0).getX();
-    xMaxInPath = points.get(numPlottedPoints - 1).getX();
+    xMinInPath = decimator.getX(0);
+    xMaxInPath = decimator.getX(numPathPoints - 1);
   }
 
   /**
@@ -664,9 +672,10 @@ public class ChartView extends View {
    * transforming the path based on updated renderer values. This reduces the need to recalculate
    * all the points in the path every time a new point is added.
    *
-   * @param point The data point to add to the end of the path.
+   * @param x The timestamp of the data point to add to the end of the path.
+   * @param y The value of the data point to add to the end of the path.
    */
-  public void addPointToEndOfPath(ChartData.DataPoint point) {
+  public void addPointToEndOfPath(long x, double y) {
     int numPoints = chartData.getNumPoints();
     if (!hasPath
         || numPoints < MAXIMUM_NUM_POINTS_FOR_POPULATE_PATH
@@ -678,13 +687,13 @@ public class ChartView extends View {
         populatePath(true);
         postInvalidateOnAnimation();
       } else if ((chartOptions.isPinnedToNow())
-          || chartOptions.getRenderedXMax() >= point.getX()
+          || chartOptions.getRenderedXMax() >= x
           || leadingEdgeIsDrawn) {
         // Add the point to the end only if the end is being rendered.
         // The path is in the previous coordinates, so we can add a point using those
         // mins/maxes.
-        path.lineTo(getPathX(point.getX()), getPathY(point.getY()));
-        xMaxInPath = point.getX();
+        path.lineTo(getPathX(x), getPathY(y));
+        xMaxInPath = x;
       }
     }
     wasPinnedToNow = chartOptions.isPinnedToNow();
@@ -837,12 +846,12 @@ public class ChartView extends View {
 
   private void tryDrawingEndpoints(Canvas canvas) {
     if (chartOptions.isShowLeadingEdge()) {
-      ChartData.DataPoint point = chartData.getPoints().get(chartData.getNumPoints() - 1);
-      if (point.getX() == xMaxInPath && xMaxInPath <= xMaxForPathCalcs) {
+      int last = chartData.getNumPoints() - 1;
+      if (chartData.getXAt(last) == xMaxInPath && xMaxInPath <= xMaxForPathCalcs) {
         leadingEdgeIsDrawn = true;
         canvas.drawCircle(
-            getScreenX(point.getX()),
-            getScreenY(point.getY()),
+            getScreenX(chartData.getXAt(last)),
+            getScreenY(chartData.getYAt(last)),
             leadingEdgeRadius,
             leadingEdgePaint);
       } else {
@@ -853,20 +862,18 @@ public class ChartView extends View {
       // start and/or end times.
       if (chartOptions.getRenderedXMin() < chartOptions.getRecordingStartTime()
           && chartOptions.getRecordingStartTime() < chartOptions.getRenderedXMax()) {
-        ChartData.DataPoint start = chartData.getPoints().get(0);
-        if (start.getX() >= xMinForPathCalcs) {
-          float screenX = getScreenX(start.getX());
-          float screenY = getScreenY(start.getY());
+        if (chartData.getXMin() >= xMinForPathCalcs) {
+          float screenX = getScreenX(chartData.getXMin());
+          float screenY = getScreenY(chartData.getYAt(0));
           canvas.drawCircle(screenX, screenY, endpointOuterRadius, endpointPaint);
           canvas.drawCircle(screenX, screenY, endpointInnerRadius, backgroundPaint);
         }
       }
       if (chartOptions.getRenderedXMin() < chartOptions.getRecordingEndTime()
           && chartOptions.getRecordingEndTime() < chartOptions.getRenderedXMax()) {
-        ChartData.DataPoint end = chartData.getPoints().get(chartData.getNumPoints() - 1);
-        if (end.getX() <= xMaxForPathCalcs) {
-          float screenX = getScreenX(end.getX());
-          float screenY = getScreenY(end.getY());
+        if (chartData.getXMax() <= xMaxForPathCalcs) {
+          float screenX = getScreenX(chartData.getXMax());
+          float screenY = getScreenY(chartData.getYAt(chartData.getNumPoints() - 1));
           canvas.drawCircle(screenX, screenY, endpointOuterRadius, endpointPaint);
           canvas.drawCircle(screenX, screenY, endpointInnerRadius, backgroundPaint);
         }
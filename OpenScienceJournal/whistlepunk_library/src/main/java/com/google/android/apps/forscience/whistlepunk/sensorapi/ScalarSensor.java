@@ -44,7 +44,6 @@ import com.google.android.apps.forscience.whistlepunk.filemetadata.Trial;
 import com.google.android.apps.forscience.whistlepunk.filemetadata.TrialStats;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial;
 import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartController;
-import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
 import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartOptions;
 import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartView;
 import com.google.android.apps.forscience.whistlepunk.scalarchart.UptimeClock;
@@ -80,7 +79,7 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
   private final Clock clock;
 
   public ScalarSensor(String id) {
-    this(id, AppSingleton.getUiThreadExecutor());
+    this(id, AppSingleton.getUiFrameExecutor());
   }
 
   @VisibleForTesting
@@ -156,8 +155,22 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
 
       @Override
       public void onNewData(long timestamp, Data bundle) {
-        double value = bundle.getValue();
-        chartController.addPoint(new ChartData.DataPoint(timestamp, value));
+        addPoint(timestamp, bundle.getValue());
+        statsDisplay.updateFromBundle(bundle);
+      }
+
+      @Override
+      public void onNewBatch(SensorSampleBuffer.Batch batch) {
+        int size = batch.size();
+        for (int i = 0; i < size; i++) {
+          addPoint(batch.getTimestamp(i), batch.getData(i).getValue());
+        }
+        // Stats are cumulative, so only the newest ones are worth showing.
+        statsDisplay.updateFromBundle(batch.getData(size - 1));
+      }
+
+      private void addPoint(long timestamp, double value) {
+        chartController.addPoint(timestamp, value);
         if (this.audioEnabled) {
           audioGenerator.addData(
               timestamp,
@@ -165,7 +178,6 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
               chartController.getRenderedYMin(),
               chartController.getRenderedYMax());
         }
-        statsDisplay.updateFromBundle(bundle);
       }
 
       @Override
@@ -396,9 +408,6 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
       @Override
       public void startRecording(String runId) {
         this.runId = runId;
-        statsAccumulator.clearStats();
-        zoomRecorder.setTrialId(runId);
-        zoomRecorder.clear();
         consumer.startRecording(this.runId);
         super.startRecording(runId);
       }
@@ -407,18 +416,13 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
       public void stopRecording(Trial trialToUpdate) {
         super.stopRecording(trialToUpdate);
 
-        TrialStats trialStats = statsAccumulator.makeSaveableStats();
-        trialStats.putStat(
-            GoosciTrial.SensorStat.StatType.ZOOM_PRESENTER_TIER_COUNT, zoomRecorder.countTiers());
+        TrialStats trialStats = consumer.stopRecording();
         trialStats.putStat(
             GoosciTrial.SensorStat.StatType.ZOOM_PRESENTER_ZOOM_LEVEL_BETWEEN_TIERS,
             zoomLevelBetweenTiers);
         if (trialToUpdate != null) {
           trialToUpdate.setStats(trialStats);
         }
-        consumer.stopRecording();
-        statsAccumulator.clearStats();
-        zoomRecorder.clearTrialId();
       }
 
       @Override
@@ -478,10 +482,14 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
     private final StatsAccumulator statsAccumulator;
     private final RecordingDataController dataController;
     private final ZoomRecorder zoomRecorder;
+    // Recording is started and stopped from the UI thread, while data usually arrives on the
+    // ingest thread, so the recording state, stats and zoom tiers are all guarded by this.
     private boolean isRecording = false;
     private long lastDataTimestampMillis = NO_DATA_RECORDED;
     private long timestampBeforeRecordingStart = NO_DATA_RECORDED;
-    private SensorMessage.Pool messagePool;
+    private final SensorSampleBuffer sampleBuffer = new SensorSampleBuffer();
+    private final SensorObserver.Data sample = new SensorObserver.Data();
+    private final Runnable drainSamples;
     private String runId = null;
 
     public ScalarStreamConsumer(
@@ -492,18 +500,29 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
       this.statsAccumulator = statsAccumulator;
       this.dataController = dataController;
       this.zoomRecorder = zoomRecorder;
-      messagePool = new SensorMessage.Pool(observer);
+      drainSamples = () -> sampleBuffer.drainTo(observer);
     }
 
-    public void startRecording(String runId) {
+    public synchronized void startRecording(String runId) {
+      statsAccumulator.clearStats();
+      zoomRecorder.setTrialId(runId);
+      zoomRecorder.clear();
       isRecording = true;
       timestampBeforeRecordingStart = lastDataTimestampMillis;
       this.runId = runId;
     }
 
-    public void stopRecording() {
+    /** Stops recording and returns the stats gathered since recording started. */
+    public synchronized TrialStats stopRecording() {
+      TrialStats trialStats = statsAccumulator.makeSaveableStats();
+      trialStats.putStat(
+          GoosciTrial.SensorStat.StatType.ZOOM_PRESENTER_TIER_COUNT, zoomRecorder.countTiers());
       isRecording = false;
       zoomRecorder.flushAllTiers(dataController);
+      dataController.flushScalarReadings();
+      statsAccumulator.clearStats();
+      zoomRecorder.clearTrialId();
+      return trialStats;
     }
 
     public boolean maintainsTimeSeries(final long timestampMillis) {
@@ -514,7 +533,7 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
     }
 
     @Override
-    public boolean addData(final long timestampMillis, double value) {
+    public synchronized boolean addData(final long timestampMillis, double value) {
       // TODO: would inlining here gain performance?
       if (!maintainsTimeSeries(timestampMillis)) {
         return false;
@@ -527,17 +546,15 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
     }
 
     public void observeData(final long timestampMillis, double value) {
-      // Each call to obtain is guaranteed to retrieve a currently-unused message...
-      SensorMessage message = messagePool.obtain();
-
-      // ...which is set up with the correct values here...
-      message.setTimestamp(timestampMillis);
-      message.getData().setValue(value);
+      sample.setValue(value);
       statsAccumulator.updateRecordingStreamStats(timestampMillis, value);
-      statsAccumulator.addStatsToBundle(message.getData());
+      statsAccumulator.addStatsToBundle(sample);
 
-      // ..and will be cleared and released back to the message pool when getRunnable is run.
-      runOnMainThread(message.getRunnable());
+      // Samples pile up in the buffer until the UI thread gets to them, and then they're all
+      // handed over at once, so only one drain needs to be posted per batch.
+      if (sampleBuffer.offer(timestampMillis, sample)) {
+        runOnMainThread(drainSamples);
+      }
     }
 
     public void recordData(long timestampMillis, double value) {
@@ -554,7 +571,7 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
       return value;
     }
 
-    public boolean hasRecordedData() {
+    public synchronized boolean hasRecordedData() {
       return lastDataTimestampMillis > timestampBeforeRecordingStart;
     }
   }
@@ -0,0 +1,142 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorData;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataDump;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataRow;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a serialized {@link ScalarSensorData} file one row at a time, without parsing the whole
+ * file into proto objects.
+ *
+ * <p>The serializer writes each dump's trial id after its rows, so reading takes two passes: {@link
+ * #readDumps} skips over the rows to find each dump's tag, trial id and position, and {@link
+ * #readRows} then goes back and streams one dump's rows. Only one row is in memory at a time.
+ */
+class ScalarSensorDumpFile {
+  /** Where one {@link ScalarSensorDataDump} is in the file, and which sensor and trial it's for. */
+  static class Dump {
+    final String tag;
+    final String trialId;
+    private final long offset;
+    private final int length;
+
+    private Dump(String tag, String trialId, long offset, int length) {
+      this.tag = tag;
+      this.trialId = trialId;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  private final File file;
+
+  ScalarSensorDumpFile(File file) {
+    this.file = file;
+  }
+
+  /** Finds every dump in the file, skipping over the rows. */
+  List<Dump> readDumps() throws IOException {
+    List<Dump> dumps = new ArrayList<>();
+    try (FileInputStream stream = new FileInputStream(file)) {
+      CodedInputStream input = newInput(stream);
+      int tag;
+      while ((tag = input.readTag()) != 0) {
+        if (!isMessage(tag, ScalarSensorData.SENSORS_FIELD_NUMBER)) {
+          input.skipField(tag);
+          continue;
+        }
+        int length = input.readRawVarint32();
+        long offset = input.getTotalBytesRead();
+        int oldLimit = input.pushLimit(length);
+        String sensorTag = "";
+        String trialId = "";
+        int dumpTag;
+        while ((dumpTag = input.readTag()) != 0) {
+          switch (WireFormat.getTagFieldNumber(dumpTag)) {
+            case ScalarSensorDataDump.TAG_FIELD_NUMBER:
+              sensorTag = input.readString();
+              break;
+            case ScalarSensorDataDump.TRIALID_FIELD_NUMBER:
+              trialId = input.readString();
+              break;
+            default:
+              input.skipField(dumpTag);
+          }
+        }
+        input.popLimit(oldLimit);
+        dumps.add(new Dump(sensorTag, trialId, offset, length));
+      }
+    }
+    return dumps;
+  }
+
+  /** Passes each row of {@code dump} to {@code consumer}, in file order. */
+  void readRows(Dump dump, StreamConsumer consumer) throws IOException {
+    try (FileInputStream stream = new FileInputStream(file)) {
+      stream.getChannel().position(dump.offset);
+      CodedInputStream input = newInput(stream);
+      input.pushLimit(dump.length);
+      int tag;
+      while ((tag = input.readTag()) != 0) {
+        if (!isMessage(tag, ScalarSensorDataDump.ROWS_FIELD_NUMBER)) {
+          input.skipField(tag);
+          continue;
+        }
+        int oldLimit = input.pushLimit(input.readRawVarint32());
+        long timestampMillis = 0;
+        double value = 0;
+        int rowTag;
+        while ((rowTag = input.readTag()) != 0) {
+          switch (WireFormat.getTagFieldNumber(rowTag)) {
+            case ScalarSensorDataRow.TIMESTAMPMILLIS_FIELD_NUMBER:
+              timestampMillis = input.readInt64();
+              break;
+            case ScalarSensorDataRow.VALUE_FIELD_NUMBER:
+              value = input.readDouble();
+              break;
+            default:
+              input.skipField(rowTag);
+          }
+        }
+        input.popLimit(oldLimit);
+        consumer.addData(timestampMillis, value);
+      }
+    }
+  }
+
+  private static CodedInputStream newInput(FileInputStream stream) {
+    CodedInputStream input = CodedInputStream.newInstance(stream);
+    // The default 64MB limit guards against reading a whole message into memory, which this
+    // class never does; trials recorded for hours can be much bigger than that.
+    input.setSizeLimit(Integer.MAX_VALUE);
+    return input;
+  }
+
+  private static boolean isMessage(int tag, int fieldNumber) {
+    return WireFormat.getTagFieldNumber(tag) == fieldNumber
+        && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  }
+}
@@ -22,6 +22,8 @@ import com.google.android.apps.forscience.whistlepunk.RecordingDataController;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataDump;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataRow;
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartTileCache;
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
@@ -57,6 +59,7 @@ public class ScalarSensorDumpReader {
       } catch (IOException ioe) {
         Log.e(TAG, "Exception while flushing BatchDataController", ioe);
       }
+      ChartTileCache.getInstance().invalidate(trialId);
       lastDataTimestampMillis = NO_DATA_RECORDED;
     }
   }
@@ -73,6 +76,7 @@ public class ScalarSensorDumpReader {
       } catch (IOException ioe) {
         Log.e(TAG, "Exception while flushing BatchDataController", ioe);
       }
+      ChartTileCache.getInstance().invalidate(trialId);
       lastDataTimestampMillis = NO_DATA_RECORDED;
     }
   }
@@ -89,9 +93,38 @@ public class ScalarSensorDumpReader {
     } catch (IOException ioe) {
       Log.e(TAG, "Exception while flushing BatchDataController", ioe);
     }
+    ChartTileCache.getInstance().invalidate(trialId);
     lastDataTimestampMillis = NO_DATA_RECORDED;
   }
 
+  /**
+   * Imports a serialized {@link GoosciScalarSensorData.ScalarSensorData} file row by row, so that
+   * memory use doesn't grow with the length of the recorded trials.
+   *
+   * @param idMap maps trial ids in the file to the trial ids to import the data into.
+   */
+  public void readData(File file, Map<String, String> idMap) throws IOException {
+    int zoomBufferSize = zoomLevelBetweenTiers * 2;
+    ScalarSensorDumpFile dumpFile = new ScalarSensorDumpFile(file);
+    for (ScalarSensorDumpFile.Dump sensor : dumpFile.readDumps()) {
+      ZoomRecorder zoomRecorder = new ZoomRecorder(sensor.tag, zoomBufferSize, 1);
+      String trialId = idMap.get(sensor.trialId);
+      zoomRecorder.setTrialId(trialId);
+      try (BatchDataController batchController = new BatchDataController(dataController)) {
+        dumpFile.readRows(
+            sensor,
+            (timestampMillis, value) ->
+                addData(
+                    batchController, zoomRecorder, trialId, sensor.tag, timestampMillis, value));
+        zoomRecorder.flushAllTiers(batchController);
+        batchController.flushScalarReadings();
+      } finally {
+        ChartTileCache.getInstance().invalidate(trialId);
+        lastDataTimestampMillis = NO_DATA_RECORDED;
+      }
+    }
+  }
+
   private void addAllRows(
       ScalarSensorDataDump sensor,
       ZoomRecorder zoomRecorder,
@@ -0,0 +1,33 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+/**
+ * A {@link SensorObserver} that can take all the samples that arrived during one UI frame at once,
+ * so that per-frame work (redrawing stats, walking listener lists) is done once per batch instead
+ * of once per sample.
+ *
+ * <p>{@link #onNewData} is still called by sources that deliver one sample at a time.
+ */
+public interface SensorBatchObserver extends SensorObserver {
+  /**
+   * Called on the main thread with the samples since the last batch, oldest first. The batch is
+   * never empty.
+   */
+  void onNewBatch(SensorSampleBuffer.Batch batch);
+}
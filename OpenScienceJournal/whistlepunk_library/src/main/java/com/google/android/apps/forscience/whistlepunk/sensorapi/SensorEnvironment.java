@@ -22,6 +22,7 @@ import com.google.android.apps.forscience.whistlepunk.RecordingDataController;
 import com.google.android.apps.forscience.whistlepunk.SensorHistoryStorage;
 import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
 import com.google.android.apps.forscience.whistlepunk.audio.AudioSource;
+import com.google.android.apps.forscience.whistlepunk.sensors.HandlerScheduler;
 import io.reactivex.Single;
 
 /** Encapsulates services that sensors need to do their jobs */
@@ -42,4 +43,10 @@ public interface SensorEnvironment {
   AudioSource getAudioSource();
 
   SensorHistoryStorage getSensorHistoryStorage();
+
+  /**
+   * @return a scheduler on a background thread shared by sensors for polling and processing their
+   *     data, so that only finished samples reach the UI thread.
+   */
+  HandlerScheduler getIngestScheduler();
 }
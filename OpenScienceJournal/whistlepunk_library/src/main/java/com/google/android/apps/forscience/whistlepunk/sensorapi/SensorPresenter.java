@@ -31,7 +31,7 @@ import java.util.List;
  *
  * <p>All calls are on the main thread.
  */
-public interface SensorPresenter extends SensorObserver {
+public interface SensorPresenter extends SensorBatchObserver {
   /**
    * Sub-presenter based around allowing the user to change options, and applying the view-specific
    * options to the current data display
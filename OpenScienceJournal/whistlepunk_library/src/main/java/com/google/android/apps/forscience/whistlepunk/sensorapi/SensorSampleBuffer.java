@@ -0,0 +1,180 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Carries samples from one sensor's background thread to the UI thread without posting a message
+ * per sample.
+ *
+ * <p>This is a lock-free ring buffer for exactly one producer thread and one consumer thread. The
+ * producer calls {@link #offer}, which returns true only when the buffer goes from drained to
+ * pending, so that at most one drain is ever scheduled at a time. The consumer then calls {@link
+ * #drainTo} to deliver everything that has arrived since the last drain as one batch.
+ *
+ * <p>If the consumer falls so far behind that the buffer fills up, new samples are dropped (and
+ * counted) rather than blocking the sensor thread.
+ */
+public class SensorSampleBuffer {
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final int mask;
+  private final long[] timestamps;
+  private final double[] values;
+  private final double[] mins;
+  private final double[] maxes;
+  private final double[] averages;
+
+  // Total samples read by the consumer, and written by the producer. Each is only ever advanced by
+  // its own side, with an ordered write so the other side sees the array contents first.
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicBoolean drainPending = new AtomicBoolean();
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  private final Batch batch = new Batch();
+
+  public SensorSampleBuffer() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /** @param capacity the number of samples held between drains; must be a power of two. */
+  public SensorSampleBuffer(int capacity) {
+    if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    mask = capacity - 1;
+    timestamps = new long[capacity];
+    values = new double[capacity];
+    mins = new double[capacity];
+    maxes = new double[capacity];
+    averages = new double[capacity];
+  }
+
+  /**
+   * Adds a sample, copying the value and stats out of {@code data}. Must only be called from the
+   * producer thread.
+   *
+   * @return true if the caller should schedule a call to {@link #drainTo} on the consumer thread.
+   */
+  public boolean offer(long timestamp, SensorObserver.Data data) {
+    long t = tail.get();
+    if (t - head.get() > mask) {
+      droppedCount.incrementAndGet();
+      return false;
+    }
+    int index = (int) (t & mask);
+    timestamps[index] = timestamp;
+    values[index] = data.getValue();
+    mins[index] = data.min;
+    maxes[index] = data.max;
+    averages[index] = data.average;
+    tail.lazySet(t + 1);
+    return drainPending.compareAndSet(false, true);
+  }
+
+  /**
+   * Delivers every sample that has arrived since the last drain to {@code observer}, oldest first.
+   * Must only be called from the consumer thread.
+   *
+   * <p>A {@link SensorBatchObserver} receives them as one batch; any other observer gets one call
+   * per sample.
+   *
+   * @return the number of samples delivered.
+   */
+  public int drainTo(SensorObserver observer) {
+    // Clear the flag before looking at the tail, so that any sample we miss here schedules another
+    // drain.
+    drainPending.set(false);
+    long h = head.get();
+    int size = (int) (tail.get() - h);
+    if (size == 0) {
+      return 0;
+    }
+    batch.start = h;
+    batch.size = size;
+    try {
+      batch.deliverTo(observer);
+    } finally {
+      batch.size = 0;
+      head.lazySet(h + size);
+    }
+    return size;
+  }
+
+  /** Returns how many samples were dropped because the buffer was full. */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * The samples handed to a {@link SensorBatchObserver} in one drain. It is only valid for the
+   * duration of the {@link SensorBatchObserver#onNewBatch} call.
+   */
+  public class Batch {
+    private final SensorObserver.Data data = new SensorObserver.Data();
+    private long start;
+    private int size;
+
+    private Batch() {}
+
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Hands this batch to {@code observer}: whole if it is a {@link SensorBatchObserver}, or one
+     * sample at a time if not.
+     */
+    public void deliverTo(SensorObserver observer) {
+      if (observer instanceof SensorBatchObserver) {
+        ((SensorBatchObserver) observer).onNewBatch(this);
+      } else {
+        for (int i = 0; i < size; i++) {
+          observer.onNewData(getTimestamp(i), getData(i));
+        }
+      }
+    }
+
+    public long getTimestamp(int i) {
+      return timestamps[index(i)];
+    }
+
+    /**
+     * Returns the value and stats of sample {@code i}. The same instance is reused for every call,
+     * so copy out anything needed later.
+     */
+    public SensorObserver.Data getData(int i) {
+      int index = index(i);
+      data.setValue(values[index]);
+      data.min = mins[index];
+      data.max = maxes[index];
+      data.average = averages[index];
+      return data;
+    }
+
+    private int index(int i) {
+      if (i < 0 || i >= size) {
+        throw new IndexOutOfBoundsException("Sample " + i + " of " + size);
+      }
+      return (int) ((start + i) & mask);
+    }
+  }
+}
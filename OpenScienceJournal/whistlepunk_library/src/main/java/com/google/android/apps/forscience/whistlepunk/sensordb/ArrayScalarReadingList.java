@@ -0,0 +1,57 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A {@link ScalarReadingList} backed by parallel arrays of timestamps and values. */
+class ArrayScalarReadingList implements ScalarReadingList {
+  private final long[] timestamps;
+  private final double[] values;
+  private final int count;
+
+  /** Only the first {@code count} entries of each array are part of the list. */
+  ArrayScalarReadingList(long[] timestamps, double[] values, int count) {
+    this.timestamps = timestamps;
+    this.values = values;
+    this.count = count;
+  }
+
+  @Override
+  public void deliver(StreamConsumer c) {
+    for (int i = 0; i < count; i++) {
+      c.addData(timestamps[i], values[i]);
+    }
+  }
+
+  @Override
+  public int size() {
+    return count;
+  }
+
+  @Override
+  public List<ChartData.DataPoint> asDataPoints() {
+    List<ChartData.DataPoint> result = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      result.add(new ChartData.DataPoint(timestamps[i], values[i]));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,645 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import androidx.annotation.Nullable;
+import com.google.android.apps.forscience.whistlepunk.BatchInsertScalarReading;
+import com.google.android.apps.forscience.whistlepunk.ScalarReadingBatch;
+import com.google.android.apps.forscience.whistlepunk.data.GoosciSensorLayout;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataDump;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataRow;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
+import io.reactivex.Observable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link SensorDatabase} that stores each (trial, sensor, resolution tier) series in its own
+ * append-only, block-compressed {@link SeriesFile} instead of one SQLite row per reading.
+ *
+ * <p>Files are laid out as {@code <directory>/<trialId>/<sensorTag>/<tier>.series}, with ids
+ * URL-encoded so that any string is a valid file name.
+ *
+ * <p>If constructed with a legacy {@link SensorDatabaseImpl}, its readings are copied over the
+ * first time this database is used, and the SQLite database is then deleted. Until that succeeds,
+ * every call retries the migration and throws if it fails again, so nothing is ever written next
+ * to a partial copy.
+ */
+public class ColumnarSensorDatabase implements SensorDatabase {
+  // Matches the trial id SensorDatabaseImpl uses for readings recorded before trial ids existed.
+  private static final String DEFAULT_TRIAL_ID = "0";
+  private static final String SERIES_SUFFIX = ".series";
+  private static final String MIGRATED_MARKER = ".migrated";
+  // Readings are copied here first, so that an interrupted copy never mixes with other series.
+  // Encoded ids never start with '.', so this can't collide with a trial directory.
+  private static final String MIGRATION_DIRECTORY = ".migration";
+  private static final String COPIED_MARKER = ".copied";
+  private static final int MAX_CACHED_SERIES = 64;
+  // Rows per batch emitted by createScalarBatchObservable.
+  private static final int MERGE_BATCH_SIZE = 500;
+
+  private final File directory;
+  @Nullable private SensorDatabaseImpl legacyDatabase;
+
+  // Open series, least recently used first.
+  private final LinkedHashMap<File, SeriesFile> seriesCache = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * @param directory root directory for the series files; created if needed.
+   * @param legacyDatabase if non-null, a SQLite database whose readings should be migrated into
+   *     this one before it is first used.
+   */
+  public ColumnarSensorDatabase(File directory, @Nullable SensorDatabaseImpl legacyDatabase) {
+    this.directory = directory;
+    this.legacyDatabase = legacyDatabase;
+  }
+
+  @Override
+  public synchronized void addScalarReadings(List<BatchInsertScalarReading> readings) {
+    ensureMigrated();
+    for (BatchInsertScalarReading r : readings) {
+      append(r.trialId, r.sensorId, r.resolutionTier, r.timestampMillis, r.value);
+    }
+    // Batches come from imports, which should be fully durable once this returns.
+    commitAll();
+  }
+
+  @Override
+  public synchronized void addScalarReadings(ScalarReadingBatch readings) {
+    ensureMigrated();
+    for (int i = 0; i < readings.size(); i++) {
+      append(
+          readings.getTrialId(i),
+          readings.getSensorId(i),
+          readings.getResolutionTier(i),
+          readings.getTimestampMillis(i),
+          readings.getValue(i));
+    }
+    commitAll();
+  }
+
+  @Override
+  public synchronized void addScalarReading(
+      String trialId, String sensorTag, int resolutionTier, long timestampMillis, double value) {
+    ensureMigrated();
+    append(trialId, sensorTag, resolutionTier, timestampMillis, value);
+  }
+
+  private void append(
+      String trialId, String sensorTag, int resolutionTier, long timestampMillis, double value) {
+    SeriesFile series = getSeries(trialId, sensorTag, resolutionTier, true);
+    try {
+      series.append(timestampMillis, value);
+    } catch (IOException e) {
+      throw new SeriesStorageException("Could not write " + series.getFile(), e);
+    }
+  }
+
+  @Override
+  public synchronized ScalarReadingList getScalarReadings(
+      String trialId, String sensorTag, TimeRange range, int resolutionTier, int maxRecords) {
+    ensureMigrated();
+    ScalarReadingList readings =
+        readSeries(trialId, sensorTag, range, resolutionTier, maxRecords);
+    if (readings.size() == 0) {
+      // No results with the trial id; attempt to use the default trial id.
+      return readSeries(DEFAULT_TRIAL_ID, sensorTag, range, resolutionTier, maxRecords);
+    }
+    return readings;
+  }
+
+  @Override
+  public synchronized void readScalarReadingChunks(
+      String trialId,
+      String sensorTag,
+      TimeRange range,
+      int resolutionTier,
+      int chunkSize,
+      ScalarReadingChunkConsumer consumer) {
+    ensureMigrated();
+    ScalarReadingChunker chunker = new ScalarReadingChunker(chunkSize, consumer);
+    readSeries(trialId, sensorTag, range, resolutionTier, chunker);
+    if (chunker.getTotal() == 0) {
+      // No results with the trial id; attempt to use the default trial id.
+      readSeries(DEFAULT_TRIAL_ID, sensorTag, range, resolutionTier, chunker);
+    }
+    chunker.finish();
+  }
+
+  private void readSeries(
+      String trialId,
+      String sensorTag,
+      TimeRange range,
+      int resolutionTier,
+      ScalarReadingChunker chunker) {
+    SeriesFile series = getSeries(trialId, sensorTag, resolutionTier, false);
+    if (series == null) {
+      return;
+    }
+    boolean newestFirst = range.getOrder() == TimeRange.ObservationOrder.NEWEST_FIRST;
+    Range<Long> times = range.getTimes();
+    if (!series.isOrdered()) {
+      readSeries(trialId, sensorTag, range, resolutionTier, 0).deliver(chunker::take);
+      return;
+    }
+    series.read(lowerBound(times), upperBound(times), newestFirst, chunker);
+  }
+
+  private ScalarReadingList readSeries(
+      String trialId, String sensorTag, TimeRange range, int resolutionTier, int maxRecords) {
+    SeriesFile series = getSeries(trialId, sensorTag, resolutionTier, false);
+    if (series == null) {
+      return new ArrayScalarReadingList(new long[0], new double[0], 0);
+    }
+    boolean newestFirst = range.getOrder() == TimeRange.ObservationOrder.NEWEST_FIRST;
+    Range<Long> times = range.getTimes();
+    if (!series.isOrdered()) {
+      // Storage order is not timestamp order, so limits can only be applied after sorting.
+      Collector sorted = new Collector(0);
+      try (SeriesFile.PointCursor cursor =
+          series.openCursor(lowerBound(times), upperBound(times))) {
+        while (cursor.next()) {
+          sorted.take(cursor.getTimestamp(), cursor.getValue());
+        }
+      }
+      return sorted.asList(newestFirst, maxRecords);
+    }
+    Collector collector = new Collector(maxRecords);
+    series.read(lowerBound(times), upperBound(times), newestFirst, collector);
+    return collector.asList(false, 0);
+  }
+
+  @Override
+  public synchronized String getFirstDatabaseTagAfter(long timestamp) {
+    ensureMigrated();
+    String firstTag = null;
+    long firstTimestamp = Long.MAX_VALUE;
+    for (File trialDir : listDirectories(directory)) {
+      for (File tagDir : listDirectories(trialDir)) {
+        SeriesFile series = getSeries(new File(tagDir, 0 + SERIES_SUFFIX), false);
+        if (series == null) {
+          continue;
+        }
+        Long after = series.getFirstTimestampAfter(timestamp);
+        if (after != null && after < firstTimestamp) {
+          firstTimestamp = after;
+          firstTag = decode(tagDir.getName());
+        }
+      }
+    }
+    return firstTag;
+  }
+
+  @Override
+  public synchronized void deleteScalarReadings(
+      String trialId, String sensorTag, TimeRange range) {
+    ensureMigrated();
+    // Make sure every tier with buffered points exists on disk.
+    commitAll();
+    Range<Long> times = range.getTimes();
+    File[] tierFiles = getSeriesDirectory(trialId, sensorTag).listFiles();
+    if (tierFiles == null) {
+      return;
+    }
+    // Delete from all resolution tiers.
+    for (File tierFile : tierFiles) {
+      if (!tierFile.getName().endsWith(SERIES_SUFFIX)) {
+        continue;
+      }
+      SeriesFile series = getSeries(tierFile, false);
+      try {
+        series.delete(lowerBound(times), upperBound(times));
+      } catch (IOException e) {
+        throw new SeriesStorageException("Could not delete from " + tierFile, e);
+      }
+    }
+  }
+
+  @Override
+  public Observable<ScalarReading> createScalarObservable(
+      String trialId, String[] sensorTags, TimeRange range, int resolutionTier) {
+    return ScalarReadingMerger.toReadings(
+        createScalarBatchObservable(trialId, sensorTags, range, resolutionTier));
+  }
+
+  @Override
+  public Observable<ScalarReadingBatch> createScalarBatchObservable(
+      String trialId, String[] sensorTags, TimeRange range, int resolutionTier) {
+    // Cursors only read immutable committed blocks through the file they opened, which a delete
+    // cannot change, so the lock is only held while opening them.
+    return ScalarReadingMerger.createBatchObservable(
+        trialId,
+        sensorTags,
+        resolutionTier,
+        MERGE_BATCH_SIZE,
+        () -> {
+          SeriesFile.PointCursor[] cursors = new SeriesFile.PointCursor[sensorTags.length];
+          try {
+            synchronized (this) {
+              ensureMigrated();
+              long minTime = lowerBound(range.getTimes());
+              long maxTime = upperBound(range.getTimes());
+              for (int i = 0; i < sensorTags.length; i++) {
+                SeriesFile series = getSeries(trialId, sensorTags[i], resolutionTier, false);
+                if (series != null) {
+                  cursors[i] = series.openCursor(minTime, maxTime);
+                }
+              }
+            }
+          } catch (RuntimeException e) {
+            for (SeriesFile.PointCursor cursor : cursors) {
+              if (cursor != null) {
+                cursor.close();
+              }
+            }
+            throw e;
+          }
+          return cursors;
+        });
+  }
+
+  @Override
+  public synchronized GoosciScalarSensorData.ScalarSensorData getScalarReadingProtos(
+      GoosciExperiment.Experiment experiment) {
+    return GoosciScalarSensorData.ScalarSensorData.newBuilder()
+        .addAllSensors(getScalarReadingProtosAsList(experiment))
+        .build();
+  }
+
+  @Override
+  public synchronized List<ScalarSensorDataDump> getScalarReadingProtosAsList(
+      GoosciExperiment.Experiment experiment) {
+    return getScalarReadingProtosAsList(experiment, null);
+  }
+
+  @Override
+  public synchronized GoosciScalarSensorData.ScalarSensorData getScalarReadingProtosForTrial(
+      GoosciExperiment.Experiment experiment, String trialId) {
+    return GoosciScalarSensorData.ScalarSensorData.newBuilder()
+        .addAllSensors(getScalarReadingProtosAsList(experiment, trialId))
+        .build();
+  }
+
+  /** If {@code trialId} is null, gets the protos for every trial in the experiment. */
+  private List<ScalarSensorDataDump> getScalarReadingProtosAsList(
+      GoosciExperiment.Experiment experiment, @Nullable String trialId) {
+    ensureMigrated();
+    ArrayList<ScalarSensorDataDump> sensorDataList = new ArrayList<>();
+    for (GoosciTrial.Trial trial : experiment.getTrialsList()) {
+      if (trialId != null && !trial.getTrialId().equals(trialId)) {
+        continue;
+      }
+      GoosciTrial.Range range = trial.getRecordingRange();
+      // This protects against corrupted trials with invalid range end times.
+      if (range.getEndMs() > range.getStartMs()) {
+        TimeRange timeRange = TimeRange.oldest(Range.closed(range.getStartMs(), range.getEndMs()));
+        for (GoosciSensorLayout.SensorLayout sensor : trial.getSensorLayoutsList()) {
+          sensorDataList.add(
+              getScalarReadingSensorProtos(trial.getTrialId(), sensor.getSensorId(), timeRange));
+        }
+      }
+    }
+    return sensorDataList;
+  }
+
+  /** Gets the protos for a single sensor/trialId combination in the given TimeRange. */
+  public synchronized ScalarSensorDataDump getScalarReadingSensorProtos(
+      String trialId, String sensorTag, TimeRange range) {
+    ensureMigrated();
+    ScalarReadingList readings = getScalarReadings(trialId, sensorTag, range, 0, 0);
+    ScalarSensorDataDump.Builder sensor =
+        ScalarSensorDataDump.newBuilder().setTag(sensorTag).setTrialId(trialId);
+    readings.deliver(
+        (timestampMillis, value) -> {
+          sensor.addRows(
+              ScalarSensorDataRow.newBuilder().setTimestampMillis(timestampMillis).setValue(value));
+          return true;
+        });
+    return sensor.build();
+  }
+
+  @Override
+  public synchronized void writeScalarReadingProtos(
+      GoosciExperiment.Experiment experiment, @Nullable String trialId, OutputStream output)
+      throws IOException {
+    ensureMigrated();
+    ScalarSensorDataWriter writer = new ScalarSensorDataWriter(output);
+    for (GoosciTrial.Trial trial : experiment.getTrialsList()) {
+      if (trialId != null && !trial.getTrialId().equals(trialId)) {
+        continue;
+      }
+      GoosciTrial.Range range = trial.getRecordingRange();
+      // This protects against corrupted trials with invalid range end times.
+      if (range.getEndMs() > range.getStartMs()) {
+        long minTime = range.getStartMs();
+        long maxTime = range.getEndMs();
+        for (GoosciSensorLayout.SensorLayout sensor : trial.getSensorLayoutsList()) {
+          String tag = sensor.getSensorId();
+          SeriesFile series = getSeries(trial.getTrialId(), tag, 0, false);
+          if (!hasPointsIn(series, minTime, maxTime)) {
+            // Same fallback as getScalarReadings, for trials recorded before trial ids.
+            series = getSeries(DEFAULT_TRIAL_ID, tag, 0, false);
+          }
+          SeriesFile source = series;
+          writer.writeSensor(
+              trial.getTrialId(),
+              tag,
+              () ->
+                  source == null
+                      ? SeriesFile.EMPTY_CURSOR
+                      : source.openCursor(minTime, maxTime));
+        }
+      }
+    }
+    writer.flush();
+  }
+
+  private static boolean hasPointsIn(@Nullable SeriesFile series, long minTime, long maxTime) {
+    if (series == null) {
+      return false;
+    }
+    try (SeriesFile.PointCursor cursor = series.openCursor(minTime, maxTime)) {
+      return cursor.next();
+    }
+  }
+
+  @Override
+  public synchronized void flush() {
+    commitAll();
+  }
+
+  private void commitAll() {
+    for (SeriesFile series : seriesCache.values()) {
+      commit(series);
+    }
+  }
+
+  private void commit(SeriesFile series) {
+    try {
+      series.commit();
+    } catch (IOException e) {
+      throw new SeriesStorageException("Could not write " + series.getFile(), e);
+    }
+  }
+
+  /**
+   * Copies readings from the legacy SQLite database, if there is one and it has not been migrated
+   * yet. Only clears {@link #legacyDatabase} once the migration is recorded, so a failed migration
+   * is retried by the next call instead of being treated as done.
+   */
+  private void ensureMigrated() {
+    if (legacyDatabase == null) {
+      return;
+    }
+    migrate(legacyDatabase);
+    legacyDatabase = null;
+  }
+
+  /**
+   * Readings are first copied into a staging directory, which is marked once the copy is complete
+   * and then moved into place trial by trial. A marker file records a completed migration. An
+   * interrupted copy only discards the staging directory, and an interrupted move resumes.
+   */
+  private void migrate(SensorDatabaseImpl legacy) {
+    File marker = new File(directory, MIGRATED_MARKER);
+    File staging = new File(directory, MIGRATION_DIRECTORY);
+    if (!marker.exists()) {
+      if (legacy.exists()) {
+        File copied = new File(staging, COPIED_MARKER);
+        if (!copied.exists()) {
+          deleteRecursively(staging);
+          ColumnarSensorDatabase stagingDatabase = new ColumnarSensorDatabase(staging, null);
+          legacy.copyAllReadingsTo(stagingDatabase);
+          stagingDatabase.flush();
+          createMarker(copied);
+        }
+        for (File trialDir : listDirectories(staging)) {
+          moveInto(trialDir, new File(directory, trialDir.getName()));
+        }
+      }
+      createMarker(marker);
+    }
+    deleteRecursively(staging);
+    if (legacy.exists()) {
+      legacy.deleteDatabase();
+    }
+  }
+
+  /**
+   * Moves a staged trial, sensor or series into place. Anything already in place is kept, and
+   * staged readings are appended to a series that already exists.
+   */
+  private void moveInto(File staged, File target) {
+    if (!target.exists()) {
+      target.getParentFile().mkdirs();
+      if (staged.renameTo(target)) {
+        return;
+      }
+      if (staged.isDirectory()) {
+        throw new SeriesStorageException(
+            "Could not migrate readings", new IOException("Could not move " + staged));
+      }
+    }
+    if (staged.isDirectory()) {
+      File[] children = staged.listFiles();
+      if (children != null) {
+        for (File child : children) {
+          moveInto(child, new File(target, child.getName()));
+        }
+      }
+      staged.delete();
+      return;
+    }
+    SeriesFile series = getSeries(target, true);
+    try {
+      try (SeriesFile.PointCursor cursor =
+          SeriesFile.open(staged).openCursor(Long.MIN_VALUE, Long.MAX_VALUE)) {
+        while (cursor.next()) {
+          series.append(cursor.getTimestamp(), cursor.getValue());
+        }
+      }
+      series.commit();
+    } catch (IOException e) {
+      throw new SeriesStorageException("Could not merge " + staged + " into " + target, e);
+    }
+    staged.delete();
+  }
+
+  private void createMarker(File marker) {
+    try {
+      marker.getParentFile().mkdirs();
+      if (!marker.exists() && !marker.createNewFile()) {
+        throw new IOException("Could not create " + marker);
+      }
+    } catch (IOException e) {
+      throw new SeriesStorageException("Could not record migration in " + directory, e);
+    }
+  }
+
+  @Nullable
+  private SeriesFile getSeries(
+      String trialId, String sensorTag, int resolutionTier, boolean create) {
+    File file =
+        new File(getSeriesDirectory(trialId, sensorTag), resolutionTier + SERIES_SUFFIX);
+    return getSeries(file, create);
+  }
+
+  @Nullable
+  private SeriesFile getSeries(File file, boolean create) {
+    SeriesFile series = seriesCache.get(file);
+    if (series != null) {
+      return series;
+    }
+    if (!create && !file.exists()) {
+      return null;
+    }
+    try {
+      series = SeriesFile.open(file);
+    } catch (IOException e) {
+      throw new SeriesStorageException("Could not open " + file, e);
+    }
+    seriesCache.put(file, series);
+    if (seriesCache.size() > MAX_CACHED_SERIES) {
+      Iterator<Map.Entry<File, SeriesFile>> eldest = seriesCache.entrySet().iterator();
+      commit(eldest.next().getValue());
+      eldest.remove();
+    }
+    return series;
+  }
+
+  private File getSeriesDirectory(String trialId, String sensorTag) {
+    File trialDirectory = new File(directory, encode(Preconditions.checkNotNull(trialId)));
+    return new File(trialDirectory, encode(sensorTag));
+  }
+
+  private static String encode(String id) {
+    try {
+      // URLEncoder leaves '.' and '*' alone, which could produce names like "..".
+      return URLEncoder.encode(id, "UTF-8").replace(".", "%2E").replace("*", "%2A");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String decode(String name) {
+    try {
+      return URLDecoder.decode(name, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static List<File> listDirectories(File parent) {
+    File[] files = parent.listFiles();
+    List<File> directories = new ArrayList<>();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory()) {
+          directories.add(file);
+        }
+      }
+    }
+    return directories;
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static long lowerBound(Range<Long> times) {
+    if (times == null) {
+      return Long.MIN_VALUE;
+    }
+    Range<Long> canonical = times.canonical(DiscreteDomain.longs());
+    // Canonical ranges are always closed below.
+    return canonical.hasLowerBound() ? canonical.lowerEndpoint() : Long.MIN_VALUE;
+  }
+
+  private static long upperBound(Range<Long> times) {
+    if (times == null) {
+      return Long.MAX_VALUE;
+    }
+    Range<Long> canonical = times.canonical(DiscreteDomain.longs());
+    if (!canonical.hasUpperBound()) {
+      return Long.MAX_VALUE;
+    }
+    return canonical.upperBoundType() == BoundType.CLOSED
+        ? canonical.upperEndpoint()
+        : canonical.upperEndpoint() - 1;
+  }
+
+  /** Collects up to a maximum number of points into growable primitive arrays. */
+  private static class Collector implements SeriesFile.PointSink {
+    private final int maxRecords;
+    private long[] times = new long[64];
+    private double[] values = new double[64];
+    private int size;
+
+    /** @param maxRecords 0 to collect every point offered. */
+    Collector(int maxRecords) {
+      this.maxRecords = maxRecords;
+    }
+
+    @Override
+    public boolean take(long timestampMillis, double value) {
+      if (size == times.length) {
+        times = Arrays.copyOf(times, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      times[size] = timestampMillis;
+      values[size] = value;
+      size++;
+      return maxRecords <= 0 || size < maxRecords;
+    }
+
+    ScalarReadingList asList(boolean reverse, int maxRecords) {
+      int count = maxRecords <= 0 ? size : Math.min(size, maxRecords);
+      if (!reverse) {
+        return new ArrayScalarReadingList(times, values, count);
+      }
+      long[] reversedTimes = new long[count];
+      double[] reversedValues = new double[count];
+      for (int i = 0; i < count; i++) {
+        reversedTimes[i] = times[size - 1 - i];
+        reversedValues[i] = values[size - 1 - i];
+      }
+      return new ArrayScalarReadingList(reversedTimes, reversedValues, count);
+    }
+  }
+}
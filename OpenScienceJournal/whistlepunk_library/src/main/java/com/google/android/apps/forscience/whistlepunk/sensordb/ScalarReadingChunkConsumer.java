@@ -0,0 +1,28 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+/** Receives the readings of a bulk load in order, a chunk at a time. */
+public interface ScalarReadingChunkConsumer {
+  /**
+   * Takes the next chunk of readings. Chunks are never reused, so they can be kept or handed to
+   * another thread.
+   *
+   * @return false if no more readings are wanted.
+   */
+  boolean take(ScalarReadingList chunk);
+}
@@ -0,0 +1,77 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+/**
+ * Collects readings into chunks of a fixed size, handing each full chunk to a {@link
+ * ScalarReadingChunkConsumer}.
+ */
+class ScalarReadingChunker implements SeriesFile.PointSink {
+  private final int chunkSize;
+  private final ScalarReadingChunkConsumer consumer;
+  private long[] timestamps;
+  private double[] values;
+  private int size = 0;
+  private int total = 0;
+  private boolean stopped = false;
+
+  ScalarReadingChunker(int chunkSize, ScalarReadingChunkConsumer consumer) {
+    this.chunkSize = Math.max(1, chunkSize);
+    this.consumer = consumer;
+  }
+
+  /** Adds a reading, returning false once the consumer doesn't want any more. */
+  @Override
+  public boolean take(long timestampMillis, double value) {
+    if (stopped) {
+      return false;
+    }
+    if (timestamps == null) {
+      timestamps = new long[chunkSize];
+      values = new double[chunkSize];
+    }
+    timestamps[size] = timestampMillis;
+    values[size] = value;
+    size++;
+    total++;
+    if (size == chunkSize) {
+      deliver();
+    }
+    return !stopped;
+  }
+
+  /** Hands over the last, partly filled chunk, if there is one. */
+  void finish() {
+    if (size > 0 && !stopped) {
+      deliver();
+    }
+  }
+
+  /** Returns how many readings have been taken. */
+  int getTotal() {
+    return total;
+  }
+
+  private void deliver() {
+    ScalarReadingList chunk = new ArrayScalarReadingList(timestamps, values, size);
+    // The consumer may keep the chunk, so the next one needs new arrays.
+    timestamps = null;
+    values = null;
+    size = 0;
+    stopped = !consumer.take(chunk);
+  }
+}
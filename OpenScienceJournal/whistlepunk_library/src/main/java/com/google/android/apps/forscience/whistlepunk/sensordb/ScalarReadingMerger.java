@@ -0,0 +1,178 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import com.google.android.apps.forscience.whistlepunk.ScalarReadingBatch;
+import io.reactivex.Observable;
+import java.util.concurrent.Callable;
+
+/**
+ * Merges one forward cursor per sensor into a single stream of readings in timestamp order. Ties
+ * go to the sensor that comes first, and readings with the same timestamp from one sensor keep
+ * their order, so the merged order is stable.
+ *
+ * <p>The cursors are kept in a binary heap keyed by their current timestamp, so each reading costs
+ * O(log k) comparisons for k sensors.
+ */
+class ScalarReadingMerger implements AutoCloseable {
+  private final String trialId;
+  private final String[] sensorTags;
+  private final int resolutionTier;
+  private final SeriesFile.PointCursor[] cursors;
+
+  // Indexes of the cursors that have a current point, as a min-heap.
+  private final int[] heap;
+  private int heapSize = 0;
+  private boolean started = false;
+
+  /**
+   * @param cursors one cursor per sensor tag, not yet advanced to their first point. Null entries
+   *     are treated as empty. The merger takes ownership of the cursors.
+   * @param resolutionTier the tier recorded in each batch row.
+   */
+  ScalarReadingMerger(
+      String trialId, String[] sensorTags, int resolutionTier, SeriesFile.PointCursor[] cursors) {
+    this.trialId = trialId;
+    this.sensorTags = sensorTags;
+    this.resolutionTier = resolutionTier;
+    this.cursors = cursors;
+    heap = new int[cursors.length];
+  }
+
+  /**
+   * Emits the merged readings of the cursors returned by {@code openCursors}, in batches of up to
+   * {@code batchSize} rows. The cursors are opened on subscription and closed once the merge is
+   * finished or disposed of.
+   */
+  static Observable<ScalarReadingBatch> createBatchObservable(
+      String trialId,
+      String[] sensorTags,
+      int resolutionTier,
+      int batchSize,
+      Callable<SeriesFile.PointCursor[]> openCursors) {
+    return Observable.create(
+        emitter -> {
+          try (ScalarReadingMerger merger =
+              new ScalarReadingMerger(trialId, sensorTags, resolutionTier, openCursors.call())) {
+            while (!emitter.isDisposed()) {
+              ScalarReadingBatch batch = new ScalarReadingBatch(batchSize, null);
+              boolean more = merger.fill(batch, batchSize);
+              if (batch.size() > 0) {
+                emitter.onNext(batch);
+              }
+              if (!more) {
+                break;
+              }
+            }
+          }
+          emitter.onComplete();
+        });
+  }
+
+  /** Splits batches back into one {@link ScalarReading} per row. */
+  static Observable<ScalarReading> toReadings(Observable<ScalarReadingBatch> batches) {
+    return batches.concatMap(
+        batch ->
+            Observable.range(0, batch.size())
+                .map(
+                    i ->
+                        new ScalarReading(
+                            batch.getTimestampMillis(i),
+                            batch.getValue(i),
+                            batch.getSensorId(i))));
+  }
+
+  /**
+   * Adds up to {@code maxRows} of the next merged readings to the batch.
+   *
+   * @return false if the cursors are exhausted.
+   */
+  boolean fill(ScalarReadingBatch batch, int maxRows) {
+    if (!started) {
+      started = true;
+      for (int i = 0; i < cursors.length; i++) {
+        if (cursors[i] != null && cursors[i].next()) {
+          heap[heapSize] = i;
+          siftUp(heapSize++);
+        }
+      }
+    }
+    for (int rows = 0; rows < maxRows && heapSize > 0; rows++) {
+      int next = heap[0];
+      SeriesFile.PointCursor cursor = cursors[next];
+      batch.add(
+          trialId, sensorTags[next], resolutionTier, cursor.getTimestamp(), cursor.getValue());
+      if (cursor.next()) {
+        siftDown(0);
+      } else {
+        heap[0] = heap[--heapSize];
+        siftDown(0);
+      }
+    }
+    return heapSize > 0;
+  }
+
+  @Override
+  public void close() {
+    for (SeriesFile.PointCursor cursor : cursors) {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+  }
+
+  private boolean before(int a, int b) {
+    long timestampA = cursors[a].getTimestamp();
+    long timestampB = cursors[b].getTimestamp();
+    return timestampA < timestampB || (timestampA == timestampB && a < b);
+  }
+
+  private void siftUp(int position) {
+    int cursor = heap[position];
+    while (position > 0) {
+      int parent = (position - 1) / 2;
+      if (!before(cursor, heap[parent])) {
+        break;
+      }
+      heap[position] = heap[parent];
+      position = parent;
+    }
+    heap[position] = cursor;
+  }
+
+  private void siftDown(int position) {
+    if (heapSize == 0) {
+      return;
+    }
+    int cursor = heap[position];
+    while (true) {
+      int child = 2 * position + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+        child++;
+      }
+      if (!before(heap[child], cursor)) {
+        break;
+      }
+      heap[position] = heap[child];
+      position = child;
+    }
+    heap[position] = cursor;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorData;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataDump;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataRow;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a {@link ScalarSensorData} message to a stream one row at a time, producing the same
+ * bytes as building the message and calling {@code writeTo}, but without holding the rows in
+ * memory.
+ *
+ * <p>Each dump is length-prefixed, so its rows are read twice: once to add up their encoded size
+ * and once to write them.
+ */
+class ScalarSensorDataWriter {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Opens a new pass over one sensor's rows, in the order they should be written. */
+  interface RowSource {
+    SeriesFile.PointCursor open();
+  }
+
+  private final CodedOutputStream output;
+
+  ScalarSensorDataWriter(OutputStream stream) {
+    output = CodedOutputStream.newInstance(stream, BUFFER_SIZE);
+  }
+
+  /** Writes one {@link ScalarSensorDataDump}, as an element of {@code ScalarSensorData.sensors}. */
+  void writeSensor(String trialId, String sensorTag, RowSource rows) throws IOException {
+    long rowsSize = 0;
+    try (SeriesFile.PointCursor cursor = rows.open()) {
+      while (cursor.next()) {
+        int rowSize = getRowSize(cursor.getTimestamp(), cursor.getValue());
+        rowsSize +=
+            CodedOutputStream.computeTagSize(ScalarSensorDataDump.ROWS_FIELD_NUMBER)
+                + CodedOutputStream.computeUInt32SizeNoTag(rowSize)
+                + rowSize;
+      }
+    }
+    long dumpSize =
+        CodedOutputStream.computeStringSize(ScalarSensorDataDump.TAG_FIELD_NUMBER, sensorTag)
+            + rowsSize
+            + CodedOutputStream.computeStringSize(
+                ScalarSensorDataDump.TRIALID_FIELD_NUMBER, trialId);
+    if (dumpSize > Integer.MAX_VALUE) {
+      throw new IOException("Too much data to export for sensor " + sensorTag);
+    }
+
+    // Same field order as the generated serializer: tag, rows, then trialId.
+    output.writeTag(ScalarSensorData.SENSORS_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    output.writeUInt32NoTag((int) dumpSize);
+    output.writeString(ScalarSensorDataDump.TAG_FIELD_NUMBER, sensorTag);
+    long writtenSize = 0;
+    try (SeriesFile.PointCursor cursor = rows.open()) {
+      while (cursor.next()) {
+        long timestampMillis = cursor.getTimestamp();
+        double value = cursor.getValue();
+        int rowSize = getRowSize(timestampMillis, value);
+        output.writeTag(
+            ScalarSensorDataDump.ROWS_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(rowSize);
+        output.writeInt64(ScalarSensorDataRow.TIMESTAMPMILLIS_FIELD_NUMBER, timestampMillis);
+        output.writeDouble(ScalarSensorDataRow.VALUE_FIELD_NUMBER, value);
+        writtenSize +=
+            CodedOutputStream.computeTagSize(ScalarSensorDataDump.ROWS_FIELD_NUMBER)
+                + CodedOutputStream.computeUInt32SizeNoTag(rowSize)
+                + rowSize;
+      }
+    }
+    if (writtenSize != rowsSize) {
+      // The length prefix has already been written, so the output would be unreadable.
+      throw new IOException("Rows for sensor " + sensorTag + " changed during export");
+    }
+    output.writeString(ScalarSensorDataDump.TRIALID_FIELD_NUMBER, trialId);
+  }
+
+  /** Writes out anything still buffered. Call once every sensor has been written. */
+  void flush() throws IOException {
+    output.flush();
+  }
+
+  private static int getRowSize(long timestampMillis, double value) {
+    return CodedOutputStream.computeInt64Size(
+            ScalarSensorDataRow.TIMESTAMPMILLIS_FIELD_NUMBER, timestampMillis)
+        + CodedOutputStream.computeDoubleSize(ScalarSensorDataRow.VALUE_FIELD_NUMBER, value);
+  }
+}
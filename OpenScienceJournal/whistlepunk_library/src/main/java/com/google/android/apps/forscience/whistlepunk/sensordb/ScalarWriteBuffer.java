@@ -0,0 +1,297 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import android.util.Log;
+import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.ScalarReadingBatch;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded ring buffer of scalar readings waiting to be written to a {@link SensorDatabase}.
+ *
+ * <p>Any number of threads may {@link #add} readings; each slot is stored as primitives, with
+ * trial and sensor ids interned to small integers. A single consumer on the database thread calls
+ * {@link #drainTo} to write everything buffered so far in one group commit (one transaction),
+ * instead of one insert per reading.
+ *
+ * <p>{@link #add} returns true when the caller should schedule a drain: when {@code commitSize}
+ * readings are waiting, or when a reading arrives and the oldest waiting reading has been buffered
+ * for {@code maxLatencyMillis}. If readings stop arriving, the caller should drain after {@code
+ * maxLatencyMillis} anyway when {@link #claimTimedDrain} asks for it, and {@link #requestFlush}
+ * writes anything left over when a recording stops.
+ *
+ * <p>Producers never block: if the ring fills up before the consumer catches up, new readings
+ * spill into an overflow batch that is written after the ring on the next drain. Only if that
+ * fills up too are readings dropped, and each sensor that lost readings is then reported to the
+ * {@link WriteFailureListener} on the next drain with a {@link ReadingsDroppedException}.
+ */
+public class ScalarWriteBuffer {
+  private static final String TAG = "ScalarWriteBuffer";
+  private static final int DEFAULT_CAPACITY = 8192;
+  private static final int DEFAULT_COMMIT_SIZE = 512;
+  private static final long DEFAULT_MAX_LATENCY_MILLIS = 1000;
+  private static final int OVERFLOW_CAPACITY_FACTOR = 8;
+
+  /** Notified if a group commit fails, once per sensor with readings in the failed commit. */
+  public interface WriteFailureListener {
+    void onWriteFailed(String sensorId, Exception e);
+  }
+
+  /** Reported for a sensor whose readings were dropped because the buffer was full. */
+  public static class ReadingsDroppedException extends Exception {
+    public ReadingsDroppedException(int dropped) {
+      super("Dropped " + dropped + " readings because the write buffer was full");
+    }
+  }
+
+  private final Clock clock;
+  private final int capacity;
+  private final int commitSize;
+  private final long maxLatencyMillis;
+  private final int overflowCapacity;
+
+  // Interned ids; slots refer to these by index.
+  private final List<String> ids = new ArrayList<>();
+  private final Map<String, Integer> idIndexes = new HashMap<>();
+
+  private final int[] trialIds;
+  private final int[] sensorIds;
+  private final int[] tiers;
+  private final long[] timestamps;
+  private final double[] values;
+  // Only touched by the draining thread, and reused for every drain.
+  private final ScalarReadingBatch drainBatch = new ScalarReadingBatch();
+  // Readings added while the ring is full, written after the ring on the next drain.
+  private final ScalarReadingBatch overflow = new ScalarReadingBatch();
+
+  private int head = 0;
+  private int size = 0;
+  private long oldestAddedAt;
+  private boolean drainRequested = false;
+  private boolean timedDrainClaimed = false;
+  private long droppedCount = 0;
+  // Readings dropped since the last drain, by sensor id.
+  private final Map<String, Integer> droppedSinceDrain = new HashMap<>();
+
+  /** Creates a buffer that asks for a drain after every reading, for immediate writes. */
+  public static ScalarWriteBuffer writeThrough(Clock clock) {
+    return new ScalarWriteBuffer(clock, 1, 1, 0);
+  }
+
+  /** Creates a buffer with capacity and commit thresholds suitable for recording. */
+  public static ScalarWriteBuffer groupCommit(Clock clock) {
+    return new ScalarWriteBuffer(
+        clock, DEFAULT_CAPACITY, DEFAULT_COMMIT_SIZE, DEFAULT_MAX_LATENCY_MILLIS);
+  }
+
+  public ScalarWriteBuffer(Clock clock, int capacity, int commitSize, long maxLatencyMillis) {
+    this(clock, capacity, commitSize, maxLatencyMillis, capacity * OVERFLOW_CAPACITY_FACTOR);
+  }
+
+  /**
+   * @param overflowCapacity how many readings may spill over once the ring is full before any are
+   *     dropped.
+   */
+  public ScalarWriteBuffer(
+      Clock clock, int capacity, int commitSize, long maxLatencyMillis, int overflowCapacity) {
+    this.clock = clock;
+    this.capacity = capacity;
+    this.commitSize = Math.min(commitSize, capacity);
+    this.maxLatencyMillis = maxLatencyMillis;
+    this.overflowCapacity = overflowCapacity;
+    trialIds = new int[capacity];
+    sensorIds = new int[capacity];
+    tiers = new int[capacity];
+    timestamps = new long[capacity];
+    values = new double[capacity];
+  }
+
+  /**
+   * Buffers a reading, spilling it into the overflow batch if the ring is full, or drops it if
+   * that is full too.
+   *
+   * @return true if the caller should now schedule a call to {@link #drainTo}.
+   */
+  public synchronized boolean add(
+      String trialId, String sensorId, int resolutionTier, long timestampMillis, double value) {
+    if (size == capacity) {
+      if (overflow.size() < overflowCapacity) {
+        overflow.add(trialId, sensorId, resolutionTier, timestampMillis, value);
+      } else {
+        droppedCount++;
+        Integer dropped = droppedSinceDrain.get(sensorId);
+        droppedSinceDrain.put(sensorId, dropped == null ? 1 : dropped + 1);
+      }
+      if (drainRequested) {
+        return false;
+      }
+      drainRequested = true;
+      return true;
+    }
+    int slot = (head + size) % capacity;
+    trialIds[slot] = intern(trialId);
+    sensorIds[slot] = intern(sensorId);
+    tiers[slot] = resolutionTier;
+    timestamps[slot] = timestampMillis;
+    values[slot] = value;
+    long now = clock.getNow();
+    if (size == 0) {
+      oldestAddedAt = now;
+    }
+    size++;
+    if (drainRequested) {
+      return false;
+    }
+    if (size >= commitSize || now - oldestAddedAt >= maxLatencyMillis) {
+      drainRequested = true;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Asks for everything buffered so far to be written, regardless of thresholds. Call when a
+   * recording stops.
+   *
+   * @return true if the caller should now schedule a call to {@link #drainTo}.
+   */
+  public synchronized boolean requestFlush() {
+    if (drainRequested || size == 0) {
+      return false;
+    }
+    drainRequested = true;
+    return true;
+  }
+
+  /**
+   * Returns true, once per batch of buffered readings, if the caller should schedule a call to
+   * {@link #drainTo} in {@link #getMaxLatencyMillis} even if no more readings arrive. Call after
+   * {@link #add} returns false.
+   */
+  public synchronized boolean claimTimedDrain() {
+    if (drainRequested || timedDrainClaimed || size == 0) {
+      return false;
+    }
+    timedDrainClaimed = true;
+    return true;
+  }
+
+  public long getMaxLatencyMillis() {
+    return maxLatencyMillis;
+  }
+
+  /** Returns the total number of readings dropped because the buffer and overflow were full. */
+  public synchronized long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /** Returns true if there are no buffered readings. */
+  public synchronized boolean isEmpty() {
+    return size == 0 && overflow.size() == 0;
+  }
+
+  /**
+   * Writes every buffered reading to {@code database} in a single commit. Must only be called from
+   * the thread that owns the database.
+   */
+  public void drainTo(SensorDatabase database, WriteFailureListener failureListener) {
+    Map<String, Integer> dropped;
+    synchronized (this) {
+      drainRequested = false;
+      timedDrainClaimed = false;
+      dropped = new HashMap<>(droppedSinceDrain);
+      droppedSinceDrain.clear();
+      for (int i = 0; i < size; i++) {
+        int slot = (head + i) % capacity;
+        drainBatch.add(
+            ids.get(trialIds[slot]),
+            ids.get(sensorIds[slot]),
+            tiers[slot],
+            timestamps[slot],
+            values[slot]);
+      }
+      for (int i = 0; i < overflow.size(); i++) {
+        drainBatch.add(
+            overflow.getTrialId(i),
+            overflow.getSensorId(i),
+            overflow.getResolutionTier(i),
+            overflow.getTimestampMillis(i),
+            overflow.getValue(i));
+      }
+      overflow.clear();
+      head = (head + size) % capacity;
+      size = 0;
+      // Nothing refers to the interned ids any more, so don't let them pile up across recordings.
+      ids.clear();
+      idIndexes.clear();
+    }
+    reportDropped(dropped, failureListener);
+    if (drainBatch.size() == 0) {
+      return;
+    }
+
+    try {
+      if (drainBatch.size() == 1) {
+        database.addScalarReading(
+            drainBatch.getTrialId(0),
+            drainBatch.getSensorId(0),
+            drainBatch.getResolutionTier(0),
+            drainBatch.getTimestampMillis(0),
+            drainBatch.getValue(0));
+      } else {
+        database.addScalarReadings(drainBatch);
+      }
+    } catch (Exception e) {
+      Set<String> failedSensors = new HashSet<>();
+      for (int i = 0; i < drainBatch.size(); i++) {
+        String sensorId = drainBatch.getSensorId(i);
+        if (failedSensors.add(sensorId)) {
+          failureListener.onWriteFailed(sensorId, e);
+        }
+      }
+    } finally {
+      drainBatch.clear();
+    }
+  }
+
+  private static void reportDropped(
+      Map<String, Integer> dropped, WriteFailureListener failureListener) {
+    for (Map.Entry<String, Integer> entry : dropped.entrySet()) {
+      ReadingsDroppedException e = new ReadingsDroppedException(entry.getValue());
+      if (Log.isLoggable(TAG, Log.WARN)) {
+        Log.w(TAG, "Sensor " + entry.getKey() + ": " + e.getMessage());
+      }
+      failureListener.onWriteFailed(entry.getKey(), e);
+    }
+  }
+
+  private int intern(String id) {
+    Integer index = idIndexes.get(id);
+    if (index == null) {
+      index = ids.size();
+      ids.add(id);
+      idIndexes.put(id, index);
+    }
+    return index;
+  }
+}
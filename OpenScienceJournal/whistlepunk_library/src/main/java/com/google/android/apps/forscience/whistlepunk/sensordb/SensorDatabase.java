@@ -16,11 +16,15 @@
 
 package com.google.android.apps.forscience.whistlepunk.sensordb;
 
+import androidx.annotation.Nullable;
 import com.google.android.apps.forscience.whistlepunk.BatchInsertScalarReading;
+import com.google.android.apps.forscience.whistlepunk.ScalarReadingBatch;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataDump;
 import io.reactivex.Observable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -32,6 +36,9 @@ public interface SensorDatabase {
   /** Add all of the readings to the database. */
   void addScalarReadings(List<BatchInsertScalarReading> readings);
 
+  /** Add all of the readings in the batch to the database. Does not release the batch. */
+  void addScalarReadings(ScalarReadingBatch readings);
+
   /**
    * See {@link #getScalarReadings(String, String, TimeRange, int, int)} for semantics of these
    * params
@@ -39,6 +46,12 @@ public interface SensorDatabase {
   void addScalarReading(
       String trialId, String sensorTag, int resolutionTier, long timestampMillis, double value);
 
+  /**
+   * Makes every reading added so far durable. Single readings may be kept in memory until this is
+   * called, or until enough of them have accumulated.
+   */
+  void flush();
+
   /**
    * Get stored scalar records
    *
@@ -55,6 +68,20 @@ public interface SensorDatabase {
   ScalarReadingList getScalarReadings(
       String trialId, String sensorTag, TimeRange range, int resolutionTier, int maxRecords);
 
+  /**
+   * Reads all of a sensor's readings in the time range in a single pass, handing them to the
+   * consumer in order, in chunks of up to {@code chunkSize} readings. Reading stops early if the
+   * consumer returns false. Like {@link #getScalarReadings}, falls back to readings stored without
+   * a trial id if the trial has none.
+   */
+  void readScalarReadingChunks(
+      String trialId,
+      String sensorTag,
+      TimeRange range,
+      int resolutionTier,
+      int chunkSize,
+      ScalarReadingChunkConsumer consumer);
+
   /**
    * Find the first sensor reading after {@code timestamp}. Return the database tag that represents
    * the sensor corresponding to the reading. This is likely to only be of value as long as we're
@@ -65,9 +92,20 @@ public interface SensorDatabase {
   /** Deletes the scalar records for the given sensor for the given time range. */
   void deleteScalarReadings(String trialId, String sensorTag, TimeRange range);
 
+  /**
+   * Emits the readings of the given sensors in the time range, oldest first. Readings with equal
+   * timestamps are ordered by sensor, in the order of {@code sensorTags}.
+   */
   Observable<ScalarReading> createScalarObservable(
       String trialId, String[] sensorTags, TimeRange range, int resolutionTier);
 
+  /**
+   * Like {@link #createScalarObservable}, but emits the readings in batches of primitive columns
+   * rather than as one object per reading.
+   */
+  Observable<ScalarReadingBatch> createScalarBatchObservable(
+      String trialId, String[] sensorTags, TimeRange range, int resolutionTier);
+
   /**
    * Get a proto that contains all of the sensor data for the given experiment. Primarily used for
    * exporting experiments from the app.
@@ -87,4 +125,13 @@ public interface SensorDatabase {
    */
   GoosciScalarSensorData.ScalarSensorData getScalarReadingProtosForTrial(
       GoosciExperiment.Experiment experiment, String trialId);
+
+  /**
+   * Writes the serialized bytes of {@link #getScalarReadingProtos}, or of {@link
+   * #getScalarReadingProtosForTrial} if {@code trialId} is not null, to {@code output}. Rows are
+   * written as they are read, so memory use does not grow with the amount of data.
+   */
+  void writeScalarReadingProtos(
+      GoosciExperiment.Experiment experiment, @Nullable String trialId, OutputStream output)
+      throws IOException;
 }
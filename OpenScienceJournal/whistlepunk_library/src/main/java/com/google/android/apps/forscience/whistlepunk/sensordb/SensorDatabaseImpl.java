@@ -16,14 +16,15 @@
 
 package com.google.android.apps.forscience.whistlepunk.sensordb;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
-import androidx.core.util.Pair;
 import com.google.android.apps.forscience.whistlepunk.BatchInsertScalarReading;
+import com.google.android.apps.forscience.whistlepunk.ScalarReadingBatch;
 import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciSensorLayout;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
@@ -31,18 +32,18 @@ import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSenso
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataDump;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataRow;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial;
-import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
-import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.BoundType;
 import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.Range;
 import io.reactivex.Observable;
-import io.reactivex.ObservableEmitter;
-import io.reactivex.ObservableOnSubscribe;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SensorDatabaseImpl implements SensorDatabase {
   private static class DbVersions {
@@ -50,7 +51,8 @@ public class SensorDatabaseImpl implements SensorDatabase {
     public static final int V2_INDEX = 2;
     public static final int V3_TIER = 3;
     public static final int V4_TRIALID = 4;
-    public static final int CURRENT = V4_TRIALID;
+    public static final int V5_SERIES_INDEX = 5;
+    public static final int CURRENT = V5_SERIES_INDEX;
   }
 
   private static class ScalarSensorsTable {
@@ -83,18 +85,129 @@ public class SensorDatabaseImpl implements SensorDatabase {
 
     public static final String INDEX_SQL =
         "CREATE INDEX timestamp ON " + NAME + "(" + Column.TIMESTAMP_MILLIS + ");";
+
+    // Every series query filters on trial, tag and tier and then scans a time range. Including
+    // the value makes this a covering index, so range reads never touch the table itself.
+    public static final String SERIES_INDEX_SQL =
+        "CREATE INDEX series ON "
+            + NAME
+            + "("
+            + Column.TRIAL_ID
+            + ", "
+            + Column.TAG
+            + ", "
+            + Column.RESOLUTION_TIER
+            + ", "
+            + Column.TIMESTAMP_MILLIS
+            + ", "
+            + Column.VALUE
+            + ");";
   }
 
+  /**
+   * Builds the SQL for reading and deleting scalar rows.
+   *
+   * <p>Time ranges are always bound as closed [min, max] bounds, so the SQL text only depends on
+   * the number of tags, the order, and whether a tier and a limit are given. SQLiteDatabase keeps
+   * a per-connection cache of compiled statements keyed by SQL text, so reusing these strings
+   * means each shape is only compiled once instead of on every query.
+   */
+  @VisibleForTesting
+  static class ScalarQueries {
+    private static final String COLUMNS =
+        Joiner.on(", ")
+            .join(
+                ScalarSensorsTable.Column.TIMESTAMP_MILLIS,
+                ScalarSensorsTable.Column.VALUE,
+                ScalarSensorsTable.Column.TAG,
+                ScalarSensorsTable.Column.TRIAL_ID);
+
+    static final String INSERT_SQL =
+        "INSERT INTO "
+            + ScalarSensorsTable.NAME
+            + " ("
+            + Joiner.on(", ")
+                .join(
+                    ScalarSensorsTable.Column.TRIAL_ID,
+                    ScalarSensorsTable.Column.TAG,
+                    ScalarSensorsTable.Column.RESOLUTION_TIER,
+                    ScalarSensorsTable.Column.TIMESTAMP_MILLIS,
+                    ScalarSensorsTable.Column.VALUE)
+            + ") VALUES (?, ?, ?, ?, ?)";
+
+    static final String DELETE_ALL_TIERS_SQL =
+        "DELETE FROM "
+            + ScalarSensorsTable.NAME
+            + " WHERE "
+            + ScalarSensorsTable.Column.TRIAL_ID
+            + " = ? AND "
+            + ScalarSensorsTable.Column.TAG
+            + " = ? AND "
+            + ScalarSensorsTable.Column.TIMESTAMP_MILLIS
+            + " BETWEEN ? AND ?";
+
+    private final Map<Integer, String> selectSql = new ConcurrentHashMap<>();
+
+    String getSelectSql(int tagCount, boolean newestFirst, boolean hasTier, boolean hasLimit) {
+      int key = (tagCount << 3) | (newestFirst ? 4 : 0) | (hasTier ? 2 : 0) | (hasLimit ? 1 : 0);
+      String sql = selectSql.get(key);
+      if (sql == null) {
+        sql = buildSelectSql(tagCount, newestFirst, hasTier, hasLimit);
+        selectSql.put(key, sql);
+      }
+      return sql;
+    }
+
+    private static String buildSelectSql(
+        int tagCount, boolean newestFirst, boolean hasTier, boolean hasLimit) {
+      // Column order matches the series index, so SQLite can seek straight to the range.
+      StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS);
+      sql.append(" FROM ").append(ScalarSensorsTable.NAME);
+      sql.append(" WHERE ").append(ScalarSensorsTable.Column.TRIAL_ID).append(" = ?");
+      sql.append(" AND ").append(ScalarSensorsTable.Column.TAG);
+      if (tagCount == 1) {
+        sql.append(" = ?");
+      } else {
+        sql.append(" IN (?");
+        for (int i = 1; i < tagCount; i++) {
+          sql.append(",?");
+        }
+        sql.append(")");
+      }
+      if (hasTier) {
+        sql.append(" AND ").append(ScalarSensorsTable.Column.RESOLUTION_TIER).append(" = ?");
+      }
+      sql.append(" AND ").append(ScalarSensorsTable.Column.TIMESTAMP_MILLIS);
+      sql.append(" BETWEEN ? AND ?");
+      sql.append(" ORDER BY ").append(ScalarSensorsTable.Column.TIMESTAMP_MILLIS);
+      sql.append(newestFirst ? " DESC" : " ASC");
+      if (hasLimit) {
+        sql.append(" LIMIT CAST(? AS INTEGER)");
+      }
+      return sql.toString();
+    }
+  }
+
+  // How many rows of each sensor are read per query when merging them.
+  private static final int PAGE_SIZE = 500;
+
+  private final Context context;
+  private final String databaseFileName;
   private final SQLiteOpenHelper openHelper;
+  private final ScalarQueries queries = new ScalarQueries();
+  private SQLiteStatement insertStatement;
+  private SQLiteStatement deleteStatement;
 
   public SensorDatabaseImpl(Context context, AppAccount appAccount, String name) {
+    this.context = context;
+    databaseFileName = appAccount.getDatabaseFileName(name);
     openHelper =
-        new SQLiteOpenHelper(
-            context, appAccount.getDatabaseFileName(name), null, DbVersions.CURRENT) {
+        new SQLiteOpenHelper(context, databaseFileName, null, DbVersions.CURRENT) {
           @Override
           public void onCreate(SQLiteDatabase db) {
             db.execSQL(ScalarSensorsTable.CREATION_SQL);
             db.execSQL(ScalarSensorsTable.INDEX_SQL);
+            db.execSQL(ScalarSensorsTable.SERIES_INDEX_SQL);
           }
 
           @Override
@@ -122,6 +235,10 @@ public class SensorDatabaseImpl implements SensorDatabase {
                         + " TEXT DEFAULT 0 NOT NULL;");
                 oldVersion = DbVersions.V4_TRIALID;
               }
+              if (oldVersion == DbVersions.V4_TRIALID) {
+                db.execSQL(ScalarSensorsTable.SERIES_INDEX_SQL);
+                oldVersion = DbVersions.V5_SERIES_INDEX;
+              }
             }
           }
         };
@@ -133,13 +250,26 @@ public class SensorDatabaseImpl implements SensorDatabase {
     try {
       db.beginTransaction();
       for (BatchInsertScalarReading r : readings) {
-        ContentValues values = new ContentValues();
-        values.put(ScalarSensorsTable.Column.TRIAL_ID, r.trialId);
-        values.put(ScalarSensorsTable.Column.TAG, r.sensorId);
-        values.put(ScalarSensorsTable.Column.TIMESTAMP_MILLIS, r.timestampMillis);
-        values.put(ScalarSensorsTable.Column.VALUE, r.value);
-        values.put(ScalarSensorsTable.Column.RESOLUTION_TIER, r.resolutionTier);
-        db.insert(ScalarSensorsTable.NAME, null, values);
+        insert(r.trialId, r.sensorId, r.resolutionTier, r.timestampMillis, r.value);
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  @Override
+  public void addScalarReadings(ScalarReadingBatch readings) {
+    SQLiteDatabase db = openHelper.getWritableDatabase();
+    try {
+      db.beginTransaction();
+      for (int i = 0; i < readings.size(); i++) {
+        insert(
+            readings.getTrialId(i),
+            readings.getSensorId(i),
+            readings.getResolutionTier(i),
+            readings.getTimestampMillis(i),
+            readings.getValue(i));
       }
       db.setTransactionSuccessful();
     } finally {
@@ -150,68 +280,69 @@ public class SensorDatabaseImpl implements SensorDatabase {
   @Override
   public void addScalarReading(
       String trialId, String sourceTag, int resolutionTier, long timestampMillis, double value) {
-    ContentValues values = new ContentValues();
-    values.put(ScalarSensorsTable.Column.TRIAL_ID, trialId);
-    values.put(ScalarSensorsTable.Column.TAG, sourceTag);
-    values.put(ScalarSensorsTable.Column.TIMESTAMP_MILLIS, timestampMillis);
-    values.put(ScalarSensorsTable.Column.VALUE, value);
-    values.put(ScalarSensorsTable.Column.RESOLUTION_TIER, resolutionTier);
-    openHelper.getWritableDatabase().insert(ScalarSensorsTable.NAME, null, values);
+    insert(trialId, sourceTag, resolutionTier, timestampMillis, value);
+  }
+
+  @Override
+  public void flush() {
+    // Every insert is written to SQLite as it is made.
   }
 
   /**
-   * Gets the selection string and selectionArgs based on the tag, range and resolution tier.
-   *
-   * @return a pair where the first element is the selection string and the second element is the
-   *     array of selectionArgs.
+   * Inserts one row by binding into a single compiled statement, so that a large batch doesn't
+   * build a ContentValues and an INSERT string per row.
    */
-  private Pair<String, String[]> getSelectionAndArgs(
-      String trialId, String[] sensorTags, TimeRange range, int resolutionTier) {
-    List<String> clauses = new ArrayList<>();
-    List<String> values = new ArrayList<>();
-
-    if (sensorTags != null || sensorTags.length == 0) {
-      if (sensorTags.length == 1) {
-        clauses.add(ScalarSensorsTable.Column.TAG + " = ?");
-        values.add(sensorTags[0]);
-      } else {
-        // Generate "(?,?...") for length.
-        StringBuilder bindString = new StringBuilder();
-        for (String sensorTag : sensorTags) {
-          values.add(sensorTag);
-          if (bindString.length() == 0) {
-            bindString.append("(?");
-          } else {
-            bindString.append(",?");
-          }
-        }
-        bindString.append(")");
-        clauses.add(ScalarSensorsTable.Column.TAG + " IN " + bindString.toString());
-      }
+  private void insert(
+      String trialId, String sourceTag, int resolutionTier, long timestampMillis, double value) {
+    if (insertStatement == null) {
+      insertStatement = openHelper.getWritableDatabase().compileStatement(ScalarQueries.INSERT_SQL);
     }
+    insertStatement.bindString(1, trialId);
+    insertStatement.bindString(2, sourceTag);
+    insertStatement.bindLong(3, resolutionTier);
+    insertStatement.bindLong(4, timestampMillis);
+    insertStatement.bindDouble(5, value);
+    insertStatement.executeInsert();
+  }
 
-    clauses.add(ScalarSensorsTable.Column.TRIAL_ID + " = ?");
-    values.add(Preconditions.checkNotNull(trialId));
-
-    if (resolutionTier >= 0) {
-      clauses.add(ScalarSensorsTable.Column.RESOLUTION_TIER + " = ?");
-      values.add(String.valueOf(resolutionTier));
+  /**
+   * Gets the arguments for a query built by {@link ScalarQueries#getSelectSql}: the trial id, each
+   * tag, the tier if non-negative, the closed time bounds, and the limit if positive.
+   */
+  @VisibleForTesting
+  static String[] getSelectionArgs(
+      String trialId, String[] sensorTags, TimeRange range, int resolutionTier, int maxRecords) {
+    int count = 3 + sensorTags.length + (resolutionTier >= 0 ? 1 : 0) + (maxRecords > 0 ? 1 : 0);
+    String[] args = new String[count];
+    int i = 0;
+    args[i++] = Preconditions.checkNotNull(trialId);
+    for (String sensorTag : sensorTags) {
+      args[i++] = sensorTag;
     }
-
-    Range<Long> times = range.getTimes();
-    Range<Long> canonicalTimes = times.canonical(DiscreteDomain.longs());
-    if (canonicalTimes.hasLowerBound()) {
-      String comparator = (canonicalTimes.lowerBoundType() == BoundType.CLOSED) ? " >= ?" : " > ?";
-      clauses.add(ScalarSensorsTable.Column.TIMESTAMP_MILLIS + comparator);
-      values.add(String.valueOf(canonicalTimes.lowerEndpoint()));
+    if (resolutionTier >= 0) {
+      args[i++] = String.valueOf(resolutionTier);
     }
-    if (canonicalTimes.hasUpperBound()) {
-      String comparator = (canonicalTimes.upperBoundType() == BoundType.CLOSED) ? " <= ?" : " < ?";
-      clauses.add(ScalarSensorsTable.Column.TIMESTAMP_MILLIS + comparator);
-      values.add(String.valueOf(canonicalTimes.upperEndpoint()));
+    args[i++] = String.valueOf(getMinTime(range));
+    args[i++] = String.valueOf(getMaxTime(range));
+    if (maxRecords > 0) {
+      args[i++] = String.valueOf(maxRecords);
     }
+    return args;
+  }
 
-    return new Pair<>(Joiner.on(" AND ").join(clauses), values.toArray(new String[values.size()]));
+  private static long getMinTime(TimeRange range) {
+    Range<Long> canonicalTimes = range.getTimes().canonical(DiscreteDomain.longs());
+    // Canonical ranges over a discrete domain are always closed below, if bounded.
+    return canonicalTimes.hasLowerBound() ? canonicalTimes.lowerEndpoint() : Long.MIN_VALUE;
+  }
+
+  private static long getMaxTime(TimeRange range) {
+    Range<Long> canonicalTimes = range.getTimes().canonical(DiscreteDomain.longs());
+    if (!canonicalTimes.hasUpperBound()) {
+      return Long.MAX_VALUE;
+    }
+    long upper = canonicalTimes.upperEndpoint();
+    return canonicalTimes.upperBoundType() == BoundType.CLOSED ? upper : upper - 1;
   }
 
   @Override
@@ -236,6 +367,39 @@ public class SensorDatabaseImpl implements SensorDatabase {
     }
   }
 
+  @Override
+  public void readScalarReadingChunks(
+      String trialId,
+      String sensorTag,
+      TimeRange range,
+      int resolutionTier,
+      int chunkSize,
+      ScalarReadingChunkConsumer consumer) {
+    ScalarReadingChunker chunker = new ScalarReadingChunker(chunkSize, consumer);
+    readIntoChunker(trialId, sensorTag, range, resolutionTier, chunker);
+    if (chunker.getTotal() == 0) {
+      // Database returned no results with Trial Id; Attempt to use default Trial Id
+      readIntoChunker(
+          ScalarSensorsTable.DEFAULT_TRIAL_ID, sensorTag, range, resolutionTier, chunker);
+    }
+    chunker.finish();
+  }
+
+  private void readIntoChunker(
+      String trialId,
+      String sensorTag,
+      TimeRange range,
+      int resolutionTier,
+      ScalarReadingChunker chunker) {
+    try (Cursor cursor = getCursor(trialId, new String[] {sensorTag}, range, resolutionTier, 0)) {
+      while (cursor.moveToNext()) {
+        if (!chunker.take(cursor.getLong(0), cursor.getDouble(1))) {
+          return;
+        }
+      }
+    }
+  }
+
   private ScalarReadingList cursorAsScalarReadingList(Cursor cursor, int maxRecords) {
     final int max = maxRecords <= 0 ? cursor.getCount() : maxRecords;
     final long[] readTimestamps = new long[max];
@@ -246,35 +410,13 @@ public class SensorDatabaseImpl implements SensorDatabase {
       readValues[i] = cursor.getDouble(1);
       i++;
     }
-    final int actualCount = i;
-    return new ScalarReadingList() {
-      @Override
-      public void deliver(StreamConsumer c) {
-        for (int i = 0; i < actualCount; i++) {
-          c.addData(readTimestamps[i], readValues[i]);
-        }
-      }
-
-      @Override
-      public int size() {
-        return actualCount;
-      }
-
-      @Override
-      public List<ChartData.DataPoint> asDataPoints() {
-        List<ChartData.DataPoint> result = new ArrayList<>();
-        for (int i = 0; i < actualCount; i++) {
-          result.add(new ChartData.DataPoint(readTimestamps[i], readValues[i]));
-        }
-        return result;
-      }
-    };
+    return new ArrayScalarReadingList(readTimestamps, readValues, i);
   }
 
   @Override
   public Observable<ScalarReading> createScalarObservable(
       String trialId, String[] sensorTags, final TimeRange range, int resolutionTier) {
-    return createScalarObservable(trialId, sensorTags, range, resolutionTier, 500);
+    return createScalarObservable(trialId, sensorTags, range, resolutionTier, PAGE_SIZE);
   }
 
   @VisibleForTesting
@@ -284,70 +426,51 @@ public class SensorDatabaseImpl implements SensorDatabase {
       final TimeRange range,
       int resolutionTier,
       int pageSize) {
-    return Observable.create(
-        new ObservableOnSubscribe<ScalarReading>() {
+    return ScalarReadingMerger.toReadings(
+        createScalarBatchObservable(trialId, sensorTags, range, resolutionTier, pageSize));
+  }
 
-          private long lastTimeStampWritten = -1;
+  @Override
+  public Observable<ScalarReadingBatch> createScalarBatchObservable(
+      String trialId, String[] sensorTags, TimeRange range, int resolutionTier) {
+    return createScalarBatchObservable(trialId, sensorTags, range, resolutionTier, PAGE_SIZE);
+  }
 
-          @Override
-          public void subscribe(ObservableEmitter<ScalarReading> observableEmitter)
-              throws Exception {
-            // Start by opening the cursor.
-            TimeRange searchRange = range;
-            while (true) {
-              try (Cursor cursor =
-                  getCursor(trialId, sensorTags, searchRange, resolutionTier, pageSize)) {
-                if (cursor != null) {
-                  int count = 0;
-                  while (cursor.moveToNext()) {
-                    long timeStamp = cursor.getLong(0);
-                    String sensorTag = cursor.getString(2);
-                    observableEmitter.onNext(
-                        new ScalarReading(timeStamp, cursor.getDouble(1), sensorTag));
-                    lastTimeStampWritten = timeStamp;
-                    count++;
-                  }
-                  if (count == 0 || observableEmitter.isDisposed()) {
-                    break;
-                  }
-                }
-              }
-              if (lastTimeStampWritten >= range.getTimes().upperEndpoint()) {
-                break;
-              } else {
-                Range<Long> times =
-                    Range.openClosed(lastTimeStampWritten, range.getTimes().upperEndpoint());
-                searchRange = TimeRange.oldest(times);
-              }
-              if (observableEmitter.isDisposed()) {
-                break;
-              }
-            }
-            observableEmitter.onComplete();
+  /**
+   * Merges one paged cursor per sensor, instead of paging through all of the sensors at once,
+   * which could not tell where to resume when a page ended part way through a timestamp.
+   */
+  private Observable<ScalarReadingBatch> createScalarBatchObservable(
+      String trialId, String[] sensorTags, TimeRange range, int resolutionTier, int pageSize) {
+    long minTime = getMinTime(range);
+    long maxTime = getMaxTime(range);
+    return ScalarReadingMerger.createBatchObservable(
+        trialId,
+        sensorTags,
+        resolutionTier,
+        pageSize,
+        () -> {
+          SeriesFile.PointCursor[] cursors = new SeriesFile.PointCursor[sensorTags.length];
+          for (int i = 0; i < sensorTags.length; i++) {
+            cursors[i] =
+                new PagedPoints(trialId, sensorTags[i], minTime, maxTime, resolutionTier, pageSize);
           }
+          return cursors;
         });
   }
 
   private Cursor getCursor(
       String trialId, String[] sensorTags, TimeRange range, int resolutionTier, int maxRecords) {
-    String[] columns =
-        new String[] {
-          ScalarSensorsTable.Column.TIMESTAMP_MILLIS, ScalarSensorsTable.Column.VALUE,
-          ScalarSensorsTable.Column.TAG, ScalarSensorsTable.Column.TRIAL_ID
-        };
-    Pair<String, String[]> selectionAndArgs =
-        getSelectionAndArgs(trialId, sensorTags, range, resolutionTier);
-    String selection = selectionAndArgs.first;
-    String[] selectionArgs = selectionAndArgs.second;
-    String orderBy =
-        ScalarSensorsTable.Column.TIMESTAMP_MILLIS
-            + (range.getOrder().equals(TimeRange.ObservationOrder.OLDEST_FIRST) ? " ASC" : " DESC");
-    String limit = maxRecords <= 0 ? null : String.valueOf(maxRecords);
-
+    Preconditions.checkArgument(sensorTags.length > 0);
+    String sql =
+        queries.getSelectSql(
+            sensorTags.length,
+            range.getOrder().equals(TimeRange.ObservationOrder.NEWEST_FIRST),
+            resolutionTier >= 0,
+            maxRecords > 0);
     return openHelper
         .getReadableDatabase()
-        .query(
-            ScalarSensorsTable.NAME, columns, selection, selectionArgs, null, null, orderBy, limit);
+        .rawQuery(sql, getSelectionArgs(trialId, sensorTags, range, resolutionTier, maxRecords));
   }
 
   @Override
@@ -440,12 +563,17 @@ public class SensorDatabaseImpl implements SensorDatabase {
 
   @Override
   public void deleteScalarReadings(String trialId, String sensorTag, TimeRange range) {
-    Pair<String, String[]> selectionAndArgs =
-        getSelectionAndArgs(
-            trialId, new String[] {sensorTag}, range, -1 /* delete all resolutions */);
-    String selection = selectionAndArgs.first;
-    String[] selectionArgs = selectionAndArgs.second;
-    openHelper.getWritableDatabase().delete(ScalarSensorsTable.NAME, selection, selectionArgs);
+    // Deletes all resolution tiers.
+    if (deleteStatement == null) {
+      deleteStatement =
+          openHelper.getWritableDatabase().compileStatement(ScalarQueries.DELETE_ALL_TIERS_SQL);
+    }
+    deleteStatement.bindString(1, Preconditions.checkNotNull(trialId));
+    deleteStatement.bindString(2, sensorTag);
+    deleteStatement.bindLong(3, getMinTime(range));
+    deleteStatement.bindLong(4, getMaxTime(range));
+    deleteStatement.executeUpdateDelete();
+    deleteStatement.clearBindings();
   }
 
   @Override
@@ -476,4 +604,229 @@ public class SensorDatabaseImpl implements SensorDatabase {
     }
     return sensorDataList;
   }
+
+  @Override
+  public void writeScalarReadingProtos(
+      GoosciExperiment.Experiment experiment, @Nullable String trialId, OutputStream output)
+      throws IOException {
+    ScalarSensorDataWriter writer = new ScalarSensorDataWriter(output);
+    for (GoosciTrial.Trial trial : experiment.getTrialsList()) {
+      if (trialId != null && !trial.getTrialId().equals(trialId)) {
+        continue;
+      }
+      GoosciTrial.Range range = trial.getRecordingRange();
+      // This protects against corrupted trials with invalid range end times.
+      if (range.getEndMs() > range.getStartMs()) {
+        TimeRange timeRange = TimeRange.oldest(Range.closed(range.getStartMs(), range.getEndMs()));
+        for (GoosciSensorLayout.SensorLayout sensor : trial.getSensorLayoutsList()) {
+          String[] tags = new String[] {sensor.getSensorId()};
+          String storedTrialId = trial.getTrialId();
+          try (Cursor first = getCursor(storedTrialId, tags, timeRange, 0, 1)) {
+            if (first.getCount() == 0) {
+              // Same fallback as getScalarReadingSensorProtos, for pre-export trials.
+              storedTrialId = ScalarSensorsTable.DEFAULT_TRIAL_ID;
+            }
+          }
+          String queryTrialId = storedTrialId;
+          // Android cursors hold one window of rows at a time, so this never loads the whole
+          // series into memory.
+          writer.writeSensor(
+              trial.getTrialId(),
+              tags[0],
+              () -> new CursorPoints(getCursor(queryTrialId, tags, timeRange, 0, 0)));
+        }
+      }
+    }
+    writer.flush();
+  }
+
+  /** Reads (timestamp, value) rows from a cursor over {@link ScalarQueries#getSelectSql}. */
+  private static class CursorPoints implements SeriesFile.PointCursor {
+    private final Cursor cursor;
+
+    CursorPoints(Cursor cursor) {
+      this.cursor = cursor;
+    }
+
+    @Override
+    public boolean next() {
+      return cursor.moveToNext();
+    }
+
+    @Override
+    public long getTimestamp() {
+      return cursor.getLong(0);
+    }
+
+    @Override
+    public double getValue() {
+      return cursor.getDouble(1);
+    }
+
+    @Override
+    public void close() {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Reads one sensor's (timestamp, value) rows a page at a time, so that no query holds more than a
+   * page of rows. Each page starts at the timestamp the previous one ended on and skips the rows
+   * already read at that timestamp, so no row is skipped or repeated even when several share it.
+   */
+  private class PagedPoints implements SeriesFile.PointCursor {
+    private final String trialId;
+    private final String[] sensorTags;
+    private final long maxTime;
+    private final int resolutionTier;
+    private final int pageSize;
+
+    private Cursor page;
+    private int pageLimit;
+    private int rowsToSkip;
+    private boolean lastPage = false;
+
+    private long nextMinTime;
+    private boolean hasPoint = false;
+    private long timestamp;
+    private double value;
+    // How many rows have been read at the current timestamp.
+    private int rowsAtTimestamp;
+
+    PagedPoints(
+        String trialId,
+        String sensorTag,
+        long minTime,
+        long maxTime,
+        int resolutionTier,
+        int pageSize) {
+      this.trialId = trialId;
+      this.sensorTags = new String[] {sensorTag};
+      this.nextMinTime = minTime;
+      this.maxTime = maxTime;
+      this.resolutionTier = resolutionTier;
+      this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean next() {
+      while (true) {
+        if (page == null) {
+          if (lastPage) {
+            return false;
+          }
+          openPage();
+        }
+        if (page.moveToNext()) {
+          if (rowsToSkip > 0) {
+            rowsToSkip--;
+            continue;
+          }
+          long rowTimestamp = page.getLong(0);
+          if (hasPoint && rowTimestamp == timestamp) {
+            rowsAtTimestamp++;
+          } else {
+            rowsAtTimestamp = 1;
+          }
+          hasPoint = true;
+          timestamp = rowTimestamp;
+          value = page.getDouble(1);
+          return true;
+        }
+        // A page with fewer rows than asked for reached the end of the range.
+        lastPage = page.getCount() < pageLimit;
+        page.close();
+        page = null;
+      }
+    }
+
+    private void openPage() {
+      if (hasPoint) {
+        nextMinTime = timestamp;
+        rowsToSkip = rowsAtTimestamp;
+      }
+      pageLimit = pageSize + rowsToSkip;
+      page =
+          getCursor(
+              trialId,
+              sensorTags,
+              TimeRange.oldest(Range.closed(nextMinTime, maxTime)),
+              resolutionTier,
+              pageLimit);
+    }
+
+    @Override
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    @Override
+    public double getValue() {
+      return value;
+    }
+
+    @Override
+    public void close() {
+      if (page != null) {
+        page.close();
+        page = null;
+      }
+      lastPage = true;
+    }
+  }
+
+  /** Returns true if the database file has been created on disk. */
+  boolean exists() {
+    return context.getDatabasePath(databaseFileName).exists();
+  }
+
+  /**
+   * Copies every stored reading into {@code destination}, grouped by trial, sensor and resolution
+   * tier, and in timestamp order within each group. Used to migrate to {@link
+   * ColumnarSensorDatabase}.
+   */
+  void copyAllReadingsTo(SensorDatabase destination) {
+    String[] columns =
+        new String[] {
+          ScalarSensorsTable.Column.TRIAL_ID,
+          ScalarSensorsTable.Column.TAG,
+          ScalarSensorsTable.Column.RESOLUTION_TIER,
+          ScalarSensorsTable.Column.TIMESTAMP_MILLIS,
+          ScalarSensorsTable.Column.VALUE
+        };
+    String orderBy =
+        Joiner.on(", ")
+            .join(
+                ScalarSensorsTable.Column.TRIAL_ID,
+                ScalarSensorsTable.Column.TAG,
+                ScalarSensorsTable.Column.RESOLUTION_TIER,
+                ScalarSensorsTable.Column.TIMESTAMP_MILLIS);
+    try (Cursor cursor =
+        openHelper
+            .getReadableDatabase()
+            .query(ScalarSensorsTable.NAME, columns, null, null, null, null, orderBy)) {
+      while (cursor.moveToNext()) {
+        destination.addScalarReading(
+            cursor.getString(0),
+            cursor.getString(1),
+            cursor.getInt(2),
+            cursor.getLong(3),
+            cursor.getDouble(4));
+      }
+    }
+  }
+
+  /** Closes and permanently deletes the database file. */
+  void deleteDatabase() {
+    if (insertStatement != null) {
+      insertStatement.close();
+      insertStatement = null;
+    }
+    if (deleteStatement != null) {
+      deleteStatement.close();
+      deleteStatement = null;
+    }
+    openHelper.close();
+    context.deleteDatabase(databaseFileName);
+  }
 }
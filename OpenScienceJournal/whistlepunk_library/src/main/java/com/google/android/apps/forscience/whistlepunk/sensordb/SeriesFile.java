@@ -0,0 +1,698 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An append-only file holding the readings of a single (trial, sensor, resolution tier) series.
+ *
+ * <p>Readings are grouped into blocks. Each block starts with a fixed-size header (point count and
+ * time bounds) followed by a payload in which timestamps are stored as zig-zag varint deltas and
+ * values as the XOR of their bits with the previous value, with leading and trailing zero bytes
+ * dropped. Slowly changing sensor data therefore costs only a few bytes per point.
+ *
+ * <p>The block headers form a sparse index that is kept in memory, so a range query only reads and
+ * decodes the blocks whose time bounds overlap the range. Points that have not yet filled a block
+ * are buffered in memory and are visible to readers immediately.
+ *
+ * <p>Not thread-safe; see {@link SensorDatabase} for threading requirements.
+ */
+class SeriesFile {
+  /** Maximum number of points in a single block. */
+  static final int MAX_BLOCK_POINTS = 256;
+
+  /**
+   * A partially-filled block is committed once it spans this much time, which bounds how much data
+   * a crash can lose for slow sensors.
+   */
+  static final long MAX_BLOCK_SPAN_MS = 2000;
+
+  private static final int BLOCK_MAGIC = 0x53434231; // "SCB1"
+  // magic, count, min time, max time, payload length
+  private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4;
+
+  /** Receives points read from a series. Return false to stop reading. */
+  interface PointSink {
+    boolean take(long timestampMillis, double value);
+  }
+
+  /** Forward iteration over the points of a series within a time range. */
+  interface PointCursor extends Closeable {
+    /** Advances to the next point, returning false when there are no more. */
+    boolean next();
+
+    long getTimestamp();
+
+    double getValue();
+
+    @Override
+    void close();
+  }
+
+  /** A cursor with no points. */
+  static final PointCursor EMPTY_CURSOR =
+      new PointCursor() {
+        @Override
+        public boolean next() {
+          return false;
+        }
+
+        @Override
+        public long getTimestamp() {
+          throw new IllegalStateException("No current point");
+        }
+
+        @Override
+        public double getValue() {
+          throw new IllegalStateException("No current point");
+        }
+
+        @Override
+        public void close() {}
+      };
+
+  private final File file;
+
+  // Sparse index: one entry per committed block.
+  private long[] blockOffsets = new long[16];
+  private long[] blockMinTimes = new long[16];
+  private long[] blockMaxTimes = new long[16];
+  private int[] blockSizes = new int[16];
+  private int blockCount = 0;
+  private long committedLength = 0;
+
+  // Points not yet committed to the file.
+  private final long[] pendingTimes = new long[MAX_BLOCK_POINTS];
+  private final double[] pendingValues = new double[MAX_BLOCK_POINTS];
+  private int pendingCount = 0;
+
+  private long lastTimestamp = Long.MIN_VALUE;
+  private boolean ordered = true;
+
+  private final BlockBuffer buffer = new BlockBuffer();
+  private final long[] decodedTimes = new long[MAX_BLOCK_POINTS];
+  private final double[] decodedValues = new double[MAX_BLOCK_POINTS];
+
+  /**
+   * Opens the series stored in {@code file}, creating an empty series if it does not exist. A
+   * trailing block that was only partially written (for example because the process died
+   * mid-write) is truncated away.
+   */
+  static SeriesFile open(File file) throws IOException {
+    SeriesFile series = new SeriesFile(file);
+    if (file.exists()) {
+      series.loadIndex();
+    }
+    return series;
+  }
+
+  private SeriesFile(File file) {
+    this.file = file;
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /** Returns true if the timestamps of this series have only ever been appended in order. */
+  boolean isOrdered() {
+    return ordered;
+  }
+
+  boolean hasPendingPoints() {
+    return pendingCount > 0;
+  }
+
+  boolean isEmpty() {
+    return blockCount == 0 && pendingCount == 0;
+  }
+
+  /** Returns the earliest timestamp in the series; only valid if {@link #isEmpty} is false. */
+  long getFirstTimestamp() {
+    long first = Long.MAX_VALUE;
+    for (int i = 0; i < blockCount; i++) {
+      first = Math.min(first, blockMinTimes[i]);
+      if (ordered) {
+        break;
+      }
+    }
+    for (int i = 0; i < pendingCount; i++) {
+      first = Math.min(first, pendingTimes[i]);
+    }
+    return first;
+  }
+
+  /** Returns the earliest timestamp strictly after {@code timestamp}, or null if there is none. */
+  Long getFirstTimestampAfter(long timestamp) {
+    final long[] result = {Long.MAX_VALUE};
+    read(
+        timestamp + 1,
+        Long.MAX_VALUE,
+        false,
+        (t, v) -> {
+          result[0] = Math.min(result[0], t);
+          return !ordered;
+        });
+    return result[0] == Long.MAX_VALUE ? null : result[0];
+  }
+
+  void append(long timestampMillis, double value) throws IOException {
+    if (timestampMillis < lastTimestamp) {
+      ordered = false;
+    }
+    lastTimestamp = timestampMillis;
+    pendingTimes[pendingCount] = timestampMillis;
+    pendingValues[pendingCount] = value;
+    pendingCount++;
+    if (pendingCount == MAX_BLOCK_POINTS
+        || timestampMillis - pendingTimes[0] >= MAX_BLOCK_SPAN_MS) {
+      commit();
+    }
+  }
+
+  /** Writes any buffered points to the file as a new block. */
+  void commit() throws IOException {
+    if (pendingCount == 0) {
+      return;
+    }
+    buffer.reset();
+    long minTime = Long.MAX_VALUE;
+    long maxTime = Long.MIN_VALUE;
+    long previousTime = 0;
+    long previousBits = 0;
+    boolean blockOrdered = true;
+    for (int i = 0; i < pendingCount; i++) {
+      long time = pendingTimes[i];
+      long bits = Double.doubleToRawLongBits(pendingValues[i]);
+      if (i > 0 && time < previousTime) {
+        blockOrdered = false;
+      }
+      minTime = Math.min(minTime, time);
+      maxTime = Math.max(maxTime, time);
+      buffer.writeVarLong(zigZag(time - previousTime));
+      buffer.writeXor(bits ^ previousBits);
+      previousTime = time;
+      previousBits = bits;
+    }
+
+    File parent = file.getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    byte[] block = new byte[HEADER_BYTES + buffer.length];
+    ByteBuffer.wrap(block)
+        .putInt(BLOCK_MAGIC)
+        // A negative count marks a block whose points are not in timestamp order.
+        .putInt(blockOrdered ? pendingCount : -pendingCount)
+        .putLong(minTime)
+        .putLong(maxTime)
+        .putInt(buffer.length)
+        .put(buffer.bytes, 0, buffer.length);
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      // Write at the end of the committed blocks rather than appending, so that anything left by a
+      // write that failed part way is overwritten instead of shifting this block from its index
+      // entry. The pending points are kept until a write succeeds, so a failed one is retried.
+      out.setLength(committedLength);
+      out.seek(committedLength);
+      out.write(block);
+      // Only index the block once it is on disk.
+      out.getFD().sync();
+    }
+    addIndexEntry(committedLength, minTime, maxTime, pendingCount);
+    committedLength += HEADER_BYTES + buffer.length;
+    pendingCount = 0;
+  }
+
+  /**
+   * Delivers every point with a timestamp in [{@code minTime}, {@code maxTime}] to {@code sink}, in
+   * storage order (or reverse storage order if {@code reverse} is set).
+   */
+  void read(long minTime, long maxTime, boolean reverse, PointSink sink) {
+    if (reverse && !readPending(minTime, maxTime, true, sink)) {
+      return;
+    }
+    if (blockCount > 0) {
+      try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+        for (int n = 0; n < blockCount; n++) {
+          int block = reverse ? blockCount - 1 - n : n;
+          boolean beforeRange = blockMaxTimes[block] < minTime;
+          boolean afterRange = blockMinTimes[block] > maxTime;
+          if (beforeRange || afterRange) {
+            if (ordered && (reverse ? beforeRange : afterRange)) {
+              // No later block (in iteration order) can overlap the range.
+              return;
+            }
+            continue;
+          }
+          int size = decodeBlock(in, block);
+          for (int j = 0; j < size; j++) {
+            int i = reverse ? size - 1 - j : j;
+            long time = decodedTimes[i];
+            if (time >= minTime && time <= maxTime && !sink.take(time, decodedValues[i])) {
+              return;
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw new SeriesStorageException("Could not read " + file, e);
+      }
+    }
+    if (!reverse) {
+      readPending(minTime, maxTime, false, sink);
+    }
+  }
+
+  private boolean readPending(long minTime, long maxTime, boolean reverse, PointSink sink) {
+    for (int j = 0; j < pendingCount; j++) {
+      int i = reverse ? pendingCount - 1 - j : j;
+      long time = pendingTimes[i];
+      if (time >= minTime && time <= maxTime && !sink.take(time, pendingValues[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a cursor over the points with timestamps in [{@code minTime}, {@code maxTime}], in
+   * timestamp order. Committed blocks are immutable, so the cursor stays valid while more points
+   * are appended; it only sees points that existed when it was opened.
+   *
+   * <p>The cursor opens the file immediately and reads through that descriptor until it is closed,
+   * so a {@link #delete} that replaces or removes the file in the meantime does not affect it: the
+   * old file stays readable until its last reader closes.
+   */
+  PointCursor openCursor(long minTime, long maxTime) {
+    if (!ordered) {
+      // Storage order is not timestamp order, so materialize and sort the range instead.
+      final SortedPoints points = new SortedPoints();
+      read(minTime, maxTime, false, points);
+      points.sort();
+      return points;
+    }
+    return new BlockCursor(minTime, maxTime);
+  }
+
+  /** Deletes every point with a timestamp in [{@code minTime}, {@code maxTime}]. */
+  void delete(long minTime, long maxTime) throws IOException {
+    commit();
+    File temp = new File(file.getPath() + ".tmp");
+    temp.delete();
+    final SeriesFile rewritten = new SeriesFile(temp);
+    final IOException[] failure = new IOException[1];
+    read(
+        Long.MIN_VALUE,
+        Long.MAX_VALUE,
+        false,
+        (t, v) -> {
+          if (t >= minTime && t <= maxTime) {
+            return true;
+          }
+          try {
+            rewritten.append(t, v);
+            return true;
+          } catch (IOException e) {
+            failure[0] = e;
+            return false;
+          }
+        });
+    if (failure[0] != null) {
+      temp.delete();
+      throw failure[0];
+    }
+    rewritten.commit();
+    if (rewritten.isEmpty()) {
+      file.delete();
+    } else if (!temp.renameTo(file)) {
+      temp.delete();
+      throw new IOException("Could not replace " + file);
+    }
+    blockOffsets = rewritten.blockOffsets;
+    blockMinTimes = rewritten.blockMinTimes;
+    blockMaxTimes = rewritten.blockMaxTimes;
+    blockSizes = rewritten.blockSizes;
+    blockCount = rewritten.blockCount;
+    committedLength = rewritten.committedLength;
+    ordered = rewritten.ordered;
+    lastTimestamp = rewritten.lastTimestamp;
+  }
+
+  private void loadIndex() throws IOException {
+    long fileLength = file.length();
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      long offset = 0;
+      while (offset + HEADER_BYTES <= fileLength) {
+        in.seek(offset);
+        if (in.readInt() != BLOCK_MAGIC) {
+          break;
+        }
+        int size = in.readInt();
+        if (size < 0) {
+          ordered = false;
+          size = -size;
+        }
+        long minTime = in.readLong();
+        long maxTime = in.readLong();
+        int payloadLength = in.readInt();
+        if (size == 0
+            || size > MAX_BLOCK_POINTS
+            || payloadLength < 0
+            || offset + HEADER_BYTES + payloadLength > fileLength) {
+          break;
+        }
+        if (blockCount > 0 && minTime < blockMaxTimes[blockCount - 1]) {
+          ordered = false;
+        }
+        addIndexEntry(offset, minTime, maxTime, size);
+        offset += HEADER_BYTES + payloadLength;
+      }
+      committedLength = offset;
+    }
+    if (committedLength < fileLength) {
+      try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+        out.setLength(committedLength);
+      }
+    }
+    if (blockCount > 0) {
+      // If the series is ordered, the newest point is the maximum of the last block. Otherwise
+      // the series is already marked out of order and lastTimestamp no longer matters.
+      lastTimestamp = blockMaxTimes[blockCount - 1];
+    }
+  }
+
+  private void addIndexEntry(long offset, long minTime, long maxTime, int size) {
+    if (blockCount == blockOffsets.length) {
+      int newLength = blockCount * 2;
+      blockOffsets = Arrays.copyOf(blockOffsets, newLength);
+      blockMinTimes = Arrays.copyOf(blockMinTimes, newLength);
+      blockMaxTimes = Arrays.copyOf(blockMaxTimes, newLength);
+      blockSizes = Arrays.copyOf(blockSizes, newLength);
+    }
+    blockOffsets[blockCount] = offset;
+    blockMinTimes[blockCount] = minTime;
+    blockMaxTimes[blockCount] = maxTime;
+    blockSizes[blockCount] = size;
+    blockCount++;
+  }
+
+  /** Decodes block {@code block} into decodedTimes/decodedValues and returns its size. */
+  private int decodeBlock(RandomAccessFile in, int block) throws IOException {
+    in.seek(blockOffsets[block] + HEADER_BYTES - 4);
+    int payloadLength = in.readInt();
+    buffer.ensureCapacity(payloadLength);
+    in.readFully(buffer.bytes, 0, payloadLength);
+    buffer.length = payloadLength;
+    buffer.position = 0;
+
+    int size = blockSizes[block];
+    long time = 0;
+    long bits = 0;
+    for (int i = 0; i < size; i++) {
+      time += unZigZag(buffer.readVarLong());
+      bits ^= buffer.readXor();
+      decodedTimes[i] = time;
+      decodedValues[i] = Double.longBitsToDouble(bits);
+    }
+    return size;
+  }
+
+  private static long zigZag(long n) {
+    return (n << 1) ^ (n >> 63);
+  }
+
+  private static long unZigZag(long n) {
+    return (n >>> 1) ^ -(n & 1);
+  }
+
+  /** Growable byte buffer with the block payload encodings. */
+  private static class BlockBuffer {
+    byte[] bytes = new byte[MAX_BLOCK_POINTS * 12];
+    int length;
+    int position;
+
+    void reset() {
+      length = 0;
+      position = 0;
+    }
+
+    void ensureCapacity(int capacity) {
+      if (bytes.length < capacity) {
+        bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+      }
+    }
+
+    void writeVarLong(long value) {
+      ensureCapacity(length + 10);
+      while ((value & ~0x7FL) != 0) {
+        bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      bytes[length++] = (byte) value;
+    }
+
+    /**
+     * Writes one control byte giving the number of leading and trailing zero bytes, followed by the
+     * remaining significant bytes of {@code xor}. A control byte of 0 means the value is unchanged.
+     */
+    void writeXor(long xor) {
+      ensureCapacity(length + 9);
+      if (xor == 0) {
+        bytes[length++] = 0;
+        return;
+      }
+      int leading = Long.numberOfLeadingZeros(xor) / 8;
+      int trailing = Long.numberOfTrailingZeros(xor) / 8;
+      bytes[length++] = (byte) (1 + leading * 8 + trailing);
+      for (int shift = 56 - leading * 8; shift >= trailing * 8; shift -= 8) {
+        bytes[length++] = (byte) (xor >>> shift);
+      }
+    }
+
+    long readVarLong() throws IOException {
+      long result = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = readByte();
+        result |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+      throw new IOException("Malformed varint");
+    }
+
+    long readXor() throws IOException {
+      int control = readByte() & 0xFF;
+      if (control == 0) {
+        return 0;
+      }
+      int leading = (control - 1) / 8;
+      int trailing = (control - 1) % 8;
+      long xor = 0;
+      for (int shift = 56 - leading * 8; shift >= trailing * 8; shift -= 8) {
+        xor |= (long) (readByte() & 0xFF) << shift;
+      }
+      return xor;
+    }
+
+    private byte readByte() throws IOException {
+      if (position >= length) {
+        throw new EOFException();
+      }
+      return bytes[position++];
+    }
+  }
+
+  /** Streams an ordered series block by block, decoding one block at a time. */
+  private class BlockCursor implements PointCursor {
+    private final long minTime;
+    private final long maxTime;
+    // Snapshot of the index and pending points at the time the cursor was opened.
+    private final long[] offsets = blockOffsets;
+    private final long[] minTimes = blockMinTimes;
+    private final int[] sizes = blockSizes;
+    private final int blocks = blockCount;
+    private final long[] pending = Arrays.copyOf(pendingTimes, pendingCount);
+    private final double[] pendingVals = Arrays.copyOf(pendingValues, pendingCount);
+
+    private final BlockBuffer cursorBuffer = new BlockBuffer();
+    private final long[] times = new long[MAX_BLOCK_POINTS];
+    private final double[] values = new double[MAX_BLOCK_POINTS];
+    private RandomAccessFile in;
+    private int nextBlock;
+    private int size;
+    private int index;
+    private boolean inPending;
+    private boolean done;
+
+    BlockCursor(long minTime, long maxTime) {
+      this.minTime = minTime;
+      this.maxTime = maxTime;
+      // Skip whole blocks that end before the range using the sparse index.
+      while (nextBlock < blocks && blockMaxTimes[nextBlock] < minTime) {
+        nextBlock++;
+      }
+      if (nextBlock < blocks && minTimes[nextBlock] <= maxTime) {
+        // Open now, while the file still matches the snapshot above.
+        try {
+          in = new RandomAccessFile(file, "r");
+        } catch (IOException e) {
+          throw new SeriesStorageException("Could not read " + file, e);
+        }
+      }
+    }
+
+    @Override
+    public boolean next() {
+      while (!done) {
+        index++;
+        if (index < size) {
+          long time = times[index];
+          if (time > maxTime) {
+            done = true;
+          } else if (time >= minTime) {
+            return true;
+          }
+        } else if (!loadNextChunk()) {
+          done = true;
+        } else {
+          index = -1;
+        }
+      }
+      close();
+      return false;
+    }
+
+    private boolean loadNextChunk() {
+      if (nextBlock < blocks && minTimes[nextBlock] <= maxTime) {
+        try {
+          in.seek(offsets[nextBlock] + HEADER_BYTES - 4);
+          int payloadLength = in.readInt();
+          cursorBuffer.reset();
+          cursorBuffer.ensureCapacity(payloadLength);
+          in.readFully(cursorBuffer.bytes, 0, payloadLength);
+          cursorBuffer.length = payloadLength;
+          size = sizes[nextBlock];
+          long time = 0;
+          long bits = 0;
+          for (int i = 0; i < size; i++) {
+            time += unZigZag(cursorBuffer.readVarLong());
+            bits ^= cursorBuffer.readXor();
+            times[i] = time;
+            values[i] = Double.longBitsToDouble(bits);
+          }
+        } catch (IOException e) {
+          throw new SeriesStorageException("Could not read " + file, e);
+        }
+        nextBlock++;
+        return true;
+      }
+      nextBlock = blocks;
+      if (!inPending && pending.length > 0) {
+        inPending = true;
+        size = pending.length;
+        System.arraycopy(pending, 0, times, 0, size);
+        System.arraycopy(pendingVals, 0, values, 0, size);
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return times[index];
+    }
+
+    @Override
+    public double getValue() {
+      return values[index];
+    }
+
+    @Override
+    public void close() {
+      done = true;
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // Nothing more to read; ignore.
+        }
+        in = null;
+      }
+    }
+  }
+
+  /** A fully materialized range of points, sorted by timestamp. */
+  private static class SortedPoints implements PointCursor, PointSink {
+    private long[] times = new long[MAX_BLOCK_POINTS];
+    private double[] values = new double[MAX_BLOCK_POINTS];
+    private int size;
+    private int index = -1;
+
+    @Override
+    public boolean take(long timestampMillis, double value) {
+      if (size == times.length) {
+        times = Arrays.copyOf(times, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      times[size] = timestampMillis;
+      values[size] = value;
+      size++;
+      return true;
+    }
+
+    void sort() {
+      // Insertion sort: out-of-order series are rare and usually nearly sorted.
+      for (int i = 1; i < size; i++) {
+        long time = times[i];
+        double value = values[i];
+        int j = i - 1;
+        while (j >= 0 && times[j] > time) {
+          times[j + 1] = times[j];
+          values[j + 1] = values[j];
+          j--;
+        }
+        times[j + 1] = time;
+        values[j + 1] = value;
+      }
+    }
+
+    @Override
+    public boolean next() {
+      return ++index < size;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return times[index];
+    }
+
+    @Override
+    public double getValue() {
+      return values[index];
+    }
+
+    @Override
+    public void close() {}
+  }
+}
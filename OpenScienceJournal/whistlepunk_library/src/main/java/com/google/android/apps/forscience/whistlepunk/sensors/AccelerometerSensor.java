@@ -18,10 +18,6 @@ package com.google.android.apps.forscience.whistlepunk.sensors;
 
 import android.content.Context;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
-import com.google.android.apps.forscience.whistlepunk.Clock;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AvailableSensors;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
@@ -46,8 +42,8 @@ public class AccelerometerSensor extends ScalarSensor {
       this.databaseTag = databaseTag;
     }
 
-    public float getValue(SensorEvent event) {
-      return event.values[valueIndex];
+    public float getValue(float[] values) {
+      return values[valueIndex];
     }
 
     public String getSensorId() {
@@ -55,7 +51,7 @@ public class AccelerometerSensor extends ScalarSensor {
     }
   }
 
-  private SensorEventListener sensorEventListener;
+  private SensorEventDemultiplexer.Subscriber subscriber;
 
   public AccelerometerSensor(Axis axis) {
     super(axis.getSensorId());
@@ -72,28 +68,18 @@ public class AccelerometerSensor extends ScalarSensor {
       @Override
       public void startObserving() {
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTED);
-        SensorManager sensorManager = getSensorManager(context);
-        Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        if (sensorEventListener != null) {
-          getSensorManager(context).unregisterListener(sensorEventListener);
+        if (subscriber != null) {
+          SensorEventDemultiplexer.unsubscribe(context, Sensor.TYPE_ACCELEROMETER, subscriber);
         }
-        final Clock clock = environment.getDefaultClock();
-        sensorEventListener =
-            new SensorEventListener() {
-              @Override
-              public void onSensorChanged(SensorEvent event) {
-                c.addData(clock.getNow(), axis.getValue(event));
-              }
-
-              @Override
-              public void onAccuracyChanged(Sensor sensor, int accuracy) {}
-            };
-        sensorManager.registerListener(sensorEventListener, sensor, SensorManager.SENSOR_DELAY_UI);
+        // The other axes share this registration, and get the same events and timestamps.
+        subscriber = (timestamp, values) -> c.addData(timestamp, axis.getValue(values));
+        SensorEventDemultiplexer.subscribe(
+            context, environment, Sensor.TYPE_ACCELEROMETER, subscriber);
       }
 
       @Override
       public void stopObserving() {
-        getSensorManager(context).unregisterListener(sensorEventListener);
+        SensorEventDemultiplexer.unsubscribe(context, Sensor.TYPE_ACCELEROMETER, subscriber);
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
       }
     };
@@ -22,6 +22,7 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import com.google.android.apps.forscience.javalib.DataRefresher;
+import com.google.android.apps.forscience.javalib.Delay;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AvailableSensors;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ReadableSensorOptions;
@@ -39,7 +40,6 @@ import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
  */
 public class AmbientLightSensor extends ScalarSensor {
   public static final String ID = "AmbientLightSensor";
-  private final SystemScheduler scheduler = new SystemScheduler();
   private SensorEventListener sensorEventListener;
   private DataRefresher dataRefresher;
 
@@ -56,7 +56,12 @@ public class AmbientLightSensor extends ScalarSensor {
     return new AbstractSensorRecorder() {
       @Override
       public void startObserving() {
-        dataRefresher = new DataRefresher(scheduler, environment.getDefaultClock());
+        // The refresher and the sensor events both run on the ingest thread, so that values are
+        // only ever reported from there.
+        HandlerScheduler ingest = environment.getIngestScheduler();
+        final DataRefresher refresher = new DataRefresher(ingest, environment.getDefaultClock());
+        refresher.setStreamConsumer(c);
+        dataRefresher = refresher;
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTED);
         SensorManager sensorManager = getSensorManager(context);
         Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
@@ -68,15 +73,15 @@ public class AmbientLightSensor extends ScalarSensor {
               @Override
               public void onSensorChanged(SensorEvent event) {
                 // values[0] is the ambient light level in SI lux units.
-                dataRefresher.setValue(event.values[0]);
-                dataRefresher.startStreaming();
+                refresher.setValue(event.values[0]);
+                refresher.startStreaming();
               }
 
               @Override
               public void onAccuracyChanged(Sensor sensor, int accuracy) {}
             };
-        sensorManager.registerListener(sensorEventListener, sensor, SensorManager.SENSOR_DELAY_UI);
-        dataRefresher.setStreamConsumer(c);
+        sensorManager.registerListener(
+            sensorEventListener, sensor, SensorManager.SENSOR_DELAY_UI, ingest.getHandler());
       }
 
       @Override
@@ -84,7 +89,7 @@ public class AmbientLightSensor extends ScalarSensor {
         getSensorManager(context).unregisterListener(sensorEventListener);
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
         if (dataRefresher != null) {
-          dataRefresher.stopStreaming();
+          environment.getIngestScheduler().schedule(Delay.ZERO, dataRefresher::stopStreaming);
           dataRefresher = null;
         }
       }
@@ -66,7 +66,10 @@ public class AmbientTemperatureSensor extends ScalarSensor {
               public void onAccuracyChanged(Sensor sensor, int accuracy) {}
             };
         sensorManager.registerListener(
-            sensorEventListener, sensor, SensorManager.SENSOR_DELAY_NORMAL);
+            sensorEventListener,
+            sensor,
+            SensorManager.SENSOR_DELAY_NORMAL,
+            environment.getIngestScheduler().getHandler());
       }
 
       @Override
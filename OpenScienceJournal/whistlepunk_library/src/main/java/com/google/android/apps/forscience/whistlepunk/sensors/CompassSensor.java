@@ -18,10 +18,7 @@ package com.google.android.apps.forscience.whistlepunk.sensors;
 
 import android.content.Context;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import com.google.android.apps.forscience.whistlepunk.Clock;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AvailableSensors;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
@@ -33,7 +30,8 @@ import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 /** Class to create a compass sensor from the magnetic field and accelerometer. */
 public class CompassSensor extends ScalarSensor {
   public static final String ID = "CompassSensor";
-  private SensorEventListener sensorEventListener;
+  private SensorEventDemultiplexer.Subscriber accelerometerSubscriber;
+  private SensorEventDemultiplexer.Subscriber magnetometerSubscriber;
 
   public CompassSensor() {
     super(ID);
@@ -46,62 +44,67 @@ public class CompassSensor extends ScalarSensor {
       Context context,
       SensorStatusListener listener) {
     return new AbstractSensorRecorder() {
+      private final float[] orientation = new float[3];
+      private final float[] acceleration = new float[3];
+      private final float[] magneticRotation = new float[3];
+      private final float[] rotation = new float[9];
+      private final float[] inclination = new float[9];
+      // Touched only on the ingest thread, where all events arrive.
+      private boolean hasAcceleration;
+      private boolean hasMagneticRotation;
+
       @Override
       public void startObserving() {
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTED);
-        SensorManager sensorManager = getSensorManager(context);
-        Sensor magnetometer = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-        Sensor accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        if (sensorEventListener != null) {
-          getSensorManager(context).unregisterListener(sensorEventListener);
-        }
-        final Clock clock = environment.getDefaultClock();
-        sensorEventListener =
-            new SensorEventListener() {
-              private float[] orientation = new float[3];
-              private float[] magneticRotation;
-              private float[] acceleration;
-              private float[] rotation = new float[9];
-              private float[] inclination = new float[9];
-
-              @Override
-              public void onSensorChanged(SensorEvent event) {
-                if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-                  acceleration = event.values;
-                } else {
-                  magneticRotation = event.values;
-                }
-                // Update data as long as we have a value for both. This is the highest
-                // rate of update.
-                // If we want a slower rate, we can update when *both* values have changed,
-                // or only when magneticRotation changes, for example.
-                if (acceleration == null || magneticRotation == null) {
-                  return;
-                }
-                boolean hasRotation =
-                    SensorManager.getRotationMatrix(
-                        rotation, inclination, acceleration, magneticRotation);
-                if (hasRotation) {
-                  SensorManager.getOrientation(rotation, orientation);
-                  // Use a positive angle in degrees between 0 and 360.
-                  c.addData(clock.getNow(), 360 - (360 - (Math.toDegrees(orientation[0]))) % 360);
-                }
-              }
-
-              @Override
-              public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+        unsubscribe();
+        // Readings are shared with the accelerometer and magnetometer sensors, so copy them.
+        accelerometerSubscriber =
+            (timestamp, values) -> {
+              System.arraycopy(values, 0, acceleration, 0, 3);
+              hasAcceleration = true;
+              update(timestamp);
+            };
+        magnetometerSubscriber =
+            (timestamp, values) -> {
+              System.arraycopy(values, 0, magneticRotation, 0, 3);
+              hasMagneticRotation = true;
+              update(timestamp);
             };
-        sensorManager.registerListener(
-            sensorEventListener, magnetometer, SensorManager.SENSOR_DELAY_UI);
-        sensorManager.registerListener(
-            sensorEventListener, accelerometer, SensorManager.SENSOR_DELAY_UI);
+        SensorEventDemultiplexer.subscribe(
+            context, environment, Sensor.TYPE_MAGNETIC_FIELD, magnetometerSubscriber);
+        SensorEventDemultiplexer.subscribe(
+            context, environment, Sensor.TYPE_ACCELEROMETER, accelerometerSubscriber);
+      }
+
+      private void update(long timestamp) {
+        // Update data as long as we have a value for both. This is the highest
+        // rate of update.
+        // If we want a slower rate, we can update when *both* values have changed,
+        // or only when magneticRotation changes, for example.
+        if (!hasAcceleration || !hasMagneticRotation) {
+          return;
+        }
+        boolean hasRotation =
+            SensorManager.getRotationMatrix(rotation, inclination, acceleration, magneticRotation);
+        if (hasRotation) {
+          SensorManager.getOrientation(rotation, orientation);
+          // Use a positive angle in degrees between 0 and 360.
+          c.addData(timestamp, 360 - (360 - (Math.toDegrees(orientation[0]))) % 360);
+        }
       }
 
       @Override
       public void stopObserving() {
-        getSensorManager(context).unregisterListener(sensorEventListener);
+        unsubscribe();
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
       }
+
+      private void unsubscribe() {
+        SensorEventDemultiplexer.unsubscribe(
+            context, Sensor.TYPE_MAGNETIC_FIELD, magnetometerSubscriber);
+        SensorEventDemultiplexer.unsubscribe(
+            context, Sensor.TYPE_ACCELEROMETER, accelerometerSubscriber);
+      }
     };
   }
 
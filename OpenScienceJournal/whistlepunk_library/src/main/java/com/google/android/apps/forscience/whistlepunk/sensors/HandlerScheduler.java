@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import com.google.android.apps.forscience.javalib.Delay;
+import com.google.android.apps.forscience.javalib.Scheduler;
+
+/** Schedules tasks on the thread of a given looper. */
+public class HandlerScheduler implements Scheduler {
+  private final Handler handler;
+
+  /**
+   * Returns a scheduler running on a new background thread, for polling and processing sensor data
+   * away from the UI thread.
+   */
+  public static HandlerScheduler onNewThread(String name) {
+    // The same priority as the UI thread, not a background one, so that samples keep flowing while
+    // the app is busy. Anything more favorable would take time from the UI thread.
+    HandlerThread thread = new HandlerThread(name, Process.THREAD_PRIORITY_DEFAULT);
+    thread.start();
+    return new HandlerScheduler(thread.getLooper());
+  }
+
+  public HandlerScheduler(Looper looper) {
+    handler = new Handler(looper);
+  }
+
+  /**
+   * Returns the handler that tasks are run on, for APIs (like SensorManager) that deliver their
+   * callbacks to a handler.
+   */
+  public Handler getHandler() {
+    return handler;
+  }
+
+  @Override
+  public void schedule(Delay delay, Runnable doThis) {
+    handler.postDelayed(doThis, delay.asMillis());
+  }
+
+  @Override
+  public void unschedule(Runnable removeThis) {
+    handler.removeCallbacks(removeThis);
+  }
+}
@@ -73,7 +73,11 @@ public class LinearAccelerometerSensor extends ScalarSensor {
               @Override
               public void onAccuracyChanged(Sensor sensor, int accuracy) {}
             };
-        sensorManager.registerListener(sensorEventListener, sensor, SensorManager.SENSOR_DELAY_UI);
+        sensorManager.registerListener(
+            sensorEventListener,
+            sensor,
+            SensorManager.SENSOR_DELAY_UI,
+            environment.getIngestScheduler().getHandler());
       }
 
       @Override
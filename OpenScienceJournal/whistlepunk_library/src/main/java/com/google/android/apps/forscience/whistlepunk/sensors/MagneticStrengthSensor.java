@@ -18,10 +18,6 @@ package com.google.android.apps.forscience.whistlepunk.sensors;
 
 import android.content.Context;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
-import com.google.android.apps.forscience.whistlepunk.Clock;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AvailableSensors;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
@@ -35,7 +31,7 @@ public class MagneticStrengthSensor extends ScalarSensor {
   // For historical reasons, the ID is MagneticRotationSensor. Since this is not exposed to the
   // user, we will just not mind the inconsistency.
   public static final String ID = "MagneticRotationSensor";
-  private SensorEventListener sensorEventListener;
+  private SensorEventDemultiplexer.Subscriber subscriber;
 
   public MagneticStrengthSensor() {
     super(ID);
@@ -51,36 +47,24 @@ public class MagneticStrengthSensor extends ScalarSensor {
       @Override
       public void startObserving() {
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTED);
-        SensorManager sensorManager = getSensorManager(context);
-        Sensor magnetometer = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-        if (sensorEventListener != null) {
-          getSensorManager(context).unregisterListener(sensorEventListener);
+        if (subscriber != null) {
+          SensorEventDemultiplexer.unsubscribe(context, Sensor.TYPE_MAGNETIC_FIELD, subscriber);
         }
-        final Clock clock = environment.getDefaultClock();
-        sensorEventListener =
-            new SensorEventListener() {
-              @Override
-              public void onSensorChanged(SensorEvent event) {
-                // The strength is the square root of the sum of the squares of the
-                // values in X, Y and Z.
+        // The strength is the square root of the sum of the squares of the
+        // values in X, Y and Z.
+        subscriber =
+            (timestamp, values) ->
                 c.addData(
-                    clock.getNow(),
+                    timestamp,
                     Math.sqrt(
-                        Math.pow(event.values[0], 2)
-                            + Math.pow(event.values[1], 2)
-                            + Math.pow(event.values[2], 2)));
-              }
-
-              @Override
-              public void onAccuracyChanged(Sensor sensor, int accuracy) {}
-            };
-        sensorManager.registerListener(
-            sensorEventListener, magnetometer, SensorManager.SENSOR_DELAY_UI);
+                        Math.pow(values[0], 2) + Math.pow(values[1], 2) + Math.pow(values[2], 2)));
+        SensorEventDemultiplexer.subscribe(
+            context, environment, Sensor.TYPE_MAGNETIC_FIELD, subscriber);
       }
 
       @Override
       public void stopObserving() {
-        getSensorManager(context).unregisterListener(sensorEventListener);
+        SensorEventDemultiplexer.unsubscribe(context, Sensor.TYPE_MAGNETIC_FIELD, subscriber);
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
       }
     };
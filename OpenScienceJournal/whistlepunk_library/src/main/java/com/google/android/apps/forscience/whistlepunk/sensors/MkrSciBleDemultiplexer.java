@@ -0,0 +1,226 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+import android.content.Context;
+import android.os.Handler;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.apps.forscience.ble.MkrSciBleManager;
+import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorEnvironment;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares one {@link MkrSciBleManager} subscription for each characteristic of a board among all
+ * the sensors that read it, such as the three axes of its accelerometer. Each notification is
+ * copied and handed to the ingest thread once, and every subscriber gets it with the same
+ * timestamp, so that values taken from one notification stay aligned in time.
+ *
+ * <p>Notifications are copied into a preallocated ring, like {@link
+ * com.google.android.apps.forscience.whistlepunk.sensorapi.SensorSampleBuffer}, which the ingest
+ * thread drains in batches, so nothing is allocated per notification. If the ingest thread falls
+ * so far behind that the ring fills up, new notifications are dropped.
+ *
+ * <p>The clock and ingest thread of a subscription come from the {@link SensorEnvironment} of its
+ * first subscriber, and later subscribers share them whatever environment they pass. In the app
+ * every sensor gets the same environment from {@code AppSingleton}, so this only matters when
+ * sensors with different environments read the same characteristic at once.
+ */
+class MkrSciBleDemultiplexer {
+  interface Subscriber {
+    /** Called on the ingest thread once the board's firmware version is known. */
+    void onFirmwareVersion(long firmwareVersion);
+
+    /**
+     * Called on the ingest thread for each notification. The values are shared with the other
+     * subscribers and reused for later notifications, so they must not be changed or kept after
+     * this returns.
+     */
+    void onValues(long timestamp, double[] values);
+  }
+
+  /** Subscribes listeners to characteristics of a board. Replaced in tests. */
+  @VisibleForTesting
+  interface Connector {
+    void subscribe(
+        Context context, String address, String characteristic, MkrSciBleManager.Listener listener);
+
+    void unsubscribe(String address, String characteristic, MkrSciBleManager.Listener listener);
+  }
+
+  private static final Connector BLE_MANAGER_CONNECTOR =
+      new Connector() {
+        @Override
+        public void subscribe(
+            Context context,
+            String address,
+            String characteristic,
+            MkrSciBleManager.Listener listener) {
+          MkrSciBleManager.subscribe(context, address, characteristic, listener);
+        }
+
+        @Override
+        public void unsubscribe(
+            String address, String characteristic, MkrSciBleManager.Listener listener) {
+          MkrSciBleManager.unsubscribe(address, characteristic, listener);
+        }
+      };
+
+  private static Connector connector = BLE_MANAGER_CONNECTOR;
+
+  // "address/characteristic" > its demultiplexer, while it has subscribers.
+  private static final Map<String, MkrSciBleDemultiplexer> demultiplexers = new HashMap<>();
+
+  // Must be a power of two.
+  private static final int RING_CAPACITY = 64;
+
+  private final Clock clock;
+  private final Handler ingestHandler;
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+  private volatile long firmwareVersion = -1;
+
+  // Written by the BLE thread, read by the ingest thread. Each side only advances its own counter,
+  // with an ordered write so that the other side sees the slot contents first.
+  private final long[] timestamps = new long[RING_CAPACITY];
+  private final double[][] slots = new double[RING_CAPACITY][];
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicBoolean drainPending = new AtomicBoolean();
+  private final Runnable drain = this::drain;
+
+  private final MkrSciBleManager.Listener listener =
+      new MkrSciBleManager.Listener() {
+        @Override
+        public void onFirmwareVersion(long version) {
+          ingestHandler.post(
+              () -> {
+                firmwareVersion = version;
+                for (Subscriber subscriber : subscribers) {
+                  subscriber.onFirmwareVersion(version);
+                }
+              });
+        }
+
+        @Override
+        public void onValuesUpdated(double[] values) {
+          long timestamp = clock.getNow();
+          long t = tail.get();
+          if (t - head.get() >= RING_CAPACITY) {
+            return;
+          }
+          int index = (int) (t & (RING_CAPACITY - 1));
+          // The manager reuses the array for the next notification, so copy it into the slot.
+          double[] slot = slots[index];
+          if (slot == null || slot.length != values.length) {
+            slot = new double[values.length];
+            slots[index] = slot;
+          }
+          System.arraycopy(values, 0, slot, 0, values.length);
+          timestamps[index] = timestamp;
+          tail.lazySet(t + 1);
+          if (drainPending.compareAndSet(false, true)) {
+            ingestHandler.post(drain);
+          }
+        }
+      };
+
+  private MkrSciBleDemultiplexer(Clock clock, Handler ingestHandler) {
+    this.clock = clock;
+    this.ingestHandler = ingestHandler;
+  }
+
+  /** Delivers every notification in the ring to the subscribers. Runs on the ingest thread. */
+  private void drain() {
+    // Clear the flag before looking at the tail, so that any notification missed here posts
+    // another drain.
+    drainPending.set(false);
+    long h = head.get();
+    long t = tail.get();
+    for (; h < t; h++) {
+      int index = (int) (h & (RING_CAPACITY - 1));
+      for (Subscriber subscriber : subscribers) {
+        subscriber.onValues(timestamps[index], slots[index]);
+      }
+      // Release each slot as soon as it has been delivered.
+      head.lazySet(h + 1);
+    }
+  }
+
+  /**
+   * Starts passing notifications of {@code characteristic} on the board at {@code address} to
+   * {@code subscriber}. The first subscriber to a characteristic subscribes to it with the {@link
+   * MkrSciBleManager}. Subscribing again has no effect.
+   */
+  static synchronized void subscribe(
+      Context context,
+      SensorEnvironment environment,
+      String address,
+      String characteristic,
+      Subscriber subscriber) {
+    String key = address + "/" + characteristic;
+    MkrSciBleDemultiplexer demultiplexer = demultiplexers.get(key);
+    boolean subscribe = demultiplexer == null;
+    if (subscribe) {
+      demultiplexer =
+          new MkrSciBleDemultiplexer(
+              environment.getDefaultClock(), environment.getIngestScheduler().getHandler());
+      demultiplexers.put(key, demultiplexer);
+    }
+    if (demultiplexer.subscribers.contains(subscriber)) {
+      return;
+    }
+    demultiplexer.subscribers.add(subscriber);
+    if (subscribe) {
+      connector.subscribe(context, address, characteristic, demultiplexer.listener);
+    } else {
+      // The firmware version may already have been delivered to the earlier subscribers.
+      MkrSciBleDemultiplexer known = demultiplexer;
+      known.ingestHandler.post(
+          () -> {
+            if (known.firmwareVersion > -1) {
+              subscriber.onFirmwareVersion(known.firmwareVersion);
+            }
+          });
+    }
+  }
+
+  /** Stops passing notifications to {@code subscriber}, and unsubscribes once no one is left. */
+  static synchronized void unsubscribe(
+      String address, String characteristic, Subscriber subscriber) {
+    String key = address + "/" + characteristic;
+    MkrSciBleDemultiplexer demultiplexer = demultiplexers.get(key);
+    if (demultiplexer == null || !demultiplexer.subscribers.remove(subscriber)) {
+      return;
+    }
+    if (demultiplexer.subscribers.isEmpty()) {
+      demultiplexers.remove(key);
+      connector.unsubscribe(address, characteristic, demultiplexer.listener);
+    }
+  }
+
+  /** Replaces the {@link MkrSciBleManager} subscription, or restores it if {@code null}. */
+  @VisibleForTesting
+  static synchronized void setConnectorForTesting(@Nullable Connector newConnector) {
+    connector = newConnector != null ? newConnector : BLE_MANAGER_CONNECTOR;
+  }
+}
@@ -4,7 +4,6 @@ import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
 import com.google.android.apps.forscience.ble.MkrSciBleManager;
-import com.google.android.apps.forscience.whistlepunk.Clock;
 import com.google.android.apps.forscience.whistlepunk.metadata.MkrSciBleSensorSpec;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
@@ -137,9 +136,10 @@ public class MkrSciBleSensor extends ScalarSensor {
       SensorEnvironment environment,
       Context context,
       SensorStatusListener listener) {
-    final Clock clock = environment.getDefaultClock();
-    final MkrSciBleManager.Listener mkrSciBleListener =
-        new MkrSciBleManager.Listener() {
+    // Values arrive on the ingest thread, decoded once for all the sensors reading the same
+    // characteristic.
+    final MkrSciBleDemultiplexer.Subscriber subscriber =
+        new MkrSciBleDemultiplexer.Subscriber() {
 
           private boolean connected = false;
 
@@ -149,13 +149,13 @@ public class MkrSciBleSensor extends ScalarSensor {
           }
 
           @Override
-          public void onValuesUpdated(double[] values) {
+          public void onValues(long timestamp, double[] values) {
             if (!connected) {
               connected = true;
               handler.post(
                   () -> listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTED));
             }
-            valueHandler.handle(c, clock.getNow(), values);
+            valueHandler.handle(c, timestamp, values);
           }
         };
     return new AbstractSensorRecorder() {
@@ -163,12 +163,12 @@ public class MkrSciBleSensor extends ScalarSensor {
       public void startObserving() {
         handler.post(
             () -> listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTING));
-        MkrSciBleManager.subscribe(context, address, characteristic, mkrSciBleListener);
+        MkrSciBleDemultiplexer.subscribe(context, environment, address, characteristic, subscriber);
       }
 
       @Override
       public void stopObserving() {
-        MkrSciBleManager.unsubscribe(address, characteristic, mkrSciBleListener);
+        MkrSciBleDemultiplexer.unsubscribe(address, characteristic, subscriber);
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
       }
     };
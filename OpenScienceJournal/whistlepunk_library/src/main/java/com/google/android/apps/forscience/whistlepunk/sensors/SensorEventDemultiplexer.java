@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorEnvironment;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shares one {@link SensorManager} registration for each type of Android sensor among all the
+ * sensors that read it, such as the three accelerometer axes and the compass. Each event is read
+ * once and handed to every subscriber with the same timestamp, so that values taken from one event
+ * stay aligned in time.
+ *
+ * <p>The clock and ingest thread of a registration come from the {@link SensorEnvironment} of its
+ * first subscriber, and later subscribers share them whatever environment they pass. In the app
+ * every sensor gets the same environment from {@code AppSingleton}, so this only matters when
+ * sensors with different environments read the same type at once.
+ */
+class SensorEventDemultiplexer {
+  interface Subscriber {
+    /**
+     * Called on the ingest thread for each event. The values belong to the event, so copy them to
+     * keep them after this call returns.
+     */
+    void onSensorValues(long timestamp, float[] values);
+  }
+
+  /** Registers listeners for Android sensor events. Replaced in tests. */
+  @VisibleForTesting
+  interface Registrar {
+    void register(Context context, SensorEventListener listener, int sensorType, Handler handler);
+
+    void unregister(Context context, SensorEventListener listener);
+  }
+
+  private static final Registrar SENSOR_MANAGER_REGISTRAR =
+      new Registrar() {
+        @Override
+        public void register(
+            Context context, SensorEventListener listener, int sensorType, Handler handler) {
+          SensorManager sensorManager = ScalarSensor.getSensorManager(context);
+          sensorManager.registerListener(
+              listener,
+              sensorManager.getDefaultSensor(sensorType),
+              SensorManager.SENSOR_DELAY_UI,
+              handler);
+        }
+
+        @Override
+        public void unregister(Context context, SensorEventListener listener) {
+          ScalarSensor.getSensorManager(context).unregisterListener(listener);
+        }
+      };
+
+  private static Registrar registrar = SENSOR_MANAGER_REGISTRAR;
+
+  // Android sensor type > its demultiplexer, while it has subscribers.
+  private static final Map<Integer, SensorEventDemultiplexer> demultiplexers = new HashMap<>();
+
+  private final Clock clock;
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+  private final SensorEventListener listener =
+      new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+          long timestamp = clock.getNow();
+          for (Subscriber subscriber : subscribers) {
+            subscriber.onSensorValues(timestamp, event.values);
+          }
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+      };
+
+  private SensorEventDemultiplexer(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Starts passing events from the default sensor of {@code sensorType} to {@code subscriber}. The
+   * first subscriber to a sensor type registers for its events, on the ingest thread of {@code
+   * environment}. Subscribing again has no effect.
+   */
+  static synchronized void subscribe(
+      Context context, SensorEnvironment environment, int sensorType, Subscriber subscriber) {
+    SensorEventDemultiplexer demultiplexer = demultiplexers.get(sensorType);
+    if (demultiplexer == null) {
+      demultiplexer = new SensorEventDemultiplexer(environment.getDefaultClock());
+      demultiplexers.put(sensorType, demultiplexer);
+      registrar.register(
+          context,
+          demultiplexer.listener,
+          sensorType,
+          environment.getIngestScheduler().getHandler());
+    }
+    if (!demultiplexer.subscribers.contains(subscriber)) {
+      demultiplexer.subscribers.add(subscriber);
+    }
+  }
+
+  /** Stops passing events to {@code subscriber}, and unregisters once no one is subscribed. */
+  static synchronized void unsubscribe(Context context, int sensorType, Subscriber subscriber) {
+    SensorEventDemultiplexer demultiplexer = demultiplexers.get(sensorType);
+    if (demultiplexer == null || !demultiplexer.subscribers.remove(subscriber)) {
+      return;
+    }
+    if (demultiplexer.subscribers.isEmpty()) {
+      demultiplexers.remove(sensorType);
+      registrar.unregister(context, demultiplexer.listener);
+    }
+  }
+
+  /** Replaces the {@link SensorManager} registration, or restores it if {@code null}. */
+  @VisibleForTesting
+  static synchronized void setRegistrarForTesting(@Nullable Registrar newRegistrar) {
+    registrar = newRegistrar != null ? newRegistrar : SENSOR_MANAGER_REGISTRAR;
+  }
+}
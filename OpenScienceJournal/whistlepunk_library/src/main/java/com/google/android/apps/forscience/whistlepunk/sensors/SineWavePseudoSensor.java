@@ -18,6 +18,7 @@ package com.google.android.apps.forscience.whistlepunk.sensors;
 
 import android.content.Context;
 import com.google.android.apps.forscience.javalib.DataRefresher;
+import com.google.android.apps.forscience.javalib.Delay;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ReadableSensorOptions;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
@@ -45,12 +46,14 @@ public class SineWavePseudoSensor extends ScalarSensor {
       Context context,
       final SensorStatusListener listener) {
     return new AbstractSensorRecorder() {
-      private long frequencyMillis = DEFAULT_FREQENCY_MILLIS;
+      // Set from the UI thread, read on the ingest thread.
+      private volatile long frequencyMillis = DEFAULT_FREQENCY_MILLIS;
 
       @Override
       public void startObserving() {
+        HandlerScheduler ingest = environment.getIngestScheduler();
         dataRefresher =
-            new DataRefresher(new SystemScheduler(), environment.getDefaultClock()) {
+            new DataRefresher(ingest, environment.getDefaultClock()) {
               @Override
               public double getValue(long now) {
                 return computeValue(now);
@@ -58,7 +61,8 @@ public class SineWavePseudoSensor extends ScalarSensor {
             };
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTED);
         dataRefresher.setStreamConsumer(c);
-        dataRefresher.startStreaming();
+        // Start from the ingest thread, so that every value is generated there.
+        ingest.schedule(Delay.ZERO, dataRefresher::startStreaming);
       }
 
       private double computeValue(long now) {
@@ -70,7 +74,7 @@ public class SineWavePseudoSensor extends ScalarSensor {
       public void stopObserving() {
         listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
         if (dataRefresher != null) {
-          dataRefresher.stopStreaming();
+          environment.getIngestScheduler().schedule(Delay.ZERO, dataRefresher::stopStreaming);
           dataRefresher = null;
         }
       }
@@ -16,22 +16,11 @@
 
 package com.google.android.apps.forscience.whistlepunk.sensors;
 
-import android.os.Handler;
 import android.os.Looper;
-import com.google.android.apps.forscience.javalib.Delay;
-import com.google.android.apps.forscience.javalib.Scheduler;
 
 /** Schedules tasks using built-in Android looper */
-public class SystemScheduler implements Scheduler {
-  private final Handler handler = new Handler(Looper.getMainLooper());
-
-  @Override
-  public void schedule(Delay delay, Runnable doThis) {
-    handler.postDelayed(doThis, delay.asMillis());
-  }
-
-  @Override
-  public void unschedule(Runnable removeThis) {
-    handler.removeCallbacks(removeThis);
+public class SystemScheduler extends HandlerScheduler {
+  public SystemScheduler() {
+    super(Looper.getMainLooper());
   }
 }
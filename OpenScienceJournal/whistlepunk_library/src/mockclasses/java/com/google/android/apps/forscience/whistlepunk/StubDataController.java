@@ -30,6 +30,7 @@ import com.google.android.apps.forscience.whistlepunk.metadata.ExternalSensorSpe
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingChunkConsumer;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
 import io.reactivex.Observable;
@@ -52,17 +53,37 @@ public class StubDataController implements DataController {
       int maxRecords,
       MaybeConsumer<ScalarReadingList> onSuccess) {}
 
+  @Override
+  public void getScalarReadingChunks(
+      String trialId,
+      String databaseTag,
+      int resolutionTier,
+      TimeRange timeRange,
+      int chunkSize,
+      ScalarReadingChunkConsumer onChunk,
+      MaybeConsumer<Success> onSuccess) {}
+
   @Override
   public void getScalarReadingProtosInBackground(
       GoosciExperiment.Experiment experiment,
       MaybeConsumer<GoosciScalarSensorData.ScalarSensorData> onSuccess) {}
 
+  @Override
+  public void writeScalarReadingProtosInBackground(
+      GoosciExperiment.Experiment experiment, File file, MaybeConsumer<File> onSuccess) {}
+
   @Override
   public Observable<ScalarReading> createScalarObservable(
       String trialId, String[] sensorIds, TimeRange timeRange, int resolutionTier) {
     return null;
   }
 
+  @Override
+  public Observable<ScalarReadingBatch> createScalarBatchObservable(
+      String trialId, String[] sensorIds, TimeRange timeRange, int resolutionTier) {
+    return null;
+  }
+
   @Override
   public void deleteTrialData(Trial trial, MaybeConsumer<Success> onSuccess) {}
 
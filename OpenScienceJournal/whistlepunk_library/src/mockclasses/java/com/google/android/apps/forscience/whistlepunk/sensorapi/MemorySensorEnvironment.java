@@ -16,6 +16,7 @@
 
 package com.google.android.apps.forscience.whistlepunk.sensorapi;
 
+import android.os.Looper;
 import com.google.android.apps.forscience.ble.BleClient;
 import com.google.android.apps.forscience.whistlepunk.Clock;
 import com.google.android.apps.forscience.whistlepunk.MemorySensorHistoryStorage;
@@ -24,6 +25,7 @@ import com.google.android.apps.forscience.whistlepunk.SensorHistoryStorage;
 import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
 import com.google.android.apps.forscience.whistlepunk.audio.AudioSource;
 import com.google.android.apps.forscience.whistlepunk.sensordb.InMemorySensorDatabase;
+import com.google.android.apps.forscience.whistlepunk.sensors.HandlerScheduler;
 import io.reactivex.Single;
 
 public class MemorySensorEnvironment implements SensorEnvironment {
@@ -32,6 +34,7 @@ public class MemorySensorEnvironment implements SensorEnvironment {
   private final AudioSource audioSource = new AudioSource();
   private FakeBleClient bleClient;
   private SensorHistoryStorage historyStorage;
+  private HandlerScheduler ingestScheduler;
 
   public MemorySensorEnvironment(
       RecordingDataController dataController,
@@ -71,4 +74,13 @@ public class MemorySensorEnvironment implements SensorEnvironment {
   public SensorHistoryStorage getSensorHistoryStorage() {
     return historyStorage;
   }
+
+  @Override
+  public HandlerScheduler getIngestScheduler() {
+    // Stay on the main looper, so that tests control when sensor data is processed.
+    if (ingestScheduler == null) {
+      ingestScheduler = new HandlerScheduler(Looper.getMainLooper());
+    }
+    return ingestScheduler;
+  }
 }
@@ -17,11 +17,13 @@
 package com.google.android.apps.forscience.whistlepunk.sensordb;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.google.android.apps.forscience.whistlepunk.BatchInsertScalarReading;
 import com.google.android.apps.forscience.whistlepunk.Clock;
 import com.google.android.apps.forscience.whistlepunk.DataControllerImpl;
 import com.google.android.apps.forscience.whistlepunk.RecordingDataController;
+import com.google.android.apps.forscience.whistlepunk.ScalarReadingBatch;
 import com.google.android.apps.forscience.whistlepunk.SensorProvider;
 import com.google.android.apps.forscience.whistlepunk.accounts.StubAppAccount;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciSensorLayout;
@@ -36,6 +38,8 @@ import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 import com.google.common.collect.Range;
 import com.google.common.util.concurrent.MoreExecutors;
 import io.reactivex.Observable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -91,12 +95,28 @@ public class InMemorySensorDatabase implements SensorDatabase {
     }
   }
 
+  @Override
+  public void addScalarReadings(ScalarReadingBatch readings) {
+    for (int i = 0; i < readings.size(); i++) {
+      addScalarReading(
+          readings.getTrialId(i),
+          readings.getSensorId(i),
+          readings.getResolutionTier(i),
+          readings.getTimestampMillis(i),
+          readings.getValue(i));
+    }
+  }
+
   @Override
   public void addScalarReading(
       String trialId, String databaseTag, int resolutionTier, long timestampMillis, double value) {
     getTierReadings(resolutionTier).add(new Reading(trialId, databaseTag, timestampMillis, value));
   }
 
+  @Override
+  public void flush() {
+  }
+
   private List<Reading> getTierReadings(int resolutionTier) {
     while (resolutionTier >= readings.size()) {
       readings.add(new ArrayList<Reading>());
@@ -185,6 +205,16 @@ public class InMemorySensorDatabase implements SensorDatabase {
         .build();
   }
 
+  @Override
+  public void writeScalarReadingProtos(
+      Experiment experiment, @Nullable String trialId, OutputStream output) throws IOException {
+    if (trialId == null) {
+      getScalarReadingProtos(experiment).writeTo(output);
+    } else {
+      getScalarReadingProtosForTrial(experiment, trialId).writeTo(output);
+    }
+  }
+
   public ScalarSensorDataDump getScalarReadingSensorProtos(String sensorTag, TimeRange range) {
     com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData
             .ScalarSensorDataDump.Builder
@@ -230,6 +260,25 @@ public class InMemorySensorDatabase implements SensorDatabase {
     return null;
   }
 
+  @Override
+  public void readScalarReadingChunks(
+      String trialId,
+      String sensorTag,
+      TimeRange range,
+      int resolutionTier,
+      int chunkSize,
+      ScalarReadingChunkConsumer consumer) {
+    ScalarReadingChunker chunker = new ScalarReadingChunker(chunkSize, consumer);
+    getScalarReadings(trialId, sensorTag, range, resolutionTier, 0).deliver(chunker::take);
+    chunker.finish();
+  }
+
+  @Override
+  public Observable<ScalarReadingBatch> createScalarBatchObservable(
+      String trialId, String[] sensorTags, TimeRange range, int resolutionTier) {
+    return null;
+  }
+
   public List<Reading> getReadings(int resolutionTier) {
     if (resolutionTier >= readings.size()) {
       return Collections.emptyList();
@@ -0,0 +1,132 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.ble;
+
+import com.google.android.apps.forscience.whistlepunk.Benchmarks;
+import com.google.android.apps.forscience.whistlepunk.PacketAssembler;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Replays the checked-in BLE notification streams that {@link BleDecodingTest} checks through the
+ * current and the legacy decoders, and reports the time and bytes allocated per notification.
+ * Only runs with {@code -PrunBenchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BleDecodingBenchmarkTest {
+  private static final String BENCHMARK = "BleDecoding";
+
+  // Keeps the decoded values live so that decoding can't be optimized away.
+  private double sink;
+
+  @Test
+  public void benchmarkMkrSciVectorDecoding() throws IOException {
+    List<byte[]> notifications =
+        BleDecodingTest.readNotifications(BleDecodingTest.MKR_SCI_ACCELEROMETER);
+    MkrSciBleManager.ValueType type = MkrSciBleManager.ValueType.SFLOAT_ARR;
+    double[] values = new double[3];
+
+    report(
+        "MKR Sci vectors",
+        notifications.size(),
+        () -> {
+          for (byte[] notification : notifications) {
+            sink += BleDecodingTest.legacyParseFloatArray(notification)[0];
+          }
+        },
+        () -> {
+          for (byte[] notification : notifications) {
+            MkrSciBleManager.parse(type, notification, values);
+            sink += values[0];
+          }
+        });
+  }
+
+  @Test
+  public void benchmarkPacketAssembly() throws IOException {
+    List<byte[]> packets =
+        BleDecodingTest.readNotifications(BleDecodingTest.SCIENCE_JOURNAL_SENSOR);
+    BleDecodingTest.LegacyAssembler legacy = new BleDecodingTest.LegacyAssembler();
+    BleDecodingTest.RecordingListener listener = new BleDecodingTest.RecordingListener();
+    PacketAssembler assembler = new PacketAssembler(() -> 0, listener);
+
+    report(
+        "Science Journal packets",
+        packets.size(),
+        () -> {
+          try {
+            for (byte[] packet : packets) {
+              legacy.append(packet);
+            }
+          } catch (InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+          }
+        },
+        () -> {
+          for (byte[] packet : packets) {
+            assembler.append(packet);
+          }
+        });
+    sink += legacy.valueSum + listener.valueSum;
+  }
+
+  private static void report(
+      String stream, int notifications, Runnable legacyReplay, Runnable replay) {
+    long legacyNanos = Benchmarks.medianNanos(legacyReplay);
+    long nanos = Benchmarks.medianNanos(replay);
+    Benchmarks.report(
+        BENCHMARK,
+        "%s: legacy %.0f ns, current %.0f ns per notification (%.1fx faster)",
+        stream,
+        (double) legacyNanos / notifications,
+        (double) nanos / notifications,
+        (double) legacyNanos / nanos);
+
+    long legacyBytes = allocatedBytes(legacyReplay);
+    long bytes = allocatedBytes(replay);
+    if (legacyBytes >= 0 && bytes >= 0) {
+      Benchmarks.report(
+          BENCHMARK,
+          "%s: legacy %.1f bytes, current %.1f bytes allocated per notification",
+          stream,
+          (double) legacyBytes / notifications,
+          (double) bytes / notifications);
+    }
+  }
+
+  /** Returns the bytes the current thread allocates running {@code replay}, or -1 if unknown. */
+  private static long allocatedBytes(Runnable replay) {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+    if (!allocations.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    long threadId = Thread.currentThread().getId();
+    long before = allocations.getThreadAllocatedBytes(threadId);
+    replay.run();
+    return allocations.getThreadAllocatedBytes(threadId) - before;
+  }
+}
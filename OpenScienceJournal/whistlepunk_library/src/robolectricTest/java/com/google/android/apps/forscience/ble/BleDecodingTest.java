@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.ble;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.android.apps.forscience.whistlepunk.PacketAssembler;
+import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
+import com.google.common.io.BaseEncoding;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Replays checked-in streams of BLE notifications through the decoders, and checks that they match
+ * the decoding they replaced, which allocated a ByteBuffer and an array per notification, and a
+ * byte array and a full proto per packet. {@link BleDecodingBenchmarkTest} times both.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BleDecodingTest {
+  static final String MKR_SCI_ACCELEROMETER = "mkrsci_accelerometer.notifications";
+  static final String SCIENCE_JOURNAL_SENSOR = "science_journal_sensor.notifications";
+
+  @Test
+  public void mkrSciVectorDecodingMatchesLegacy() throws IOException {
+    List<byte[]> notifications = readNotifications(MKR_SCI_ACCELEROMETER);
+    MkrSciBleManager.ValueType type = MkrSciBleManager.ValueType.SFLOAT_ARR;
+    double[] values = new double[3];
+
+    for (byte[] notification : notifications) {
+      assertEquals(3, MkrSciBleManager.getValueCount(type, notification.length));
+      MkrSciBleManager.parse(type, notification, values);
+      double[] expected = legacyParseFloatArray(notification);
+      for (int axis = 0; axis < 3; axis++) {
+        assertEquals(expected[axis], values[axis], 0);
+      }
+    }
+  }
+
+  @Test
+  public void packetAssemblyMatchesLegacy() throws IOException {
+    List<byte[]> packets = readNotifications(SCIENCE_JOURNAL_SENSOR);
+
+    RecordingListener listener = new RecordingListener();
+    PacketAssembler assembler = new PacketAssembler(() -> 0, listener);
+    LegacyAssembler legacy = new LegacyAssembler();
+    for (byte[] packet : packets) {
+      assembler.append(packet);
+      legacy.append(packet);
+    }
+
+    assertEquals(0, listener.errors);
+    assertEquals(1000, listener.valueCount);
+    assertEquals(legacy.valueCount, listener.valueCount);
+    assertEquals(legacy.valueSum, listener.valueSum, 0);
+  }
+
+  /** Reads a fixture of notifications, one per line in hex, skipping # comments. */
+  static List<byte[]> readNotifications(String resource) throws IOException {
+    List<byte[]> notifications = new ArrayList<>();
+    InputStream inputStream = BleDecodingTest.class.getClassLoader().getResourceAsStream(resource);
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          notifications.add(BaseEncoding.base16().lowerCase().decode(line));
+        }
+      }
+    }
+    return notifications;
+  }
+
+  // How MkrSciBleManager decoded arrays of floats before it decoded into reused arrays.
+  static double[] legacyParseFloatArray(byte[] value) {
+    final int size = value.length / 4;
+    final double[] array = new double[size];
+    final ByteBuffer buffer = ByteBuffer.allocate(4);
+    for (int i = 0; i < size; i++) {
+      final int offset = 4 * i;
+      buffer.position(0);
+      buffer.put(value[3 + offset]);
+      buffer.put(value[2 + offset]);
+      buffer.put(value[1 + offset]);
+      buffer.put(value[offset]);
+      buffer.position(0);
+      array[i] = buffer.getFloat();
+    }
+    return array;
+  }
+
+  // How PacketAssembler assembled and parsed packets before it used SensorDataReader.
+  static class LegacyAssembler {
+    private final ByteArrayOutputStream packetStream = new ByteArrayOutputStream();
+    int valueCount = 0;
+    double valueSum = 0;
+
+    void append(byte[] packet) throws InvalidProtocolBufferException {
+      packetStream.write(packet, 2, packet[0]);
+      if (packet[1] == 1) {
+        byte[] bs = packetStream.toByteArray();
+        packetStream.reset();
+        GoosciSensor.Data data = GoosciSensor.SensorData.parseFrom(bs).getData();
+        valueCount++;
+        valueSum +=
+            data.hasAnalogValue()
+                ? data.getAnalogValue().getValue()
+                : data.getFloatValue().getValue();
+      }
+    }
+  }
+
+  static class RecordingListener implements PacketAssembler.Listener {
+    int errors = 0;
+    int valueCount = 0;
+    double valueSum = 0;
+
+    @Override
+    public void onError(@SensorStatusListener.Error int error, String errorMessage) {
+      errors++;
+    }
+
+    @Override
+    public void onDataParsed(long timeStampMs, double data) {
+      valueCount++;
+      valueSum += data;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.android.apps.forscience.javalib.FailureListener;
+import com.google.android.apps.forscience.javalib.MaybeConsumer;
+import com.google.android.apps.forscience.javalib.Success;
+import com.google.android.apps.forscience.whistlepunk.sensordb.InMemorySensorDatabase;
+import com.google.android.apps.forscience.whistlepunk.sensordb.MemoryMetadataManager;
+import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatchDataControllerTest {
+  @Test
+  public void testWritesAllReadingsOnClose() throws Exception {
+    InMemorySensorDatabase db = new InMemorySensorDatabase();
+    RecordingDataController rdc = db.makeSimpleRecordingController(new MemoryMetadataManager());
+    try (BatchDataController batch = new BatchDataController(rdc)) {
+      for (int i = 0; i < 25000; i++) {
+        batch.addScalarReading("trial", "sensor", i % 2, i, i);
+      }
+    }
+    assertEquals(12500, db.getScalarReadings("trial", "sensor", all(), 0, 0).size());
+    assertEquals(12500, db.getScalarReadings("trial", "sensor", all(), 1, 0).size());
+  }
+
+  @Test
+  public void testReusesReleasedBatches() throws Exception {
+    List<ScalarReadingBatch> written = new ArrayList<>();
+    List<Integer> sizes = new ArrayList<>();
+    RecordingDataController rdc =
+        new RecordingDataController() {
+          @Override
+          public void addScalarReading(
+              String trialId,
+              String sensorId,
+              int resolutionTier,
+              long timestampMillis,
+              double value) {}
+
+          @Override
+          public void addScalarReadings(List<BatchInsertScalarReading> readings) {}
+
+          @Override
+          public void addScalarReadings(ScalarReadingBatch readings) {
+            written.add(readings);
+            sizes.add(readings.size());
+            readings.release();
+          }
+
+          @Override
+          public void flushScalarReadings() {}
+
+          @Override
+          public void flushScalarReadings(MaybeConsumer<Success> onFlushed) {
+            onFlushed.success(Success.SUCCESS);
+          }
+
+          @Override
+          public void setDataErrorListenerForSensor(String sensorId, FailureListener listener) {}
+
+          @Override
+          public void clearDataErrorListenerForSensor(String sensorId) {}
+        };
+
+    try (BatchDataController batch = new BatchDataController(rdc)) {
+      for (int i = 0; i < 25000; i++) {
+        batch.addScalarReading("trial", "sensor", 0, i, i);
+      }
+    }
+
+    assertEquals(3, written.size());
+    assertEquals(25000, sizes.get(0) + sizes.get(1) + sizes.get(2));
+    // Each batch was released as soon as it was written, so the same one keeps being reused.
+    assertSame(written.get(0), written.get(1));
+    assertSame(written.get(0), written.get(2));
+  }
+
+  private static TimeRange all() {
+    return TimeRange.oldest(Range.<Long>all());
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Timing helpers for the opt-in {@code *BenchmarkTest} classes, which only run when the build is
+ * given {@code -PrunBenchmarks}.
+ */
+public class Benchmarks {
+  private static final int WARMUP_RUNS = 5;
+  private static final int TIMED_RUNS = 15;
+
+  /** Runs {@code task} a few times to warm up, then returns the median of timed runs in nanos. */
+  public static long medianNanos(Runnable task) {
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      task.run();
+    }
+    long[] nanos = new long[TIMED_RUNS];
+    for (int i = 0; i < TIMED_RUNS; i++) {
+      long start = System.nanoTime();
+      task.run();
+      nanos[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(nanos);
+    return nanos[TIMED_RUNS / 2];
+  }
+
+  /** Prints a result where it will show up in the test report. */
+  public static void report(String benchmark, String format, Object... args) {
+    System.out.println(benchmark + ": " + String.format(Locale.US, format, args));
+  }
+}
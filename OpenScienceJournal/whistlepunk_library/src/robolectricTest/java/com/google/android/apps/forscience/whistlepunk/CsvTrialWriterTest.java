@@ -0,0 +1,74 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Tests for {@link CsvTrialWriter}. */
+@RunWith(RobolectricTestRunner.class)
+public class CsvTrialWriterTest {
+  @Test
+  public void testWritesRowPerTimestamp() throws IOException {
+    StringWriter out = new StringWriter();
+    CsvTrialWriter writer = new CsvTrialWriter(out, new String[] {"a", "b,c"}, false);
+    writer.writeHeader();
+    writer.addReading(1000, "a", 1.5);
+    writer.addReading(1000, "b,c", -2);
+    writer.addReading(1001, "b,c", 3.25);
+    writer.addReading(1001, "unknown", 4);
+    writer.addReading(1002, "a", 0.001);
+    writer.close();
+
+    assertEquals(
+        "timestamp,a,b_c\n" + "1000,1.5,-2.0\n" + "1001,,3.25\n" + "1002,0.001,\n",
+        out.toString());
+  }
+
+  @Test
+  public void testRelativeTime() throws IOException {
+    StringWriter out = new StringWriter();
+    CsvTrialWriter writer = new CsvTrialWriter(out, new String[] {"a"}, true);
+    writer.writeHeader();
+    writer.addReading(1000, "a", 1);
+    writer.addReading(1250, "a", 2);
+    writer.close();
+
+    assertEquals("relative_time,a\n" + "0,1.0\n" + "250,2.0\n", out.toString());
+  }
+
+  @Test
+  public void testNumbersParseBackExactly() throws IOException {
+    double[] values = {
+      0, 1, -1, 0.1, 9.81, 123456.789, 1e-12, 1.0 / 3, 9.8100004196167, 5e8, 2e9, 1e300,
+      Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY
+    };
+    for (double value : values) {
+      StringWriter out = new StringWriter();
+      // A tiny buffer also checks that output spanning several flushes comes out whole.
+      CsvTrialWriter writer = new CsvTrialWriter(out, new String[0], false, 4);
+      writer.appendDouble(value);
+      writer.close();
+      assertEquals(out.toString(), value, Double.parseDouble(out.toString()), 0);
+    }
+  }
+}
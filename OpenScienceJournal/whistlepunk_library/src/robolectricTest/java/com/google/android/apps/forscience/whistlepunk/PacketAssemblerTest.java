@@ -31,6 +31,7 @@ import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor.VirtualP
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -424,6 +425,61 @@ public class PacketAssemblerTest {
     assertEquals(1, errors.size());
   }
 
+  @Test
+  public void testTruncatedPacketThenValidPacket() {
+    final TestPacketAssemblerListener tpal = new TestPacketAssemblerListener();
+    final PacketAssembler pa = createPacketAssembler(tpal);
+
+    byte[] value =
+        new GoosciSensorBuilder()
+            .setAnalogValue(testValue, 0)
+            .setAnalogPin()
+            .commit()
+            .toByteArray();
+    byte[] truncated = Arrays.copyOf(value, value.length - 1);
+
+    fakeFramedSensorData(pa, truncated, truncated.length + 1, 1);
+    fakeFramedSensorData(pa, value, value.length + 1, 1);
+
+    assertEquals(1, tpal.getErrors().size());
+    List<Point> points = tpal.getData();
+    assertEquals(1, points.size());
+    assertEquals(points.get(0).y, (double) testValue, Double.MIN_VALUE);
+  }
+
+  @Test
+  public void testLongPacketThenShortPacket() {
+    final TestPacketAssemblerListener tpal = new TestPacketAssemblerListener();
+    final PacketAssembler pa = createPacketAssembler(tpal);
+
+    // Longer than the assembler's initial buffer, but still short enough for one length byte.
+    StringBuilder longString = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      longString.append(stringTestValue);
+    }
+    byte[] longValue =
+        new GoosciSensorBuilder()
+            .setStringValue(longString.toString(), 0)
+            .setVirtualPin()
+            .commit()
+            .toByteArray();
+    byte[] value =
+        new GoosciSensorBuilder()
+            .setFloatValue(floatTestValue, 0)
+            .setVirtualPin()
+            .commit()
+            .toByteArray();
+
+    fakeFramedSensorData(pa, longValue, longValue.length - 1, 2);
+    fakeFramedSensorData(pa, value, value.length + 1, 1);
+
+    // String values aren't supported, but shouldn't leave anything behind.
+    assertEquals(1, tpal.getErrors().size());
+    List<Point> points = tpal.getData();
+    assertEquals(1, points.size());
+    assertEquals(points.get(0).y, (double) floatTestValue, Double.MIN_VALUE);
+  }
+
   @Test
   public void testPacketStream() {
     final TestPacketAssemblerListener tpal = new TestPacketAssemblerListener();
@@ -34,6 +34,7 @@ import com.google.android.apps.forscience.whistlepunk.sensorapi.NewOptionsStorag
 import com.google.android.apps.forscience.whistlepunk.sensorapi.OptionsListener;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorChoice;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorPresenter;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorSampleBuffer;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamStat;
 import com.google.android.apps.forscience.whistlepunk.sensordb.InMemorySensorDatabase;
@@ -160,5 +161,8 @@ public class SensorCardPresenterUnitTest {
 
     @Override
     public void onNewData(long timestamp, Data data) {}
+
+    @Override
+    public void onNewBatch(SensorSampleBuffer.Batch batch) {}
   }
 }
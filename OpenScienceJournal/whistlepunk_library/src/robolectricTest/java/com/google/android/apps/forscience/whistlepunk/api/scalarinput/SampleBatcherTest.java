@@ -0,0 +1,156 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.api.scalarinput;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+@RunWith(RobolectricTestRunner.class)
+public class SampleBatcherTest {
+  private final RecordingObserver observer = new RecordingObserver();
+  private final List<RemoteException> failures = new ArrayList<>();
+
+  @Test
+  public void sendsFullBatchRightAway() throws RemoteException {
+    SampleBatcher batcher = makeBatcher(3, 50);
+    batcher.add(1, 10);
+    batcher.add(2, 20);
+    assertEquals(0, observer.timestamps.size());
+
+    batcher.add(3, 30);
+    assertEquals(1, observer.timestamps.size());
+    assertArrayEquals(new long[] {1, 2, 3}, observer.timestamps.get(0));
+    assertArrayEquals(new double[] {10, 20, 30}, observer.values.get(0), 0.0);
+
+    // The deadline of the sent batch must not send anything else.
+    ShadowLooper.idleMainLooper(50, TimeUnit.MILLISECONDS);
+    assertEquals(1, observer.timestamps.size());
+  }
+
+  @Test
+  public void sendsPartialBatchAtDeadline() throws RemoteException {
+    SampleBatcher batcher = makeBatcher(64, 50);
+    batcher.add(1, 10);
+    ShadowLooper.idleMainLooper(30, TimeUnit.MILLISECONDS);
+    batcher.add(2, 20);
+    ShadowLooper.idleMainLooper(19, TimeUnit.MILLISECONDS);
+    assertEquals(0, observer.timestamps.size());
+
+    // The deadline counts from the first sample of the batch.
+    ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+    assertEquals(1, observer.timestamps.size());
+    assertArrayEquals(new long[] {1, 2}, observer.timestamps.get(0));
+
+    // The next sample starts a new deadline.
+    batcher.add(3, 30);
+    ShadowLooper.idleMainLooper(49, TimeUnit.MILLISECONDS);
+    assertEquals(1, observer.timestamps.size());
+    ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+    assertEquals(2, observer.timestamps.size());
+    assertArrayEquals(new long[] {3}, observer.timestamps.get(1));
+  }
+
+  @Test
+  public void flushSendsOnlyWhenThereAreSamples() throws RemoteException {
+    SampleBatcher batcher = makeBatcher(64, 50);
+    batcher.flush();
+    assertEquals(0, observer.timestamps.size());
+
+    batcher.add(1, 10);
+    batcher.flush();
+    assertEquals(1, observer.timestamps.size());
+    ShadowLooper.idleMainLooper(50, TimeUnit.MILLISECONDS);
+    assertEquals(1, observer.timestamps.size());
+  }
+
+  @Test
+  public void reportsFailureAtDeadline() throws RemoteException {
+    SampleBatcher batcher = makeBatcher(64, 50);
+    batcher.add(1, 10);
+    RemoteException failure = new RemoteException();
+    observer.failure = failure;
+
+    ShadowLooper.idleMainLooper(50, TimeUnit.MILLISECONDS);
+    assertEquals(1, failures.size());
+    assertSame(failure, failures.get(0));
+
+    // The failure is not thrown again from the next add.
+    observer.failure = null;
+    batcher.add(2, 20);
+    assertEquals(1, failures.size());
+  }
+
+  @Test
+  public void rejectsEmptyBatches() {
+    try {
+      makeBatcher(0, 50);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+
+  private SampleBatcher makeBatcher(int maxBatchSize, long maxDelayMillis) {
+    return new SampleBatcher(
+        observer,
+        maxBatchSize,
+        maxDelayMillis,
+        new Handler(Looper.getMainLooper()),
+        new SampleBatcher.SendFailureListener() {
+          @Override
+          public void onSendFailure(RemoteException e) {
+            failures.add(e);
+          }
+        });
+  }
+
+  private static class RecordingObserver extends ISensorObserver.Stub {
+    final List<long[]> timestamps = new ArrayList<>();
+    final List<double[]> values = new ArrayList<>();
+    RemoteException failure = null;
+
+    @Override
+    public void onNewData(long timestamp, double data) {
+      throw new UnsupportedOperationException("Batches only");
+    }
+
+    @Override
+    public void onNewDataBatch(long[] timestamps, double[] values, int count)
+        throws RemoteException {
+      if (failure != null) {
+        throw failure;
+      }
+      // The batcher reuses its arrays, so keep copies.
+      this.timestamps.add(Arrays.copyOf(timestamps, count));
+      this.values.add(Arrays.copyOf(values, count));
+    }
+  }
+}
@@ -92,6 +92,37 @@ public class ScalarInputSensorTest {
     assertEquals(9, scheduler.getScheduleCount());
   }
 
+  @Test
+  public void batchSchedulesOneRefresh() throws RemoteException {
+    final TestFinder serviceFinder = new TestFinder("serviceId");
+    ScalarInputSpec spec =
+        new ScalarInputSpec("sensorName", "serviceId", "address", behavior, null, "devId");
+    ScalarInputSensor sis =
+        new ScalarInputSensor(
+            "sensorId",
+            MoreExecutors.directExecutor(),
+            serviceFinder,
+            new TestStringSource(),
+            spec,
+            scheduler);
+    SensorRecorder recorder = makeRecorder(sis);
+    recorder.startObserving();
+    // Only the first count entries are part of the batch.
+    serviceFinder.observer.onNewDataBatch(
+        new long[] {0, 100, 200, 300}, new double[] {0.0, 1.0, 2.0, 3.0}, 3);
+    // The connection timeout, and one refresh for the whole batch.
+    assertEquals(2, scheduler.getScheduleCount());
+    scheduler.incrementTime(1500);
+
+    TestData testData = new TestData();
+    testData.addPoint(0, 0.0);
+    testData.addPoint(100, 1.0);
+    testData.addPoint(200, 2.0);
+    testData.addPoint(1000, 2.0);
+    testData.checkObserver(observer);
+    recorder.stopObserving();
+  }
+
   @Test
   public void backwardCompatibleServiceId() throws RemoteException {
     final TestFinder serviceFinder = new TestFinder("serviceId/ServiceClassName");
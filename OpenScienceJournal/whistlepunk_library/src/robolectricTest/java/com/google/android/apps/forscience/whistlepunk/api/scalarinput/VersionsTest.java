@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.api.scalarinput;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.res.Resources;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class VersionsTest {
+  private static final String PACKAGE = "com.example.provider";
+
+  @Test
+  public void appsWithoutMinorVersionGetSingleSamples() {
+    FakeResources resources = new FakeResources();
+    assertEquals(0, Versions.getScalarApiMinorVersion(PACKAGE, resources));
+    assertFalse(Versions.supportsBatchedData(PACKAGE, resources));
+  }
+
+  @Test
+  public void minorVersionEnablesBatches() {
+    FakeResources resources = new FakeResources();
+    resources.integers.put("scalar_api_minor_version", 0);
+    assertFalse(Versions.supportsBatchedData(PACKAGE, resources));
+
+    resources.integers.put(
+        "scalar_api_minor_version", Versions.BATCHED_DATA_SCALAR_API_MINOR_VERSION);
+    assertTrue(Versions.supportsBatchedData(PACKAGE, resources));
+
+    resources.integers.put(
+        "scalar_api_minor_version", Versions.BATCHED_DATA_SCALAR_API_MINOR_VERSION + 1);
+    assertTrue(Versions.supportsBatchedData(PACKAGE, resources));
+  }
+
+  @Test
+  public void minorVersionDoesNotChangeApiVersion() {
+    FakeResources resources = new FakeResources();
+    resources.integers.put(
+        "scalar_api_minor_version", Versions.BATCHED_DATA_SCALAR_API_MINOR_VERSION);
+    assertEquals(
+        Versions.FIRST_RELEASE_SCALAR_API_VERSION,
+        Versions.getScalarApiVersion(PACKAGE, resources));
+  }
+
+  @Test
+  public void missingResourceGetsSingleSamples() {
+    FakeResources resources = new FakeResources();
+    resources.integers.put("scalar_api_minor_version", null);
+    assertFalse(Versions.supportsBatchedData(PACKAGE, resources));
+  }
+
+  /**
+   * Resources of another app, holding only the given integers. A name mapped to null has an
+   * identifier whose value can't be found.
+   */
+  private static class FakeResources extends Resources {
+    final Map<String, Integer> integers = new HashMap<>();
+    private final Map<Integer, String> names = new HashMap<>();
+
+    FakeResources() {
+      super(
+          getAppResources().getAssets(),
+          getAppResources().getDisplayMetrics(),
+          getAppResources().getConfiguration());
+    }
+
+    @Override
+    public int getIdentifier(String name, String defType, String defPackage) {
+      if (!"integer".equals(defType) || !PACKAGE.equals(defPackage)) {
+        return 0;
+      }
+      if (!integers.containsKey(name)) {
+        return 0;
+      }
+      int identifier = 0x7f0b0001 + names.size();
+      names.put(identifier, name);
+      return identifier;
+    }
+
+    @Override
+    public int getInteger(int id) {
+      Integer value = names.containsKey(id) ? integers.get(names.get(id)) : null;
+      if (value == null) {
+        throw new NotFoundException("No integer " + id);
+      }
+      return value;
+    }
+
+    private static Resources getAppResources() {
+      return RuntimeEnvironment.application.getResources();
+    }
+  }
+}
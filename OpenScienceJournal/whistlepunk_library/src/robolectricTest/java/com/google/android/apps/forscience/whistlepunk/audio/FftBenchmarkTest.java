@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.audio;
+
+import static com.google.android.apps.forscience.whistlepunk.audio.AudioAnalyzer.BUFFER_SIZE;
+
+import com.google.android.apps.forscience.whistlepunk.Benchmarks;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Times {@link Fft#transformReal} against the complex FFT that FftAnalyzer used to run on every
+ * buffer, which computed its twiddle factors with Math.cos and Math.sin inside the butterfly loop.
+ * {@link FftTest} checks the results. Only runs with {@code -PrunBenchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FftBenchmarkTest {
+  private static final String BENCHMARK = "Fft";
+  private static final int BUFFERS = 200;
+
+  // Keeps the results live so that the transforms can't be optimized away.
+  private double sink;
+
+  @Test
+  public void benchmarkRealFftAgainstComplexFft() {
+    Random random = new Random(0);
+    double[] samples = new double[BUFFER_SIZE];
+    for (int i = 0; i < BUFFER_SIZE; i++) {
+      samples[i] = random.nextDouble() * 2 - 1;
+    }
+    double[] a = new double[BUFFER_SIZE];
+    double[] b = new double[BUFFER_SIZE];
+    Fft fft = new Fft(BUFFER_SIZE);
+    double[] real = new double[BUFFER_SIZE / 2 + 1];
+    double[] imaginary = new double[BUFFER_SIZE / 2 + 1];
+
+    long complexNanos =
+        Benchmarks.medianNanos(
+            () -> {
+              for (int i = 0; i < BUFFERS; i++) {
+                complexFft(samples, a, b);
+                sink += a[i % BUFFER_SIZE];
+              }
+            });
+    long realNanos =
+        Benchmarks.medianNanos(
+            () -> {
+              for (int i = 0; i < BUFFERS; i++) {
+                fft.transformReal(samples, real, imaginary);
+                sink += real[i % real.length];
+              }
+            });
+
+    Benchmarks.report(
+        BENCHMARK,
+        "%d-sample buffer: complex FFT %.1f us, real FFT %.1f us (%.1fx faster)",
+        BUFFER_SIZE,
+        complexNanos / 1000.0 / BUFFERS,
+        realNanos / 1000.0 / BUFFERS,
+        (double) complexNanos / realNanos);
+  }
+
+  // The transform FftAnalyzer used before Fft: a full complex FFT of the real samples, with the
+  // imaginary parts zeroed.
+  private static void complexFft(double[] samples, double[] a, double[] b) {
+    for (int i = 0; i < BUFFER_SIZE; i++) {
+      a[i] = samples[i];
+      b[i] = 0.0;
+    }
+
+    int shift = 1 + Integer.numberOfLeadingZeros(BUFFER_SIZE);
+    for (int i = 0; i < BUFFER_SIZE; i++) {
+      int j = Integer.reverse(i) >>> shift;
+      if (j > i) {
+        double temp = a[j];
+        a[j] = a[i];
+        a[i] = temp;
+        temp = b[j];
+        b[j] = b[i];
+        b[i] = temp;
+      }
+    }
+
+    for (int l = 2; l <= BUFFER_SIZE; l += l) {
+      int lHalf = l / 2;
+      for (int k = 0; k < lHalf; k++) {
+        double kth = -2 * k * Math.PI / l;
+        double wA = Math.cos(kth);
+        double wB = Math.sin(kth);
+        for (int j = 0; j < BUFFER_SIZE / l; j++) {
+          int index1 = j * l + k + lHalf;
+          int index2 = j * l + k;
+          double xA = a[index1];
+          double xB = b[index1];
+          double taoA = xA * wA - xB * wB;
+          double taoB = xA * wB + xB * wA;
+          a[index1] = a[index2] - taoA;
+          b[index1] = b[index2] - taoB;
+          a[index2] = a[index2] + taoA;
+          b[index2] = b[index2] + taoB;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.audio;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class FftTest {
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void transformMatchesDft() {
+    int size = 64;
+    Random random = new Random(0);
+    double[] real = new double[size];
+    double[] imaginary = new double[size];
+    for (int i = 0; i < size; i++) {
+      real[i] = random.nextDouble() - 0.5;
+      imaginary[i] = random.nextDouble() - 0.5;
+    }
+    double[][] expected = dft(real, imaginary);
+
+    new Fft(size).transform(real, imaginary);
+    for (int k = 0; k < size; k++) {
+      assertEquals(expected[0][k], real[k], DELTA);
+      assertEquals(expected[1][k], imaginary[k], DELTA);
+    }
+  }
+
+  @Test
+  public void transformRealMatchesDft() {
+    int size = 128;
+    Random random = new Random(1);
+    double[] input = new double[size];
+    for (int i = 0; i < size; i++) {
+      input[i] = random.nextDouble() - 0.5;
+    }
+    double[][] expected = dft(input, new double[size]);
+
+    double[] real = new double[size / 2 + 1];
+    double[] imaginary = new double[size / 2 + 1];
+    new Fft(size).transformReal(input, real, imaginary);
+    for (int k = 0; k <= size / 2; k++) {
+      assertEquals(expected[0][k], real[k], DELTA);
+      assertEquals(expected[1][k], imaginary[k], DELTA);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sizeMustBePowerOfTwo() {
+    new Fft(100);
+  }
+
+  @Test
+  public void windowCoefficients() {
+    double[] hann = WindowFunction.HANN.createCoefficients(9);
+    assertEquals(0.0, hann[0], DELTA);
+    assertEquals(1.0, hann[4], DELTA);
+    assertEquals(0.0, hann[8], DELTA);
+    double[] rectangular = WindowFunction.RECTANGULAR.createCoefficients(9);
+    for (double coefficient : rectangular) {
+      assertEquals(1.0, coefficient, 0.0);
+    }
+  }
+
+  private static double[][] dft(double[] real, double[] imaginary) {
+    int size = real.length;
+    double[][] result = new double[2][size];
+    for (int k = 0; k < size; k++) {
+      for (int n = 0; n < size; n++) {
+        double angle = -2 * Math.PI * k * n / size;
+        result[0][k] += real[n] * Math.cos(angle) - imaginary[n] * Math.sin(angle);
+        result[1][k] += real[n] * Math.sin(angle) + imaginary[n] * Math.cos(angle);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.audio;
+
+import static com.google.android.apps.forscience.whistlepunk.audio.AudioAnalyzer.BUFFER_SIZE;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class StreamingAudioAnalyzerTest {
+  private static final int SAMPLE_RATE_IN_HZ = 44100;
+  private static final int HOP_SIZE = 1024;
+
+  @Test
+  public void analyzesOverlappingWindows() {
+    // A tone that rises from 220Hz to 880Hz, so that each window has a different pitch.
+    short[] samples = new short[BUFFER_SIZE * 4];
+    double phase = 0;
+    for (int i = 0; i < samples.length; i++) {
+      double frequency = 220 * Math.pow(4, (double) i / samples.length);
+      phase += 2 * Math.PI * frequency / SAMPLE_RATE_IN_HZ;
+      samples[i] = (short) (10000 * Math.sin(phase));
+    }
+
+    List<Double> frequencies = new ArrayList<>();
+    StreamingAudioAnalyzer streamingAnalyzer =
+        new StreamingAudioAnalyzer(SAMPLE_RATE_IN_HZ, HOP_SIZE);
+    // Deliver the samples in chunks that don't line up with the hop size or the buffer.
+    for (int offset = 0; offset < samples.length; offset += 1000) {
+      streamingAnalyzer.addSamples(
+          Arrays.copyOfRange(samples, offset, Math.min(samples.length, offset + 1000)),
+          frequencies::add);
+    }
+
+    assertEquals(1 + (samples.length - BUFFER_SIZE) / HOP_SIZE, frequencies.size());
+    AudioAnalyzer analyzer = new AudioAnalyzer(SAMPLE_RATE_IN_HZ);
+    for (int i = 0; i < frequencies.size(); i++) {
+      Double expected = analyzer.detectFundamentalFrequency(samples, i * HOP_SIZE, BUFFER_SIZE);
+      assertEquals(expected, frequencies.get(i));
+    }
+  }
+
+  @Test
+  public void resetWaitsForFullWindow() {
+    List<Double> frequencies = new ArrayList<>();
+    StreamingAudioAnalyzer streamingAnalyzer =
+        new StreamingAudioAnalyzer(SAMPLE_RATE_IN_HZ, HOP_SIZE);
+    streamingAnalyzer.addSamples(new short[BUFFER_SIZE], frequencies::add);
+    assertEquals(1, frequencies.size());
+
+    streamingAnalyzer.reset();
+    streamingAnalyzer.addSamples(new short[BUFFER_SIZE - 1], frequencies::add);
+    assertEquals(1, frequencies.size());
+    streamingAnalyzer.addSamples(new short[1], frequencies::add);
+    assertEquals(2, frequencies.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void hopSizeMustFitInBuffer() {
+    new StreamingAudioAnalyzer(SAMPLE_RATE_IN_HZ, BUFFER_SIZE + 1);
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.cloudsync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.accounts.Account;
+import com.google.android.apps.forscience.whistlepunk.DataControllerImpl;
+import com.google.android.apps.forscience.whistlepunk.ScalarReadingBatch;
+import com.google.android.apps.forscience.whistlepunk.accounts.AbstractAccount;
+import com.google.android.apps.forscience.whistlepunk.data.GoosciExperimentLibrary.ExperimentLibrary;
+import com.google.android.apps.forscience.whistlepunk.data.GoosciLocalSyncStatus.LocalSyncStatus;
+import com.google.android.apps.forscience.whistlepunk.devicemanager.ConnectableSensor;
+import com.google.android.apps.forscience.whistlepunk.filemetadata.ExperimentLibraryManager;
+import com.google.android.apps.forscience.whistlepunk.filemetadata.FileMetadataUtil;
+import com.google.android.apps.forscience.whistlepunk.filemetadata.LocalSyncManager;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorData;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataDump;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataRow;
+import com.google.android.apps.forscience.whistlepunk.sensordb.InMemorySensorDatabase;
+import com.google.android.apps.forscience.whistlepunk.sensordb.MemoryMetadataManager;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarWriteBuffer;
+import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
+import com.google.common.collect.Range;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class DriveSyncManagerTest {
+  private static final String EXPERIMENT_ID = "experiment";
+  private static final String FILE_NAME = "assets/picture.jpg";
+  private static final String TRIAL_ID = "trial";
+  private static final int ROWS = 100;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final FakeDriveApi driveApi = new FakeDriveApi();
+  private SignedInAccount account;
+  private ExperimentLibraryManager elm;
+  private LocalSyncManager lsm;
+  private DriveSyncManager syncManager;
+  private String packageId;
+  private File localFile;
+
+  @Before
+  public void setUp() throws IOException {
+    account = new SignedInAccount(folder.newFolder());
+    packageId = driveApi.addPackage();
+    elm = new ExperimentLibraryManager(ExperimentLibrary.getDefaultInstance(), account);
+    elm.addExperiment(EXPERIMENT_ID);
+    elm.setFileId(EXPERIMENT_ID, packageId);
+    lsm = new LocalSyncManager(LocalSyncStatus.getDefaultInstance(), account);
+    lsm.addExperiment(EXPERIMENT_ID);
+    syncManager = new DriveSyncManager(account, null, driveApi, null);
+    localFile =
+        new File(
+            FileMetadataUtil.getInstance().getExperimentDirectory(account, EXPERIMENT_ID),
+            FILE_NAME);
+  }
+
+  @Test
+  public void uploadsFileMissingFromManifest() throws IOException {
+    writeLocalFile("picture");
+    assertNull(lsm.getSyncedFileHash(EXPERIMENT_ID, packageId, FILE_NAME));
+
+    syncManager.uploadFileInBackgroundThread(EXPERIMENT_ID, FILE_NAME, elm, lsm);
+
+    assertEquals(Collections.singletonList("uploadFile"), driveApi.getCalls());
+    assertEquals(
+        FileMetadataUtil.getInstance().hashFile(localFile),
+        lsm.getSyncedFileHash(EXPERIMENT_ID, packageId, FILE_NAME));
+  }
+
+  @Test
+  public void skipsUploadOfUnchangedFile() throws IOException {
+    writeLocalFile("picture");
+    syncManager.uploadFileInBackgroundThread(EXPERIMENT_ID, FILE_NAME, elm, lsm);
+    syncManager.uploadFileInBackgroundThread(EXPERIMENT_ID, FILE_NAME, elm, lsm);
+
+    assertEquals(Collections.singletonList("uploadFile"), driveApi.getCalls());
+  }
+
+  @Test
+  public void uploadsChangedFile() throws IOException {
+    writeLocalFile("picture");
+    syncManager.uploadFileInBackgroundThread(EXPERIMENT_ID, FILE_NAME, elm, lsm);
+    String firstHash = lsm.getSyncedFileHash(EXPERIMENT_ID, packageId, FILE_NAME);
+
+    writeLocalFile("another picture");
+    syncManager.uploadFileInBackgroundThread(EXPERIMENT_ID, FILE_NAME, elm, lsm);
+
+    assertEquals(2, driveApi.getCalls().size());
+    assertEquals("uploadFile", driveApi.getCalls().get(1));
+    String secondHash = lsm.getSyncedFileHash(EXPERIMENT_ID, packageId, FILE_NAME);
+    assertNotNull(secondHash);
+    assertEquals(FileMetadataUtil.getInstance().hashFile(localFile), secondHash);
+    assertNotEquals(firstHash, secondHash);
+  }
+
+  @Test
+  public void uploadsAgainToNewPackage() throws IOException {
+    writeLocalFile("picture");
+    syncManager.uploadFileInBackgroundThread(EXPERIMENT_ID, FILE_NAME, elm, lsm);
+
+    // The manifest is kept per package, so a recreated package has no entry for the file.
+    elm.setFileId(EXPERIMENT_ID, driveApi.addPackage());
+    syncManager.uploadFileInBackgroundThread(EXPERIMENT_ID, FILE_NAME, elm, lsm);
+
+    assertEquals(2, driveApi.getCalls().size());
+  }
+
+  @Test
+  public void skipsDownloadOfUnchangedFile() throws IOException {
+    writeLocalFile("picture");
+    lsm.setSyncedFileHash(
+        EXPERIMENT_ID, packageId, FILE_NAME, FileMetadataUtil.getInstance().hashFile(localFile));
+
+    assertEquals(
+        localFile,
+        syncManager.downloadFileInBackgroundThread(EXPERIMENT_ID, FILE_NAME, elm, lsm));
+    assertEquals(Collections.emptyList(), driveApi.getCalls());
+
+    writeLocalFile("another picture");
+    syncManager.downloadFileInBackgroundThread(EXPERIMENT_ID, FILE_NAME, elm, lsm);
+    assertEquals(Collections.singletonList("downloadExperimentAsset"), driveApi.getCalls());
+  }
+
+  @Test
+  public void recordsTrialHashOnceImportIsWritten() throws IOException {
+    InMemorySensorDatabase db = new InMemorySensorDatabase();
+    File trialFile = writeTrialFile();
+
+    downloadTrial(db);
+
+    // readData only queues the writes, but they have all landed by the time the hash is recorded.
+    assertEquals(
+        ROWS,
+        db.getScalarReadings(TRIAL_ID, "a", TimeRange.oldest(Range.<Long>all()), 0, 0).size());
+    assertEquals(
+        FileMetadataUtil.getInstance().hashFile(trialFile),
+        lsm.getSyncedFileHash(EXPERIMENT_ID, packageId, trialFile.getName()));
+  }
+
+  @Test
+  public void doesNotRecordTrialHashWhenImportFails() throws IOException {
+    InMemorySensorDatabase db =
+        new InMemorySensorDatabase() {
+          @Override
+          public void addScalarReadings(ScalarReadingBatch readings) {
+            throw new RuntimeException("disk full");
+          }
+        };
+    File trialFile = writeTrialFile();
+
+    downloadTrial(db);
+
+    // So the import is tried again on the next sync.
+    assertNull(lsm.getSyncedFileHash(EXPERIMENT_ID, packageId, trialFile.getName()));
+  }
+
+  private void downloadTrial(InMemorySensorDatabase db) throws IOException {
+    ExecutorService dataThread = Executors.newSingleThreadExecutor();
+    try {
+      DataControllerImpl dc =
+          new DataControllerImpl(
+              null, // context
+              account,
+              db,
+              MoreExecutors.directExecutor(),
+              MoreExecutors.directExecutor(),
+              dataThread,
+              new MemoryMetadataManager(),
+              () -> 0,
+              new HashMap<>(),
+              new ConnectableSensor.Connector(new HashMap<>()),
+              ScalarWriteBuffer.writeThrough(() -> 0),
+              null);
+      new DriveSyncManager(account, null, driveApi, dc)
+          .downloadTrialInBackgroundThread(EXPERIMENT_ID, TRIAL_ID, elm, lsm);
+    } finally {
+      dataThread.shutdown();
+    }
+  }
+
+  private File writeTrialFile() throws IOException {
+    ScalarSensorDataDump.Builder dump =
+        ScalarSensorDataDump.newBuilder().setTag("a").setTrialId(TRIAL_ID);
+    for (int i = 1; i <= ROWS; i++) {
+      dump.addRows(ScalarSensorDataRow.newBuilder().setTimestampMillis(i).setValue(i));
+    }
+    File trialFile =
+        new File(
+            FileMetadataUtil.getInstance().getExperimentDirectory(account, EXPERIMENT_ID),
+            FileMetadataUtil.getInstance().getTrialProtoFileName(TRIAL_ID));
+    trialFile.getParentFile().mkdirs();
+    try (FileOutputStream out = new FileOutputStream(trialFile)) {
+      ScalarSensorData.newBuilder().addSensors(dump).build().writeTo(out);
+    }
+    return trialFile;
+  }
+
+  private void writeLocalFile(String contents) throws IOException {
+    localFile.getParentFile().mkdirs();
+    try (FileOutputStream out = new FileOutputStream(localFile)) {
+      out.write(contents.getBytes("UTF-8"));
+    }
+  }
+
+  /** A signed in account whose files are kept in the given directory. */
+  private static class SignedInAccount extends AbstractAccount {
+    private final File filesDir;
+
+    SignedInAccount(File filesDir) {
+      this.filesDir = filesDir;
+    }
+
+    @Override
+    public Account getAccount() {
+      return null;
+    }
+
+    @Override
+    public String getAccountName() {
+      return "signedIn";
+    }
+
+    @Override
+    public String getAccountKey() {
+      return "signedIn";
+    }
+
+    @Override
+    public boolean isSignedIn() {
+      return true;
+    }
+
+    @Override
+    public File getFilesDir() {
+      return filesDir;
+    }
+
+    @Override
+    public String getDatabaseFileName(String name) {
+      return name;
+    }
+
+    @Override
+    public String getSharedPreferencesName() {
+      return "signedIn";
+    }
+  }
+}
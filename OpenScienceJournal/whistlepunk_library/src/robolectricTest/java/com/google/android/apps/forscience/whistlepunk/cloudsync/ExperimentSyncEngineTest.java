@@ -0,0 +1,153 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.cloudsync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.android.apps.forscience.whistlepunk.filemetadata.FileSyncCollection;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ExperimentSyncEngineTest {
+  private static final int THREADS = 3;
+  private static final int EXPERIMENTS = 30;
+
+  /**
+   * Uploads each experiment's proto as its metadata, and then a picture, to its own package on a
+   * FakeDriveApi.
+   */
+  private static class UploadingSyncer implements ExperimentSyncEngine.ExperimentSyncer {
+    final FakeDriveApi driveApi = new FakeDriveApi();
+    final Map<String, String> packageIds = new HashMap<>();
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final List<String> orderingErrors = Collections.synchronizedList(new ArrayList<>());
+
+    UploadingSyncer(List<String> experimentIds) {
+      for (String experimentId : experimentIds) {
+        packageIds.put(experimentId, driveApi.addPackage());
+      }
+    }
+
+    @Override
+    public FileSyncCollection syncMetadata(String experimentId) throws IOException {
+      int nowRunning = running.incrementAndGet();
+      maxRunning.accumulateAndGet(nowRunning, Math::max);
+      try {
+        // Give other workers a chance to overlap with this one.
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      driveApi.insertExperimentProto(
+          new File(DriveSyncManager.EXPERIMENT_PROTO_FILE), packageIds.get(experimentId), "");
+      running.decrementAndGet();
+      FileSyncCollection files = new FileSyncCollection();
+      files.addImageUpload(experimentId + ".jpg");
+      return files;
+    }
+
+    @Override
+    public void transferFiles(String experimentId, FileSyncCollection files) {
+      String packageId = packageIds.get(experimentId);
+      if (!driveApi.getFileNames(packageId).contains(DriveSyncManager.EXPERIMENT_PROTO_FILE)) {
+        orderingErrors.add(experimentId);
+      }
+      for (String upload : files.getImageUploads()) {
+        try {
+          driveApi.uploadFile(new File(upload), packageId);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+  }
+
+  private static List<String> makeIds() {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < EXPERIMENTS; i++) {
+      ids.add("experiment" + i);
+    }
+    return ids;
+  }
+
+  @Test
+  public void syncsEveryExperimentInParallel() throws IOException {
+    List<String> ids = makeIds();
+    UploadingSyncer syncer = new UploadingSyncer(ids);
+    List<Integer> progress = new ArrayList<>();
+    Set<String> synced = new HashSet<>();
+
+    new ExperimentSyncEngine(THREADS)
+        .syncExperiments(
+            ids,
+            syncer,
+            (experimentId, syncedCount, totalCount) -> {
+              synced.add(experimentId);
+              progress.add(syncedCount);
+              assertEquals(EXPERIMENTS, totalCount);
+            });
+
+    assertEquals(new HashSet<>(ids), synced);
+    for (int i = 0; i < EXPERIMENTS; i++) {
+      assertEquals(i + 1, (int) progress.get(i));
+    }
+    for (String id : ids) {
+      Set<String> files = syncer.driveApi.getFileNames(syncer.packageIds.get(id));
+      assertTrue(files.contains(DriveSyncManager.EXPERIMENT_PROTO_FILE));
+      assertTrue(files.contains(id + ".jpg"));
+    }
+    // Files are only transferred once their experiment's metadata has been synced.
+    assertTrue(syncer.orderingErrors.isEmpty());
+    assertTrue(syncer.maxRunning.get() > 1);
+    assertTrue(syncer.maxRunning.get() <= THREADS);
+  }
+
+  @Test
+  public void failureDoesNotStopOtherExperiments() {
+    List<String> ids = makeIds();
+    UploadingSyncer syncer = new UploadingSyncer(ids);
+    IOException failure = new IOException("Failing for the test");
+    syncer.driveApi.failNextCall(failure);
+    AtomicInteger syncedCount = new AtomicInteger();
+
+    try {
+      new ExperimentSyncEngine(THREADS)
+          .syncExperiments(
+              ids, syncer, (experimentId, synced, total) -> syncedCount.incrementAndGet());
+      fail();
+    } catch (IOException e) {
+      assertSame(failure, e);
+    }
+    assertEquals(EXPERIMENTS - 1, syncedCount.get());
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.cloudsync;
+
+import android.content.Context;
+import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
+import com.google.android.apps.forscience.whistlepunk.data.GoosciExperimentLibrary;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * An in-memory DriveApi for tests. Packages are folders holding files by name, and every change to
+ * a package bumps its version. Failures can be queued up to be thrown by the next calls.
+ */
+class FakeDriveApi implements DriveApi {
+  private final Map<String, Set<String>> packages = new HashMap<>();
+  private final Map<String, Long> versions = new HashMap<>();
+  private final Set<String> trashed = new LinkedHashSet<>();
+  private final Queue<IOException> failures = new ArrayDeque<>();
+  private final List<String> calls = new ArrayList<>();
+  private String libraryFileId;
+  private int nextId = 1;
+
+  /** Makes the next call throw the given exception. */
+  synchronized void failNextCall(IOException failure) {
+    failures.add(failure);
+  }
+
+  /** Returns the names of the methods called so far, in order. */
+  synchronized List<String> getCalls() {
+    return new ArrayList<>(calls);
+  }
+
+  synchronized String addPackage() {
+    String packageId = "package" + nextId++;
+    packages.put(packageId, new LinkedHashSet<>());
+    versions.put(packageId, 1L);
+    return packageId;
+  }
+
+  synchronized Set<String> getFileNames(String packageId) {
+    return new LinkedHashSet<>(packages.get(packageId));
+  }
+
+  private synchronized void call(String method) throws IOException {
+    calls.add(method);
+    IOException failure = failures.poll();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private synchronized void addFile(String packageId, String fileName) throws IOException {
+    Set<String> files = packages.get(packageId);
+    if (files == null) {
+      throw new IOException("No package " + packageId);
+    }
+    files.add(fileName);
+    versions.put(packageId, versions.get(packageId) + 1);
+  }
+
+  @Override
+  public DriveApi init(
+      HttpTransport transport,
+      JsonFactory jsonFactory,
+      AppAccount appAccount,
+      Context applicationContext) {
+    return this;
+  }
+
+  @Override
+  public GoosciExperimentLibrary.ExperimentLibrary downloadExperimentLibraryFile(String fileId)
+      throws IOException {
+    call("downloadExperimentLibraryFile");
+    return GoosciExperimentLibrary.ExperimentLibrary.getDefaultInstance();
+  }
+
+  @Override
+  public GoosciExperiment.Experiment downloadExperimentProtoFile(String fileId)
+      throws IOException {
+    call("downloadExperimentProtoFile");
+    return GoosciExperiment.Experiment.getDefaultInstance();
+  }
+
+  @Override
+  public synchronized String getRemoteExperimentLibraryFileId() throws IOException {
+    call("getRemoteExperimentLibraryFileId");
+    return libraryFileId;
+  }
+
+  @Override
+  public synchronized void insertExperimentLibraryFile(File libraryFile) throws IOException {
+    call("insertExperimentLibraryFile");
+    libraryFileId = "library";
+    versions.put(libraryFileId, 1L);
+  }
+
+  @Override
+  public synchronized void updateExperimentLibraryFile(File libraryFile, String fileId)
+      throws IOException {
+    call("updateExperimentLibraryFile");
+    versions.put(fileId, versions.get(fileId) + 1);
+  }
+
+  @Override
+  public File downloadExperimentAsset(String packageId, File experimentDirectory, String fileName)
+      throws IOException {
+    call("downloadExperimentAsset");
+    return new File(experimentDirectory, fileName);
+  }
+
+  @Override
+  public String getExperimentPackageId(Context context, String directoryId) throws IOException {
+    call("getExperimentPackageId");
+    return addPackage();
+  }
+
+  @Override
+  public synchronized boolean getFileExists(String fileId) throws IOException {
+    call("getFileExists");
+    return versions.containsKey(fileId) && !trashed.contains(fileId);
+  }
+
+  @Override
+  public synchronized Map<String, Long> getAllDriveExperimentVersions() throws IOException {
+    call("getAllDriveExperimentVersions");
+    Map<String, Long> result = new HashMap<>();
+    for (String packageId : packages.keySet()) {
+      result.put(packageId, versions.get(packageId));
+    }
+    return result;
+  }
+
+  @Override
+  public DriveFile getExperimentProtoMetadata(String packageId) throws IOException {
+    call("getExperimentProtoMetadata");
+    if (!getFileNames(packageId).contains(DriveSyncManager.EXPERIMENT_PROTO_FILE)) {
+      return null;
+    }
+    long version = getVersion(packageId);
+    return new DriveFile() {
+      @Override
+      public long getVersion() {
+        return version;
+      }
+
+      @Override
+      public String getId() {
+        return packageId + "/" + DriveSyncManager.EXPERIMENT_PROTO_FILE;
+      }
+
+      @Override
+      public String getTitle() {
+        return DriveSyncManager.EXPERIMENT_PROTO_FILE;
+      }
+    };
+  }
+
+  @Override
+  public long insertExperimentProto(File localFile, String packageId, String experimentTitle)
+      throws IOException {
+    call("insertExperimentProto");
+    addFile(packageId, DriveSyncManager.EXPERIMENT_PROTO_FILE);
+    return getVersion(packageId);
+  }
+
+  @Override
+  public long updateExperimentProto(
+      File localFile,
+      DriveFile serverExperimentProtoMetadata,
+      String packageId,
+      String experimentTitle)
+      throws IOException {
+    call("updateExperimentProto");
+    addFile(packageId, DriveSyncManager.EXPERIMENT_PROTO_FILE);
+    return getVersion(packageId);
+  }
+
+  @Override
+  public synchronized String createNewSJFolder() throws IOException {
+    call("createNewSJFolder");
+    String folderId = "folder" + nextId++;
+    versions.put(folderId, 1L);
+    return folderId;
+  }
+
+  @Override
+  public synchronized void trashFileById(String fileId) throws IOException {
+    call("trashFileById");
+    trashed.add(fileId);
+  }
+
+  @Override
+  public void uploadFile(File localFile, String packageId) throws IOException {
+    call("uploadFile");
+    addFile(packageId, localFile.getName());
+  }
+
+  @Override
+  public int getPackageVersion(String packageId) throws IOException {
+    call("getPackageVersion");
+    return 1;
+  }
+
+  @Override
+  public synchronized long getFileVersion(String fileId) throws IOException {
+    call("getFileVersion");
+    return versions.get(fileId);
+  }
+
+  @Override
+  public synchronized boolean sjFolderExists() throws IOException {
+    call("sjFolderExists");
+    return true;
+  }
+
+  @Override
+  public synchronized int countSJExperiments() throws IOException {
+    call("countSJExperiments");
+    return packages.size();
+  }
+
+  private synchronized long getVersion(String packageId) {
+    return versions.get(packageId);
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.cloudsync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class RetryingDriveApiTest {
+  private final FakeDriveApi fake = new FakeDriveApi();
+  private final List<Long> sleeps = new ArrayList<>();
+  private final RetryingDriveApi driveApi = new RetryingDriveApi(fake, 4, 100, sleeps::add);
+
+  private static IOException httpError(int status) {
+    return new HttpResponseException.Builder(status, "Error " + status, new HttpHeaders()).build();
+  }
+
+  private static IOException forbidden(String reason) {
+    GoogleJsonError.ErrorInfo error = new GoogleJsonError.ErrorInfo();
+    error.setReason(reason);
+    GoogleJsonError details = new GoogleJsonError();
+    details.setCode(403);
+    details.setErrors(Collections.singletonList(error));
+    return new GoogleJsonResponseException(
+        new HttpResponseException.Builder(403, "Forbidden", new HttpHeaders()), details);
+  }
+
+  @Test
+  public void retriesServerErrorsWithBackoff() throws IOException {
+    String packageId = fake.addPackage();
+    fake.failNextCall(httpError(503));
+    fake.failNextCall(new SocketTimeoutException());
+    fake.failNextCall(httpError(429));
+
+    driveApi.uploadFile(new File("picture.jpg"), packageId);
+
+    assertEquals(4, fake.getCalls().size());
+    assertTrue(fake.getFileNames(packageId).contains("picture.jpg"));
+    assertEquals(3, sleeps.size());
+    // Each wait is between half and one and a half times a doubling backoff.
+    for (int i = 0; i < sleeps.size(); i++) {
+      long backoff = 100L << i;
+      assertTrue(sleeps.get(i) >= backoff / 2 && sleeps.get(i) <= backoff * 3 / 2);
+    }
+  }
+
+  @Test
+  public void givesUpAfterMaxAttempts() {
+    IOException last = httpError(500);
+    fake.failNextCall(httpError(500));
+    fake.failNextCall(httpError(500));
+    fake.failNextCall(httpError(500));
+    fake.failNextCall(last);
+    try {
+      driveApi.getFileExists("file");
+      fail();
+    } catch (IOException e) {
+      assertSame(last, e);
+    }
+    assertEquals(4, fake.getCalls().size());
+  }
+
+  @Test
+  public void doesNotRetryClientErrors() {
+    IOException notFound = httpError(404);
+    fake.failNextCall(notFound);
+    try {
+      driveApi.getFileVersion("file");
+      fail();
+    } catch (IOException e) {
+      assertSame(notFound, e);
+    }
+    assertEquals(1, fake.getCalls().size());
+    assertTrue(sleeps.isEmpty());
+  }
+
+  @Test
+  public void onlyRetriesCreatingFilesWhenRateLimited() throws IOException {
+    IOException serverError = httpError(500);
+    fake.failNextCall(serverError);
+    try {
+      driveApi.createNewSJFolder();
+      fail();
+    } catch (IOException e) {
+      assertSame(serverError, e);
+    }
+    assertEquals(1, fake.getCalls().size());
+
+    fake.failNextCall(httpError(429));
+    driveApi.createNewSJFolder();
+    assertEquals(3, fake.getCalls().size());
+  }
+
+  @Test
+  public void retriesForbiddenOnlyWhenRateLimited() throws IOException {
+    fake.failNextCall(forbidden("rateLimitExceeded"));
+    fake.failNextCall(forbidden("userRateLimitExceeded"));
+    // Rate limits are retried even for calls that create files.
+    driveApi.createNewSJFolder();
+    assertEquals(3, fake.getCalls().size());
+
+    IOException notAllowed = forbidden("insufficientFilePermissions");
+    fake.failNextCall(notAllowed);
+    try {
+      driveApi.getFileVersion("file");
+      fail();
+    } catch (IOException e) {
+      assertSame(notAllowed, e);
+    }
+    assertEquals(4, fake.getCalls().size());
+
+    IOException plainForbidden = httpError(403);
+    fake.failNextCall(plainForbidden);
+    try {
+      driveApi.getFileVersion("file");
+      fail();
+    } catch (IOException e) {
+      assertSame(plainForbidden, e);
+    }
+    assertEquals(5, fake.getCalls().size());
+  }
+}
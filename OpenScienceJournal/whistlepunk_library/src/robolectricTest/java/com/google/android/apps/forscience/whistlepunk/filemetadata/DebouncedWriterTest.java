@@ -0,0 +1,103 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.filemetadata;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Tests for the DebouncedWriter class. */
+@RunWith(RobolectricTestRunner.class)
+public class DebouncedWriterTest {
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testCoalescesChangesIntoOneWrite() throws InterruptedException {
+    AtomicInteger writes = new AtomicInteger();
+    CountDownLatch written = new CountDownLatch(1);
+    DebouncedWriter writer =
+        new DebouncedWriter(
+            () -> {
+              writes.incrementAndGet();
+              written.countDown();
+            },
+            50,
+            executor);
+    for (int i = 0; i < 1000; i++) {
+      writer.markDirty();
+    }
+    assertTrue(written.await(5, TimeUnit.SECONDS));
+    // Let any extra writes that were wrongly scheduled run.
+    executor.schedule(() -> {}, 100, TimeUnit.MILLISECONDS);
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(1, writes.get());
+    assertFalse(writer.isDirty());
+  }
+
+  @Test
+  public void testFlushWritesImmediately() {
+    AtomicInteger writes = new AtomicInteger();
+    DebouncedWriter writer = new DebouncedWriter(writes::incrementAndGet, 60000, executor);
+    writer.flush();
+    assertEquals(0, writes.get());
+
+    writer.markDirty();
+    writer.markDirty();
+    writer.flush();
+    assertEquals(1, writes.get());
+    assertFalse(writer.isDirty());
+
+    // Nothing has changed since, so there is nothing to write.
+    writer.flush();
+    assertEquals(1, writes.get());
+  }
+
+  @Test
+  public void testChangesAfterWriteAreWrittenAgain() throws InterruptedException {
+    AtomicInteger writes = new AtomicInteger();
+    CountDownLatch written = new CountDownLatch(2);
+    DebouncedWriter writer =
+        new DebouncedWriter(
+            () -> {
+              writes.incrementAndGet();
+              written.countDown();
+            },
+            10,
+            executor);
+    writer.markDirty();
+    writer.flush();
+    writer.markDirty();
+    assertTrue(written.await(5, TimeUnit.SECONDS));
+    assertEquals(2, writes.get());
+  }
+}
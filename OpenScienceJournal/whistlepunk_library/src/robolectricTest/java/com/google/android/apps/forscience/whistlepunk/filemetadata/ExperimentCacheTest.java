@@ -18,7 +18,9 @@ package com.google.android.apps.forscience.whistlepunk.filemetadata;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 
 import android.content.Context;
@@ -198,6 +200,73 @@ public class ExperimentCacheTest {
     assertEquals("Title", cache.getActiveExperimentForTests().getTitle());
   }
 
+  @Test
+  public void testChangingExperimentKeepsOldOneCached() {
+    Experiment experiment = Experiment.newExperiment(10, "exp_localId", 0);
+    elm.addExperiment(experiment.getExperimentId());
+    lsm.addExperiment(experiment.getExperimentId());
+    cache.createNewExperiment(experiment);
+
+    Experiment second = Experiment.newExperiment(20, "exp_secondId", 0);
+    elm.addExperiment(second.getExperimentId());
+    lsm.addExperiment(second.getExperimentId());
+    cache.createNewExperiment(second);
+
+    // Switching back and forth returns the same instances, without reading them again.
+    assertSame(experiment, cache.getExperiment(experiment.getExperimentOverview()));
+    assertSame(second, cache.getExperiment(second.getExperimentOverview()));
+    assertSame(experiment, cache.getExperiment(experiment.getExperimentOverview()));
+  }
+
+  @Test
+  public void testSaveImmediatelyWritesCachedExperiments() {
+    Experiment experiment = Experiment.newExperiment(10, "exp_localId", 0);
+    elm.addExperiment(experiment.getExperimentId());
+    lsm.addExperiment(experiment.getExperimentId());
+    cache.createNewExperiment(experiment);
+    experiment.setTitle("Title");
+    cache.updateExperiment(experiment, false);
+
+    Experiment second = Experiment.newExperiment(20, "exp_secondId", 0);
+    elm.addExperiment(second.getExperimentId());
+    lsm.addExperiment(second.getExperimentId());
+    cache.createNewExperiment(second);
+    cache.saveImmediately();
+    assertFalse(cache.needsWrite());
+
+    // Read the first experiment with a different cache, to be sure it came from the file.
+    ExperimentCache otherCache =
+        new ExperimentCache(
+            getContext(),
+            appAccount,
+            getFailureFailsListener(),
+            false /* enableAutoWrite */,
+            elm,
+            lsm);
+    otherCache.loadActiveExperimentFromFile(experiment.getExperimentOverview());
+    assertEquals("Title", otherCache.getActiveExperimentForTests().getTitle());
+  }
+
+  @Test
+  public void testEvictedExperimentIsWritten() {
+    Experiment first = null;
+    for (int i = 0; i < 10; i++) {
+      Experiment experiment = Experiment.newExperiment(i, "exp_" + i, 0);
+      experiment.setTitle("Title " + i);
+      elm.addExperiment(experiment.getExperimentId());
+      lsm.addExperiment(experiment.getExperimentId());
+      cache.createNewExperiment(experiment);
+      if (first == null) {
+        first = experiment;
+      }
+    }
+
+    // The first experiment has been evicted, so it is read from the file it was written to.
+    Experiment reloaded = cache.getExperiment(first.getExperimentOverview());
+    assertNotSame(first, reloaded);
+    assertEquals("Title 0", reloaded.getTitle());
+  }
+
   @Test
   public void testUpgradeStartsWriteTimer() {
     GoosciExperiment.Experiment.Builder proto = createExperimentProto().toBuilder();
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.filemetadata;
+
+import com.google.android.apps.forscience.whistlepunk.Benchmarks;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Times building and serializing the proto of a large experiment, as ExperimentCache does on each
+ * autosave. With every trial and label changed, nothing can be reused, which is what every save
+ * cost before unchanged trials and labels were cached. Only runs with {@code -PrunBenchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ExperimentProtoBenchmarkTest {
+  private static final String BENCHMARK = "ExperimentProto";
+
+  private int iteration = 0;
+
+  @Test
+  public void benchmarkCachedAgainstUncachedProto() {
+    Experiment experiment = ExperimentProtoReuseTest.makeLoadedExperiment();
+    int bytes = experiment.getExperimentProto().toByteArray().length;
+
+    // Changing everything costs something by itself, so it is timed separately and taken off.
+    long changeNanos =
+        Benchmarks.medianNanos(
+            () -> ExperimentProtoReuseTest.changeEverything(experiment, iteration++));
+    long uncachedNanos =
+        Benchmarks.medianNanos(
+                () -> {
+                  ExperimentProtoReuseTest.changeEverything(experiment, iteration++);
+                  experiment.getExperimentProto().toByteArray();
+                })
+            - changeNanos;
+    long oneTrialNanos =
+        Benchmarks.medianNanos(
+            () -> {
+              Trial trial = experiment.getTrials().get(iteration % experiment.getTrialCount());
+              trial.setTitle("Changed " + iteration++);
+              experiment.updateTrial(trial);
+              experiment.getExperimentProto().toByteArray();
+            });
+    long cachedNanos = Benchmarks.medianNanos(() -> experiment.getExperimentProto().toByteArray());
+
+    Benchmarks.report(
+        BENCHMARK,
+        "%d-byte experiment: %.1f us uncached, %.1f us with one trial changed (%.1fx faster),"
+            + " %.1f us with nothing changed (%.1fx faster)",
+        bytes,
+        uncachedNanos / 1000.0,
+        oneTrialNanos / 1000.0,
+        (double) uncachedNanos / oneTrialNanos,
+        cachedNanos / 1000.0,
+        (double) uncachedNanos / cachedNanos);
+  }
+}
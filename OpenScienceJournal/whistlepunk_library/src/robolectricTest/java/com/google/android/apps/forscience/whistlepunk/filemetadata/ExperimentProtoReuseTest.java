@@ -0,0 +1,114 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.filemetadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciCaption;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciLabel.Label.ValueType;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial.Range;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Checks that building the proto of a large experiment, as ExperimentCache does on each autosave,
+ * gives the proto that building from scratch would, whether every trial and label changed, one
+ * trial changed, or nothing changed. {@link ExperimentProtoBenchmarkTest} times these cases.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ExperimentProtoReuseTest {
+  private static final int TRIALS = 300;
+  private static final int LABELS_PER_TRIAL = 5;
+  private static final int EXPERIMENT_LABELS = 2000;
+
+  @Test
+  public void reusedProtoMatchesRebuiltProto() {
+    Experiment experiment = makeLoadedExperiment();
+
+    changeEverything(experiment, 1);
+    assertMatchesRebuiltProto(experiment);
+
+    Trial trial = experiment.getTrials().get(0);
+    trial.setTitle("Changed");
+    experiment.updateTrial(trial);
+    assertMatchesRebuiltProto(experiment);
+
+    // With nothing changed, the last proto is reused as is.
+    assertSame(experiment.getExperimentProto(), experiment.getExperimentProto());
+    assertMatchesRebuiltProto(experiment);
+  }
+
+  /** Returns a large experiment whose trials and labels have been built from its proto. */
+  static Experiment makeLoadedExperiment() {
+    Experiment experiment =
+        Experiment.fromExperiment(makeExperimentProto(), new ExperimentOverviewPojo());
+    // Build the trials and labels, as happens once the experiment is looked at.
+    experiment.getTrials();
+    experiment.getLabels();
+    return experiment;
+  }
+
+  private static void assertMatchesRebuiltProto(Experiment experiment) {
+    GoosciExperiment.Experiment proto = experiment.getExperimentProto();
+    Experiment copy = Experiment.fromExperiment(proto, new ExperimentOverviewPojo());
+    copy.getTrials();
+    copy.getLabels();
+    assertEquals(proto, copy.getExperimentProto());
+  }
+
+  private static GoosciExperiment.Experiment makeExperimentProto() {
+    Experiment experiment = Experiment.newExperiment(1, "experimentId", 0);
+    for (int i = 0; i < TRIALS; i++) {
+      long startMs = i * 100000L;
+      GoosciTrial.Trial.Builder trial =
+          GoosciTrial.Trial.newBuilder()
+              .setTrialId("trial" + i)
+              .setTitle("Trial " + i)
+              .setRecordingRange(Range.newBuilder().setStartMs(startMs).setEndMs(startMs + 60000));
+      for (int j = 0; j < LABELS_PER_TRIAL; j++) {
+        trial.addLabels(makeLabel(startMs + j * 1000).getLabelProto());
+      }
+      experiment.addTrial(Trial.fromTrial(trial.build()));
+    }
+    for (int i = 0; i < EXPERIMENT_LABELS; i++) {
+      experiment.addLabel(experiment, makeLabel(i * 1000L));
+    }
+    return experiment.getExperimentProto();
+  }
+
+  private static Label makeLabel(long timestampMs) {
+    Label label = Label.newLabel(timestampMs, ValueType.TEXT);
+    label.setCaption(GoosciCaption.Caption.newBuilder().setText("Note " + timestampMs).build());
+    return label;
+  }
+
+  static void changeEverything(Experiment experiment, int iteration) {
+    for (Trial trial : experiment.getTrials()) {
+      trial.setTitle("Trial " + iteration);
+      for (Label label : trial.getLabels()) {
+        label.setTimestamp(label.getTimeStamp() + 1);
+      }
+    }
+    for (Label label : experiment.getLabels()) {
+      label.setTimestamp(label.getTimeStamp() + 1);
+    }
+  }
+}
@@ -17,6 +17,8 @@
 package com.google.android.apps.forscience.whistlepunk.filemetadata;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import android.content.Context;
 import com.google.android.apps.forscience.whistlepunk.ExperimentCreator;
@@ -35,6 +37,7 @@ import com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial.Range;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciUserMetadata;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciUserMetadata.ExperimentOverview;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -302,6 +305,97 @@ public class ExperimentTest {
     assertThat(result.getTrialsList()).hasSize(1);
   }
 
+  @Test
+  public void testTrialsAndLabelsBuiltWhenFirstUsed() {
+    GoosciExperiment.Experiment.Builder proto =
+        makeExperimentWithLabels(new long[] {99, 100}).toBuilder();
+    proto.addTrials(GoosciTrial.Trial.newBuilder().setTitle("title").setTrialId("trialId"));
+    Experiment experiment = Experiment.fromExperiment(proto.build(), new ExperimentOverviewPojo());
+
+    // Counts don't need the trials and labels to be built.
+    assertThat(experiment.getTrialCount()).isEqualTo(1);
+    assertThat(experiment.getLabelCount()).isEqualTo(2);
+    assertThat(experiment.getExperimentProto().getTrialsList()).isEqualTo(proto.getTrialsList());
+    assertThat(experiment.getExperimentProto().getLabelsList()).isEqualTo(proto.getLabelsList());
+
+    // Once built, changes to them are included in the proto.
+    Trial trial = experiment.getTrial("trialId");
+    trial.setTitle("new title");
+    experiment.updateTrial(trial);
+    experiment.addLabel(experiment, Label.newLabel(150, ValueType.TEXT));
+    GoosciExperiment.Experiment result = experiment.getExperimentProto();
+    assertThat(result.getTrials(0).getTitle()).isEqualTo("new title");
+    assertThat(result.getLabelsCount()).isEqualTo(3);
+    assertThat(result.getLabels(2).getTimestampMs()).isEqualTo(150);
+  }
+
+  @Test
+  public void testReusesUnchangedProtos() {
+    GoosciExperiment.Experiment.Builder proto =
+        makeExperimentWithLabels(new long[] {99, 100}).toBuilder();
+    proto.addTrials(GoosciTrial.Trial.newBuilder().setTitle("first").setTrialId("first"));
+    proto.addTrials(GoosciTrial.Trial.newBuilder().setTitle("second").setTrialId("second"));
+    Experiment experiment = Experiment.fromExperiment(proto.build(), new ExperimentOverviewPojo());
+    experiment.getTrials();
+    experiment.getLabels();
+
+    GoosciExperiment.Experiment first = experiment.getExperimentProto();
+    assertSame(first, experiment.getExperimentProto());
+
+    // Only the changed trial is rebuilt.
+    Trial trial = experiment.getTrial("first");
+    trial.setTitle("new title");
+    experiment.updateTrial(trial);
+    GoosciExperiment.Experiment second = experiment.getExperimentProto();
+    assertNotSame(first, second);
+    assertThat(second.getTrials(0).getTitle()).isEqualTo("new title");
+    assertSame(first.getTrials(1), second.getTrials(1));
+    assertSame(first.getLabels(0), second.getLabels(0));
+    assertThat(second.getChangesCount()).isEqualTo(first.getChangesCount() + 1);
+
+    // Changes to the header alone are picked up too.
+    experiment.setDescription("description");
+    GoosciExperiment.Experiment third = experiment.getExperimentProto();
+    assertThat(third.getDescription()).isEqualTo("description");
+    assertSame(second.getTrials(0), third.getTrials(0));
+  }
+
+  @Test
+  public void testProtoReadWhileTrialsAndLabelsAreBuilt() throws InterruptedException {
+    GoosciExperiment.Experiment.Builder proto =
+        makeExperimentWithLabels(new long[] {99, 100}).toBuilder();
+    proto.addTrials(GoosciTrial.Trial.newBuilder().setTitle("title").setTrialId("trialId"));
+    GoosciExperiment.Experiment experimentProto = proto.build();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    // The write thread builds protos while the UI thread builds trials and labels for the first
+    // time; it must always see either the original protos or the fully built lists.
+    for (int i = 0; i < 200 && failure.get() == null; i++) {
+      Experiment experiment =
+          Experiment.fromExperiment(experimentProto, new ExperimentOverviewPojo());
+      Thread writer =
+          new Thread(
+              () -> {
+                try {
+                  for (int j = 0; j < 50; j++) {
+                    GoosciExperiment.Experiment result = experiment.getExperimentProto();
+                    assertThat(result.getTrialsList()).isEqualTo(experimentProto.getTrialsList());
+                    assertThat(result.getLabelsList()).isEqualTo(experimentProto.getLabelsList());
+                    assertThat(experiment.getTrialCount()).isEqualTo(1);
+                    assertThat(experiment.getLabelCount()).isEqualTo(2);
+                  }
+                } catch (Throwable t) {
+                  failure.compareAndSet(null, t);
+                }
+              });
+      writer.start();
+      assertThat(experiment.getTrials()).hasSize(1);
+      assertThat(experiment.getLabels()).hasSize(2);
+      writer.join();
+    }
+    assertThat(failure.get()).isNull();
+  }
+
   @Test
   public void testTrialNameOrdering() {
     GoosciExperiment.Experiment proto = makeExperimentWithLabels(new long[] {});
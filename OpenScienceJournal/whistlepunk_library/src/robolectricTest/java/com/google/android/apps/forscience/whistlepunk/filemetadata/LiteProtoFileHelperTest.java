@@ -46,6 +46,9 @@ public class LiteProtoFileHelperTest {
   @After
   public void cleanUp() {
     getFile().delete();
+    new File(getFile().getPath() + ".tmp").delete();
+    new File(getFile().getPath() + ".bak").delete();
+    new File(getFile().getPath() + ".bak.tmp").delete();
   }
 
   @Test
@@ -94,4 +97,78 @@ public class LiteProtoFileHelperTest {
         helper.readFromFile(file, GoosciUserMetadata.UserMetadata::parseFrom, null);
     assertEquals(42, result.getVersion());
   }
+
+  @Test
+  public void testWriteLeavesNoTempFile() {
+    File file = getFile();
+    GoosciUserMetadata.UserMetadata metadata =
+        GoosciUserMetadata.UserMetadata.newBuilder().setVersion(42).build();
+    LiteProtoFileHelper<GoosciUserMetadata.UserMetadata> helper = new LiteProtoFileHelper<>();
+    assertTrue(helper.writeToFile(file, metadata, null));
+    assertFalse(helper.writeToFile(file, metadata, true, UsageTracker.STUB));
+
+    assertTrue(file.exists());
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+    assertFalse(new File(file.getPath() + ".bak").exists());
+  }
+
+  @Test
+  public void testKeepsBackup() {
+    File file = getFile();
+    LiteProtoFileHelper<GoosciUserMetadata.UserMetadata> helper =
+        new LiteProtoFileHelper<>(/* keepBackup= */ true);
+    assertTrue(
+        helper.writeToFile(
+            file, GoosciUserMetadata.UserMetadata.newBuilder().setVersion(42).build(), null));
+    assertTrue(
+        helper.writeToFile(
+            file, GoosciUserMetadata.UserMetadata.newBuilder().setVersion(64).build(), null));
+
+    File backupFile = new File(file.getPath() + ".bak");
+    assertEquals(
+        42,
+        helper.readFromFile(backupFile, GoosciUserMetadata.UserMetadata::parseFrom, null)
+            .getVersion());
+    assertEquals(
+        64,
+        helper.readFromFile(file, GoosciUserMetadata.UserMetadata::parseFrom, null).getVersion());
+
+    assertFalse(new File(backupFile.getPath() + ".tmp").exists());
+
+    // If an older version of the app stopped after moving the file to the backup, the backup is
+    // used.
+    file.delete();
+    helper.restoreBackupIfMissing(file);
+    assertEquals(
+        42,
+        helper.readFromFile(file, GoosciUserMetadata.UserMetadata::parseFrom, null).getVersion());
+  }
+
+  @Test
+  public void testFailedWriteKeepsFileAndBackup() {
+    File file = getFile();
+    LiteProtoFileHelper<GoosciUserMetadata.UserMetadata> helper =
+        new LiteProtoFileHelper<>(/* keepBackup= */ true);
+    assertTrue(
+        helper.writeToFile(
+            file, GoosciUserMetadata.UserMetadata.newBuilder().setVersion(42).build(), null));
+    assertTrue(
+        helper.writeToFile(
+            file, GoosciUserMetadata.UserMetadata.newBuilder().setVersion(64).build(), null));
+    assertFalse(
+        helper.writeToFile(
+            file,
+            GoosciUserMetadata.UserMetadata.newBuilder().setVersion(99).build(),
+            true,
+            UsageTracker.STUB));
+
+    File backupFile = new File(file.getPath() + ".bak");
+    assertEquals(
+        42,
+        helper.readFromFile(backupFile, GoosciUserMetadata.UserMetadata::parseFrom, null)
+            .getVersion());
+    assertEquals(
+        64,
+        helper.readFromFile(file, GoosciUserMetadata.UserMetadata::parseFrom, null).getVersion());
+  }
 }
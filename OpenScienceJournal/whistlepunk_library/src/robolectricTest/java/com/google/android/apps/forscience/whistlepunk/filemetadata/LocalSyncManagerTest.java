@@ -18,6 +18,7 @@ package com.google.android.apps.forscience.whistlepunk.filemetadata;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 import com.google.android.apps.forscience.whistlepunk.accounts.NonSignedInAccount;
@@ -89,4 +90,43 @@ public class LocalSyncManagerTest {
     manager.setDownloaded("id", true);
     assertTrue(manager.getDownloaded("id"));
   }
+
+  @Test
+  public void testFlushWritesChanges() {
+    NonSignedInAccount account =
+        NonSignedInAccount.getInstance(RuntimeEnvironment.application.getApplicationContext());
+    LocalSyncManager manager = new LocalSyncManager(LocalSyncStatus.getDefaultInstance(), account);
+    manager.addExperiment("id");
+    manager.setDirty("id", false);
+    manager.setLastSyncedVersion("id", 7);
+    manager.setLastSyncedLibraryVersion(10L);
+    manager.flush();
+
+    // A new manager reads the status back from the file.
+    LocalSyncManager reread = new LocalSyncManager(account);
+    assertTrue(reread.hasExperiment("id"));
+    assertFalse(reread.getDirty("id"));
+    assertEquals(7, reread.getLastSyncedVersion("id"));
+    assertEquals(10, reread.getLastSyncedLibraryVersion());
+  }
+
+  @Test
+  public void testSyncedFileHashes() {
+    NonSignedInAccount account =
+        NonSignedInAccount.getInstance(RuntimeEnvironment.application.getApplicationContext());
+    LocalSyncManager manager = new LocalSyncManager(LocalSyncStatus.getDefaultInstance(), account);
+    manager.addExperiment("id");
+
+    assertNull(manager.getSyncedFileHash("id", "package", "recording_trial.proto"));
+    manager.setSyncedFileHash("id", "package", "recording_trial.proto", "abc");
+    manager.setSyncedFileHash("id", "package", "assets/image.jpg", "def");
+    assertEquals("abc", manager.getSyncedFileHash("id", "package", "recording_trial.proto"));
+    // A hash from syncing with a different package doesn't count.
+    assertNull(manager.getSyncedFileHash("id", "otherPackage", "recording_trial.proto"));
+    manager.flush();
+
+    LocalSyncManager reread = new LocalSyncManager(account);
+    assertEquals("abc", reread.getSyncedFileHash("id", "package", "recording_trial.proto"));
+    assertEquals("def", reread.getSyncedFileHash("id", "package", "assets/image.jpg"));
+  }
 }
@@ -23,6 +23,7 @@ import static org.junit.Assert.assertTrue;
 import com.google.android.apps.forscience.whistlepunk.filemetadata.Label;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciLabel;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -231,4 +232,82 @@ public class ChartDataTest {
     chartData.throwAwayBefore(99);
     assertEquals(8, chartData.getNumPoints());
   }
+
+  @Test
+  public void addOrderedGroupOfPoints_mergesOverlappingPoints() {
+    ChartData chartData = new ChartData();
+    for (int i = 0; i < 10; i += 2) {
+      chartData.addPoint(i, i);
+    }
+    List<ChartData.DataPoint> group = new ArrayList<>();
+    for (int i = 1; i < 10; i += 2) {
+      group.add(new ChartData.DataPoint(i, i));
+    }
+    group.add(4, new ChartData.DataPoint(8, -8));
+    chartData.addOrderedGroupOfPoints(group);
+
+    assertEquals(11, chartData.getNumPoints());
+    for (int i = 0; i < 9; i++) {
+      assertEquals(i, chartData.getXAt(i));
+      assertEquals(i, chartData.getYAt(i), .000001);
+    }
+    // With equal timestamps, the point that was already there stays first.
+    assertEquals(8, chartData.getXAt(9));
+    assertEquals(-8, chartData.getYAt(9), .000001);
+    assertEquals(9, chartData.getXAt(10));
+  }
+
+  @Test
+  public void addOrderedGroupOfPoints_beforeAndAfter() {
+    ChartData chartData = new ChartData();
+    List<ChartData.DataPoint> expected = new ArrayList<>();
+    populatePointsList(300, expected);
+    chartData.addOrderedGroupOfPoints(expected.subList(100, 200));
+    chartData.addOrderedGroupOfPoints(expected.subList(200, 300));
+    chartData.addOrderedGroupOfPoints(expected.subList(0, 100));
+    assertDataEquals(expected, chartData.getPoints());
+  }
+
+  @Test
+  public void throwAwayBefore_wrapsAroundBuffer() {
+    ChartData chartData = new ChartData(0, ChartData.DEFAULT_THROWAWAY_TIME_THRESHOLD);
+    for (int i = 0; i < 1000; i++) {
+      chartData.addPoint(i, i / 10.0);
+      chartData.throwAwayBefore(i - 50);
+    }
+    long xMin = chartData.getXMin();
+    assertWithinRange(949, 951, (int) xMin);
+    assertEquals(1000 - xMin, chartData.getNumPoints());
+    for (int i = 0; i < chartData.getNumPoints(); i++) {
+      assertEquals(xMin + i, chartData.getXAt(i));
+      assertEquals((xMin + i) / 10.0, chartData.getYAt(i), .000001);
+    }
+  }
+
+  @Test
+  public void throwAwayBetween_keepsBothEnds() {
+    ChartData chartData = new ChartData(0, ChartData.DEFAULT_THROWAWAY_TIME_THRESHOLD);
+    populatePointsList(100, chartData.getPoints());
+    chartData.throwAwayBetween(10, 90);
+    assertEquals(20, chartData.getNumPoints());
+    assertEquals(9, chartData.getXAt(9));
+    assertEquals(90, chartData.getXAt(10));
+    assertEquals(99, chartData.getXMax());
+  }
+
+  @Test
+  public void getPoints_removeThroughIterator() {
+    ChartData chartData = new ChartData();
+    populatePointsList(10, chartData.getPoints());
+    Iterator<ChartData.DataPoint> iterator = chartData.getPoints().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().getX() % 2 == 1) {
+        iterator.remove();
+      }
+    }
+    assertEquals(5, chartData.getNumPoints());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i * 2, chartData.getXAt(i));
+    }
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.scalarchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ChartDecimatorTest {
+  @Test
+  public void passesThroughSparseData() {
+    ChartData data = makeData(10, 0);
+    ChartDecimator decimator = new ChartDecimator();
+    assertEquals(10, decimator.decimate(data, 0, 10, 0, 10, 100));
+    for (int i = 0; i < 10; i++) {
+      assertEquals(data.getXAt(i), decimator.getX(i));
+      assertEquals(data.getYAt(i), decimator.getY(i), 0.0);
+    }
+  }
+
+  @Test
+  public void keepsMinAndMaxOfEachColumn() {
+    ChartData data = makeData(10000, 0);
+    ChartDecimator decimator = new ChartDecimator();
+    int size = decimator.decimate(data, 0, 10000, 0, 10000, 100);
+    assertTrue(size <= 2 * 100 + 2);
+
+    double min = Double.MAX_VALUE;
+    double max = -Double.MAX_VALUE;
+    for (int i = 0; i < 10000; i++) {
+      min = Math.min(min, data.getYAt(i));
+      max = Math.max(max, data.getYAt(i));
+    }
+    double decimatedMin = Double.MAX_VALUE;
+    double decimatedMax = -Double.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      decimatedMin = Math.min(decimatedMin, decimator.getY(i));
+      decimatedMax = Math.max(decimatedMax, decimator.getY(i));
+      if (i > 0) {
+        assertTrue(decimator.getX(i) >= decimator.getX(i - 1));
+      }
+    }
+    assertEquals(min, decimatedMin, 0.0);
+    assertEquals(max, decimatedMax, 0.0);
+    assertEquals(0, decimator.getX(0));
+    assertEquals(9999, decimator.getX(size - 1));
+  }
+
+  @Test
+  public void panningMatchesFreshDecimation() {
+    ChartData data = makeData(100000, 0);
+    ChartDecimator decimator = new ChartDecimator();
+    for (long xMin = 0; xMin < 80000; xMin += 3333) {
+      ChartDecimator fresh = new ChartDecimator();
+      int expectedSize = decimate(fresh, data, xMin, xMin + 20000);
+      int size = decimate(decimator, data, xMin, xMin + 20000);
+      assertSameOutput(fresh, expectedSize, decimator, size);
+    }
+  }
+
+  @Test
+  public void addingPointsMatchesFreshDecimation() {
+    ChartData data = makeData(50000, 0);
+    ChartDecimator decimator = new ChartDecimator();
+    Random random = new Random(1);
+    for (int i = 50000; i < 60000; i++) {
+      data.addPoint(i, random.nextDouble());
+      if (i % 1000 == 0) {
+        ChartDecimator fresh = new ChartDecimator();
+        int expectedSize = decimate(fresh, data, i - 40000, i);
+        int size = decimate(decimator, data, i - 40000, i);
+        assertSameOutput(fresh, expectedSize, decimator, size);
+      }
+    }
+  }
+
+  private static ChartData makeData(int size, long seed) {
+    ChartData data = new ChartData();
+    Random random = new Random(seed);
+    for (int i = 0; i < size; i++) {
+      data.addPoint(i, random.nextDouble());
+    }
+    return data;
+  }
+
+  private static int decimate(ChartDecimator decimator, ChartData data, long xMin, long xMax) {
+    int startIndex = data.getRangeStartIndex(xMin);
+    int endIndex = data.getRangeEndIndex(xMax, startIndex);
+    return decimator.decimate(data, startIndex, endIndex, xMin, xMax, 500);
+  }
+
+  private static void assertSameOutput(
+      ChartDecimator expected, int expectedSize, ChartDecimator actual, int size) {
+    assertEquals(expectedSize, size);
+    for (int i = 0; i < size; i++) {
+      assertEquals(expected.getX(i), actual.getX(i));
+      assertEquals(expected.getY(i), actual.getY(i), 0.0);
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.scalarchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.apps.forscience.javalib.MaybeConsumer;
+import com.google.android.apps.forscience.whistlepunk.GraphPopulator;
+import com.google.android.apps.forscience.whistlepunk.StubDataController;
+import com.google.android.apps.forscience.whistlepunk.filemetadata.TrialStats;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial;
+import com.google.android.apps.forscience.whistlepunk.review.ZoomPresenter;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
+import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Tests for {@link ChartTileCache}. */
+@RunWith(RobolectricTestRunner.class)
+public class ChartTileCacheTest {
+  // With one point per millisecond, tier 0 tiles span 250ms and tier 1 tiles span 5000ms.
+  private final ZoomPresenter zoomPresenter = makeZoomPresenter();
+
+  @Test
+  public void testDeliversRangeAndServesRepeatsFromMemory() {
+    ChartTileCache cache = new ChartTileCache(100000);
+    FakeDataController dc = new FakeDataController();
+
+    RecordingDisplay display = new RecordingDisplay();
+    assertTrue(load(cache, dc, 0, 100, 600, display, 1));
+    assertEquals(rangeOfTimestamps(100, 600), display.timestamps);
+    assertEquals(1, display.finished);
+    // The three tiles of the range, the tier 0 tiles on either side, and a tier 1 tile.
+    assertEquals("[0:0-250, 0:250-500, 0:500-750, 0:750-1000, 1:0-5000]", dc.requests.toString());
+
+    dc.requests.clear();
+    RecordingDisplay again = new RecordingDisplay();
+    load(cache, dc, 0, 300, 900, again, 2);
+    assertEquals(rangeOfTimestamps(300, 900), again.timestamps);
+    assertEquals(1, again.finished);
+    // Only the next tile along is new.
+    assertEquals("[0:1000-1250]", dc.requests.toString());
+  }
+
+  @Test
+  public void testCoalescesLoadsOfTheSameTile() {
+    ChartTileCache cache = new ChartTileCache(100000);
+    FakeDataController dc = new FakeDataController();
+    dc.deferred = new ArrayList<>();
+
+    RecordingDisplay first = new RecordingDisplay();
+    RecordingDisplay second = new RecordingDisplay();
+    load(cache, dc, 0, 10, 20, first, 1);
+    load(cache, dc, 0, 15, 30, second, 2);
+    assertEquals("[0:0-250, 0:250-500, 1:0-5000]", dc.requests.toString());
+    assertEquals(0, first.finished);
+
+    dc.runDeferred();
+    assertEquals(rangeOfTimestamps(10, 20), first.timestamps);
+    assertEquals(rangeOfTimestamps(15, 30), second.timestamps);
+    assertEquals(1, first.finished);
+    assertEquals(1, second.finished);
+  }
+
+  @Test
+  public void testInvalidateDropsTrialTiles() {
+    ChartTileCache cache = new ChartTileCache(100000);
+    FakeDataController dc = new FakeDataController();
+    load(cache, dc, 0, 0, 10, new RecordingDisplay(), 1);
+    assertEquals(3, cache.getCachedTileCount());
+
+    cache.invalidate("otherTrial");
+    assertEquals(3, cache.getCachedTileCount());
+    cache.invalidate("trial");
+    assertEquals(0, cache.getCachedTileCount());
+  }
+
+  @Test
+  public void testEvictsToStayWithinSize() {
+    // Room for about two full tiles.
+    ChartTileCache cache = new ChartTileCache(600);
+    FakeDataController dc = new FakeDataController();
+    load(cache, dc, 0, 0, 2000, new RecordingDisplay(), 1);
+    assertTrue(cache.getCachedTileCount() <= 2);
+  }
+
+  @Test
+  public void testNoTilesWithoutStats() {
+    ChartTileCache cache = new ChartTileCache(100000);
+    FakeDataController dc = new FakeDataController();
+    ZoomPresenter noStats = new ZoomPresenter();
+    noStats.setRunStats(new TrialStats("sensor"));
+    assertFalse(
+        cache.load(dc, "trial", "sensor", noStats, 0, 0, 10, e -> {}, new RecordingDisplay(), 1));
+    assertEquals(0, dc.requests.size());
+  }
+
+  private boolean load(
+      ChartTileCache cache,
+      FakeDataController dc,
+      int tier,
+      long min,
+      long max,
+      RecordingDisplay display,
+      long requestId) {
+    return cache.load(
+        dc,
+        "trial",
+        "sensor",
+        zoomPresenter,
+        tier,
+        min,
+        max,
+        e -> {
+          throw new AssertionError(e);
+        },
+        display,
+        requestId);
+  }
+
+  private static ZoomPresenter makeZoomPresenter() {
+    TrialStats stats = new TrialStats("sensor");
+    stats.putStat(GoosciTrial.SensorStat.StatType.TOTAL_DURATION, 10000);
+    stats.putStat(GoosciTrial.SensorStat.StatType.NUM_DATA_POINTS, 10000);
+    stats.putStat(GoosciTrial.SensorStat.StatType.ZOOM_PRESENTER_TIER_COUNT, 2);
+    stats.putStat(GoosciTrial.SensorStat.StatType.ZOOM_PRESENTER_ZOOM_LEVEL_BETWEEN_TIERS, 20);
+    ZoomPresenter zoomPresenter = new ZoomPresenter();
+    zoomPresenter.setRunStats(stats);
+    return zoomPresenter;
+  }
+
+  private static List<Long> rangeOfTimestamps(long min, long max) {
+    List<Long> result = new ArrayList<>();
+    for (long t = min; t <= max; t++) {
+      result.add(t);
+    }
+    return result;
+  }
+
+  /** Has a reading every millisecond at tier 0, and every 10 milliseconds at tier 1. */
+  private static class FakeDataController extends StubDataController {
+    final List<String> requests = new ArrayList<>();
+    List<Runnable> deferred = null;
+
+    @Override
+    public void getScalarReadings(
+        String trialId,
+        String databaseTag,
+        int resolutionTier,
+        TimeRange timeRange,
+        int maxRecords,
+        MaybeConsumer<ScalarReadingList> onSuccess) {
+      Range<Long> times = timeRange.getTimes();
+      requests.add(resolutionTier + ":" + times.lowerEndpoint() + "-" + times.upperEndpoint());
+      long step = resolutionTier == 0 ? 1 : 10;
+      List<Long> timestamps = new ArrayList<>();
+      for (long t = times.lowerEndpoint(); t < times.upperEndpoint(); t += step) {
+        timestamps.add(t);
+      }
+      Runnable respond = () -> onSuccess.success(new TimestampList(timestamps));
+      if (deferred != null) {
+        deferred.add(respond);
+      } else {
+        respond.run();
+      }
+    }
+
+    void runDeferred() {
+      List<Runnable> toRun = deferred;
+      deferred = null;
+      for (Runnable r : toRun) {
+        r.run();
+      }
+    }
+  }
+
+  private static class TimestampList implements ScalarReadingList {
+    private final List<Long> timestamps;
+
+    TimestampList(List<Long> timestamps) {
+      this.timestamps = timestamps;
+    }
+
+    @Override
+    public void deliver(StreamConsumer c) {
+      for (long timestamp : timestamps) {
+        c.addData(timestamp, timestamp);
+      }
+    }
+
+    @Override
+    public int size() {
+      return timestamps.size();
+    }
+
+    @Override
+    public List<ChartData.DataPoint> asDataPoints() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class RecordingDisplay implements GraphPopulator.ObservationDisplay {
+    final List<Long> timestamps = new ArrayList<>();
+    int finished = 0;
+
+    @Override
+    public void addRange(ScalarReadingList observations, Range<Double> valueRange, long requestId) {
+      observations.deliver(
+          (timestampMillis, value) -> {
+            assertTrue(valueRange.contains(value));
+            timestamps.add(timestampMillis);
+            return true;
+          });
+    }
+
+    @Override
+    public void onFinish(long requestId) {
+      finished++;
+    }
+  }
+}
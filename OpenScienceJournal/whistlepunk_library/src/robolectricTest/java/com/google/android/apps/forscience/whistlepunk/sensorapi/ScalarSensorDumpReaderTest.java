@@ -24,11 +24,17 @@ import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSenso
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciScalarSensorData.ScalarSensorDataRow;
 import com.google.android.apps.forscience.whistlepunk.sensordb.InMemorySensorDatabase;
 import com.google.android.apps.forscience.whistlepunk.sensordb.MemoryMetadataManager;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
 import com.google.common.collect.Range;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -137,6 +143,49 @@ public class ScalarSensorDumpReaderTest {
     assertEquals(0, readings.size());
   }
 
+  @Test
+  public void testDataSuccessfullyStreamedFromFile() throws IOException {
+    GoosciScalarSensorData.ScalarSensorData data =
+        GoosciScalarSensorData.ScalarSensorData.newBuilder()
+            .addSensors(
+                ScalarSensorDataDump.newBuilder()
+                    .setTag("foo")
+                    .setTrialId("old")
+                    .addAllRows(populateRowList()))
+            .addSensors(
+                ScalarSensorDataDump.newBuilder()
+                    .setTag("bar")
+                    .setTrialId("old")
+                    .addRows(
+                        ScalarSensorDataRow.newBuilder().setTimestampMillis(5).setValue(1.5)))
+            .build();
+    File file = File.createTempFile("sensorData", ".proto");
+    try (FileOutputStream stream = new FileOutputStream(file)) {
+      data.writeTo(stream);
+    }
+    HashMap<String, String> idMap = new HashMap<>();
+    idMap.put("old", "new");
+
+    ScalarSensorDumpReader reader = new ScalarSensorDumpReader(recordingController);
+    reader.readData(file, idMap);
+    file.delete();
+
+    ScalarReadingList readings =
+        db.getScalarReadings("new", "foo", TimeRange.oldest(Range.all()), 0, 0);
+    assertEquals(10000, readings.size());
+
+    readings = db.getScalarReadings("new", "foo", TimeRange.oldest(Range.all()), 1, 0);
+    assertEquals(500, readings.size());
+
+    readings = db.getScalarReadings("new", "foo", TimeRange.oldest(Range.all()), 3, 0);
+    assertEquals(2, readings.size());
+
+    List<ScalarReading> bar =
+        ScalarReading.slurp(
+            db.getScalarReadings("new", "bar", TimeRange.oldest(Range.all()), 0, 0));
+    assertEquals(Arrays.asList(new ScalarReading(5, 1.5)), bar);
+  }
+
   private ArrayList<ScalarSensorDataRow> populateRowList() {
     ArrayList<ScalarSensorDataRow> rowList = new ArrayList<>();
     for (int x = 1; x <= 10000; x++) {
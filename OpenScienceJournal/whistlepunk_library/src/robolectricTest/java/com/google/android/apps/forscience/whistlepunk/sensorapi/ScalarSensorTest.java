@@ -17,6 +17,8 @@
 package com.google.android.apps.forscience.whistlepunk.sensorapi;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import android.content.Context;
 import com.google.android.apps.forscience.whistlepunk.DataController;
@@ -40,7 +42,10 @@ import com.google.android.apps.forscience.whistlepunk.sensors.BluetoothSensor;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -386,6 +391,65 @@ public class ScalarSensorTest {
         0.001);
   }
 
+  @Test
+  public void recordingWhileDataArrivesOnAnotherThread() throws InterruptedException {
+    SensorLayout layout = GoosciSensorLayout.SensorLayout.newBuilder().setSensorId("test").build();
+    ManualSensor sensor = new ManualSensor("test", 1000, 5);
+    SensorRecorder recorder = createRecorder(sensor);
+    recorder.startObserving();
+
+    // Data keeps arriving on its own thread (as it does on the ingest thread) while recording
+    // is started and stopped from this one.
+    AtomicBoolean ingesting = new AtomicBoolean(true);
+    AtomicLong pushed = new AtomicLong();
+    Thread ingest =
+        new Thread(
+            () -> {
+              for (long i = 0; ingesting.get(); i++) {
+                sensor.pushValue(i, i);
+                pushed.set(i);
+              }
+            });
+    ingest.start();
+
+    List<Trial> trials = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      Trial trial =
+          Trial.newTrial(
+              10,
+              new GoosciSensorLayout.SensorLayout[] {layout},
+              new FakeUnitAppearanceProvider(),
+              null);
+      trials.add(trial);
+      recorder.startRecording(trial.getTrialId());
+      long target = pushed.get() + 50;
+      while (pushed.get() < target) {
+        Thread.yield();
+      }
+      recorder.stopRecording(trial);
+    }
+    ingesting.set(false);
+    ingest.join();
+
+    for (Trial trial : trials) {
+      int recorded = 0;
+      for (InMemorySensorDatabase.Reading reading : db.getReadings(0)) {
+        if (trial.getTrialId().equals(reading.getTrialId())) {
+          recorded++;
+        }
+      }
+      TrialStats stats = trial.getStatsForSensor("test");
+      assertTrue(recorded >= 50);
+      assertEquals(
+          (double) recorded,
+          stats.getStatValue(GoosciTrial.SensorStat.StatType.NUM_DATA_POINTS, -1),
+          0.001);
+    }
+    for (InMemorySensorDatabase.Reading reading : db.getReadings(0)) {
+      assertNotNull(reading.getTrialId());
+    }
+  }
+
   @Test
   public void dontReuseBundle() {
     ExplicitExecutor executor = new ExplicitExecutor();
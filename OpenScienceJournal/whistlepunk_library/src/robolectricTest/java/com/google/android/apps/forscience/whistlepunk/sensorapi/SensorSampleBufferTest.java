@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Tests for {@link SensorSampleBuffer}. */
+@RunWith(RobolectricTestRunner.class)
+public class SensorSampleBufferTest {
+  @Test
+  public void testOnlyFirstOfferSchedulesDrain() {
+    SensorSampleBuffer buffer = new SensorSampleBuffer(8);
+    assertTrue(buffer.offer(1, data(10)));
+    assertFalse(buffer.offer(2, data(20)));
+    assertFalse(buffer.offer(3, data(30)));
+
+    BatchRecorder recorder = new BatchRecorder();
+    assertEquals(3, buffer.drainTo(recorder));
+    assertEquals("[[1=10.0, 2=20.0, 3=30.0]]", recorder.batches.toString());
+
+    // Once drained, the next sample needs a new drain.
+    assertTrue(buffer.offer(4, data(40)));
+    assertEquals(1, buffer.drainTo(recorder));
+    assertEquals(0, buffer.drainTo(recorder));
+    assertEquals("[[1=10.0, 2=20.0, 3=30.0], [4=40.0]]", recorder.batches.toString());
+  }
+
+  @Test
+  public void testDropsWhenFull() {
+    SensorSampleBuffer buffer = new SensorSampleBuffer(4);
+    for (int i = 0; i < 6; i++) {
+      buffer.offer(i, data(i));
+    }
+    assertEquals(2, buffer.getDroppedCount());
+
+    BatchRecorder recorder = new BatchRecorder();
+    buffer.drainTo(recorder);
+    assertEquals("[[0=0.0, 1=1.0, 2=2.0, 3=3.0]]", recorder.batches.toString());
+
+    // The ring wraps around after a drain.
+    for (int i = 6; i < 9; i++) {
+      buffer.offer(i, data(i));
+    }
+    buffer.drainTo(recorder);
+    assertEquals("[6=6.0, 7=7.0, 8=8.0]", recorder.batches.get(1).toString());
+  }
+
+  @Test
+  public void testDeliversStatsAndSingleSamples() {
+    SensorSampleBuffer buffer = new SensorSampleBuffer(4);
+    SensorObserver.Data data = data(5);
+    data.min = 1;
+    data.max = 9;
+    data.average = 4;
+    buffer.offer(100, data);
+
+    RecordingSensorObserver observer = new RecordingSensorObserver();
+    List<SensorObserver.Data> stats = new ArrayList<>();
+    buffer.drainTo(
+        (timestamp, delivered) -> {
+          observer.onNewData(timestamp, delivered);
+          SensorObserver.Data copy = new SensorObserver.Data();
+          copy.min = delivered.min;
+          copy.max = delivered.max;
+          copy.average = delivered.average;
+          stats.add(copy);
+        });
+    assertEquals(1, observer.getReadings().size());
+    assertEquals(100, observer.getReadings().get(0).getCollectedTimeMillis());
+    assertEquals(5, observer.getReadings().get(0).getValue(), 0);
+    assertEquals(1, stats.get(0).min, 0);
+    assertEquals(9, stats.get(0).max, 0);
+    assertEquals(4, stats.get(0).average, 0);
+  }
+
+  @Test
+  public void testSamplesCrossThreadsInOrder() throws InterruptedException {
+    int count = 10000;
+    // Big enough that nothing is dropped however far the consumer falls behind.
+    SensorSampleBuffer buffer = new SensorSampleBuffer(16384);
+    Thread producer =
+        new Thread(
+            () -> {
+              SensorObserver.Data data = new SensorObserver.Data();
+              for (int i = 0; i < count; i++) {
+                data.setValue(i);
+                buffer.offer(i, data);
+              }
+            });
+    producer.start();
+
+    long[] next = {0};
+    SensorObserver checker =
+        (timestamp, data) -> {
+          assertEquals(next[0], timestamp);
+          assertEquals(next[0], data.getValue(), 0);
+          next[0]++;
+        };
+    while (next[0] < count) {
+      buffer.drainTo(checker);
+    }
+    producer.join();
+    assertEquals(0, buffer.getDroppedCount());
+  }
+
+  private static SensorObserver.Data data(double value) {
+    SensorObserver.Data data = new SensorObserver.Data();
+    data.setValue(value);
+    return data;
+  }
+
+  private static class BatchRecorder implements SensorBatchObserver {
+    final List<List<String>> batches = new ArrayList<>();
+
+    @Override
+    public void onNewData(long timestamp, Data data) {
+      throw new AssertionError("Expected whole batches");
+    }
+
+    @Override
+    public void onNewBatch(SensorSampleBuffer.Batch batch) {
+      List<String> samples = new ArrayList<>();
+      for (int i = 0; i < batch.size(); i++) {
+        samples.add(batch.getTimestamp(i) + "=" + batch.getData(i).getValue());
+      }
+      batches.add(samples);
+    }
+  }
+}
@@ -0,0 +1,430 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import com.google.android.apps.forscience.whistlepunk.DataControllerImpl;
+import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
+import com.google.android.apps.forscience.whistlepunk.accounts.NonSignedInAccount;
+import com.google.android.apps.forscience.whistlepunk.data.GoosciSensorLayout.SensorLayout;
+import com.google.android.apps.forscience.whistlepunk.devicemanager.ConnectableSensor;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciExperiment;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial;
+import com.google.common.collect.Range;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.reactivex.observers.TestObserver;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class ColumnarSensorDatabaseTest {
+  private static final String TEST_DIRECTORY_NAME = "columnar_test";
+  private static final String TEST_DATABASE_NAME = "columnar_legacy_test.db";
+
+  @Test
+  public void testAddScalarReadingRange() {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    db.addScalarReading("id", "tag", 0, 1, 1.0);
+    db.addScalarReading("id", "tag", 0, 2, 2.0);
+    db.addScalarReading("id", "tag", 0, 3, 3.0);
+    db.addScalarReading("id", "tag", 0, 4, 4.0);
+    db.addScalarReading("id", "other", 0, 3, 5.0);
+    db.addScalarReading("id", "tag", 1, 3, 6.0);
+
+    assertEquals(
+        Arrays.asList(new ScalarReading(2, 2.0), new ScalarReading(3, 3.0)),
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.oldest(Range.closedOpen(2L, 4L)), 0, 0)));
+    assertEquals(
+        Arrays.asList(new ScalarReading(3, 3.0)),
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.oldest(Range.open(2L, 4L)), 0, 0)));
+    assertEquals(
+        Arrays.asList(new ScalarReading(3, 6.0)),
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 1, 0)));
+  }
+
+  @Test
+  public void testLimitsNewestFirst() {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    db.addScalarReading("id", "tag", 0, 1, 1.0);
+    db.addScalarReading("id", "tag", 0, 2, 2.0);
+    db.addScalarReading("id", "tag", 0, 3, 3.0);
+    List<ScalarReading> readings =
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.newest(Range.closed(0L, 4L)), 0, 2));
+    assertEquals(Arrays.asList(new ScalarReading(3, 3.0), new ScalarReading(2, 2.0)), readings);
+  }
+
+  @Test
+  public void testSurvivesReopenAcrossManyBlocks() {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    int count = SeriesFile.MAX_BLOCK_POINTS * 5 + 7;
+    List<ScalarReading> expected = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      double value = Math.sin(i / 10.0);
+      db.addScalarReading("id", "tag", 0, 1000 + i, value);
+      expected.add(new ScalarReading(1000 + i, value));
+    }
+    db.flush();
+
+    ColumnarSensorDatabase reopened = new ColumnarSensorDatabase(getDirectory(), null);
+    assertEquals(
+        expected,
+        ScalarReading.slurp(
+            reopened.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0)));
+  }
+
+  @Test
+  public void testOutOfOrderReadingsAreSorted() {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    db.addScalarReading("id", "tag", 0, 3, 3.0);
+    db.addScalarReading("id", "tag", 0, 1, 1.0);
+    db.addScalarReading("id", "tag", 0, 2, 2.0);
+    assertEquals(
+        Arrays.asList(new ScalarReading(1, 1.0), new ScalarReading(2, 2.0)),
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 2)));
+  }
+
+  @Test
+  public void testReadScalarReadingChunks() {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    for (int i = 1; i <= 7; i++) {
+      db.addScalarReading("id", "tag", 0, i, i);
+    }
+    // Out of order, and stored without a trial id.
+    db.addScalarReading("0", "old", 0, 2, 2.0);
+    db.addScalarReading("0", "old", 0, 1, 1.0);
+
+    List<List<ScalarReading>> chunks = new ArrayList<>();
+    TimeRange all = TimeRange.oldest(Range.<Long>all());
+    db.readScalarReadingChunks(
+        "id", "tag", all, 0, 3, chunk -> chunks.add(ScalarReading.slurp(chunk)));
+    assertEquals(Arrays.asList(3, 3, 1), sizes(chunks));
+    assertEquals(new ScalarReading(7, 7.0), chunks.get(2).get(0));
+
+    chunks.clear();
+    db.readScalarReadingChunks(
+        "id",
+        "tag",
+        all,
+        0,
+        3,
+        chunk -> {
+          chunks.add(ScalarReading.slurp(chunk));
+          return false;
+        });
+    assertEquals(Arrays.asList(3), sizes(chunks));
+
+    chunks.clear();
+    db.readScalarReadingChunks(
+        "id", "old", all, 0, 3, chunk -> chunks.add(ScalarReading.slurp(chunk)));
+    assertEquals(
+        Arrays.asList(Arrays.asList(new ScalarReading(1, 1.0), new ScalarReading(2, 2.0))), chunks);
+  }
+
+  private static List<Integer> sizes(List<List<ScalarReading>> chunks) {
+    List<Integer> sizes = new ArrayList<>();
+    for (List<ScalarReading> chunk : chunks) {
+      sizes.add(chunk.size());
+    }
+    return sizes;
+  }
+
+  @Test
+  public void testDeleteScalarReadings() {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    db.addScalarReading("id", "tag", 0, 1, 1.0);
+    db.addScalarReading("id", "tag", 0, 2, 2.0);
+    db.addScalarReading("id", "tag", 1, 2, 2.0);
+    db.addScalarReading("id", "tag", 0, 3, 3.0);
+    db.deleteScalarReadings("id", "tag", TimeRange.oldest(Range.closed(2L, 2L)));
+    assertEquals(
+        Arrays.asList(new ScalarReading(1, 1.0), new ScalarReading(3, 3.0)),
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0)));
+    assertEquals(
+        0, db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 1, 0).size());
+  }
+
+  @Test
+  public void testCursorOutlivesDelete() throws IOException {
+    SeriesFile series = SeriesFile.open(new File(getDirectory(), "cursor.series"));
+    int count = SeriesFile.MAX_BLOCK_POINTS * 3;
+    for (int i = 0; i < count; i++) {
+      series.append(i, i);
+    }
+    series.commit();
+
+    // Deleting everything removes the file, but an open cursor keeps reading what it saw.
+    SeriesFile.PointCursor cursor = series.openCursor(Long.MIN_VALUE, Long.MAX_VALUE);
+    series.delete(Long.MIN_VALUE, Long.MAX_VALUE);
+    int read = 0;
+    while (cursor.next()) {
+      assertEquals(read, cursor.getTimestamp());
+      read++;
+    }
+    assertEquals(count, read);
+    assertTrue(series.isEmpty());
+  }
+
+  @Test
+  public void testFlushScalarReadingsCommitsSingleReadings() {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    DataControllerImpl dc =
+        new DataControllerImpl(
+            null, // context
+            null, // appAccount
+            db,
+            MoreExecutors.directExecutor(),
+            MoreExecutors.directExecutor(),
+            MoreExecutors.directExecutor(),
+            new MemoryMetadataManager(),
+            new MonotonicClock(),
+            new HashMap<>(),
+            new ConnectableSensor.Connector(new HashMap<>()));
+    dc.addScalarReading("id", "tag", 0, 1, 1.0);
+    dc.flushScalarReadings();
+
+    ColumnarSensorDatabase reopened = new ColumnarSensorDatabase(getDirectory(), null);
+    assertEquals(
+        Arrays.asList(new ScalarReading(1, 1.0)),
+        ScalarReading.slurp(
+            reopened.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0)));
+  }
+
+  @Test
+  public void testCreateScalarObservableMergesTags() {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    db.addScalarReading("id", "a", 0, 1, 1.0);
+    db.addScalarReading("id", "b", 0, 2, 2.0);
+    db.addScalarReading("id", "a", 0, 3, 3.0);
+    db.addScalarReading("id", "b", 0, 3, 4.0);
+    TestObserver<ScalarReading> observer = new TestObserver<>();
+    db.createScalarObservable(
+            "id", new String[] {"a", "b"}, TimeRange.oldest(Range.closed(0L, 10L)), 0)
+        .subscribe(observer);
+    observer.assertValues(
+        new ScalarReading(1, 1.0, "a"),
+        new ScalarReading(2, 2.0, "b"),
+        new ScalarReading(3, 3.0, "a"),
+        new ScalarReading(3, 4.0, "b"));
+  }
+
+  @Test
+  public void testWriteScalarReadingProtosMatchesProto() throws IOException {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    GoosciExperiment.Experiment.Builder experiment = GoosciExperiment.Experiment.newBuilder();
+    for (String trialId : new String[] {"first", "second"}) {
+      experiment.addTrials(
+          GoosciTrial.Trial.newBuilder()
+              .setTrialId(trialId)
+              .setRecordingRange(GoosciTrial.Range.newBuilder().setStartMs(0).setEndMs(2000))
+              .addSensorLayouts(SensorLayout.newBuilder().setSensorId("foo"))
+              .addSensorLayouts(SensorLayout.newBuilder().setSensorId("bar")));
+    }
+    for (int i = 0; i < 1000; i++) {
+      db.addScalarReading("first", "foo", 0, i * 2, Math.sin(i));
+      db.addScalarReading("first", "bar", 0, i, -i);
+    }
+    db.addScalarReading("0", "foo", 0, 5, 1.5);
+
+    ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+    db.writeScalarReadingProtos(experiment.build(), null, streamed);
+    assertArrayEquals(
+        db.getScalarReadingProtos(experiment.build()).toByteArray(), streamed.toByteArray());
+
+    ByteArrayOutputStream trial = new ByteArrayOutputStream();
+    db.writeScalarReadingProtos(experiment.build(), "second", trial);
+    assertArrayEquals(
+        db.getScalarReadingProtosForTrial(experiment.build(), "second").toByteArray(),
+        trial.toByteArray());
+  }
+
+  @Test
+  public void testGetFirstDatabaseTagAfter() {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    db.addScalarReading("id", "early", 0, 1, 1.0);
+    db.addScalarReading("id", "late/tag", 0, 5, 1.0);
+    assertEquals("early", db.getFirstDatabaseTagAfter(0));
+    assertEquals("late/tag", db.getFirstDatabaseTagAfter(1));
+    assertNull(db.getFirstDatabaseTagAfter(5));
+  }
+
+  @Test
+  public void testMigratesFromSqlite() {
+    SensorDatabaseImpl legacy =
+        new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+    legacy.addScalarReading("id", "tag", 0, 1, 1.0);
+    legacy.addScalarReading("id", "tag", 0, 2, 2.0);
+    legacy.addScalarReading("id", "tag", 1, 2, 2.0);
+
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), legacy);
+    assertEquals(
+        Arrays.asList(new ScalarReading(1, 1.0), new ScalarReading(2, 2.0)),
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0)));
+    assertEquals(
+        1, db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 1, 0).size());
+    assertFalse(legacy.exists());
+
+    // A second migration attempt must not duplicate data.
+    ColumnarSensorDatabase reopened =
+        new ColumnarSensorDatabase(
+            getDirectory(),
+            new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME));
+    assertEquals(
+        2,
+        reopened.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0).size());
+  }
+
+  @Test
+  public void testFailedMigrationIsRetriedBeforeAnyWrite() {
+    FailingLegacyDatabase legacy =
+        new FailingLegacyDatabase(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+    legacy.addScalarReading("id", "tag", 0, 1, 1.0);
+    legacy.addScalarReading("id", "tag", 0, 2, 2.0);
+
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), legacy);
+    try {
+      db.addScalarReading("new", "tag", 0, 5, 5.0);
+      fail("Expected the migration to fail");
+    } catch (SeriesStorageException expected) {
+      // The copy failed part way, so nothing may be written yet.
+    }
+    assertTrue(legacy.exists());
+    assertFalse(new File(getDirectory(), "new").exists());
+    assertFalse(new File(getDirectory(), "id").exists());
+
+    legacy.failCopy = false;
+    db.addScalarReading("new", "tag", 0, 5, 5.0);
+    assertEquals(
+        2, db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0).size());
+    assertEquals(
+        1, db.getScalarReadings("new", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0).size());
+    assertFalse(legacy.exists());
+  }
+
+  @Test
+  public void testMigrationKeepsExistingTrials() {
+    ColumnarSensorDatabase earlier = new ColumnarSensorDatabase(getDirectory(), null);
+    earlier.addScalarReading("recorded", "tag", 0, 1, 1.0);
+    earlier.flush();
+    SensorDatabaseImpl legacy =
+        new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+    legacy.addScalarReading("id", "tag", 0, 1, 1.0);
+
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), legacy);
+    assertEquals(
+        1,
+        db.getScalarReadings("recorded", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0).size());
+    assertEquals(
+        1, db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0).size());
+  }
+
+  @Test
+  public void testCommitOverwritesTornWrite() throws IOException {
+    ColumnarSensorDatabase db = new ColumnarSensorDatabase(getDirectory(), null);
+    db.addScalarReading("id", "tag", 0, 1, 1.0);
+    db.flush();
+    // Bytes left behind by a write that failed part way.
+    File tierFile = new File(new File(new File(getDirectory(), "id"), "tag"), "0.series");
+    try (FileOutputStream out = new FileOutputStream(tierFile, true)) {
+      out.write(new byte[] {1, 2, 3});
+    }
+    db.addScalarReading("id", "tag", 0, 2, 2.0);
+    db.flush();
+
+    List<ScalarReading> expected =
+        Arrays.asList(new ScalarReading(1, 1.0), new ScalarReading(2, 2.0));
+    assertEquals(
+        expected,
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0)));
+    assertEquals(
+        expected,
+        ScalarReading.slurp(
+            new ColumnarSensorDatabase(getDirectory(), null)
+                .getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0)));
+  }
+
+  /** Adds one reading and then fails, like a copy that stops part way. */
+  private static class FailingLegacyDatabase extends SensorDatabaseImpl {
+    boolean failCopy = true;
+
+    FailingLegacyDatabase(Context context, AppAccount appAccount, String name) {
+      super(context, appAccount, name);
+    }
+
+    @Override
+    void copyAllReadingsTo(SensorDatabase destination) {
+      if (failCopy) {
+        destination.addScalarReading("id", "tag", 0, 1, 1.0);
+        throw new SeriesStorageException("Failing for the test", new IOException());
+      }
+      super.copyAllReadingsTo(destination);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    deleteRecursively(getDirectory());
+    getContext().deleteDatabase(getAppAccount().getDatabaseFileName(TEST_DATABASE_NAME));
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  private File getDirectory() {
+    return new File(getContext().getFilesDir(), TEST_DIRECTORY_NAME);
+  }
+
+  private Context getContext() {
+    return RuntimeEnvironment.application.getApplicationContext();
+  }
+
+  private AppAccount getAppAccount() {
+    return NonSignedInAccount.getInstance(getContext());
+  }
+}
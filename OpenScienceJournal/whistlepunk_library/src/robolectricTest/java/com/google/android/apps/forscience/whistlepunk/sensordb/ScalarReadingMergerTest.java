@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.apps.forscience.whistlepunk.ScalarReadingBatch;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Tests for {@link ScalarReadingMerger}. */
+@RunWith(RobolectricTestRunner.class)
+public class ScalarReadingMergerTest {
+  @Test
+  public void testMergesByTimestampWithStableTies() {
+    ArrayCursor a = new ArrayCursor(new long[] {1, 3, 3, 7}, new double[] {10, 30, 31, 70});
+    ArrayCursor b = new ArrayCursor(new long[] {0, 3, 8}, new double[] {0, 32, 80});
+    ArrayCursor c = new ArrayCursor(new long[] {3}, new double[] {33});
+    ScalarReadingMerger merger =
+        new ScalarReadingMerger(
+            "trial",
+            new String[] {"a", "b", "c", "d"},
+            0,
+            new SeriesFile.PointCursor[] {a, b, c, null});
+
+    ScalarReadingBatch batch = new ScalarReadingBatch();
+    assertTrue(merger.fill(batch, 5));
+    assertFalse(merger.fill(batch, 100));
+    merger.close();
+
+    long[] timestamps = {0, 1, 3, 3, 3, 3, 7, 8};
+    double[] values = {0, 10, 30, 31, 32, 33, 70, 80};
+    String[] tags = {"b", "a", "a", "a", "b", "c", "a", "b"};
+    assertEquals(timestamps.length, batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      assertEquals(timestamps[i], batch.getTimestampMillis(i));
+      assertEquals(values[i], batch.getValue(i), 0);
+      assertEquals(tags[i], batch.getSensorId(i));
+      assertEquals("trial", batch.getTrialId(i));
+    }
+    assertTrue(a.closed);
+    assertTrue(b.closed);
+    assertTrue(c.closed);
+  }
+
+  @Test
+  public void testEmptyCursors() {
+    ScalarReadingMerger merger =
+        new ScalarReadingMerger(
+            "trial",
+            new String[] {"a"},
+            0,
+            new SeriesFile.PointCursor[] {new ArrayCursor(new long[0], new double[0])});
+    ScalarReadingBatch batch = new ScalarReadingBatch();
+    assertFalse(merger.fill(batch, 10));
+    assertEquals(0, batch.size());
+  }
+
+  private static class ArrayCursor implements SeriesFile.PointCursor {
+    private final long[] timestamps;
+    private final double[] values;
+    private int index = -1;
+    boolean closed = false;
+
+    ArrayCursor(long[] timestamps, double[] values) {
+      this.timestamps = timestamps;
+      this.values = values;
+    }
+
+    @Override
+    public boolean next() {
+      return ++index < timestamps.length;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return timestamps[index];
+    }
+
+    @Override
+    public double getValue() {
+      return values[index];
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.apps.forscience.whistlepunk.DataControllerImpl;
+import com.google.android.apps.forscience.whistlepunk.MockScheduler;
+import com.google.android.apps.forscience.whistlepunk.ScalarReadingBatch;
+import com.google.android.apps.forscience.whistlepunk.devicemanager.ConnectableSensor;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ScalarWriteBufferTest {
+  private long now = 0;
+  private final CountingDatabase db = new CountingDatabase();
+  private final List<String> failedSensors = new ArrayList<>();
+
+  @Test
+  public void testDrainAfterCommitSize() {
+    ScalarWriteBuffer buffer = new ScalarWriteBuffer(() -> now, 10, 3, 1000);
+    assertFalse(buffer.add("trial", "a", 0, 1, 1.0));
+    assertFalse(buffer.add("trial", "b", 0, 1, 2.0));
+    assertTrue(buffer.add("trial", "a", 1, 2, 3.0));
+    // A drain is already pending, so don't ask for another.
+    assertFalse(buffer.add("trial", "a", 0, 3, 4.0));
+
+    buffer.drainTo(db, this::onWriteFailed);
+    assertEquals(1, db.commits);
+    assertEquals(
+        Lists.newArrayList(
+            new InMemorySensorDatabase.Reading("trial", "a", 1, 1.0),
+            new InMemorySensorDatabase.Reading("trial", "b", 1, 2.0),
+            new InMemorySensorDatabase.Reading("trial", "a", 3, 4.0)),
+        db.getReadings(0));
+    assertEquals(
+        Lists.newArrayList(new InMemorySensorDatabase.Reading("trial", "a", 2, 3.0)),
+        db.getReadings(1));
+    assertTrue(buffer.isEmpty());
+  }
+
+  @Test
+  public void testDrainAfterLatency() {
+    ScalarWriteBuffer buffer = new ScalarWriteBuffer(() -> now, 10, 5, 100);
+    assertFalse(buffer.add("trial", "a", 0, 1, 1.0));
+    now = 99;
+    assertFalse(buffer.add("trial", "a", 0, 2, 2.0));
+    now = 100;
+    assertTrue(buffer.add("trial", "a", 0, 3, 3.0));
+  }
+
+  @Test
+  public void testRequestFlush() {
+    ScalarWriteBuffer buffer = new ScalarWriteBuffer(() -> now, 10, 5, 100);
+    assertFalse(buffer.requestFlush());
+    buffer.add("trial", "a", 0, 1, 1.0);
+    assertTrue(buffer.requestFlush());
+    assertFalse(buffer.requestFlush());
+    buffer.drainTo(db, this::onWriteFailed);
+    assertEquals(1, db.getReadings(0).size());
+  }
+
+  @Test
+  public void testWrapsAroundRing() {
+    ScalarWriteBuffer buffer = new ScalarWriteBuffer(() -> now, 4, 3, 1000);
+    for (int i = 0; i < 10; i++) {
+      if (buffer.add("trial", "a", 0, i, i)) {
+        buffer.drainTo(db, this::onWriteFailed);
+      }
+    }
+    buffer.requestFlush();
+    buffer.drainTo(db, this::onWriteFailed);
+    List<InMemorySensorDatabase.Reading> readings = db.getReadings(0);
+    assertEquals(10, readings.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, readings.get(i).getTimestampMillis());
+    }
+  }
+
+  @Test
+  public void testFailureReportedOncePerSensor() {
+    ScalarWriteBuffer buffer = new ScalarWriteBuffer(() -> now, 10, 5, 1000);
+    buffer.add("trial", "a", 0, 1, 1.0);
+    buffer.add("trial", "b", 0, 1, 1.0);
+    buffer.add("trial", "a", 0, 2, 1.0);
+    buffer.drainTo(
+        new InMemorySensorDatabase() {
+          @Override
+          public void addScalarReadings(ScalarReadingBatch readings) {
+            throw new RuntimeException("full");
+          }
+        },
+        this::onWriteFailed);
+    assertEquals(Lists.newArrayList("a", "b"), failedSensors);
+  }
+
+  @Test
+  public void testSpillsIntoOverflowWhenFull() {
+    ScalarWriteBuffer buffer = new ScalarWriteBuffer(() -> now, 2, 2, 1000, 2);
+    assertFalse(buffer.add("trial", "a", 0, 1, 1.0));
+    assertTrue(buffer.add("trial", "a", 0, 2, 2.0));
+    // The ring is full, so these spill over instead of blocking; a drain is already pending.
+    assertFalse(buffer.add("trial", "a", 0, 3, 3.0));
+    assertFalse(buffer.add("trial", "a", 0, 4, 4.0));
+    assertEquals(0, buffer.getDroppedCount());
+
+    buffer.drainTo(db, this::onWriteFailed);
+    assertEquals(1, db.commits);
+    List<InMemorySensorDatabase.Reading> readings = db.getReadings(0);
+    assertEquals(4, readings.size());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(i + 1, readings.get(i).getTimestampMillis());
+    }
+    assertTrue(buffer.isEmpty());
+    assertTrue(failedSensors.isEmpty());
+  }
+
+  @Test
+  public void testDropsReportedWhenOverflowFull() {
+    ScalarWriteBuffer buffer = new ScalarWriteBuffer(() -> now, 2, 2, 1000, 1);
+    buffer.add("trial", "a", 0, 1, 1.0);
+    buffer.add("trial", "b", 0, 2, 2.0);
+    buffer.add("trial", "a", 0, 3, 3.0);
+    // Both the ring and the overflow are full, so these are dropped.
+    buffer.add("trial", "a", 0, 4, 4.0);
+    buffer.add("trial", "b", 0, 5, 5.0);
+    buffer.add("trial", "a", 0, 6, 6.0);
+    assertEquals(3, buffer.getDroppedCount());
+
+    List<Exception> failures = new ArrayList<>();
+    buffer.drainTo(
+        db,
+        (sensorId, e) -> {
+          failedSensors.add(sensorId);
+          failures.add(e);
+        });
+    assertEquals(3, db.getReadings(0).size());
+    Collections.sort(failedSensors);
+    assertEquals(Lists.newArrayList("a", "b"), failedSensors);
+    for (Exception e : failures) {
+      assertTrue(e instanceof ScalarWriteBuffer.ReadingsDroppedException);
+    }
+
+    // Each drop is only reported once.
+    failedSensors.clear();
+    buffer.add("trial", "a", 0, 7, 7.0);
+    buffer.drainTo(db, this::onWriteFailed);
+    assertTrue(failedSensors.isEmpty());
+    assertEquals(3, buffer.getDroppedCount());
+  }
+
+  @Test
+  public void testDroppedReadingsReachSensorFailureListener() {
+    // Holds drains back, as a busy sensorDataThread would, so that the buffer fills up.
+    List<Runnable> dataThread = new ArrayList<>();
+    DataControllerImpl dc =
+        new DataControllerImpl(
+            null, // context
+            null, // appAccount
+            db,
+            MoreExecutors.directExecutor(),
+            MoreExecutors.directExecutor(),
+            dataThread::add,
+            new MemoryMetadataManager(),
+            () -> now,
+            new HashMap<>(),
+            new ConnectableSensor.Connector(new HashMap<>()),
+            new ScalarWriteBuffer(() -> now, 2, 2, 1000, 1),
+            null);
+    List<Exception> failures = new ArrayList<>();
+    dc.setDataErrorListenerForSensor("a", failures::add);
+    for (int i = 0; i < 5; i++) {
+      dc.addScalarReading("trial", "a", 0, i, i);
+    }
+    for (Runnable drain : dataThread) {
+      drain.run();
+    }
+
+    assertEquals(3, db.getReadings(0).size());
+    assertEquals(1, failures.size());
+    assertTrue(failures.get(0) instanceof ScalarWriteBuffer.ReadingsDroppedException);
+  }
+
+  @Test
+  public void testTimedDrainClaimedOncePerBatch() {
+    ScalarWriteBuffer buffer = new ScalarWriteBuffer(() -> now, 10, 5, 100);
+    assertFalse(buffer.claimTimedDrain());
+    buffer.add("trial", "a", 0, 1, 1.0);
+    assertTrue(buffer.claimTimedDrain());
+    buffer.add("trial", "a", 0, 2, 2.0);
+    assertFalse(buffer.claimTimedDrain());
+
+    buffer.drainTo(db, this::onWriteFailed);
+    buffer.add("trial", "a", 0, 3, 3.0);
+    assertTrue(buffer.claimTimedDrain());
+  }
+
+  @Test
+  public void testIdsStayCorrectAcrossDrains() {
+    ScalarWriteBuffer buffer = new ScalarWriteBuffer(() -> now, 10, 5, 1000);
+    buffer.add("first", "a", 0, 1, 1.0);
+    buffer.drainTo(db, this::onWriteFailed);
+    buffer.add("second", "b", 0, 2, 2.0);
+    buffer.add("first", "a", 0, 3, 3.0);
+    buffer.drainTo(db, this::onWriteFailed);
+    assertEquals(
+        Lists.newArrayList(
+            new InMemorySensorDatabase.Reading("first", "a", 1, 1.0),
+            new InMemorySensorDatabase.Reading("second", "b", 2, 2.0),
+            new InMemorySensorDatabase.Reading("first", "a", 3, 3.0)),
+        db.getReadings(0));
+  }
+
+  @Test
+  public void testStalledSensorStillDrained() {
+    MockScheduler scheduler = new MockScheduler();
+    DataControllerImpl dc =
+        new DataControllerImpl(
+            null, // context
+            null, // appAccount
+            db,
+            MoreExecutors.directExecutor(),
+            MoreExecutors.directExecutor(),
+            MoreExecutors.directExecutor(),
+            new MemoryMetadataManager(),
+            scheduler.getClock(),
+            new HashMap<>(),
+            new ConnectableSensor.Connector(new HashMap<>()),
+            new ScalarWriteBuffer(scheduler.getClock(), 10, 5, 100),
+            scheduler);
+    dc.addScalarReading("trial", "a", 0, 1, 1.0);
+    assertEquals(0, db.getReadings(0).size());
+
+    // No more readings arrive, but the first one is written once it has waited long enough.
+    scheduler.incrementTime(100);
+    assertEquals(1, db.getReadings(0).size());
+  }
+
+  private void onWriteFailed(String sensorId, Exception e) {
+    failedSensors.add(sensorId);
+  }
+
+  private static class CountingDatabase extends InMemorySensorDatabase {
+    int commits = 0;
+
+    @Override
+    public void addScalarReadings(ScalarReadingBatch readings) {
+      commits++;
+      super.addScalarReadings(readings);
+    }
+  }
+}
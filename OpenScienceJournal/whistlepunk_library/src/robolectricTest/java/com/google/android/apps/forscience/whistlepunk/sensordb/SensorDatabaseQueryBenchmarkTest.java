@@ -0,0 +1,102 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import com.google.android.apps.forscience.whistlepunk.Benchmarks;
+import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
+import com.google.android.apps.forscience.whistlepunk.accounts.NonSignedInAccount;
+import com.google.common.collect.Range;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Times {@link SensorDatabaseImpl} range queries as trials pile up, with and without the V5 series
+ * index. Only runs with {@code -PrunBenchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SensorDatabaseQueryBenchmarkTest {
+  private static final String BENCHMARK = "SensorDatabaseQuery";
+  private static final String TEST_DATABASE_NAME = "benchmark.db";
+  private static final int[] TRIAL_COUNTS = {1, 10, 50, 200};
+  private static final int QUERIES = 100;
+
+  @Test
+  public void benchmarkRangeQueryByTrialCount() {
+    SensorDatabaseImpl db =
+        new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+    int storedTrials = 0;
+    long indexedNanos = 0;
+    for (int trialCount : TRIAL_COUNTS) {
+      for (; storedTrials < trialCount; storedTrials++) {
+        SensorDatabaseQueryTest.addTrial(db, storedTrials);
+      }
+      indexedNanos = timeQueries(db, trialCount);
+      Benchmarks.report(
+          BENCHMARK, "%d trials: %.1f us per query", trialCount, indexedNanos / 1000.0 / QUERIES);
+    }
+
+    // Without the series index, the same queries have to visit rows of every trial.
+    SQLiteDatabase sqlite =
+        SQLiteDatabase.openDatabase(
+            getContext().getDatabasePath(TEST_DATABASE_NAME).getPath(),
+            null,
+            SQLiteDatabase.OPEN_READWRITE);
+    try {
+      sqlite.execSQL("DROP INDEX series");
+    } finally {
+      sqlite.close();
+    }
+    long unindexedNanos = timeQueries(db, storedTrials);
+    Benchmarks.report(
+        BENCHMARK,
+        "%d trials without series index: %.1f us per query (%.1fx slower)",
+        storedTrials,
+        unindexedNanos / 1000.0 / QUERIES,
+        (double) unindexedNanos / indexedNanos);
+  }
+
+  private static long timeQueries(SensorDatabaseImpl db, int trialCount) {
+    TimeRange window = TimeRange.oldest(Range.closed(100L, 200L));
+    return Benchmarks.medianNanos(
+        () -> {
+          for (int i = 0; i < QUERIES; i++) {
+            assertEquals(
+                101, db.getScalarReadings("trial" + (i % trialCount), "b", window, 0, 0).size());
+          }
+        });
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    getContext().deleteDatabase(TEST_DATABASE_NAME);
+  }
+
+  private Context getContext() {
+    return RuntimeEnvironment.application.getApplicationContext();
+  }
+
+  private AppAccount getAppAccount() {
+    return NonSignedInAccount.getInstance(getContext());
+  }
+}
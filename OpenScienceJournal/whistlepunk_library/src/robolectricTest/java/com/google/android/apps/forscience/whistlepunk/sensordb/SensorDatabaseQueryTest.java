@@ -0,0 +1,136 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.google.android.apps.forscience.whistlepunk.BatchInsertScalarReading;
+import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
+import com.google.android.apps.forscience.whistlepunk.accounts.NonSignedInAccount;
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Checks that {@link SensorDatabaseImpl} range queries are answered from the V5 series index, so
+ * that a query only visits rows of its own trial, sensor and tier. {@link
+ * SensorDatabaseQueryBenchmarkTest} times them.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SensorDatabaseQueryTest {
+  private static final String TEST_DATABASE_NAME = "query.db";
+  private static final int TRIAL_COUNT = 10;
+  private static final String[] TAGS = {"a", "b", "c"};
+  private static final int ROWS_PER_SERIES = 300;
+
+  @Test
+  public void testRangeQueryOnlyReturnsItsOwnSeries() {
+    SensorDatabaseImpl db =
+        new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+    for (int trial = 0; trial < TRIAL_COUNT; trial++) {
+      addTrial(db, trial);
+    }
+    TimeRange window = TimeRange.oldest(Range.closed(100L, 200L));
+    for (int trial = 0; trial < TRIAL_COUNT; trial++) {
+      List<ChartData.DataPoint> points =
+          db.getScalarReadings("trial" + trial, "b", window, 0, 0).asDataPoints();
+      assertEquals(101, points.size());
+      assertEquals(100, points.get(0).getX());
+      assertEquals(200, points.get(100).getX());
+      assertEquals(11, db.getScalarReadings("trial" + trial, "b", window, 1, 0).size());
+    }
+  }
+
+  @Test
+  public void testRangeQueryUsesCoveringSeriesIndex() {
+    SensorDatabaseImpl db =
+        new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+    addTrial(db, 0);
+
+    SQLiteDatabase sqlite =
+        SQLiteDatabase.openDatabase(
+            getContext().getDatabasePath(TEST_DATABASE_NAME).getPath(),
+            null,
+            SQLiteDatabase.OPEN_READONLY);
+    SensorDatabaseImpl.ScalarQueries queries = new SensorDatabaseImpl.ScalarQueries();
+    String[] tags = {"a"};
+    try {
+      // Every order and limit the app queries a single series with.
+      for (boolean newestFirst : new boolean[] {false, true}) {
+        TimeRange window =
+            newestFirst
+                ? TimeRange.newest(Range.closed(100L, 200L))
+                : TimeRange.oldest(Range.closed(100L, 200L));
+        for (int maxRecords : new int[] {0, 10}) {
+          String sql = queries.getSelectSql(tags.length, newestFirst, true, maxRecords > 0);
+          String[] args =
+              SensorDatabaseImpl.getSelectionArgs("trial0", tags, window, 0, maxRecords);
+          String plan = explainQueryPlan(sqlite, sql, args);
+          assertTrue(sql + "\n" + plan, plan.contains("COVERING INDEX series"));
+        }
+      }
+    } finally {
+      sqlite.close();
+    }
+  }
+
+  private static String explainQueryPlan(SQLiteDatabase sqlite, String sql, String[] args) {
+    StringBuilder plan = new StringBuilder();
+    try (Cursor cursor = sqlite.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+      while (cursor.moveToNext()) {
+        plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+      }
+    }
+    return plan.toString();
+  }
+
+  static void addTrial(SensorDatabaseImpl db, int trial) {
+    List<BatchInsertScalarReading> readings = new ArrayList<>();
+    for (String tag : TAGS) {
+      for (int i = 0; i < ROWS_PER_SERIES; i++) {
+        readings.add(new BatchInsertScalarReading("trial" + trial, tag, 0, i, i));
+        if (i % 10 == 0) {
+          readings.add(new BatchInsertScalarReading("trial" + trial, tag, 1, i, i));
+        }
+      }
+    }
+    db.addScalarReadings(readings);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    getContext().deleteDatabase(TEST_DATABASE_NAME);
+  }
+
+  private Context getContext() {
+    return RuntimeEnvironment.application.getApplicationContext();
+  }
+
+  private AppAccount getAppAccount() {
+    return NonSignedInAccount.getInstance(getContext());
+  }
+}
@@ -16,11 +16,15 @@
 
 package com.google.android.apps.forscience.whistlepunk.sensordb;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import com.google.android.apps.forscience.whistlepunk.Arbitrary;
+import com.google.android.apps.forscience.whistlepunk.ScalarReadingBatch;
 import com.google.android.apps.forscience.whistlepunk.accounts.AppAccount;
 import com.google.android.apps.forscience.whistlepunk.accounts.NonSignedInAccount;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciSensorLayout;
@@ -33,7 +37,10 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Range;
 import io.reactivex.Observable;
 import io.reactivex.observers.TestObserver;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.junit.After;
@@ -91,6 +98,51 @@ public class SensorDatabaseTest {
         readings);
   }
 
+  @Test
+  public void testReadScalarReadingChunks() {
+    SensorDatabaseImpl db =
+        new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+    for (int i = 1; i <= 5; i++) {
+      db.addScalarReading("id", "tag", 0, i, i);
+    }
+    db.addScalarReading("id", "tag", 1, 3, 30.0);
+    List<ScalarReading> readings = new ArrayList<>();
+    List<Integer> chunkSizes = new ArrayList<>();
+    db.readScalarReadingChunks(
+        "id",
+        "tag",
+        TimeRange.oldest(Range.closed(2L, 5L)),
+        0,
+        3,
+        chunk -> {
+          chunkSizes.add(chunk.size());
+          readings.addAll(ScalarReading.slurp(chunk));
+          return true;
+        });
+    assertEquals(Arrays.asList(3, 1), chunkSizes);
+    assertEquals(
+        Arrays.asList(
+            new ScalarReading(2, 2.0),
+            new ScalarReading(3, 3.0),
+            new ScalarReading(4, 4.0),
+            new ScalarReading(5, 5.0)),
+        readings);
+
+    // Stopping after the first chunk.
+    chunkSizes.clear();
+    db.readScalarReadingChunks(
+        "id",
+        "tag",
+        TimeRange.oldest(Range.<Long>all()),
+        0,
+        2,
+        chunk -> {
+          chunkSizes.add(chunk.size());
+          return false;
+        });
+    assertEquals(Arrays.asList(2), chunkSizes);
+  }
+
   @Test
   public void testAddScalarReadingTags() {
     SensorDatabaseImpl db =
@@ -179,6 +231,33 @@ public class SensorDatabaseTest {
     assertEquals("id", "tagAfter", db.getFirstDatabaseTagAfter(2));
   }
 
+  @Test
+  public void testAddScalarReadingBatch() {
+    SensorDatabaseImpl db =
+        new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+    ScalarReadingBatch batch = new ScalarReadingBatch();
+    batch.add("id", "tag", 0, 1, 1.0);
+    batch.add("id", "other", 0, 1, 5.0);
+    batch.add("id", "tag", 1, 2, 2.0);
+    batch.add("id", "tag", 0, 2, 2.0);
+    db.addScalarReadings(batch);
+
+    // A cleared batch can be filled and written again.
+    batch.clear();
+    batch.add("id", "tag", 0, 3, 3.0);
+    db.addScalarReadings(batch);
+
+    assertEquals(
+        Arrays.asList(
+            new ScalarReading(1, 1.0), new ScalarReading(2, 2.0), new ScalarReading(3, 3.0)),
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0)));
+    assertEquals(
+        Arrays.asList(new ScalarReading(2, 2.0)),
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 1, 0)));
+  }
+
   @Test
   public void testDeleteReadings() {
     SensorDatabaseImpl db =
@@ -314,6 +393,40 @@ public class SensorDatabaseTest {
     testObserver.assertValueSequence(expected);
   }
 
+  @Test
+  public void testObservable_pagingThroughSharedTimestamps() {
+    SensorDatabaseImpl db =
+        new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+
+    // Each sensor has several readings per timestamp, so pages end part way through runs of
+    // readings that share a timestamp.
+    int pageSize = 3;
+    List<ScalarReading> expected = Lists.newArrayList();
+    for (int index = 0; index < 10; ++index) {
+      db.addScalarReading("id", "tag", 0, index / 4, index);
+      db.addScalarReading("id", "tag2", 0, index / 4, 100 + index);
+    }
+    for (int timestamp = 0; timestamp < 3; ++timestamp) {
+      for (int index = timestamp * 4; index < Math.min(10, timestamp * 4 + 4); ++index) {
+        expected.add(new ScalarReading(timestamp, index, "tag"));
+      }
+      for (int index = timestamp * 4; index < Math.min(10, timestamp * 4 + 4); ++index) {
+        expected.add(new ScalarReading(timestamp, 100 + index, "tag2"));
+      }
+    }
+
+    TestObserver<ScalarReading> testObserver = new TestObserver<>();
+    db.createScalarObservable(
+            "id",
+            new String[] {"tag", "tag2"},
+            TimeRange.oldest(Range.closed(0L, 2L)),
+            0,
+            pageSize)
+        .subscribe(testObserver);
+    testObserver.assertNoErrors();
+    testObserver.assertValueSequence(expected);
+  }
+
   @Test
   public void testGetScalarReadingProtos() {
     SensorDatabaseImpl db =
@@ -375,6 +488,42 @@ public class SensorDatabaseTest {
     assertEquals(2, data.getSensors(0).getRowsCount());
   }
 
+  @Test
+  public void testWriteScalarReadingProtosMatchesProto() throws IOException {
+    SensorDatabaseImpl db =
+        new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+    GoosciExperiment.Experiment.Builder experiment = GoosciExperiment.Experiment.newBuilder();
+    for (String trialId : new String[] {"first", "second"}) {
+      experiment.addTrials(
+          GoosciTrial.Trial.newBuilder()
+              .setTrialId(trialId)
+              .setRecordingRange(
+                  com.google.android.apps.forscience.whistlepunk.metadata.GoosciTrial.Range
+                      .newBuilder()
+                      .setStartMs(0)
+                      .setEndMs(2000))
+              .addSensorLayouts(SensorLayout.newBuilder().setSensorId("foo"))
+              .addSensorLayouts(SensorLayout.newBuilder().setSensorId("bar")));
+    }
+    for (int i = 0; i < 1000; i++) {
+      db.addScalarReading("first", "foo", 0, i * 2, Math.sin(i));
+      db.addScalarReading("first", "bar", 0, i, -i);
+    }
+    // Readings from before trial ids existed are exported under the trial that asks for them.
+    db.addScalarReading("0", "foo", 0, 5, 1.5);
+
+    ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+    db.writeScalarReadingProtos(experiment.build(), null, streamed);
+    assertArrayEquals(
+        db.getScalarReadingProtos(experiment.build()).toByteArray(), streamed.toByteArray());
+
+    ByteArrayOutputStream trial = new ByteArrayOutputStream();
+    db.writeScalarReadingProtos(experiment.build(), "second", trial);
+    assertArrayEquals(
+        db.getScalarReadingProtosForTrial(experiment.build(), "second").toByteArray(),
+        trial.toByteArray());
+  }
+
   @Test
   public void testGetScalarReadingSensorProtos() {
     SensorDatabaseImpl db =
@@ -443,6 +592,36 @@ public class SensorDatabaseTest {
     assertEquals(trial.getTrialId(), data.get(0).getTrialId());
   }
 
+  @Test
+  public void testUpgradeFromV4AddsSeriesIndex() {
+    String path = getContext().getDatabasePath(getDatabaseFileName()).getPath();
+    getContext().getDatabasePath(getDatabaseFileName()).getParentFile().mkdirs();
+    SQLiteDatabase v4 = SQLiteDatabase.openOrCreateDatabase(path, null);
+    v4.execSQL(
+        "CREATE TABLE scalar_sensors (tag  TEXT, timestampMillis INTEGER, value REAL, "
+            + "resolutionTier INTEGER DEFAULT 0, trialId TEXT DEFAULT 0 NOT NULL);");
+    v4.execSQL("CREATE INDEX timestamp ON scalar_sensors(timestampMillis);");
+    v4.execSQL("INSERT INTO scalar_sensors VALUES ('tag', 1, 1.0, 0, 'id');");
+    v4.setVersion(4);
+    v4.close();
+
+    SensorDatabaseImpl db =
+        new SensorDatabaseImpl(getContext(), getAppAccount(), TEST_DATABASE_NAME);
+    assertEquals(
+        Arrays.asList(new ScalarReading(1, 1.0)),
+        ScalarReading.slurp(
+            db.getScalarReadings("id", "tag", TimeRange.oldest(Range.<Long>all()), 0, 0)));
+
+    SQLiteDatabase v5 = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+    try (Cursor cursor =
+        v5.rawQuery(
+            "SELECT name FROM sqlite_master WHERE type = 'index' AND name = 'series'", null)) {
+      assertEquals(1, cursor.getCount());
+    } finally {
+      v5.close();
+    }
+  }
+
   @Before
   public void setUp() throws Exception {
     File dbtest = getContext().getDatabasePath(TEST_DATABASE_NAME);
@@ -457,6 +636,10 @@ public class SensorDatabaseTest {
     getContext().getDatabasePath(TEST_DATABASE_NAME).delete();
   }
 
+  private String getDatabaseFileName() {
+    return getAppAccount().getDatabaseFileName(TEST_DATABASE_NAME);
+  }
+
   private Context getContext() {
     return RuntimeEnvironment.application.getApplicationContext();
   }
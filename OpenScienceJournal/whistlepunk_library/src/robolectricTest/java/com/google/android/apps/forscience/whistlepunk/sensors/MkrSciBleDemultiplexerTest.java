@@ -0,0 +1,194 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.content.Context;
+import com.google.android.apps.forscience.ble.MkrSciBleManager;
+import com.google.android.apps.forscience.whistlepunk.MemorySensorHistoryStorage;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.MemorySensorEnvironment;
+import com.google.android.apps.forscience.whistlepunk.sensordb.MonotonicClock;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+@RunWith(RobolectricTestRunner.class)
+public class MkrSciBleDemultiplexerTest {
+  private static final String ADDRESS = "address";
+  private static final String CHARACTERISTIC = MkrSciBleManager.ACCELEROMETER_UUID;
+
+  private final FakeConnector connector = new FakeConnector();
+  private final MemorySensorEnvironment environment =
+      new MemorySensorEnvironment(
+          null, null, new MemorySensorHistoryStorage(), new MonotonicClock());
+
+  @Before
+  public void setUp() {
+    MkrSciBleDemultiplexer.setConnectorForTesting(connector);
+  }
+
+  @After
+  public void tearDown() {
+    MkrSciBleDemultiplexer.setConnectorForTesting(null);
+  }
+
+  @Test
+  public void lateSubscriberGetsFirmwareVersion() {
+    RecordingSubscriber early = new RecordingSubscriber();
+    subscribe(early);
+    connector.listener().onFirmwareVersion(7);
+    ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    assertEquals(7, early.firmwareVersion);
+
+    RecordingSubscriber late = new RecordingSubscriber();
+    subscribe(late);
+    ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    assertEquals(7, late.firmwareVersion);
+    assertEquals(1, connector.subscriptions);
+
+    unsubscribe(early);
+    unsubscribe(late);
+  }
+
+  @Test
+  public void lateSubscriberWaitsForUnknownFirmwareVersion() {
+    RecordingSubscriber early = new RecordingSubscriber();
+    RecordingSubscriber late = new RecordingSubscriber();
+    subscribe(early);
+    subscribe(late);
+    ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    assertEquals(-1, late.firmwareVersion);
+
+    connector.listener().onFirmwareVersion(3);
+    ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    assertEquals(3, early.firmwareVersion);
+    assertEquals(3, late.firmwareVersion);
+
+    unsubscribe(early);
+    unsubscribe(late);
+  }
+
+  @Test
+  public void everySubscriberGetsTheSameTimestamp() {
+    RecordingSubscriber x = new RecordingSubscriber();
+    RecordingSubscriber y = new RecordingSubscriber();
+    subscribe(x);
+    subscribe(y);
+
+    // The manager reuses its array, so changing it must not change readings already queued.
+    double[] values = {1, 2, 3};
+    connector.listener().onValuesUpdated(values);
+    values[0] = 4;
+    connector.listener().onValuesUpdated(values);
+    ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+    assertEquals(2, x.timestamps.size());
+    assertEquals(x.timestamps, y.timestamps);
+    assertEquals(x.timestamps.get(0) + 1, (long) x.timestamps.get(1));
+    assertEquals(1.0, x.firstValues.get(0), 0.0);
+    assertEquals(4.0, x.firstValues.get(1), 0.0);
+    assertEquals(x.firstValues, y.firstValues);
+
+    unsubscribe(x);
+    unsubscribe(y);
+  }
+
+  @Test
+  public void unsubscribesOnlyAfterLastSubscriberLeaves() {
+    RecordingSubscriber first = new RecordingSubscriber();
+    RecordingSubscriber second = new RecordingSubscriber();
+    subscribe(first);
+    subscribe(second);
+
+    unsubscribe(first);
+    assertNotNull(connector.listener);
+    unsubscribe(first);
+    assertNotNull(connector.listener);
+
+    unsubscribe(second);
+    assertNull(connector.listener);
+    assertEquals(1, connector.subscriptions);
+  }
+
+  private void subscribe(MkrSciBleDemultiplexer.Subscriber subscriber) {
+    MkrSciBleDemultiplexer.subscribe(
+        getContext(), environment, ADDRESS, CHARACTERISTIC, subscriber);
+  }
+
+  private static void unsubscribe(MkrSciBleDemultiplexer.Subscriber subscriber) {
+    MkrSciBleDemultiplexer.unsubscribe(ADDRESS, CHARACTERISTIC, subscriber);
+  }
+
+  private static Context getContext() {
+    return RuntimeEnvironment.application.getApplicationContext();
+  }
+
+  private static class RecordingSubscriber implements MkrSciBleDemultiplexer.Subscriber {
+    long firmwareVersion = -1;
+    final List<Long> timestamps = new ArrayList<>();
+    final List<Double> firstValues = new ArrayList<>();
+
+    @Override
+    public void onFirmwareVersion(long firmwareVersion) {
+      this.firmwareVersion = firmwareVersion;
+    }
+
+    @Override
+    public void onValues(long timestamp, double[] values) {
+      timestamps.add(timestamp);
+      firstValues.add(values[0]);
+    }
+  }
+
+  private static class FakeConnector implements MkrSciBleDemultiplexer.Connector {
+    MkrSciBleManager.Listener listener;
+    int subscriptions;
+
+    @Override
+    public void subscribe(
+        Context context,
+        String address,
+        String characteristic,
+        MkrSciBleManager.Listener listener) {
+      this.listener = listener;
+      subscriptions++;
+    }
+
+    @Override
+    public void unsubscribe(
+        String address, String characteristic, MkrSciBleManager.Listener listener) {
+      if (this.listener == listener) {
+        this.listener = null;
+      }
+    }
+
+    MkrSciBleManager.Listener listener() {
+      assertNotNull(listener);
+      return listener;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.os.Handler;
+import com.google.android.apps.forscience.whistlepunk.MemorySensorHistoryStorage;
+import com.google.android.apps.forscience.whistlepunk.accounts.NonSignedInAccount;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.MemorySensorEnvironment;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.RecordingSensorObserver;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorRecorder;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StubStatusListener;
+import com.google.android.apps.forscience.whistlepunk.sensordb.MonotonicClock;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class SensorEventDemultiplexerTest {
+  private final FakeRegistrar registrar = new FakeRegistrar();
+  private final MemorySensorEnvironment environment =
+      new MemorySensorEnvironment(
+          null, null, new MemorySensorHistoryStorage(), new MonotonicClock());
+
+  @Before
+  public void setUp() {
+    SensorEventDemultiplexer.setRegistrarForTesting(registrar);
+  }
+
+  @After
+  public void tearDown() {
+    SensorEventDemultiplexer.setRegistrarForTesting(null);
+  }
+
+  @Test
+  public void axesAndCompassShareOneRegistrationPerType() {
+    SensorRecorder x = startObserving(new AccelerometerSensor(AccelerometerSensor.Axis.X));
+    SensorRecorder y = startObserving(new AccelerometerSensor(AccelerometerSensor.Axis.Y));
+    SensorRecorder z = startObserving(new AccelerometerSensor(AccelerometerSensor.Axis.Z));
+    SensorRecorder compass = startObserving(new CompassSensor());
+
+    assertEquals(1, registrar.registrationCount(Sensor.TYPE_ACCELEROMETER));
+    assertEquals(1, registrar.registrationCount(Sensor.TYPE_MAGNETIC_FIELD));
+    assertEquals(2, registrar.listeners.size());
+
+    x.stopObserving();
+    y.stopObserving();
+    z.stopObserving();
+    compass.stopObserving();
+    assertEquals(0, registrar.listeners.size());
+  }
+
+  @Test
+  public void unregistersOnlyAfterLastSubscriberLeaves() {
+    SensorEventDemultiplexer.Subscriber first = (timestamp, values) -> {};
+    SensorEventDemultiplexer.Subscriber second = (timestamp, values) -> {};
+    SensorEventDemultiplexer.subscribe(getContext(), environment, Sensor.TYPE_ACCELEROMETER, first);
+    SensorEventDemultiplexer.subscribe(
+        getContext(), environment, Sensor.TYPE_ACCELEROMETER, second);
+
+    SensorEventDemultiplexer.unsubscribe(getContext(), Sensor.TYPE_ACCELEROMETER, first);
+    assertTrue(registrar.listeners.containsKey(Sensor.TYPE_ACCELEROMETER));
+    // Leaving twice must not count as another subscriber leaving.
+    SensorEventDemultiplexer.unsubscribe(getContext(), Sensor.TYPE_ACCELEROMETER, first);
+    assertTrue(registrar.listeners.containsKey(Sensor.TYPE_ACCELEROMETER));
+
+    SensorEventDemultiplexer.unsubscribe(getContext(), Sensor.TYPE_ACCELEROMETER, second);
+    assertEquals(0, registrar.listeners.size());
+    assertEquals(1, registrar.registrationCount(Sensor.TYPE_ACCELEROMETER));
+  }
+
+  @Test
+  public void everyAxisGetsTheSameTimestamp() throws Exception {
+    List<String> received = new ArrayList<>();
+    List<SensorEventDemultiplexer.Subscriber> subscribers = new ArrayList<>();
+    for (AccelerometerSensor.Axis axis : AccelerometerSensor.Axis.values()) {
+      SensorEventDemultiplexer.Subscriber subscriber =
+          (timestamp, values) -> received.add(timestamp + ":" + axis.getValue(values));
+      subscribers.add(subscriber);
+      SensorEventDemultiplexer.subscribe(
+          getContext(), environment, Sensor.TYPE_ACCELEROMETER, subscriber);
+    }
+
+    // The clock moves on at every reading, so each event must be timed only once.
+    SensorEventListener listener = registrar.listeners.get(Sensor.TYPE_ACCELEROMETER);
+    listener.onSensorChanged(makeEvent(1, 2, 3));
+    listener.onSensorChanged(makeEvent(4, 5, 6));
+
+    assertEquals(6, received.size());
+    String[] first = received.get(0).split(":");
+    String[] second = received.get(3).split(":");
+    assertEquals(Long.parseLong(first[0]) + 1, Long.parseLong(second[0]));
+    assertEquals(first[0] + ":1.0", received.get(0));
+    assertEquals(first[0] + ":2.0", received.get(1));
+    assertEquals(first[0] + ":3.0", received.get(2));
+    assertEquals(second[0] + ":4.0", received.get(3));
+    assertEquals(second[0] + ":5.0", received.get(4));
+    assertEquals(second[0] + ":6.0", received.get(5));
+
+    for (SensorEventDemultiplexer.Subscriber subscriber : subscribers) {
+      SensorEventDemultiplexer.unsubscribe(getContext(), Sensor.TYPE_ACCELEROMETER, subscriber);
+    }
+  }
+
+  private SensorRecorder startObserving(ScalarSensor sensor) {
+    SensorRecorder recorder =
+        sensor.createRecorder(
+            getContext(),
+            NonSignedInAccount.getInstance(getContext()),
+            new RecordingSensorObserver(),
+            new StubStatusListener(),
+            environment);
+    recorder.startObserving();
+    return recorder;
+  }
+
+  private static SensorEvent makeEvent(float... values) throws Exception {
+    // SensorEvent has no public constructor.
+    Constructor<SensorEvent> constructor = SensorEvent.class.getDeclaredConstructor(int.class);
+    constructor.setAccessible(true);
+    SensorEvent event = constructor.newInstance(values.length);
+    System.arraycopy(values, 0, event.values, 0, values.length);
+    return event;
+  }
+
+  private static Context getContext() {
+    return RuntimeEnvironment.application.getApplicationContext();
+  }
+
+  private static class FakeRegistrar implements SensorEventDemultiplexer.Registrar {
+    // Android sensor type > its registered listener.
+    final Map<Integer, SensorEventListener> listeners = new HashMap<>();
+    private final Map<Integer, Integer> registrations = new HashMap<>();
+
+    @Override
+    public void register(
+        Context context, SensorEventListener listener, int sensorType, Handler handler) {
+      listeners.put(sensorType, listener);
+      registrations.put(sensorType, registrationCount(sensorType) + 1);
+    }
+
+    @Override
+    public void unregister(Context context, SensorEventListener listener) {
+      listeners.values().remove(listener);
+    }
+
+    int registrationCount(int sensorType) {
+      Integer count = registrations.get(sensorType);
+      return count == null ? 0 : count;
+    }
+  }
+}
@@ -16,6 +16,8 @@
 package com.google.android.apps.forscience.whistlepunk.api.scalarinput;
 
 import android.os.DeadObjectException;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.RemoteException;
 import android.util.Log;
 
@@ -30,6 +32,7 @@ public abstract class AdvertisedSensor {
   private final String address;
   private final String name;
   private ISensorStatusListener listener = null;
+  private SampleBatcher batcher = null;
 
   protected AdvertisedSensor(String address, String name) {
     this.address = address;
@@ -46,6 +49,19 @@ public abstract class AdvertisedSensor {
     return new SensorAppearanceResources();
   }
 
+  /**
+   * Override to change how many samples are sent to Science Journal in one call, if the installed
+   * version accepts batches. Return 1 to send each sample as soon as it arrives.
+   */
+  protected int getMaxBatchSize() {
+    return 64;
+  }
+
+  /** Override to change how long a sample may wait to be sent with a batch of later samples. */
+  protected long getMaxBatchDelayMillis() {
+    return 50;
+  }
+
   /**
    * Connect to the sensor (for example, establish a BLE connection). Do _not_ start streaming data
    * yet.
@@ -81,7 +97,9 @@ public abstract class AdvertisedSensor {
    */
   protected abstract void disconnect();
 
-  final void startObserving(final ISensorObserver observer, final ISensorStatusListener listener)
+  /** @param batchData whether the observer accepts {@link ISensorObserver#onNewDataBatch}. */
+  final void startObserving(
+      final ISensorObserver observer, final ISensorStatusListener listener, boolean batchData)
       throws RemoteException {
     listener.onSensorConnecting();
     try {
@@ -98,6 +116,21 @@ public abstract class AdvertisedSensor {
     }
     listener.onSensorConnected();
     this.listener = listener;
+    final SampleBatcher batcher =
+        batchData && getMaxBatchSize() > 1
+            ? new SampleBatcher(
+                observer,
+                getMaxBatchSize(),
+                getMaxBatchDelayMillis(),
+                new Handler(Looper.getMainLooper()),
+                new SampleBatcher.SendFailureListener() {
+                  @Override
+                  public void onSendFailure(RemoteException e) {
+                    onSendFailed(e);
+                  }
+                })
+            : null;
+    this.batcher = batcher;
 
     streamData(
         new DataConsumer() {
@@ -109,20 +142,39 @@ public abstract class AdvertisedSensor {
           @Override
           public void onNewData(long timestamp, double value) {
             try {
-              try {
+              if (batcher != null) {
+                batcher.add(timestamp, value);
+              } else {
                 observer.onNewData(timestamp, value);
-              } catch (DeadObjectException e) {
-                reportError(e);
-                stopObserving();
               }
             } catch (RemoteException e) {
-              reportError(e);
+              onSendFailed(e);
             }
           }
         });
   }
 
+  /** Reports a failure to send data, and stops observing if the app has gone away. */
+  private void onSendFailed(RemoteException e) {
+    reportError(e);
+    if (e instanceof DeadObjectException) {
+      try {
+        stopObserving();
+      } catch (RemoteException stopException) {
+        reportError(stopException);
+      }
+    }
+  }
+
   final void stopObserving() throws RemoteException {
+    if (batcher != null) {
+      try {
+        batcher.flush();
+      } catch (RemoteException e) {
+        reportError(e);
+      }
+      batcher = null;
+    }
     disconnect();
     if (listener != null) {
       listener.onSensorDisconnected();
@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2019 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.google.android.apps.forscience.whistlepunk.api.scalarinput;
+
+import android.os.Handler;
+import android.os.RemoteException;
+
+/**
+ * Collects samples for an {@link ISensorObserver} and sends them in batches, each in a single
+ * binder call. A batch is sent once it holds {@code maxBatchSize} samples, or {@code
+ * maxDelayMillis} after its first sample was added, whichever comes first.
+ *
+ * <p>Only use this for apps that accept batches (see {@link Versions#supportsBatchedData}). {@link
+ * AdvertisedSensor} already does this for you; this class is for services that implement {@link
+ * ISensorConnector} themselves.
+ *
+ * <p>Samples may be added from any thread.
+ */
+public class SampleBatcher {
+  /** Told when a batch could not be sent because its time was up. */
+  public interface SendFailureListener {
+    /** Called on the thread of the batcher's handler. */
+    void onSendFailure(RemoteException e);
+  }
+
+  private final ISensorObserver observer;
+  private final long maxDelayMillis;
+  private final Handler handler;
+  private final SendFailureListener failureListener;
+  private final long[] timestamps;
+  private final double[] values;
+  private int count = 0;
+
+  private final Runnable flushOnDeadline =
+      new Runnable() {
+        @Override
+        public void run() {
+          try {
+            flush();
+          } catch (RemoteException e) {
+            failureListener.onSendFailure(e);
+          }
+        }
+      };
+
+  /**
+   * @param handler the handler that sends batches whose time is up, rather than full.
+   * @param failureListener told when sending such a batch fails, since no caller is there to catch
+   *     the exception.
+   */
+  public SampleBatcher(
+      ISensorObserver observer,
+      int maxBatchSize,
+      long maxDelayMillis,
+      Handler handler,
+      SendFailureListener failureListener) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+    }
+    this.observer = observer;
+    this.maxDelayMillis = maxDelayMillis;
+    this.handler = handler;
+    this.failureListener = failureListener;
+    timestamps = new long[maxBatchSize];
+    values = new double[maxBatchSize];
+  }
+
+  /**
+   * Adds a sample to the current batch, and sends the batch if it is full.
+   *
+   * @throws RemoteException if sending the full batch failed.
+   */
+  public synchronized void add(long timestamp, double value) throws RemoteException {
+    timestamps[count] = timestamp;
+    values[count] = value;
+    count++;
+    if (count == timestamps.length) {
+      flush();
+    } else if (count == 1) {
+      handler.postDelayed(flushOnDeadline, maxDelayMillis);
+    }
+  }
+
+  /** Sends any samples in the current batch right away. */
+  public synchronized void flush() throws RemoteException {
+    handler.removeCallbacks(flushOnDeadline);
+    if (count == 0) {
+      return;
+    }
+    int toSend = count;
+    count = 0;
+    observer.onNewDataBatch(timestamps, values, toSend);
+  }
+}
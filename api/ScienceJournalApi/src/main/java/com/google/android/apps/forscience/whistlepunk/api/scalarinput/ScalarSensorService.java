@@ -152,6 +152,26 @@ public abstract class ScalarSensorService extends Service {
     return false;
   }
 
+  /**
+   * Check whether the connecting app accepts data in batches, which takes far fewer binder calls
+   * for fast sensors. Apps released before batches were added only accept single samples.
+   *
+   * <p>Like {@link #binderHasAllowedSignature()}, this only returns valid results when called from
+   * within methods defined on the Binder class.
+   */
+  protected boolean binderSupportsBatchedData() {
+    PackageManager pm = getPackageManager();
+    String bindingName = pm.getNameForUid(Binder.getCallingUid());
+    try {
+      return Versions.supportsBatchedData(bindingName, pm.getResourcesForApplication(bindingName));
+    } catch (PackageManager.NameNotFoundException e) {
+      if (Log.isLoggable(TAG, Log.ERROR)) {
+        Log.e(TAG, "Unknown package name: " + bindingName);
+      }
+      return false;
+    }
+  }
+
   /**
    * @return The set of allowed app signatures. By default, this only includes Science Journal as
    *     installed from the Play Store, but extenders may add other trusted apps.
@@ -231,13 +251,14 @@ public abstract class ScalarSensorService extends Service {
             String settingsKey)
             throws RemoteException {
           if (clientAllowed()) {
+            boolean batchData = binderSupportsBatchedData();
             AdvertisedSensor sensor = sensors.get(sensorId);
             // TODO: write tests for this
             if (sensor != null) {
-              sensor.startObserving(observer, listener);
+              sensor.startObserving(observer, listener, batchData);
             } else {
               // TODO: create scanner class?
-              findAndStartObserving(sensorId, observer, listener);
+              findAndStartObserving(sensorId, observer, listener, batchData);
             }
           }
         }
@@ -252,7 +273,8 @@ public abstract class ScalarSensorService extends Service {
         private void findAndStartObserving(
             final String sensorId,
             final ISensorObserver observer,
-            final ISensorStatusListener listener)
+            final ISensorStatusListener listener,
+            final boolean batchData)
             throws RemoteException {
           scanDevices(
               new IDeviceConsumer.Stub() {
@@ -271,7 +293,7 @@ public abstract class ScalarSensorService extends Service {
                             SensorAppearanceResources appearance)
                             throws RemoteException {
                           if (sensorAddress.equals(sensorId)) {
-                            sensors.get(sensorId).startObserving(observer, listener);
+                            sensors.get(sensorId).startObserving(observer, listener, batchData);
                           }
                         }
 
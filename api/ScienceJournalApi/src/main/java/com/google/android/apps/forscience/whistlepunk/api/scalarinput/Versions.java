@@ -20,15 +20,37 @@ import android.content.res.Resources;
 public class Versions {
   public static int FIRST_RELEASE_SCALAR_API_VERSION = 1;
 
+  /**
+   * Minor versions only add optional calls, so they are tracked apart from the scalar API version,
+   * which released apps require to match exactly. Apps that predate minor versions report 0.
+   */
+  public static final int BATCHED_DATA_SCALAR_API_MINOR_VERSION = 1;
+
   public static int getScalarApiVersion(String packageName, Resources resources) {
+    return getInteger(
+        "scalar_api_version", packageName, resources, FIRST_RELEASE_SCALAR_API_VERSION);
+  }
+
+  public static int getScalarApiMinorVersion(String packageName, Resources resources) {
+    return getInteger("scalar_api_minor_version", packageName, resources, 0);
+  }
+
+  /** @return whether the given app accepts {@link ISensorObserver#onNewDataBatch}. */
+  public static boolean supportsBatchedData(String packageName, Resources resources) {
+    return getScalarApiMinorVersion(packageName, resources)
+        >= BATCHED_DATA_SCALAR_API_MINOR_VERSION;
+  }
+
+  private static int getInteger(
+      String name, String packageName, Resources resources, int defaultValue) {
     try {
-      int identifier = resources.getIdentifier("scalar_api_version", "integer", packageName);
+      int identifier = resources.getIdentifier(name, "integer", packageName);
       if (identifier != 0) {
         return resources.getInteger(identifier);
       }
     } catch (Resources.NotFoundException e) {
       // Fall through to default version
     }
-    return FIRST_RELEASE_SCALAR_API_VERSION;
+    return defaultValue;
   }
 }